@@ -0,0 +1,386 @@
+package simpledb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * BTreeBuilder bulk loads a {@link BTreeFile} from its table. It scans the
+ * table once, sorts the (key, RecordId) entries, with the values of the
+ * included fields of a covering index, with an external merge sort
+ * (sorted runs of a bounded size are spilled to temporary files and merged)
+ * and writes the pages of the index bottom-up, straight to its file: first
+ * the leaves, each filled to the fill factor and linked to the next, then
+ * each level of internal pages above them, and finally the header page.
+ * <p>
+ * This is much faster than adding the entries one by one, and leaves the
+ * index compact; a fill factor below 1 leaves room on every page for
+ * entries added later, so that they do not split pages right away. The
+ * pages are not written through the BufferPool, so the index must not be
+ * in use while it is built.
+ *
+ * @see SimpleDb
+ */
+public class BTreeBuilder {
+
+    /** Name of the system property holding the default fill factor. */
+    public static final String FILL_FACTOR_PROPERTY = "simpledb.BTreeFillFactor";
+
+    public static final double DEFAULT_FILL_FACTOR = 0.9;
+
+    /** Bytes of entries sorted in memory before a run is spilled. */
+    public static final int DEFAULT_RUN_BYTES = 16 << 20;
+
+    private final BTreeFile index;
+    private final Type keyType;
+    private final int keyLen;
+    private final int[] includedFields;
+    /** the bytes of a separator of the internal pages: a key and a RecordId */
+    private final int separatorSize;
+    /** the bytes of a leaf entry: a separator and the included values */
+    private final int entrySize;
+    private final double fillFactor;
+    private final int runEntries;
+
+    /**
+     * Creates a builder for an index with the fill factor of the
+     * {@link #FILL_FACTOR_PROPERTY} system property, or the default one.
+     */
+    public BTreeBuilder(BTreeFile index) {
+        this(index, Double.parseDouble(System.getProperty(FILL_FACTOR_PROPERTY,
+                Double.toString(DEFAULT_FILL_FACTOR))), DEFAULT_RUN_BYTES);
+    }
+
+    /**
+     * @param index the index to build
+     * @param fillFactor the fraction of the entries a page holds that the
+     *   pages of the new index get, in (0, 1]
+     * @param runBytes the bytes of entries to sort in memory at a time
+     */
+    public BTreeBuilder(BTreeFile index, double fillFactor, int runBytes) {
+        if (!(fillFactor > 0 && fillFactor <= 1))
+            throw new IllegalArgumentException("fill factor " + fillFactor + " is not in (0, 1]");
+        this.index = index;
+        this.keyType = index.getKeyType();
+        this.keyLen = keyType.getLen();
+        this.includedFields = index.getIncludedFields();
+        this.separatorSize = keyLen + 8;
+        this.entrySize = BTreeLeafPage.entrySize(keyType, index.getIncludedTypes());
+        this.fillFactor = fillFactor;
+        this.runEntries = Math.max(2, runBytes / entrySize);
+    }
+
+    /** @return the number of entries of the given size that fit on a page */
+    private static int maxEntries(int entrySize) {
+        return (BufferPool.PAGE_SIZE - BTreePage.HEADER_SIZE) / entrySize;
+    }
+
+    /** @return the number of entries of the given size a new page gets */
+    private int fill(int entrySize) {
+        return Math.max(1, (int) (maxEntries(entrySize) * fillFactor));
+    }
+
+    /**
+     * Replaces the contents of the index with the entries of all tuples of
+     * its table.
+     */
+    public void build() throws DbException, IOException, TransactionAbortedException {
+        ArrayList<File> runs = new ArrayList<File>();
+        try {
+            Run sorted = sort(runs);
+            write(sorted);
+        } finally {
+            for (File run : runs)
+                run.delete();
+        }
+    }
+
+    /**
+     * Scans the table into sorted runs.
+     *
+     * @param runs the files of the runs that were spilled
+     * @return the sorted entries
+     */
+    private Run sort(ArrayList<File> runs) throws DbException, IOException, TransactionAbortedException {
+        HeapFile table = index.getTable();
+        int keyField = index.getKeyField();
+        byte[] buffer = new byte[runEntries * entrySize];
+        ByteBuffer entries = ByteBuffer.wrap(buffer);
+        DataOutputStream dos = new DataOutputStream(new ByteBufferOutputStream(entries));
+        int n = 0;
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        try {
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                if (n == runEntries) {
+                    runs.add(spill(buffer, n));
+                    entries.clear();
+                    n = 0;
+                }
+                t.getField(keyField).serialize(dos);
+                dos.writeInt(t.getRecordId().getPageId().pageno());
+                dos.writeInt(t.getRecordId().tupleno());
+                for (int field : includedFields)
+                    t.getField(field).serialize(dos);
+                dos.flush();
+                n++;
+            }
+        } finally {
+            it.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+
+        if (runs.isEmpty())
+            return new MemoryRun(buffer, sortedOrder(buffer, n));
+        runs.add(spill(buffer, n));
+        return new MergedRun(runs);
+    }
+
+    /** @return the order of the n entries in the buffer */
+    private Integer[] sortedOrder(final byte[] buffer, int n) throws IOException {
+        final Field[] keys = new Field[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            if (keyType != Type.INT_TYPE)
+                keys[i] = parseKey(buffer, i * entrySize);
+        }
+        final ByteBuffer entries = ByteBuffer.wrap(buffer);
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return compareEntries(entries, a * entrySize, keys[a], entries, b * entrySize, keys[b]);
+            }
+        });
+        return order;
+    }
+
+    /** Writes the n entries of the buffer to a temporary file, in order. */
+    private File spill(byte[] buffer, int n) throws IOException {
+        File run = File.createTempFile("btree", ".run");
+        run.deleteOnExit();
+        BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(run));
+        try {
+            for (Integer i : sortedOrder(buffer, n))
+                out.write(buffer, i * entrySize, entrySize);
+        } finally {
+            out.close();
+        }
+        return run;
+    }
+
+    private Field parseKey(byte[] entry, int offset) throws IOException {
+        if (keyType == Type.INT_TYPE)
+            return null;
+        try {
+            return keyType.parse(new DataInputStream(new ByteArrayInputStream(entry, offset, keyLen)));
+        } catch (ParseException e) {
+            throw new IOException("could not parse key: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compares two entries in the order of {@link BTreePage#compare}; keys
+     * other than ints are compared in their parsed form.
+     */
+    private int compareEntries(ByteBuffer a, int aOffset, Field aKey, ByteBuffer b, int bOffset, Field bKey) {
+        int c;
+        if (keyType == Type.INT_TYPE)
+            c = compare(a.getInt(aOffset), b.getInt(bOffset));
+        else
+            c = BTreePage.compareKeys(aKey, bKey);
+        if (0 != c)
+            return c;
+        c = compare(a.getInt(aOffset + keyLen), b.getInt(bOffset + keyLen));
+        if (0 != c)
+            return c;
+        return compare(a.getInt(aOffset + keyLen + 4), b.getInt(bOffset + keyLen + 4));
+    }
+
+    private static int compare(int a, int b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /** A source of entries in order. */
+    private interface Run {
+        /** @return the number of entries in the run */
+        long size();
+
+        /**
+         * Copies the next entry into the buffer at the given offset.
+         */
+        void next(byte[] buffer, int offset) throws IOException;
+    }
+
+    /** The entries of a run that did not have to be spilled. */
+    private class MemoryRun implements Run {
+        private final byte[] buffer;
+        private final Integer[] order;
+        private int position = 0;
+
+        MemoryRun(byte[] buffer, Integer[] order) {
+            this.buffer = buffer;
+            this.order = order;
+        }
+
+        public long size() {
+            return order.length;
+        }
+
+        public void next(byte[] out, int offset) {
+            System.arraycopy(buffer, order[position++] * entrySize, out, offset, entrySize);
+        }
+    }
+
+    /** The entry a spilled run is at. */
+    private class RunReader {
+        final DataInputStream in;
+        final byte[] entry = new byte[entrySize];
+        final ByteBuffer view = ByteBuffer.wrap(entry);
+        Field key;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+        }
+
+        /** @return false if the run is exhausted */
+        boolean advance() throws IOException {
+            try {
+                in.readFully(entry);
+            } catch (EOFException e) {
+                in.close();
+                return false;
+            }
+            key = parseKey(entry, 0);
+            return true;
+        }
+    }
+
+    /** The entries of the spilled runs, merged. */
+    private class MergedRun implements Run {
+        private final PriorityQueue<RunReader> readers;
+        private long size = 0;
+
+        MergedRun(ArrayList<File> runs) throws IOException {
+            readers = new PriorityQueue<RunReader>(runs.size(), new Comparator<RunReader>() {
+                public int compare(RunReader a, RunReader b) {
+                    return compareEntries(a.view, 0, a.key, b.view, 0, b.key);
+                }
+            });
+            for (File run : runs) {
+                size += run.length() / entrySize;
+                RunReader reader = new RunReader(run);
+                if (reader.advance())
+                    readers.add(reader);
+            }
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public void next(byte[] out, int offset) throws IOException {
+            RunReader reader = readers.poll();
+            System.arraycopy(reader.entry, 0, out, offset, entrySize);
+            if (reader.advance())
+                readers.add(reader);
+        }
+    }
+
+    /**
+     * Writes the pages of the index: page 0 is the header, the leaves
+     * follow, then the internal pages level by level up to the root.
+     */
+    private void write(Run sorted) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index.getFile())));
+        int pageNo = 1;
+        try {
+            // the header is written last, when the root is known
+            out.write(new byte[BufferPool.PAGE_SIZE]);
+
+            // the leaves, spreading the entries evenly over them
+            long entries = sorted.size();
+            int leafFill = fill(entrySize);
+            int leaves = (int) Math.max(1, (entries + leafFill - 1) / leafFill);
+            // the first entry and page number of each page of the level
+            ByteArrayOutputStream level = new ByteArrayOutputStream();
+            DataOutputStream levelOut = new DataOutputStream(level);
+            for (int leaf = 0; leaf < leaves; leaf++) {
+                int n = (int) (entries * (leaf + 1) / leaves - entries * leaf / leaves);
+                byte[] page = BTreePage.createEmptyPageData(BTreePage.LEAF);
+                ByteBuffer data = ByteBuffer.wrap(page);
+                data.putInt(1, n);
+                data.putInt(5, leaf + 1 < leaves ? pageNo + 1 : 0);
+                for (int i = 0; i < n; i++)
+                    sorted.next(page, BTreePage.HEADER_SIZE + i * entrySize);
+                levelOut.write(page, BTreePage.HEADER_SIZE, separatorSize);
+                levelOut.writeInt(pageNo++);
+                out.write(page);
+            }
+
+            // the internal pages, until a level has a single page, the root
+            int internalSize = separatorSize + 4;
+            int children = leaves;
+            while (children > 1) {
+                // a page of n separators has n + 1 children
+                int perPage = fill(internalSize) + 1;
+                int pages = (children + perPage - 1) / perPage;
+                DataInputStream below = new DataInputStream(new ByteArrayInputStream(level.toByteArray()));
+                level = new ByteArrayOutputStream();
+                levelOut = new DataOutputStream(level);
+                byte[] first = new byte[separatorSize];
+                for (int p = 0; p < pages; p++) {
+                    int n = (int) ((long) children * (p + 1) / pages - (long) children * p / pages);
+                    byte[] page = BTreePage.createEmptyPageData(BTreePage.INTERNAL);
+                    ByteBuffer data = ByteBuffer.wrap(page);
+                    data.putInt(1, n - 1);
+                    for (int i = 0; i < n; i++) {
+                        // the first entry of child i separates it from child i - 1
+                        byte[] entry = 0 == i ? first : new byte[separatorSize];
+                        below.readFully(entry);
+                        int child = below.readInt();
+                        if (0 == i) {
+                            data.putInt(5, child);
+                        } else {
+                            int offset = BTreePage.HEADER_SIZE + (i - 1) * internalSize;
+                            System.arraycopy(entry, 0, page, offset, separatorSize);
+                            data.putInt(offset + separatorSize, child);
+                        }
+                    }
+                    levelOut.write(first);
+                    levelOut.writeInt(pageNo++);
+                    out.write(page);
+                }
+                children = pages;
+            }
+        } finally {
+            out.close();
+        }
+
+        // the header, whose only child is the root, with the layout
+        byte[] header = index.headerData(pageNo - 1);
+        RandomAccessFile file = new RandomAccessFile(index.getFile(), "rw");
+        try {
+            file.write(header);
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,661 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+/**
+ * BTreeFile is a B+Tree index on one column of a HeapFile. Its entries,
+ * (key, RecordId) pairs, are kept in {@link BTreeLeafPage}s in key order,
+ * and {@link BTreeInternalPage}s lead from the root to the leaf that holds
+ * a given key. All pages are read and written through the BufferPool, so
+ * index changes commit and abort with the transaction that makes them.
+ * <p>
+ * Page 0 of the file is an internal page without separators whose only
+ * child is the root, so the root can change without the file moving. In
+ * place of separators it records the layout of the index: the key field,
+ * its type and the included fields (see {@link #hasLayout}). An empty file
+ * is an empty index: page 0 reads as a page whose child is page 1, an empty
+ * leaf, and is written before any other page. Full pages are split on the way down when an entry is
+ * added, so a split never has to go back up the tree. Pages are not merged
+ * when entries are removed; their space is reused by later entries of the
+ * same key range.
+ * <p>
+ * The index is usually kept in the file the table file name plus
+ * {@link #SUFFIX} and the field number (see {@link #fileOf}), which is how
+ * the "index" column annotation of {@link Catalog#loadSchema} names it.
+ * <p>
+ * A covering index also keeps the values of some other fields of the table,
+ * its included fields, in its leaf entries. Queries that only need the key
+ * and the included fields can then read them from the leaves with an
+ * {@link IndexOnlyScan}, without fetching the tuples from the table. The
+ * included fields are part of the layout of the leaves, so an index file
+ * can only be used with the included fields it was built with;
+ * {@link Catalog#loadSchema} rebuilds an index whose file does not match.
+ *
+ * @see IndexScan
+ */
+public class BTreeFile implements IndexFile {
+
+    /** Suffix of the index files of the columns of a table file. */
+    public static final String SUFFIX = ".btree";
+
+    private final File f;
+    private final HeapFile table;
+    private final int keyField;
+    private final Type keyType;
+    private final int[] includedFields;
+    private final Type[] includedTypes;
+    private int numPages;
+    private FileChannel channel = null;
+    private boolean headerOnDisk = false;
+    private final Object channelLock = new Object();
+
+    /**
+     * Constructs an index on a column of a table, stored in the given file.
+     *
+     * @param f the file the index is stored in
+     * @param table the table the index is on
+     * @param keyField the column of the table the index is on
+     */
+    public BTreeFile(File f, HeapFile table, int keyField) {
+        this(f, table, keyField, new int[0]);
+    }
+
+    /**
+     * Constructs a covering index on a column of a table, whose leaf entries
+     * also hold the values of the included fields.
+     *
+     * @param includedFields the other columns of the table the leaf entries
+     *   hold, in the order they are kept in
+     * @see #BTreeFile(File, HeapFile, int)
+     */
+    public BTreeFile(File f, HeapFile table, int keyField, int[] includedFields) {
+        this.f = f;
+        this.table = table;
+        this.keyField = keyField;
+        this.keyType = table.getTupleDesc().getType(keyField);
+        this.includedFields = includedFields.clone();
+        this.includedTypes = new Type[includedFields.length];
+        for (int i = 0; i < includedFields.length; i++) {
+            if (includedFields[i] == keyField)
+                throw new IllegalArgumentException("the key field " + keyField + " cannot be included");
+            includedTypes[i] = table.getTupleDesc().getType(includedFields[i]);
+        }
+        this.numPages = 2;
+    }
+
+    /** @return the index file of the given column of a table file */
+    public static File fileOf(File tableFile, int field) {
+        return new File(tableFile.getPath() + SUFFIX + field);
+    }
+
+    /**
+     * Returns the File backing this BTreeFile on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    // see DbFile.java for javadocs
+    public int getId() {
+        return f.getAbsoluteFile().hashCode();
+    }
+
+    // see DbFile.java for javadocs
+    public TupleDesc getTupleDesc() {
+        return table.getTupleDesc();
+    }
+
+    // see IndexFile.java for javadocs
+    public int getTableId() {
+        return table.getId();
+    }
+
+    // see IndexFile.java for javadocs
+    public int getKeyField() {
+        return keyField;
+    }
+
+    /** @return the table this index is on */
+    HeapFile getTable() {
+        return table;
+    }
+
+    /** @return the type of the keys of this index */
+    public Type getKeyType() {
+        return keyType;
+    }
+
+    /** @return the fields of the table the leaf entries hold besides the key */
+    public int[] getIncludedFields() {
+        return includedFields.clone();
+    }
+
+    /** @return the types of the included fields */
+    Type[] getIncludedTypes() {
+        return includedTypes;
+    }
+
+    /**
+     * @return the position of a field of the table in the tuples of an
+     *   {@link IndexOnlyScan} of this index -- 0 for the key, 1 + i for the
+     *   i-th included field -- or -1 if the index does not hold it
+     */
+    public int coveredField(int field) {
+        if (field == keyField)
+            return 0;
+        for (int i = 0; i < includedFields.length; i++) {
+            if (includedFields[i] == field)
+                return 1 + i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the TupleDesc of the tuples of an {@link IndexOnlyScan} of this
+     *   index: the key field followed by the included fields, with their
+     *   names in the table
+     */
+    public TupleDesc getCoveringTupleDesc() {
+        TupleDesc td = table.getTupleDesc();
+        Type[] types = new Type[1 + includedFields.length];
+        String[] names = new String[types.length];
+        types[0] = keyType;
+        names[0] = td.getFieldName(keyField);
+        for (int i = 0; i < includedFields.length; i++) {
+            types[1 + i] = includedTypes[i];
+            names[1 + i] = td.getFieldName(includedFields[i]);
+        }
+        return new TupleDesc(types, names);
+    }
+
+    /**
+     * Returns the image of the header page of this index: an internal page
+     * without separators whose only child is the root, followed by the key
+     * field, the ordinal of its type, the number of included fields and the
+     * included fields, as ints.
+     *
+     * @param root the page number of the root
+     */
+    byte[] headerData(int root) {
+        byte[] data = BTreePage.createEmptyPageData(BTreePage.INTERNAL);
+        ByteBuffer header = ByteBuffer.wrap(data);
+        header.putInt(5, root);
+        header.position(BTreePage.HEADER_SIZE);
+        header.putInt(keyField);
+        header.putInt(keyType.ordinal());
+        header.putInt(includedFields.length);
+        for (int field : includedFields)
+            header.putInt(field);
+        return data;
+    }
+
+    /**
+     * Tells whether the file holds an index with the key field, key type and
+     * included fields of this BTreeFile, as recorded in its header page. An
+     * index built with other included fields, or on another column, cannot
+     * be read with this BTreeFile.
+     *
+     * @return true if the file matches or is empty; false if it was built
+     *   with another layout or has no header
+     */
+    public boolean hasLayout() throws IOException {
+        if (0 == f.length())
+            return true;
+
+        ByteBuffer buffer = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+        FileChannel fileChannel = channel();
+        while (buffer.hasRemaining()) {
+            if (-1 == fileChannel.read(buffer, buffer.position()))
+                break;
+        }
+        byte[] data = buffer.array();
+        byte[] expected = headerData(0);
+        int layoutEnd = BTreePage.HEADER_SIZE + 12 + 4 * includedFields.length;
+        if (BTreePage.INTERNAL != data[0])
+            return false;
+        for (int i = BTreePage.HEADER_SIZE; i < layoutEnd; i++) {
+            if (data[i] != expected[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of pages of this file, including pages that have
+     * been added but not written yet.
+     */
+    public synchronized int numPages() {
+        return Math.max(numPages, (int) (f.length() / BufferPool.PAGE_SIZE));
+    }
+
+    private FileChannel channel() throws IOException {
+        // not the monitor of this file: the BufferPool writes pages while
+        // holding its own latch, and addTuple holds this one while it gets
+        // pages from the BufferPool
+        synchronized (channelLock) {
+            if (null == channel || !channel.isOpen())
+                channel = new RandomAccessFile(f, "rw").getChannel();
+            return channel;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId id) {
+        BTreePageId pid = (BTreePageId) id;
+        ByteBuffer buffer = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+        long position = (long) pid.pageno() * BufferPool.PAGE_SIZE;
+        try {
+            // bytes past the end of the file read as zero, an empty leaf
+            FileChannel fileChannel = channel();
+            while (buffer.hasRemaining()) {
+                if (-1 == fileChannel.read(buffer, position + buffer.position()))
+                    break;
+            }
+            byte[] data = buffer.array();
+            if (0 == pid.pageno() && BTreePage.LEAF == data[0]) {
+                // a new index, whose root is the empty leaf on page 1
+                data = headerData(1);
+            }
+            return BTreePage.create(pid, data);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        writeImage(page.getId().pageno(), page.getPageData());
+    }
+
+    private void writeImage(int pageNo, byte[] image) throws IOException {
+        synchronized (channelLock) {
+            if (0 == pageNo)
+                headerOnDisk = true;
+            else if (!headerOnDisk)
+                writeHeaderIfNew();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(image);
+        long position = (long) pageNo * BufferPool.PAGE_SIZE;
+        FileChannel fileChannel = channel();
+        while (buffer.hasRemaining())
+            fileChannel.write(buffer, position + buffer.position());
+    }
+
+    /**
+     * Writes the header of a new index, whose root is page 1, unless the
+     * file already has one, so that the layout is recorded from the first
+     * page written on. The caller holds channelLock.
+     */
+    private void writeHeaderIfNew() throws IOException {
+        FileChannel fileChannel = channel();
+        ByteBuffer kind = ByteBuffer.allocate(1);
+        fileChannel.read(kind, 0);
+        if (1 != kind.position() || BTreePage.INTERNAL != kind.get(0)) {
+            ByteBuffer header = ByteBuffer.wrap(headerData(1));
+            while (header.hasRemaining())
+                fileChannel.write(header, header.position());
+        }
+        headerOnDisk = true;
+    }
+
+    /**
+     * Adds an empty page of the given kind to the end of the file. The page
+     * is written right away, so that an aborted transaction leaves an empty
+     * page behind and not a hole.
+     *
+     * @return the page number of the new page
+     */
+    private synchronized int allocatePage(byte kind) throws IOException {
+        int pageNo = numPages();
+        writeImage(pageNo, BTreePage.createEmptyPageData(kind));
+        numPages = pageNo + 1;
+        return pageNo;
+    }
+
+    private BTreePage getPage(TransactionId tid, int pageNo, Permissions perm)
+        throws DbException, TransactionAbortedException {
+        BTreePageId pid = new BTreePageId(getId(), pageNo);
+        return (BTreePage) Database.getBufferPool().getPage(tid, pid, perm);
+    }
+
+    /**
+     * Records a page that tid has modified on behalf of the tuple t, so that
+     * it is written when tid commits and reloaded when it aborts.
+     */
+    private void modified(TransactionId tid, Tuple t, BTreePage page, ArrayList<Page> pagesModified) {
+        Database.getLocktable().getLock(page.getId(), t, tid);
+        try {
+            page.markDirty(true, tid);
+        } finally {
+            Database.getLocktable().releaseLock(page.getId(), t, tid);
+        }
+        if (!pagesModified.contains(page))
+            pagesModified.add(page);
+    }
+
+    /**
+     * Adds the entry of a tuple of the table to the index.
+     *
+     * @param t a tuple with its RecordId in the table
+     * @see DbFile#addTuple
+     */
+    public synchronized ArrayList<Page> addTuple(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (null == rid)
+            throw new DbException("tuple is not stored in the table");
+        Field key = t.getField(keyField);
+        int recordPage = rid.getPageId().pageno();
+        int recordSlot = rid.tupleno();
+        ArrayList<Page> pagesModified = new ArrayList<Page>();
+
+        BTreeInternalPage header = (BTreeInternalPage) getPage(tid, 0, Permissions.READ_WRITE);
+        BTreePage node = getPage(tid, header.getChild(0), Permissions.READ_WRITE);
+        if (node.isFull()) {
+            // the tree grows a level: a new root above the old one
+            BTreeInternalPage root = (BTreeInternalPage) getPage(tid, allocatePage(BTreePage.INTERNAL), Permissions.READ_WRITE);
+            root.setChild(0, node.getId().pageno());
+            header.setChild(0, root.getId().pageno());
+            modified(tid, t, header, pagesModified);
+            splitChild(tid, t, root, 0, node, pagesModified);
+            node = root;
+        }
+
+        while (!node.isLeaf()) {
+            BTreeInternalPage parent = (BTreeInternalPage) node;
+            int i = parent.childIndex(key, recordPage, recordSlot);
+            node = getPage(tid, parent.getChild(i), Permissions.READ_WRITE);
+            if (node.isFull()) {
+                BTreePage right = splitChild(tid, t, parent, i, node, pagesModified);
+                if (parent.compare(i, key, recordPage, recordSlot) <= 0)
+                    node = right;
+            }
+        }
+
+        Field[] included = new Field[includedFields.length];
+        for (int i = 0; i < includedFields.length; i++)
+            included[i] = t.getField(includedFields[i]);
+        if (((BTreeLeafPage) node).insertEntry(key, recordPage, recordSlot, included))
+            modified(tid, t, node, pagesModified);
+        return pagesModified;
+    }
+
+    /**
+     * Splits child i of parent, which is full, into itself and a new page
+     * to its right, and adds the separator between them to parent, which
+     * must have room for it.
+     *
+     * @return the new page
+     */
+    private BTreePage splitChild(TransactionId tid, Tuple t, BTreeInternalPage parent, int i,
+            BTreePage child, ArrayList<Page> pagesModified)
+        throws DbException, IOException, TransactionAbortedException {
+        BTreePage right;
+        Field key;
+        int recordPage;
+        int recordSlot;
+        if (child.isLeaf()) {
+            BTreeLeafPage leaf = (BTreeLeafPage) getPage(tid, allocatePage(BTreePage.LEAF), Permissions.READ_WRITE);
+            ((BTreeLeafPage) child).split(leaf);
+            // the first entry of the right leaf is copied up
+            key = leaf.getKey(0);
+            recordPage = leaf.getRecordPage(0);
+            recordSlot = leaf.getRecordSlot(0);
+            right = leaf;
+        } else {
+            BTreeInternalPage internal = (BTreeInternalPage) child;
+            int mid = internal.getNumEntries() / 2;
+            // the middle separator moves up
+            key = internal.getKey(mid);
+            recordPage = internal.getRecordPage(mid);
+            recordSlot = internal.getRecordSlot(mid);
+            right = getPage(tid, allocatePage(BTreePage.INTERNAL), Permissions.READ_WRITE);
+            internal.split((BTreeInternalPage) right);
+        }
+        parent.insertEntry(i, key, recordPage, recordSlot, right.getId().pageno());
+        modified(tid, t, parent, pagesModified);
+        modified(tid, t, child, pagesModified);
+        modified(tid, t, right, pagesModified);
+        return right;
+    }
+
+    /**
+     * Removes the entry of a tuple of the table from the index.
+     *
+     * @param t a tuple with its RecordId in the table
+     * @throws DbException if the index has no entry for the tuple
+     * @see DbFile#deleteTuple
+     */
+    public synchronized Page deleteTuple(TransactionId tid, Tuple t)
+        throws DbException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (null == rid)
+            throw new DbException("tuple is not stored in the table");
+        Field key = t.getField(keyField);
+        int recordPage = rid.getPageId().pageno();
+        int recordSlot = rid.tupleno();
+
+        BTreeLeafPage leaf = findLeaf(tid, key, recordPage, recordSlot, Permissions.READ_WRITE);
+        int i = leaf.lowerBound(key, recordPage, recordSlot);
+        if (i == leaf.getNumEntries() || 0 != leaf.compare(i, key, recordPage, recordSlot))
+            throw new DbException("no entry for " + rid.getPageId().pageno() + "/" + rid.tupleno() + " in " + f);
+        leaf.deleteEntry(i);
+        modified(tid, t, leaf, new ArrayList<Page>());
+        return leaf;
+    }
+
+    /**
+     * @return the leaf whose key range holds the entry (key, recordPage,
+     *   recordSlot), or the leftmost leaf if key is null
+     */
+    private BTreeLeafPage findLeaf(TransactionId tid, Field key, int recordPage, int recordSlot, Permissions perm)
+        throws DbException, TransactionAbortedException {
+        BTreePage node = getPage(tid, 0, perm);
+        while (!node.isLeaf()) {
+            BTreeInternalPage internal = (BTreeInternalPage) node;
+            int i = null == key ? 0 : internal.childIndex(key, recordPage, recordSlot);
+            node = getPage(tid, internal.getChild(i), perm);
+        }
+        return (BTreeLeafPage) node;
+    }
+
+    /**
+     * Adds the entries of all tuples of the table, for an index that has
+     * just been created on a table that already holds tuples. The index is
+     * bulk loaded by a {@link BTreeBuilder}, which replaces whatever the
+     * file held; pages of it the BufferPool holds are discarded.
+     */
+    public void addAllTuples() throws DbException, IOException, TransactionAbortedException {
+        int oldPages = numPages();
+        new BTreeBuilder(this).build();
+        synchronized (this) {
+            numPages = 2;
+        }
+        for (int pageNo = 0; pageNo < Math.max(oldPages, numPages()); pageNo++)
+            Database.getBufferPool().discardPage(new BTreePageId(getId(), pageNo));
+    }
+
+    // see IndexFile.java for javadocs
+    public boolean supports(Predicate.Op op) {
+        switch (op) {
+        case EQUALS:
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQ:
+        case LESS_THAN:
+        case LESS_THAN_OR_EQ:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns an iterator over all the tuples of the table, in key order.
+     */
+    public DbFileIterator iterator(TransactionId tid) {
+        return new BTreeIterator(tid, null, false);
+    }
+
+    // see IndexFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid, Predicate predicate) {
+        if (predicate.getField() != keyField || !supports(predicate.getOp()))
+            throw new IllegalArgumentException("cannot look up " + predicate + " in " + f);
+        return new BTreeIterator(tid, predicate, false);
+    }
+
+    /**
+     * Returns an iterator over the key and included fields of the tuples of
+     * the table whose key satisfies the predicate, read from the leaves
+     * without fetching the tuples. The tuples have the
+     * {@link #getCoveringTupleDesc covering TupleDesc} and the RecordId of
+     * the tuple of the table they come from.
+     *
+     * @param predicate a predicate on {@link #getKeyField} whose operator
+     *   the index supports, or null for all tuples, in key order
+     * @throws IllegalArgumentException if the index cannot answer the predicate
+     */
+    public DbFileIterator indexOnlyIterator(TransactionId tid, Predicate predicate) {
+        if (null != predicate && (predicate.getField() != keyField || !supports(predicate.getOp())))
+            throw new IllegalArgumentException("cannot look up " + predicate + " in " + f);
+        return new BTreeIterator(tid, predicate, true);
+    }
+
+    /**
+     * Walks the leaves from the first entry that may satisfy the predicate
+     * to the last, and fetches the tuples they point to from the table, or,
+     * for an index-only iterator, makes them from the entries.
+     */
+    private class BTreeIterator implements DbFileIterator {
+        private final TransactionId tid;
+        private final Predicate predicate;
+        private final TupleDesc coveringTd;
+        private BTreeLeafPage leaf = null;
+        private int position = 0;
+        private Tuple next = null;
+        // the last entry read, to find the position again if the leaf changed
+        private Field lastKey = null;
+        private int lastPage;
+        private int lastSlot;
+
+        BTreeIterator(TransactionId tid, Predicate predicate, boolean indexOnly) {
+            this.tid = tid;
+            this.predicate = predicate;
+            this.coveringTd = indexOnly ? getCoveringTupleDesc() : null;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            next = null;
+            lastKey = null;
+            if (null == predicate) {
+                leaf = findLeaf(tid, null, 0, 0, Permissions.READ_ONLY);
+                position = 0;
+                return;
+            }
+
+            Field value = predicate.getOperand();
+            switch (predicate.getOp()) {
+            case EQUALS:
+            case GREATER_THAN_OR_EQ:
+                leaf = findLeaf(tid, value, Integer.MIN_VALUE, Integer.MIN_VALUE, Permissions.READ_ONLY);
+                position = leaf.lowerBound(value, Integer.MIN_VALUE, Integer.MIN_VALUE);
+                break;
+            case GREATER_THAN:
+                leaf = findLeaf(tid, value, Integer.MAX_VALUE, Integer.MAX_VALUE, Permissions.READ_ONLY);
+                position = leaf.lowerBound(value, Integer.MAX_VALUE, Integer.MAX_VALUE);
+                break;
+            default:
+                leaf = findLeaf(tid, null, 0, 0, Permissions.READ_ONLY);
+                position = 0;
+            }
+        }
+
+        /** @return true if no entry from the current one on can match */
+        private boolean pastEnd() {
+            if (null == predicate)
+                return false;
+            int c = BTreePage.compareKeys(leaf.getKey(position), predicate.getOperand());
+            switch (predicate.getOp()) {
+            case EQUALS:
+            case LESS_THAN_OR_EQ:
+                return c > 0;
+            case LESS_THAN:
+                return c >= 0;
+            default:
+                return false;
+            }
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            while (null == next && null != leaf) {
+                if (null != lastKey) {
+                    // the caller may have deleted entries, e.g. the tuples we returned
+                    position = leaf.lowerBound(lastKey, lastPage, lastSlot);
+                    if (position < leaf.getNumEntries() && 0 == leaf.compare(position, lastKey, lastPage, lastSlot))
+                        position++;
+                }
+                if (position == leaf.getNumEntries()) {
+                    int sibling = leaf.getRightSibling();
+                    leaf = 0 == sibling ? null : (BTreeLeafPage) getPage(tid, sibling, Permissions.READ_ONLY);
+                    position = 0;
+                    lastKey = null;
+                    continue;
+                }
+                if (pastEnd()) {
+                    leaf = null;
+                    break;
+                }
+
+                lastKey = leaf.getKey(position);
+                lastPage = leaf.getRecordPage(position);
+                lastSlot = leaf.getRecordSlot(position);
+                if (null != coveringTd) {
+                    if (null == predicate || lastKey.compare(predicate.getOp(), predicate.getOperand()))
+                        next = entryTuple();
+                    continue;
+                }
+                HeapPageId pid = new HeapPageId(table.getId(), lastPage);
+                HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                Tuple t = null == page ? null : page.getTuple(lastSlot);
+                // the predicate is checked again, in case the entry is stale
+                if (null != t && (null == predicate || predicate.filter(t)))
+                    next = t;
+            }
+            return null != next;
+        }
+
+        /** @return the covering tuple of the entry the iterator is at */
+        private Tuple entryTuple() {
+            Tuple t = new Tuple(coveringTd);
+            t.setField(0, lastKey);
+            for (int j = 0; j < includedFields.length; j++)
+                t.setField(1 + j, leaf.getIncluded(position, j));
+            t.setRecordId(new RecordId(new HeapPageId(table.getId(), lastPage), lastSlot));
+            return t;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Tuple t = next;
+            next = null;
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            open();
+        }
+
+        public void close() {
+            leaf = null;
+            next = null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * An internal page of a {@link BTreeFile}. It holds n separator entries and
+ * the page numbers of n + 1 children: child i leads to the entries that are
+ * at least as large as separator i - 1 and smaller than separator i. The
+ * page number of child 0 follows the page header, that of child i + 1
+ * follows separator i.
+ */
+public class BTreeInternalPage extends BTreePage {
+
+    /**
+     * Create a BTreeInternalPage from a set of bytes of data read from disk.
+     */
+    public BTreeInternalPage(BTreePageId id, byte[] data) throws IOException {
+        this(id, data, keyTypeOf(id));
+    }
+
+    private BTreeInternalPage(BTreePageId id, byte[] data, Type keyType) {
+        super(id, data, keyType, keyType.getLen() + 12);
+    }
+
+    /** @return the page number of the i-th child, 0 <= i <= getNumEntries() */
+    public synchronized int getChild(int i) {
+        if (0 == i)
+            return data.getInt(5);
+        return data.getInt(entryOffset(i - 1) + entrySize - 4);
+    }
+
+    public synchronized void setChild(int i, int pageNo) {
+        captureBeforeImage();
+        if (0 == i)
+            data.putInt(5, pageNo);
+        else
+            data.putInt(entryOffset(i - 1) + entrySize - 4, pageNo);
+    }
+
+    /**
+     * @return the child that leads to the entry (key, recordPage, recordSlot)
+     */
+    public synchronized int childIndex(Field key, int recordPage, int recordSlot) {
+        int i = lowerBound(key, recordPage, recordSlot);
+        if (i < getNumEntries() && 0 == compare(i, key, recordPage, recordSlot))
+            i++;
+        return i;
+    }
+
+    /**
+     * Adds a separator at position i, with the page that holds the entries
+     * from it on as child i + 1.
+     *
+     * @throws IllegalStateException if the page is full
+     */
+    public synchronized void insertEntry(int i, Field key, int recordPage, int recordSlot, int rightChild) {
+        super.insertEntry(i, key, recordPage, recordSlot);
+        setChild(i + 1, rightChild);
+    }
+
+    /**
+     * Moves the separators after the middle one (getNumEntries() / 2) of
+     * this full page, with their children, to an empty internal page. The
+     * middle separator is removed from this page; it is up to the caller to
+     * add it to the parent.
+     */
+    public synchronized void split(BTreeInternalPage right) {
+        int mid = getNumEntries() / 2;
+        right.setChild(0, getChild(mid + 1));
+        moveEntries(mid + 1, right);
+        deleteEntry(mid);
+    }
+}
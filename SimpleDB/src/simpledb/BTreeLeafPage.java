@@ -0,0 +1,129 @@
+package simpledb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * A leaf page of a {@link BTreeFile}. It holds the entries of the index for
+ * a range of keys, and the page number of the leaf that holds the entries
+ * after them (its right sibling, or 0 for the last leaf), so that range
+ * scans can go from leaf to leaf.
+ * <p>
+ * The RecordId of a leaf entry is followed by the values the tuple has in
+ * the included fields of the index, if it has any (see
+ * {@link BTreeFile#getIncludedFields}), so that queries that only need
+ * those fields and the key can be answered from the leaves alone.
+ */
+public class BTreeLeafPage extends BTreePage {
+
+    private final Type[] includedTypes;
+
+    /**
+     * Create a BTreeLeafPage from a set of bytes of data read from disk.
+     */
+    public BTreeLeafPage(BTreePageId id, byte[] data) throws IOException {
+        this(id, data, keyTypeOf(id), includedTypesOf(id));
+    }
+
+    private BTreeLeafPage(BTreePageId id, byte[] data, Type keyType, Type[] includedTypes) {
+        super(id, data, keyType, entrySize(keyType, includedTypes));
+        this.includedTypes = includedTypes;
+    }
+
+    /** @return the types of the included fields of the BTreeFile the page belongs to */
+    static Type[] includedTypesOf(BTreePageId id) {
+        return ((BTreeFile) Database.getCatalog().getDbFile(id.getTableId())).getIncludedTypes();
+    }
+
+    /**
+     * @return the number of bytes of a leaf entry with the given key type and
+     *   included field types
+     */
+    static int entrySize(Type keyType, Type[] includedTypes) {
+        int size = keyType.getLen() + 8;
+        for (Type type : includedTypes)
+            size += type.getLen();
+        return size;
+    }
+
+    /** @return the offset of the j-th included value of the i-th entry */
+    private int includedOffset(int i, int j) {
+        int offset = entryOffset(i) + keyType.getLen() + 8;
+        for (int k = 0; k < j; k++)
+            offset += includedTypes[k].getLen();
+        return offset;
+    }
+
+    /** @return the value of the j-th included field of the i-th entry */
+    public synchronized Field getIncluded(int i, int j) {
+        ByteBuffer view = data.duplicate();
+        view.position(includedOffset(i, j));
+        try {
+            return includedTypes[j].parse(new DataInputStream(new ByteBufferInputStream(view)));
+        } catch (ParseException e) {
+            throw new IllegalStateException("could not parse included field " + j + " of entry " + i + " on " + pid);
+        }
+    }
+
+    /** @return the page number of the next leaf, or 0 if this is the last one */
+    public synchronized int getRightSibling() {
+        return data.getInt(5);
+    }
+
+    public synchronized void setRightSibling(int pageNo) {
+        captureBeforeImage();
+        data.putInt(5, pageNo);
+    }
+
+    /**
+     * Adds an entry to this page, in order.
+     *
+     * @return false if the page already holds the entry
+     * @throws IllegalStateException if the page is full
+     */
+    public synchronized boolean insertEntry(Field key, int recordPage, int recordSlot) {
+        return insertEntry(key, recordPage, recordSlot, new Field[0]);
+    }
+
+    /**
+     * Adds an entry to this page, in order, with the values of the included
+     * fields of its tuple.
+     *
+     * @param included the values of the included fields, in their order
+     * @return false if the page already holds the entry
+     * @throws IllegalStateException if the page is full
+     */
+    public synchronized boolean insertEntry(Field key, int recordPage, int recordSlot, Field[] included) {
+        if (included.length != includedTypes.length)
+            throw new IllegalArgumentException("expected " + includedTypes.length + " included values, got "
+                    + included.length);
+        int i = lowerBound(key, recordPage, recordSlot);
+        if (i < getNumEntries() && 0 == compare(i, key, recordPage, recordSlot))
+            return false;
+        insertEntry(i, key, recordPage, recordSlot);
+        ByteBuffer view = data.duplicate();
+        view.position(includedOffset(i, 0));
+        try {
+            DataOutputStream dos = new DataOutputStream(new ByteBufferOutputStream(view));
+            for (Field value : included)
+                value.serialize(dos);
+            dos.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("could not serialize included values: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Moves the upper half of the entries of this full page to an empty leaf
+     * that becomes its right sibling.
+     */
+    public synchronized void split(BTreeLeafPage right) {
+        moveEntries(getNumEntries() / 2, right);
+        right.setRightSibling(getRightSibling());
+        setRightSibling(right.getId().pageno());
+    }
+}
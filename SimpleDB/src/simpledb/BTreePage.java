@@ -0,0 +1,265 @@
+package simpledb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * A page of a {@link BTreeFile}: a sorted array of entries, each a key
+ * followed by the RecordId (page number and slot) of a tuple of the indexed
+ * table. Entries are ordered by key and then by RecordId, so that every
+ * entry is unique even if keys are not.
+ * <p>
+ * A page starts with a byte holding its kind ({@link #LEAF} or
+ * {@link #INTERNAL}), an int holding the number of entries on it and an int
+ * whose meaning depends on the kind, followed by the entries. An all-zero
+ * page is a valid empty leaf.
+ *
+ * @see BTreeLeafPage
+ * @see BTreeInternalPage
+ */
+public abstract class BTreePage implements Page {
+
+    /** Kind of the pages that hold the entries of the index. */
+    static final byte LEAF = 0;
+
+    /** Kind of the pages that lead to the leaves. */
+    static final byte INTERNAL = 1;
+
+    static final int HEADER_SIZE = 9;
+
+    protected final BTreePageId pid;
+    protected final Type keyType;
+    protected final int entrySize;
+    protected final ByteBuffer data;
+    private byte[] oldData;
+    private TransactionId dirtier = null;
+
+    /**
+     * @param entrySize the number of bytes of an entry of this kind of page
+     */
+    protected BTreePage(BTreePageId id, byte[] data, Type keyType, int entrySize) {
+        this.pid = id;
+        this.keyType = keyType;
+        this.entrySize = entrySize;
+        this.data = ByteBuffer.wrap(data.clone());
+    }
+
+    /** @return the key type of the BTreeFile the page belongs to */
+    static Type keyTypeOf(BTreePageId id) {
+        return ((BTreeFile) Database.getCatalog().getDbFile(id.getTableId())).getKeyType();
+    }
+
+    /**
+     * Creates a page of the kind the image says it is.
+     */
+    static BTreePage create(BTreePageId id, byte[] data) throws IOException {
+        if (INTERNAL == data[0])
+            return new BTreeInternalPage(id, data);
+        return new BTreeLeafPage(id, data);
+    }
+
+    /** @return the image of an empty page of the given kind */
+    static byte[] createEmptyPageData(byte kind) {
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        data[0] = kind;
+        return data;
+    }
+
+    public BTreePageId getId() {
+        return pid;
+    }
+
+    public synchronized byte[] getPageData() {
+        return data.array().clone();
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public synchronized BTreePage getBeforeImage() {
+        try {
+            return create(pid, null != oldData ? oldData : data.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+
+    /**
+     * Captures the before image, if this is the first modification of the
+     * page since it was read or last committed.
+     */
+    protected void captureBeforeImage() {
+        if (null == oldData)
+            oldData = getPageData();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    /** @return true if this is a leaf page */
+    public boolean isLeaf() {
+        return LEAF == data.get(0);
+    }
+
+    /** @return the number of entries on this page */
+    public synchronized int getNumEntries() {
+        return data.getInt(1);
+    }
+
+    /** @return the number of entries that fit on this kind of page */
+    public int getMaxEntries() {
+        return (BufferPool.PAGE_SIZE - entriesOffset()) / entrySize;
+    }
+
+    /** @return true if no more entries fit on this page */
+    public synchronized boolean isFull() {
+        return getNumEntries() == getMaxEntries();
+    }
+
+    /** @return the offset of the first entry */
+    protected int entriesOffset() {
+        return HEADER_SIZE;
+    }
+
+    protected int entryOffset(int i) {
+        return entriesOffset() + i * entrySize;
+    }
+
+    /** @return the key of the i-th entry */
+    public synchronized Field getKey(int i) {
+        ByteBuffer view = data.duplicate();
+        view.position(entryOffset(i));
+        try {
+            return keyType.parse(new DataInputStream(new ByteBufferInputStream(view)));
+        } catch (ParseException e) {
+            throw new IllegalStateException("could not parse key " + i + " on " + pid);
+        }
+    }
+
+    /** @return the page number of the RecordId of the i-th entry */
+    public synchronized int getRecordPage(int i) {
+        return data.getInt(entryOffset(i) + keyType.getLen());
+    }
+
+    /** @return the slot of the RecordId of the i-th entry */
+    public synchronized int getRecordSlot(int i) {
+        return data.getInt(entryOffset(i) + keyType.getLen() + 4);
+    }
+
+    /**
+     * Compares the i-th entry to the given one.
+     *
+     * @return a negative number, zero or a positive number as the entry is
+     *   smaller than, equal to or larger than (key, recordPage, recordSlot)
+     */
+    public synchronized int compare(int i, Field key, int recordPage, int recordSlot) {
+        int c;
+        if (keyType == Type.INT_TYPE)
+            c = compare(data.getInt(entryOffset(i)), ((IntField) key).getValue());
+        else
+            c = compareKeys(getKey(i), key);
+        if (0 != c)
+            return c;
+        c = compare(getRecordPage(i), recordPage);
+        if (0 != c)
+            return c;
+        return compare(getRecordSlot(i), recordSlot);
+    }
+
+    private static int compare(int a, int b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /**
+     * @return a negative number, zero or a positive number as a is smaller
+     *   than, equal to or larger than b
+     */
+    static int compareKeys(Field a, Field b) {
+        if (a.compare(Predicate.Op.LESS_THAN, b))
+            return -1;
+        return a.compare(Predicate.Op.EQUALS, b) ? 0 : 1;
+    }
+
+    /**
+     * @return the number of entries on this page that are smaller than
+     *   (key, recordPage, recordSlot)
+     */
+    public synchronized int lowerBound(Field key, int recordPage, int recordSlot) {
+        int lo = 0;
+        int hi = getNumEntries();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, key, recordPage, recordSlot) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Makes room for an entry at position i and writes its key and RecordId
+     * there; the rest of the entry is left to the caller.
+     */
+    protected void insertEntry(int i, Field key, int recordPage, int recordSlot) {
+        int n = getNumEntries();
+        if (n == getMaxEntries())
+            throw new IllegalStateException("page " + pid.pageno() + " is full");
+        captureBeforeImage();
+        byte[] bytes = data.array();
+        System.arraycopy(bytes, entryOffset(i), bytes, entryOffset(i + 1), (n - i) * entrySize);
+        ByteBuffer view = data.duplicate();
+        view.position(entryOffset(i));
+        try {
+            DataOutputStream dos = new DataOutputStream(new ByteBufferOutputStream(view));
+            key.serialize(dos);
+            dos.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("could not serialize key: " + e.getMessage());
+        }
+        data.putInt(entryOffset(i) + keyType.getLen(), recordPage);
+        data.putInt(entryOffset(i) + keyType.getLen() + 4, recordSlot);
+        data.putInt(1, n + 1);
+    }
+
+    /**
+     * Removes the i-th entry from this page.
+     */
+    public synchronized void deleteEntry(int i) {
+        int n = getNumEntries();
+        captureBeforeImage();
+        byte[] bytes = data.array();
+        System.arraycopy(bytes, entryOffset(i + 1), bytes, entryOffset(i), (n - i - 1) * entrySize);
+        data.putInt(1, n - 1);
+    }
+
+    /**
+     * Moves the entries from the given one on to the end of another page of
+     * the same kind.
+     */
+    protected void moveEntries(int from, BTreePage to) {
+        int n = getNumEntries();
+        int toN = to.getNumEntries();
+        if (toN + n - from > to.getMaxEntries())
+            throw new IllegalStateException("page " + to.pid.pageno() + " is full");
+        captureBeforeImage();
+        to.captureBeforeImage();
+        System.arraycopy(data.array(), entryOffset(from), to.data.array(), to.entryOffset(toN), (n - from) * entrySize);
+        to.data.putInt(1, toN + n - from);
+        data.putInt(1, from);
+    }
+}
@@ -0,0 +1,279 @@
+package simpledb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A Bloom filter over the values of one column on each page of a HeapFile,
+ * so that a scan for an EQUALS predicate on that column can skip the pages
+ * that certainly do not hold the value without reading them. Unlike a
+ * {@link ZoneMap}, this also works for unsorted, high-cardinality columns.
+ * <p>
+ * A filter has {@link #BITS_PER_TUPLE} bits per tuple slot of the page and
+ * sets {@link #HASHES} of them per value, which gives about 2.5% false
+ * positives on a full page. Values are hashed in their serialized form, so
+ * filters can be computed from page images without decoding tuples.
+ * <p>
+ * The filters are persisted in a sidecar file next to the table (the table
+ * file name plus {@link #SUFFIX} and the field number). A page nothing is
+ * known about has a filter with all bits set. Like the ranges of a zone
+ * map, filters only have to cover the values on a page: inserts add their
+ * value in memory, deletes leave the filter alone, and the exact filter of
+ * a page is recomputed whenever the page is written. A table without a
+ * sidecar gets one built from its pages on first use.
+ *
+ * @see HeapFile#addBloomFilter
+ */
+class BloomFilterMap {
+
+    /** Suffix of the sidecar files that hold the filters. */
+    static final String SUFFIX = ".bloom";
+
+    /** Bits of a page filter per tuple slot of the page. */
+    static final int BITS_PER_TUPLE = 8;
+
+    /** Bits set per value. */
+    static final int HASHES = 4;
+
+    private final HeapFile heapFile;
+    private final int field;
+    private final Type type;
+    private final File file;
+    private final int bitsPerPage;
+    private final int words;
+    // the filter of page p is in words p*words .. (p+1)*words-1
+    private long[] bits = null;
+    private int pagesPersisted = 0;
+    private FileChannel channel = null;
+
+    /**
+     * @param heapFile the table the filters describe
+     * @param field the column the filters hold the values of
+     */
+    BloomFilterMap(HeapFile heapFile, int field) {
+        this.heapFile = heapFile;
+        this.field = field;
+        this.type = heapFile.getTupleDesc().getType(field);
+        this.file = sidecarOf(heapFile.getFile(), field);
+        int slotsPerPage = (BufferPool.PAGE_SIZE * 8) / (heapFile.getTupleDesc().getSize() * 8 + 1);
+        this.words = (slotsPerPage * BITS_PER_TUPLE + 63) / 64;
+        this.bitsPerPage = 64 * words;
+    }
+
+    /** @return the sidecar file of the given column of a table file */
+    static File sidecarOf(File heapFile, int field) {
+        return new File(heapFile.getPath() + SUFFIX + field);
+    }
+
+    /** @return the sidecar file the filters are persisted in */
+    File getFile() {
+        return file;
+    }
+
+    /** @return the column the filters hold the values of */
+    int getField() {
+        return field;
+    }
+
+    /**
+     * Returns false if the page certainly holds no tuple whose column has
+     * the given value.
+     */
+    synchronized boolean mayContain(int pageNo, Field value) throws IOException {
+        byte[] serialized = serialize(value);
+        if (null == serialized)
+            return true;
+
+        load();
+        if ((pageNo + 1) * words > bits.length)
+            return true;
+        long hash = hash(ByteBuffer.wrap(serialized), 0, serialized.length);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = bit(hash, i);
+            if (0 == (bits[pageNo * words + bit / 64] & (1L << bit)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the value of a tuple that has been added to a page in memory to
+     * the filter of the page.
+     */
+    synchronized void include(int pageNo, Tuple t) throws IOException {
+        byte[] serialized = serialize(t.getField(field));
+        load();
+        grow(pageNo);
+        if (null == serialized) {
+            fill(pageNo, -1L);
+            return;
+        }
+        add(pageNo, hash(ByteBuffer.wrap(serialized), 0, serialized.length));
+    }
+
+    /**
+     * Sets the filter of a page to the values of the tuples on it.
+     *
+     * @param widen true to only add those values to the current filter
+     */
+    synchronized void set(int pageNo, HeapPage page, boolean widen) throws IOException {
+        load();
+        grow(pageNo);
+        if (!widen)
+            fill(pageNo, 0L);
+        for (int slot = page.nextFilledSlot(0); -1 != slot; slot = page.nextFilledSlot(slot + 1))
+            add(pageNo, page.hashField(slot, field));
+    }
+
+    /**
+     * Writes the filter of a page to the sidecar, along with those of the
+     * pages before it that are not in the sidecar yet.
+     */
+    synchronized void persist(int pageNo) throws IOException {
+        load();
+        grow(pageNo);
+        write(Math.min(pageNo, pagesPersisted), pageNo + 1);
+        pagesPersisted = Math.max(pagesPersisted, pageNo + 1);
+    }
+
+    /**
+     * Forgets the filters of all pages at or after pageNo, for a table file
+     * that has been truncated to pageNo pages.
+     */
+    synchronized void truncate(int pageNo) throws IOException {
+        load();
+        for (int i = pageNo * words; i < bits.length; i++)
+            bits[i] = -1L;
+        if (file.exists() && channel().size() > pageBytes(pageNo))
+            channel().truncate(pageBytes(pageNo));
+        pagesPersisted = Math.min(pagesPersisted, pageNo);
+    }
+
+    /**
+     * Hashes the bytes of a serialized value (64 bit FNV-1a).
+     */
+    static long hash(ByteBuffer buffer, int offset, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= buffer.get(i) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** @return the i-th bit a value with the given hash sets */
+    private int bit(long hash, int i) {
+        // double hashing; the step is odd, so the bits differ
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return (int) (((h1 + (long) i * h2) & 0xffffffffL) % bitsPerPage);
+    }
+
+    private void add(int pageNo, long hash) {
+        for (int i = 0; i < HASHES; i++) {
+            int bit = bit(hash, i);
+            bits[pageNo * words + bit / 64] |= 1L << bit;
+        }
+    }
+
+    private void fill(int pageNo, long word) {
+        for (int i = pageNo * words; i < (pageNo + 1) * words; i++)
+            bits[i] = word;
+    }
+
+    /**
+     * @return the value as it is stored in a page, or null if it is not a
+     *   value of the column
+     */
+    private byte[] serialize(Field value) throws IOException {
+        if (null == value || value.getType() != type)
+            return null;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(type.getLen());
+        DataOutputStream dos = new DataOutputStream(bytes);
+        value.serialize(dos);
+        dos.flush();
+        return bytes.size() == type.getLen() ? bytes.toByteArray() : null;
+    }
+
+    private long pageBytes(int pages) {
+        return (long) pages * words * 8;
+    }
+
+    private void write(int fromPage, int toPage) throws IOException {
+        // a few hundred pages at a time, a whole table can be a lot
+        final int batch = 256;
+        FileChannel fileChannel = channel();
+        for (int from = fromPage; from < toPage; from += batch) {
+            int to = Math.min(toPage, from + batch);
+            ByteBuffer buffer = ByteBuffer.allocate((int) pageBytes(to - from));
+            for (int i = from * words; i < to * words; i++)
+                buffer.putLong(bits[i]);
+            buffer.flip();
+            long position = pageBytes(from);
+            while (buffer.hasRemaining())
+                fileChannel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /** Makes room for the filter of pageNo; new pages are unknown. */
+    private void grow(int pageNo) {
+        int needed = (pageNo + 1) * words;
+        if (needed <= bits.length)
+            return;
+        long[] grown = new long[Math.max(2 * bits.length, needed)];
+        System.arraycopy(bits, 0, grown, 0, bits.length);
+        for (int i = bits.length; i < grown.length; i++)
+            grown[i] = -1L;
+        bits = grown;
+    }
+
+    /**
+     * Reads the sidecar on first use, or builds it from the pages of the
+     * table file if there is none. Filters of pages that are no longer in
+     * the table file are dropped, as they describe a file that has since
+     * been truncated or rewritten.
+     */
+    private void load() throws IOException {
+        if (null != bits)
+            return;
+
+        bits = new long[0];
+        int pagesOnDisk = heapFile.pagesOnDisk();
+        grow(Math.max(16, pagesOnDisk) - 1);
+        if (!file.exists()) {
+            for (int p = 0; p < pagesOnDisk; p++) {
+                HeapPage page = (HeapPage) heapFile.readPage(new HeapPageId(heapFile.getId(), p));
+                if (null != page)
+                    set(p, page, false);
+            }
+            if (pagesOnDisk > 0)
+                persist(pagesOnDisk - 1);
+            return;
+        }
+
+        FileChannel fileChannel = channel();
+        int pages = (int) Math.min(pagesOnDisk, fileChannel.size() / pageBytes(1));
+        ByteBuffer buffer = ByteBuffer.allocate((int) pageBytes(pages));
+        while (buffer.hasRemaining()) {
+            if (-1 == fileChannel.read(buffer, buffer.position()))
+                break;
+        }
+        buffer.flip();
+        for (int i = 0; i < pages * words; i++)
+            bits[i] = buffer.getLong();
+        if (fileChannel.size() > pageBytes(pages))
+            fileChannel.truncate(pageBytes(pages));
+        pagesPersisted = pages;
+    }
+
+    private FileChannel channel() throws IOException {
+        if (null == channel || !channel.isOpen())
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        return channel;
+    }
+}
@@ -0,0 +1,158 @@
+package simpledb;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A small private ring of page frames used by large sequential scans, so
+ * that one pass over a big table does not flush the BufferPool.
+ * <p>
+ * A scan that reads through a strategy still sees pages that are already in
+ * the BufferPool, but it does not count as a reference to them in the
+ * replacement policy. Pages that are not cached are read into the next
+ * frame of the ring instead of the pool, replacing whatever page the ring
+ * held there; nothing the scan reads is ever added to the pool.
+ * <p>
+ * Pages of a HeapFile are read straight into their ring frame, and the page
+ * a frame held before is dropped, not copied out: it keeps the frame as its
+ * image, so it must no longer be in use. A scan only uses the page it is
+ * iterating over, and its {@link PageReadAhead} stays less than a ring
+ * ahead of it.
+ * <p>
+ * A strategy belongs to a single scan. It may also be filled by the scan's
+ * {@link PageReadAhead}, so it is thread safe, and a page being read by
+ * one thread is not read again by another.
+ *
+ * @see BufferPool#getPage(TransactionId, PageId, Permissions, BufferAccessStrategy)
+ */
+public class BufferAccessStrategy {
+
+    /** Number of frames in a scan ring (128KB). */
+    public static final int RING_PAGES = 32;
+
+    /**
+     * Pools smaller than this are not worth protecting; the ring would be a
+     * sizeable fraction of the pool itself.
+     */
+    public static final int MIN_POOL_PAGES = 8 * RING_PAGES;
+
+    /**
+     * Tables larger than 1/SCAN_FRACTION of the pool are scanned through a
+     * ring.
+     */
+    public static final int SCAN_FRACTION = 4;
+
+    private final PageFrameArena arena;
+    private final Page[] ring;
+    private final boolean[] filling;
+    private final Set<PageId> reading = new HashSet<PageId>();
+    private int next = 0;
+    private int numReads = 0;
+
+    /**
+     * @param ringPages the number of frames in the ring
+     */
+    public BufferAccessStrategy(int ringPages) {
+        this.arena = new PageFrameArena(ringPages);
+        this.ring = new Page[ringPages];
+        this.filling = new boolean[ringPages];
+    }
+
+    /**
+     * Returns a ring for a sequential scan over a table of tablePages pages
+     * with a pool of poolPages pages, or null if the scan should go through
+     * the pool as usual.
+     */
+    public static BufferAccessStrategy forScan(int tablePages, int poolPages) {
+        if (poolPages < MIN_POOL_PAGES || tablePages <= poolPages / SCAN_FRACTION)
+            return null;
+        return new BufferAccessStrategy(RING_PAGES);
+    }
+
+    /** @return the number of frames in the ring */
+    public int numPages() {
+        return ring.length;
+    }
+
+    /** @return the number of pages this ring has read from disk */
+    public synchronized int numReads() {
+        return numReads;
+    }
+
+    /**
+     * Returns pid from the ring, reading it into the next ring frame if it
+     * is not there.
+     *
+     * @return the page, or null if the page could not be read
+     */
+    Page getPage(PageId pid) throws DbException {
+        int frame;
+        synchronized (this) {
+            while (true) {
+                Page cached = lookup(pid);
+                if (null != cached)
+                    return cached;
+                if (!reading.contains(pid) && !filling[next])
+                    break;
+                waitForRead();
+            }
+            reading.add(pid);
+            frame = reserve();
+        }
+
+        try {
+            DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
+            Page result;
+            if (dbFile instanceof HeapFile && ((HeapFile) dbFile).readsIntoFrames()) {
+                result = ((HeapFile) dbFile).readPage(pid, arena.frame(frame));
+            } else {
+                result = dbFile.readPage(pid);
+                if (result instanceof HeapPage)
+                    ((HeapPage) result).attachFrame(arena.frame(frame));
+            }
+            if (null == result)
+                return null;
+
+            synchronized (this) {
+                ring[frame] = result;
+                numReads++;
+            }
+            return result;
+        } finally {
+            synchronized (this) {
+                filling[frame] = false;
+                reading.remove(pid);
+                notifyAll();
+            }
+        }
+    }
+
+    private void waitForRead() throws DbException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbException("interrupted while waiting for a page read");
+        }
+    }
+
+    private Page lookup(PageId pid) {
+        for (Page page : ring) {
+            if (null != page && pid.equals(page.getId()))
+                return page;
+        }
+        return null;
+    }
+
+    /**
+     * Takes the next frame of the ring for a read, dropping the page it
+     * held.
+     */
+    private int reserve() {
+        int frame = next;
+        next = (next + 1) % ring.length;
+        ring[frame] = null;
+        filling[frame] = true;
+        return frame;
+    }
+}
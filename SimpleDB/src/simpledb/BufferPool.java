@@ -1,12 +1,7 @@
 package simpledb;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 /**
  * BufferPool manages the reading and writing of pages into memory from
  * disk. Access methods call into it to retrieve pages, and it fetches
@@ -15,6 +10,23 @@ import java.util.Map.Entry;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool which check that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * Cached pages live in a fixed table of numPages frames. Which frame is given
+ * up when the pool is full is decided by a {@link ReplacementPolicy}; the
+ * policy is picked with the simpledb.ReplacementPolicy system property
+ * ("clock", the default, or "lru-k").
+ * <p>
+ * Large pools are split into {@link BufferPoolPartition}s by PageId hash.
+ * Each partition has its own frames, page table, replacement state and
+ * latch, so concurrent getPage calls on different pages do not serialize
+ * on the whole pool.
+ * <p>
+ * Large sequential scans read through a {@link BufferAccessStrategy}, a
+ * small private ring of frames, so they do not evict the pool's working set.
+ * <p>
+ * With the simpledb.BackgroundWriter system property set to true, commits
+ * log their pages instead of writing them, and a {@link BufferPoolWriter}
+ * thread writes them to disk in the background.
  */
 public class BufferPool {
     /** Bytes per page, including header. */
@@ -24,13 +36,23 @@ public class BufferPool {
     other classes. BufferPool should use the numPages argument to the
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
-    
-    private Map<PageId, Page > cachedPages = new HashMap<PageId, Page>();
-    private Map<PageId, Date> lastAccessedTimeStamps = new HashMap<PageId, Date>();
-    
+
+    /** System property used to choose the replacement policy. */
+    public static final String REPLACEMENT_POLICY_PROPERTY = "simpledb.ReplacementPolicy";
+    public static final String CLOCK_POLICY = "clock";
+    public static final String LRU_K_POLICY = "lru-k";
+
+    /** System property that starts a background writer with every pool. */
+    public static final String BACKGROUND_WRITER_PROPERTY = "simpledb.BackgroundWriter";
+
+    /** Smallest number of frames worth giving their own partition. */
+    public static final int MIN_PARTITION_PAGES = 64;
+
 	private final int numPages;
 
-	private PageId pid;
+	private final BufferPoolPartition[] partitions;
+
+	private BufferPoolWriter writer = null;
 
     /**
      * Creates a BufferPool that caches up to numPages pages.
@@ -38,7 +60,121 @@ public class BufferPool {
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+		this(numPages, System.getProperty(REPLACEMENT_POLICY_PROPERTY, CLOCK_POLICY));
+		if (Boolean.getBoolean(BACKGROUND_WRITER_PROPERTY))
+			startBackgroundWriter();
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and evicts them
+     * according to the named replacement policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy {@link #CLOCK_POLICY} or {@link #LRU_K_POLICY}
+     */
+    public BufferPool(int numPages, String policy) {
+		this(numPages, policy, defaultNumPartitions(numPages));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages spread over the
+     * specified number of partitions.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy {@link #CLOCK_POLICY} or {@link #LRU_K_POLICY}
+     * @param numPartitions the number of independently latched partitions
+     */
+    public BufferPool(int numPages, String policy, int numPartitions) {
+		if (numPartitions < 1 || numPartitions > numPages)
+			throw new IllegalArgumentException("Cannot split " + numPages + " pages into " + numPartitions + " partitions");
+
 		this.numPages = numPages;
+		this.partitions = new BufferPoolPartition[numPartitions];
+		for (int i = 0; i < numPartitions; i++) {
+			int partitionPages = numPages / numPartitions + (i < numPages % numPartitions ? 1 : 0);
+			partitions[i] = new BufferPoolPartition(partitionPages, policy);
+		}
+    }
+
+    /**
+     * Starts a background thread that writes committed pages to disk. From
+     * now on transactionComplete does not write the pages of a committing
+     * transaction but logs them and leaves them to the writer.
+     *
+     * @see BufferPoolWriter
+     */
+    public synchronized void startBackgroundWriter() {
+		if (null != writer)
+			return;
+		writer = new BufferPoolWriter(partitions);
+		writer.start();
+    }
+
+    /**
+     * Stops the background writer, if there is one, and writes out the pages
+     * it had not written yet.
+     */
+    public synchronized void shutdown() throws IOException {
+		if (null == writer)
+			return;
+		writer.shutdown();
+		writer = null;
+
+		Database.getLogFile().force();
+		for (BufferPoolPartition partition : partitions)
+			partition.writePendingPages(partition.numFrames());
+    }
+
+    /** @return the number of pages with committed changes that are not on disk yet */
+    public int numPendingWrites() {
+		int pending = 0;
+		for (BufferPoolPartition partition : partitions)
+			pending += partition.numPendingWrites();
+		return pending;
+    }
+
+    /**
+     * One partition per processor, as long as every partition keeps at least
+     * {@link #MIN_PARTITION_PAGES} frames.
+     */
+    static int defaultNumPartitions(int numPages) {
+		int numPartitions = Runtime.getRuntime().availableProcessors();
+		numPartitions = Math.min(numPartitions, numPages / MIN_PARTITION_PAGES);
+		return Math.max(1, numPartitions);
+    }
+
+    /** @return the maximum number of pages in this buffer pool */
+    public int getNumPages() {
+		return numPages;
+    }
+
+    /** @return the number of partitions this pool is split into */
+    public int numPartitions() {
+		return partitions.length;
+    }
+
+    /** @return the number of pages currently held in the pool */
+    public int numCachedPages() {
+		int cached = 0;
+		for (BufferPoolPartition partition : partitions)
+			cached += partition.numCachedPages();
+		return cached;
+    }
+
+    private BufferPoolPartition partitionOf(PageId pid) {
+		int h = pid.hashCode();
+		// spread the bits, HeapPageId hashes of neighbouring pages differ only in the low bits
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return partitions[(h & 0x7fffffff) % partitions.length];
+    }
+
+    static ReplacementPolicy newReplacementPolicy(String policy, int numFrames) {
+		if (CLOCK_POLICY.equalsIgnoreCase(policy))
+			return new ClockReplacementPolicy(numFrames);
+		if (LRU_K_POLICY.equalsIgnoreCase(policy))
+			return new LruKReplacementPolicy(numFrames);
+		throw new IllegalArgumentException("Unknown replacement policy " + policy);
     }
 
     /**
@@ -56,44 +192,31 @@ public class BufferPool {
      * @param pid the ID of the requested page
      * @param perm the requested permissions on the page
      */
-    public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
-    	
-    	DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
-    	HeapFile heapFile = (HeapFile) dbFile;
-
-    	if(cachedPages.containsKey(pid)){
-    		lastAccessedTimeStamps.put(pid, new Date());
-    		return cachedPages.get(pid);
-    	}
-    	
-    	HeapPage result = (HeapPage) heapFile.readPage(pid);
-    	
-    	if(null != result){
-    			cachedPages.put(pid, result);
-    			lastAccessedTimeStamps.put(pid, new Date());
-    			if(cachedPages.size() > numPages)
-    				evictPage(tid);
-    	}
-    	
-		return result;    	
+		return partitionOf(pid).getPage(pid);
     }
-    
-    private void reloadPage(PageId pid, TransactionId tid) throws DbException{
-    	DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
-    	HeapFile heapFile = (HeapFile) dbFile;
 
-    	HeapPage result = (HeapPage) heapFile.readPage(pid);
-    	
-    	if(null != result){
-    		cachedPages.put(pid, result);
-    		
-    		if(cachedPages.size() > numPages)
-    			evictPage(tid);
-    	}
+    /**
+     * Retrieve the specified page through a buffer access strategy. If the
+     * page is cached it is returned without counting as a reference in the
+     * replacement policy; otherwise it is read into the strategy's ring and
+     * not added to the pool.
+     *
+     * @param strategy the ring to read misses into, or null to behave like
+     *   {@link #getPage(TransactionId, PageId, Permissions)}
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferAccessStrategy strategy)
+        throws TransactionAbortedException, DbException {
+		if (null == strategy)
+			return getPage(tid, pid, perm);
 
-    }
+		Page cached = partitionOf(pid).peekPage(pid);
+		if (null != cached)
+			return cached;
 
+		return strategy.getPage(pid);
+    }
 
 	/**
      * Releases the lock on a page.
@@ -127,19 +250,44 @@ public class BufferPool {
         throws IOException {
 
     	List<PageId> effectedPages = Database.getLocktable().releaseLock(tid);
+    	boolean deferWrites = commit && null != writer;
     	
     	for (PageId pageId : effectedPages) {
-    		if(commit && isDirty(pageId))
+    		if(deferWrites && isDirty(pageId) && !growsFile(pageId))
+    			logCommittedPage(tid, pageId);
+    		else if(commit && isDirty(pageId))
     			flushPage(pageId);
-    		else if(!commit && isDirty(pageId)){
-    			try {
-    				reloadPage(pageId, tid);
-    			} catch (DbException e) {
-    				e.printStackTrace();
-    			}
-    		}
+    		else if(!commit && isDirty(pageId))
+    			partitionOf(pageId).reloadPage(pageId);
 		}
     	
+    	if(deferWrites)
+    		Database.getLogFile().force();
+    }
+
+    /**
+     * HeapFile iterators find pages by reading the file, so pages that grow
+     * it are written right away instead of being left to the writer.
+     */
+    private boolean growsFile(PageId pageId) {
+    	DbFile dbFile = Database.getCatalog().getDbFile(pageId.getTableId());
+    	return dbFile instanceof HeapFile && pageId.pageno() >= ((HeapFile) dbFile).pagesOnDisk();
+    }
+
+    /**
+     * Logs the changes of a committing transaction to a page and hands the
+     * page to the background writer. The log is not forced here; the page
+     * is not written until it is.
+     */
+    private void logCommittedPage(TransactionId tid, PageId pageId) throws IOException {
+    	BufferPoolPartition partition = partitionOf(pageId);
+    	Page page = partition.peekPage(pageId);
+    	if(null == page)
+    		return;
+
+    	long lsn = Database.getLogFile().logWrite(tid, page.getBeforeImage(), page);
+    	page.setBeforeImage();
+    	partition.commitPage(pageId, lsn);
     }
 
     /**
@@ -177,7 +325,7 @@ public class BufferPool {
     	
     	Database.getLocktable().getLock(pageId, t, tid);
     	
-    	lastAccessedTimeStamps.put(pageToUpdate.getId(), new Date());
+    	partitionOf(pageToUpdate.getId()).touchPage(pageToUpdate.getId());
     	
     	pageToUpdate.addTuple(t);
     	pageToUpdate.markDirty(true, tid);
@@ -216,7 +364,7 @@ public class BufferPool {
 
     	Database.getLocktable().getLock(pageId, t, tid);
     	
-    	lastAccessedTimeStamps.put(pageToUpdate.getId(), new Date());
+    	partitionOf(pageToUpdate.getId()).touchPage(pageToUpdate.getId());
     	
     	pageToUpdate.deleteTuple(t);
     	pageToUpdate.markDirty(true, tid);
@@ -230,9 +378,11 @@ public class BufferPool {
      *     break simpledb if running in NO STEAL mode.
      */
     public synchronized void flushAllPages() throws IOException {
-    	for (Entry<PageId, Page> pageEntry : cachedPages.entrySet()) {
-    			flushPage(pageEntry.getKey());
-		}
+    	// write-ahead: committed pages are written after their UPDATE records
+    	if (numPendingWrites() > 0)
+    		Database.getLogFile().force();
+    	for (BufferPoolPartition partition : partitions)
+    		partition.flushAllPages();
     }
 
     /** Remove the specific page id from the buffer pool.
@@ -241,104 +391,38 @@ public class BufferPool {
         cache.
     */
     public synchronized void discardPage(PageId pid) {
-        // some code goes here
-        // only necessary for lab5
+    	partitionOf(pid).discardPage(pid);
     }
 
     /**
      * Flushes a certain page to disk
      * @param pid an ID indicating the page to flush
      */
-    private synchronized  void flushPage(PageId pid) throws IOException {
-    	Page dirtyPage = cachedPages.get(pid);
-    	
-    	if(null == dirtyPage.isDirty())
-    		return;
-    		
-    	int tableId = dirtyPage.getId().getTableId();
-		DbFile dbFile = Database.getCatalog().getDbFile(tableId);
-		try {
-			dbFile.writePage(dirtyPage);
-			dirtyPage.markDirty(false, null);
-			
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+    private void flushPage(PageId pid) throws IOException {
+    	partitionOf(pid).flushPage(pid);
     }
 
     /** Write all pages of the specified transaction to disk.
+     * <p>
+     * While the background writer runs, the pages are logged and handed to
+     * the writer instead, so that their UPDATE records precede the COMMIT
+     * record the caller writes next; the writer writes them once that
+     * record has forced the log. Otherwise, and for pages that grow a
+     * HeapFile, transactionComplete writes them.
      */
     public synchronized  void flushPages(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2|lab3
-    }
-
-    /**
-     * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
-     * @param tid 
-     */
-    private synchronized  void evictPage(TransactionId tid) throws DbException {
-    	
-    	Page oldestPageToEvict = findOldestPageWhichHasNoLocksAndIsNotDirtyToEvict();
-    	
-    		try {
-				flushPage(oldestPageToEvict.getId());
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-    	
-    	cachedPages.remove(oldestPageToEvict.getId());
-    	lastAccessedTimeStamps.remove(oldestPageToEvict.getId());
+    	if (null == writer)
+    		return;
+    	for (BufferPoolPartition partition : partitions) {
+    		for (PageId pageId : partition.dirtiedBy(tid)) {
+    			if (!growsFile(pageId))
+    				logCommittedPage(tid, pageId);
+    		}
+    	}
     }
 
-	private Page findOldestPageWhichHasNoLocksAndIsNotDirtyToEvict() throws DbException {
-		PageId oldestPageid = null;
-		Date oldestDate = null;
-		boolean found = false;
-		
-		for ( Entry<PageId, Date> entry : lastAccessedTimeStamps.entrySet()) {
-			boolean hasExclusiveLock = hasExclusiveLock(entry.getKey());
-			boolean isDirty = isDirty(entry.getKey());
-			if(hasExclusiveLock || isDirty)
-				continue;
-			
-			if(null == oldestPageid){
-				oldestPageid = entry.getKey();
-				oldestDate = entry.getValue();
-				found = true;
-				continue;
-			}
-			
-			if(entry.getValue().before(oldestDate)){
-				oldestPageid = entry.getKey();
-				oldestDate = entry.getValue();
-			}
-			
-		}
-		
-
-		if(!found)
-			throw new DbException("no suitable pages found for eviciton");
-		
-		Page result = cachedPages.get(oldestPageid);
-		
-		if(null == result)
-			System.out.println("!! got empty page !!");
-		
-		return result;
-	}
-
-	private boolean hasExclusiveLock(PageId pageId) {
-		return Database.getLocktable().hasExclusivelock(pageId);
-	}
-
 	public boolean isDirty(PageId key) {
-		if(!cachedPages.containsKey(key))
-			return false;
-		
-		Page page = cachedPages.get(key);
-		return page.isDirty() != null;
+		return partitionOf(key).isDirty(key);
 	}
 
 }
@@ -0,0 +1,497 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One shard of the BufferPool. Every partition owns a slice of the pool's
+ * frames together with its own page table and replacement state, and is
+ * latched independently (by synchronizing on the partition), so requests for
+ * pages that hash to different partitions never contend.
+ * <p>
+ * Disk reads on a miss happen outside the latch. A thread that misses on a
+ * page another thread is already reading (e.g. a {@link PageReadAhead}
+ * prefetch) waits for that read instead of reading the page again.
+ * <p>
+ * HeapPages live in the partition's off-heap {@link PageFrameArena}, frame i
+ * of the arena backing frames[i]. A miss on a HeapFile page reserves a
+ * frame first and reads the page straight into it; pages of other files
+ * are moved into the arena when they are installed. Before a frame is
+ * reused its old page is detached onto the heap.
+ * <p>
+ * A frame may hold committed changes that are not on disk yet (see
+ * {@link BufferPoolWriter}). Such a page is not dirty as far as
+ * transactions are concerned and may be evicted, but it is written first.
+ * Write-ahead ordering: it is neither written nor evicted before the log has
+ * been forced past the UPDATE record of its changes. The background writer
+ * writes such pages outside the latch: it pins their frames and takes a
+ * copy of their committed image under the latch, and other writes of a
+ * pinned frame wait until its write is done.
+ *
+ * @see BufferPool
+ */
+class BufferPoolPartition {
+
+	private final Page[] frames;
+	private final boolean[] pendingWrite;
+	private final long[] pendingLsn;
+	private final boolean[] writing;
+	private int writerHand = 0;
+	private final PageFrameArena arena;
+	private final Map<PageId, Integer> pageTable = new HashMap<PageId, Integer>();
+	private final Set<PageId> reading = new HashSet<PageId>();
+	private final int[] freeFrames;
+	private int numFreeFrames;
+	private final ReplacementPolicy replacementPolicy;
+
+	private final ReplacementPolicy.Evictable evictable = new ReplacementPolicy.Evictable() {
+		public boolean canEvict(int frame) {
+			PageId pageId = frames[frame].getId();
+			return !Database.getLocktable().hasExclusivelock(pageId) && null == frames[frame].isDirty()
+					&& logged(frame) && !writing[frame];
+		}
+	};
+
+	/**
+	 * @param numPages the number of frames in this partition
+	 * @param policy the name of the replacement policy to use
+	 */
+	BufferPoolPartition(int numPages, String policy) {
+		this.frames = new Page[numPages];
+		this.pendingWrite = new boolean[numPages];
+		this.pendingLsn = new long[numPages];
+		this.writing = new boolean[numPages];
+		this.arena = new PageFrameArena(numPages);
+		this.freeFrames = new int[numPages];
+		for (int i = 0; i < numPages; i++)
+			freeFrames[i] = numPages - 1 - i;
+		this.numFreeFrames = numPages;
+		this.replacementPolicy = BufferPool.newReplacementPolicy(policy, numPages);
+	}
+
+	/**
+	 * Returns the cached copy of pid, reading it from disk if needed.
+	 * @see BufferPool#getPage
+	 */
+	Page getPage(PageId pid) throws DbException {
+		synchronized (this) {
+			while(true) {
+				Page cached = lookup(pid);
+				if(null != cached)
+					return cached;
+				if(!reading.contains(pid))
+					break;
+				waitForRead();
+			}
+			reading.add(pid);
+		}
+
+		DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
+		boolean intoFrame = dbFile instanceof HeapFile && ((HeapFile) dbFile).readsIntoFrames();
+		int reserved = -1;
+		boolean installed = false;
+		try {
+			if(intoFrame) {
+				synchronized (this) {
+					reserved = allocateFrame();
+				}
+			}
+			Page result = intoFrame ? ((HeapFile) dbFile).readPage(pid, arena.frame(reserved)) : dbFile.readPage(pid);
+			if(null == result)
+				return null;
+
+			synchronized (this) {
+				int frame = reserved;
+				if(-1 == frame) {
+					frame = allocateFrame();
+					attach(result, frame);
+				}
+				frames[frame] = result;
+				pageTable.put(pid, frame);
+				replacementPolicy.frameLoaded(frame);
+				installed = true;
+			}
+			return result;
+		} finally {
+			synchronized (this) {
+				if(-1 != reserved && !installed)
+					freeFrames[numFreeFrames++] = reserved;
+				reading.remove(pid);
+				notifyAll();
+			}
+		}
+	}
+
+	private void waitForRead() throws DbException {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("interrupted while waiting for a page read");
+		}
+	}
+
+	private void waitForWrite() throws IOException {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for a page write");
+		}
+	}
+
+	/**
+	 * Returns the cached copy of pid, or null, without telling the
+	 * replacement policy about the access.
+	 */
+	synchronized Page peekPage(PageId pid) {
+		Integer frame = pageTable.get(pid);
+		if(null == frame)
+			return null;
+
+		return frames[frame];
+	}
+
+	private Page lookup(PageId pid) {
+		Integer frame = pageTable.get(pid);
+		if(null == frame)
+			return null;
+
+		replacementPolicy.frameAccessed(frame);
+		return frames[frame];
+	}
+
+	/**
+	 * Replaces the cached copy of pid, if any, with the version on disk.
+	 */
+	synchronized void reloadPage(PageId pid) {
+		Integer frame = pageTable.get(pid);
+		if(null == frame)
+			return;
+
+		if(pendingWrite[frame]) {
+			// the disk is behind, the last committed version is the before image
+			Page committed = frames[frame].getBeforeImage();
+			release(frames[frame]);
+			attach(committed, frame);
+			frames[frame] = committed;
+			return;
+		}
+
+		DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
+		Page result = dbFile.readPage(pid);
+
+		if(null != result) {
+			release(frames[frame]);
+			attach(result, frame);
+			frames[frame] = result;
+		}
+	}
+
+	/**
+	 * Moves the image of a page that is entering the given frame into the arena.
+	 */
+	private void attach(Page page, int frame) {
+		if(page instanceof HeapPage)
+			((HeapPage) page).attachFrame(arena.frame(frame));
+	}
+
+	/**
+	 * Detaches a page that is leaving its frame from the arena.
+	 */
+	private void release(Page page) {
+		if(page instanceof HeapPage)
+			((HeapPage) page).detachFrame();
+	}
+
+	/**
+	 * Marks the cached copy of pid as recently used, if there is one.
+	 */
+	synchronized void touchPage(PageId pid) {
+		Integer frame = pageTable.get(pid);
+		if(null != frame)
+			replacementPolicy.frameAccessed(frame);
+	}
+
+	synchronized boolean isDirty(PageId pid) {
+		Integer frame = pageTable.get(pid);
+		if(null == frame)
+			return false;
+
+		return null != frames[frame].isDirty();
+	}
+
+	synchronized void discardPage(PageId pid) {
+		Integer frame = pageTable.remove(pid);
+		if(null == frame)
+			return;
+
+		release(frames[frame]);
+		frames[frame] = null;
+		pendingWrite[frame] = false;
+		pendingLsn[frame] = 0;
+		replacementPolicy.frameReleased(frame);
+		freeFrames[numFreeFrames++] = frame;
+	}
+
+	/**
+	 * Writes the cached copy of pid to disk if it is dirty.
+	 */
+	synchronized void flushPage(PageId pid) throws IOException {
+		while(true) {
+			Integer frame = pageTable.get(pid);
+			if(null == frame)
+				return;
+			if(!writing[frame]) {
+				flushFrame(frame);
+				return;
+			}
+			waitForWrite();
+		}
+	}
+
+	/**
+	 * Records that the changes of a committed transaction to pid are
+	 * logged but not written yet; the page counts as clean from now on.
+	 *
+	 * @param lsn the log sequence number of the end of the UPDATE record
+	 *   of the changes, as returned by {@link LogFile#logWrite}
+	 */
+	synchronized void commitPage(PageId pid, long lsn) {
+		Integer frame = pageTable.get(pid);
+		if(null == frame)
+			return;
+
+		frames[frame].markDirty(false, null);
+		pendingWrite[frame] = true;
+		pendingLsn[frame] = Math.max(pendingLsn[frame], lsn);
+	}
+
+	/**
+	 * @return whether the log is on disk up to the UPDATE record of the
+	 *   committed changes of the page in frame, if it has any
+	 */
+	private boolean logged(int frame) {
+		return !pendingWrite[frame] || pendingLsn[frame] <= Database.getLogFile().forcedLsn();
+	}
+
+	/**
+	 * @return the pages of this partition that tid has dirtied
+	 */
+	synchronized List<PageId> dirtiedBy(TransactionId tid) {
+		List<PageId> dirtied = new ArrayList<PageId>();
+		for (Page page : frames) {
+			TransactionId dirtier = null == page ? null : page.isDirty();
+			if(null != dirtier && dirtier.equals(tid))
+				dirtied.add(page.getId());
+		}
+		return dirtied;
+	}
+
+	/**
+	 * Writes up to maxPages pages whose committed changes are not on disk
+	 * yet, skipping pages that a running transaction has dirtied again or
+	 * holds a lock on, and pages whose UPDATE records have not been forced
+	 * to the log yet. The pages are written outside the latch.
+	 *
+	 * @return the number of pages written
+	 */
+	int writePendingPages(int maxPages) {
+		List<PendingWrite> pinned = pinPendingPages(maxPages);
+		int written = 0;
+		int next = 0;
+		try {
+			for (; next < pinned.size(); next++) {
+				PendingWrite write = pinned.get(next);
+				boolean done = false;
+				try {
+					DbFile dbFile = Database.getCatalog().getDbFile(write.image.getId().getTableId());
+					dbFile.writePage(write.image);
+					done = true;
+					written++;
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				unpin(write, done);
+			}
+		} finally {
+			for (; next < pinned.size(); next++)
+				unpin(pinned.get(next), false);
+		}
+		return written;
+	}
+
+	/**
+	 * Picks up to maxPages pages for {@link #writePendingPages}, pins their
+	 * frames and copies their committed images.
+	 */
+	private synchronized List<PendingWrite> pinPendingPages(int maxPages) {
+		List<PendingWrite> pinned = new ArrayList<PendingWrite>();
+		for (int step = 0; step < frames.length && pinned.size() < maxPages; step++) {
+			int frame = writerHand;
+			writerHand = (writerHand + 1) % frames.length;
+
+			if(!pendingWrite[frame] || writing[frame] || null != frames[frame].isDirty() || !logged(frame)
+					|| Database.getLocktable().hasExclusivelock(frames[frame].getId()))
+				continue;
+
+			// the before image stays the committed version should a
+			// transaction modify the page while it is being written
+			writing[frame] = true;
+			pinned.add(new PendingWrite(frame, frames[frame], frames[frame].getBeforeImage(), pendingLsn[frame]));
+		}
+		return pinned;
+	}
+
+	/**
+	 * Unpins the frame of a pending write. The frame is clean afterwards
+	 * if the write succeeded and the frame still holds the same committed
+	 * version of the same page.
+	 */
+	private synchronized void unpin(PendingWrite write, boolean done) {
+		int frame = write.frame;
+		writing[frame] = false;
+		if(done && frames[frame] == write.page && pendingWrite[frame] && pendingLsn[frame] == write.lsn) {
+			pendingWrite[frame] = false;
+			pendingLsn[frame] = 0;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * @return the highest log sequence number up to which the log must be
+	 *   forced before every page of this partition whose committed changes
+	 *   are not on disk may be written, or 0 if there are no such pages
+	 */
+	synchronized long maxPendingLsn() {
+		long max = 0;
+		for (int frame = 0; frame < frames.length; frame++) {
+			if(pendingWrite[frame])
+				max = Math.max(max, pendingLsn[frame]);
+		}
+		return max;
+	}
+
+	/** @return the number of frames whose committed changes are not on disk */
+	synchronized int numPendingWrites() {
+		int pending = 0;
+		for (boolean p : pendingWrite)
+			if(p)
+				pending++;
+		return pending;
+	}
+
+	/** @return the number of frames that are free or hold a page identical to disk */
+	synchronized int numCleanFrames() {
+		int clean = numFreeFrames;
+		for (int frame = 0; frame < frames.length; frame++) {
+			if(null != frames[frame] && !pendingWrite[frame] && null == frames[frame].isDirty())
+				clean++;
+		}
+		return clean;
+	}
+
+	/** @return the number of frames in this partition */
+	int numFrames() {
+		return frames.length;
+	}
+
+	synchronized void flushAllPages() throws IOException {
+		for (int frame = 0; frame < frames.length; frame++) {
+			while(writing[frame])
+				waitForWrite();
+			if(null != frames[frame])
+				flushFrame(frame);
+		}
+	}
+
+	/** @return the number of pages currently cached in this partition */
+	synchronized int numCachedPages() {
+		return pageTable.size();
+	}
+
+	/**
+	 * Writes the page in frame if it is dirty or has committed changes that
+	 * are not on disk yet. Committed changes are left in the pool until the
+	 * log has been forced past their UPDATE record.
+	 */
+	private void flushFrame(int frame) throws IOException {
+		Page dirtyPage = frames[frame];
+
+		if(null == dirtyPage.isDirty() && !pendingWrite[frame])
+			return;
+		if(!logged(frame))
+			return;
+
+		int tableId = dirtyPage.getId().getTableId();
+		DbFile dbFile = Database.getCatalog().getDbFile(tableId);
+		try {
+			dbFile.writePage(dirtyPage);
+			dirtyPage.markDirty(false, null);
+			pendingWrite[frame] = false;
+			pendingLsn[frame] = 0;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns a free frame, evicting a page if the partition is full.
+	 */
+	private int allocateFrame() throws DbException {
+		if(numFreeFrames > 0)
+			return freeFrames[--numFreeFrames];
+
+		return evictPage();
+	}
+
+	/**
+	 * Discards a page from this partition. Only pages that are neither dirty
+	 * nor exclusively locked are considered; the replacement policy picks
+	 * among them.
+	 *
+	 * @return the frame that was freed
+	 */
+	private int evictPage() throws DbException {
+		int frame = replacementPolicy.chooseVictim(evictable);
+		if(-1 == frame)
+			throw new DbException("no suitable pages found for eviciton");
+
+		Page pageToEvict = frames[frame];
+		try {
+			flushFrame(frame);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		pageTable.remove(pageToEvict.getId());
+		release(pageToEvict);
+		frames[frame] = null;
+		pendingWrite[frame] = false;
+		pendingLsn[frame] = 0;
+		replacementPolicy.frameReleased(frame);
+		return frame;
+	}
+
+	/** A page the background writer writes outside the latch. */
+	private static class PendingWrite {
+		final int frame;
+		/** the page in the frame when it was pinned */
+		final Page page;
+		/** the committed image of that page that is written */
+		final Page image;
+		final long lsn;
+
+		PendingWrite(int frame, Page page, Page image, long lsn) {
+			this.frame = frame;
+			this.page = page;
+			this.image = image;
+			this.lsn = lsn;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * Background thread that writes committed dirty pages of a BufferPool to
+ * disk ahead of demand.
+ * <p>
+ * While the writer runs, a commit does not write its pages itself: it logs
+ * an UPDATE record per page ahead of its COMMIT record, forces the log and
+ * leaves the pages in the pool marked as having committed changes that are
+ * not on disk yet. Every {@link #INTERVAL_MILLIS} the writer trickles up to
+ * {@link #BATCH_PAGES} of them per partition to disk, and more if a
+ * partition has fewer than 1/{@link #CLEAN_FRACTION} of its frames free or
+ * clean, so evictions seldom have to wait for a write.
+ * <p>
+ * Write-ahead ordering: every such page remembers the log sequence number
+ * of its UPDATE record, and neither the writer nor an eviction writes it
+ * before {@link LogFile#forcedLsn} has reached that number. The writer
+ * forces the log at the start of a round; pages committed after that force
+ * wait for the next round.
+ *
+ * @see BufferPool#startBackgroundWriter
+ */
+class BufferPoolWriter extends Thread {
+
+	/** Time between two rounds of the writer. */
+	static final long INTERVAL_MILLIS = 50;
+
+	/** Pages written per partition and round when enough frames are clean. */
+	static final int BATCH_PAGES = 16;
+
+	/** The writer tries to keep 1/CLEAN_FRACTION of every partition clean. */
+	static final int CLEAN_FRACTION = 10;
+
+	private final BufferPoolPartition[] partitions;
+	private volatile boolean running = true;
+
+	BufferPoolWriter(BufferPoolPartition[] partitions) {
+		super("BufferPoolWriter");
+		this.partitions = partitions;
+		setDaemon(true);
+	}
+
+	public void run() {
+		while (running) {
+			try {
+				writeRound();
+				Thread.sleep(INTERVAL_MILLIS);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Writes committed pages of every partition, as described above. The
+	 * log is forced once, before the first write, and only if it is not on
+	 * disk yet up to the UPDATE record of every page waiting to be written.
+	 * @return the number of pages written
+	 */
+	int writeRound() throws IOException {
+		long pendingLsn = 0;
+		for (BufferPoolPartition partition : partitions)
+			pendingLsn = Math.max(pendingLsn, partition.maxPendingLsn());
+		if (0 == pendingLsn)
+			return 0;
+
+		// write-ahead: pages are only written once their UPDATE records are on disk
+		LogFile log = Database.getLogFile();
+		if (pendingLsn > log.forcedLsn())
+			log.force();
+
+		int written = 0;
+		for (BufferPoolPartition partition : partitions) {
+			if (0 == partition.numPendingWrites())
+				continue;
+
+			int target = Math.max(1, partition.numFrames() / CLEAN_FRACTION);
+			int deficit = target - partition.numCleanFrames();
+			written += partition.writePendingPages(Math.max(BATCH_PAGES, deficit));
+		}
+		return written;
+	}
+
+	/**
+	 * Stops the writer and waits for its current round to finish. The
+	 * thread is not interrupted, since that would close the FileChannel of
+	 * a log force in progress.
+	 */
+	void shutdown() {
+		running = false;
+		try {
+			join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+}
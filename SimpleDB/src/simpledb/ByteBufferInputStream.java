@@ -0,0 +1,41 @@
+package simpledb;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream over the remaining bytes of a ByteBuffer, so that pages
+ * kept in (direct) buffers can be parsed with {@link Type#parse}.
+ */
+class ByteBufferInputStream extends InputStream {
+
+	private final ByteBuffer buffer;
+
+	/**
+	 * @param buffer the bytes to read; the stream advances its position
+	 */
+	ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public int read() {
+		if(!buffer.hasRemaining())
+			return -1;
+		return buffer.get() & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) {
+		if(len == 0)
+			return 0;
+		if(!buffer.hasRemaining())
+			return -1;
+
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+		return len;
+	}
+
+	public int available() {
+		return buffer.remaining();
+	}
+}
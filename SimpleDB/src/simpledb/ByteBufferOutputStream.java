@@ -0,0 +1,28 @@
+package simpledb;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An OutputStream into a ByteBuffer, so that tuples can be serialized with
+ * {@link Field#serialize} straight into the image of a page.
+ */
+class ByteBufferOutputStream extends OutputStream {
+
+	private final ByteBuffer buffer;
+
+	/**
+	 * @param buffer the bytes to write; the stream advances its position
+	 */
+	ByteBufferOutputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public void write(int b) {
+		buffer.put((byte) b);
+	}
+
+	public void write(byte[] b, int off, int len) {
+		buffer.put(b, off, len);
+	}
+}
@@ -20,6 +20,7 @@ public class Catalog {
 
 	private Map<Integer, DbFile> tableIdToDbFileMapping = new HashMap<Integer, DbFile>();
 	private Map<String, Integer> tableNameToTableIdMapping = new HashMap<String, Integer>();
+	private Map<Integer, List<IndexFile>> tableIdToIndexes = new HashMap<Integer, List<IndexFile>>();
 	
     /**
      * Constructor.
@@ -47,6 +48,41 @@ public class Catalog {
         addTable(file,name,"");
     }
 
+    /**
+     * Add an index of a table to the catalog. The index can be looked up by
+     * its own id with getDbFile, like a table, so that the BufferPool can
+     * read its pages; it is not a table and has no name.
+     * An index that has the same id as one already added replaces it.
+     * @param index the index to add; index.getTableId() is the table it is on
+     */
+    public void addIndex(IndexFile index) {
+    	tableIdToDbFileMapping.put(index.getId(), index);
+    	List<IndexFile> indexes = tableIdToIndexes.get(index.getTableId());
+    	if(null == indexes){
+    		indexes = new ArrayList<IndexFile>();
+    		tableIdToIndexes.put(index.getTableId(), indexes);
+    	}
+    	for (Iterator<IndexFile> it = indexes.iterator(); it.hasNext(); ) {
+    		if(it.next().getId() == index.getId())
+    			it.remove();
+    	}
+    	indexes.add(index);
+    }
+
+    /**
+     * Returns the indexes of the specified table, which operators that
+     * modify the table have to keep up to date.
+     * @param tableid The id of the table, as specified by the DbFile.getId()
+     *     function passed to addTable
+     * @return the indexes added with addIndex, or an empty list
+     */
+    public List<IndexFile> getIndexes(int tableid) {
+    	List<IndexFile> indexes = tableIdToIndexes.get(tableid);
+    	if(null == indexes)
+    		return Collections.emptyList();
+    	return Collections.unmodifiableList(indexes);
+    }
+
     /**
      * Add a new table to the catalog.
      * This table has tuples formatted using the specified TupleDesc and its
@@ -118,6 +154,17 @@ public class Catalog {
         return null;
     }
     
+    /**
+     * Adds an index declared in a catalog file, building it from its table
+     * if its file did not exist.
+     */
+    private void loadIndex(IndexFile index, boolean existed)
+        throws DbException, IOException, TransactionAbortedException {
+        addIndex(index);
+        if (!existed)
+            index.addAllTuples();
+    }
+
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
      * @param catalogFile
@@ -128,7 +175,13 @@ public class Catalog {
             BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
 
             while ((line = br.readLine()) != null) {
-                //assume line is of the format name (field type, field type, ...)
+                //assume line is of the format name (field type [pk] [bloom] [index] [hash] [include], ...) [annotation ...]
+                //where bloom keeps a Bloom filter per page of the column (see HeapFile), index
+                //keeps a B+Tree on the column (see BTreeFile), hash keeps an extendible hash
+                //index on it (see HashFile), include keeps the column in the leaves of the
+                //B+Trees of the table, which cover it (see IndexOnlyScan), and
+                //an annotation is mmap or compressed (see HeapFile), slotted
+                //(see SlottedFile) or columnar (see ColumnFile)
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
@@ -136,6 +189,10 @@ public class Catalog {
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
                 String primaryKey = "";
+                ArrayList<Integer> bloomFields = new ArrayList<Integer>();
+                ArrayList<Integer> indexFields = new ArrayList<Integer>();
+                ArrayList<Integer> hashFields = new ArrayList<Integer>();
+                ArrayList<Integer> includedFields = new ArrayList<Integer>();
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
@@ -147,28 +204,113 @@ public class Catalog {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    for (int i = 2; i < els2.length; i++) {
+                        if (els2[i].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[i].trim().equals("bloom"))
+                            bloomFields.add(names.size() - 1);
+                        else if (els2[i].trim().equals("index"))
+                            indexFields.add(names.size() - 1);
+                        else if (els2[i].trim().equals("hash"))
+                            hashFields.add(names.size() - 1);
+                        else if (els2[i].trim().equals("include"))
+                            includedFields.add(names.size() - 1);
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown annotation " + els2[i]);
                             System.exit(0);
                         }
                     }
                 }
+                //table annotations follow the closing parenthesis
+                boolean memoryMapped = false;
+                String format = "heap";
+                String annotations = line.substring(line.indexOf(")") + 1).trim();
+                for (String annotation : annotations.split("\\s+")) {
+                    if (annotation.length() == 0)
+                        continue;
+                    if (annotation.equals("mmap"))
+                        memoryMapped = true;
+                    else if (annotation.equals("slotted") || annotation.equals("columnar")
+                            || annotation.equals("compressed")) {
+                        if (!format.equals("heap")) {
+                            System.out.println("Table " + name + " is both " + format + " and " + annotation);
+                            System.exit(0);
+                        }
+                        format = annotation;
+                    } else {
+                        System.out.println("Unknown table annotation " + annotation);
+                        System.exit(0);
+                    }
+                }
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(name + ".dat"), t);
+                if (memoryMapped && !format.equals("heap")) {
+                    System.out.println("mmap is not supported for " + format + " tables");
+                    System.exit(0);
+                }
+                if (!bloomFields.isEmpty() && !(format.equals("heap") || format.equals("compressed"))) {
+                    System.out.println("bloom is not supported for " + format + " tables");
+                    System.exit(0);
+                }
+                if (!(indexFields.isEmpty() && hashFields.isEmpty())
+                        && !(format.equals("heap") || format.equals("compressed"))) {
+                    System.out.println("indexes are not supported for " + format + " tables");
+                    System.exit(0);
+                }
+                DbFile tabHf;
+                if (format.equals("slotted"))
+                    tabHf = new SlottedFile(new File(name + ".dat"), t);
+                else if (format.equals("columnar"))
+                    tabHf = new ColumnFile(new File(name + ".dat"), t);
+                else {
+                    HeapFile hf = new HeapFile(new File(name + ".dat"), t, memoryMapped, format.equals("compressed"));
+                    for (int field : bloomFields)
+                        hf.addBloomFilter(field);
+                    tabHf = hf;
+                }
                 addTable(tabHf,name,primaryKey);
+                for (int field : indexFields) {
+                    HeapFile hf = (HeapFile) tabHf;
+                    File indexFile = BTreeFile.fileOf(hf.getFile(), field);
+                    // the index covers the included columns but its own key
+                    ArrayList<Integer> included = new ArrayList<Integer>(includedFields);
+                    included.remove(Integer.valueOf(field));
+                    int[] includedAr = new int[included.size()];
+                    for (int i = 0; i < includedAr.length; i++)
+                        includedAr[i] = included.get(i);
+                    BTreeFile index = new BTreeFile(indexFile, hf, field, includedAr);
+                    boolean built = indexFile.exists();
+                    if (built && !index.hasLayout()) {
+                        // e.g. the include annotations changed since it was built
+                        System.out.println("Rebuilding index " + indexFile + ", whose layout changed");
+                        built = false;
+                    }
+                    loadIndex(index, built);
+                }
+                for (int field : hashFields) {
+                    HeapFile hf = (HeapFile) tabHf;
+                    File indexFile = HashFile.fileOf(hf.getFile(), field);
+                    loadIndex(new HashFile(indexFile, hf, field), indexFile.exists());
+                }
                 System.out.println("Added table : " + name + " with schema " + t);
             }
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
+        } catch (DbException e) {
+            e.printStackTrace();
+            System.exit(0);
+        } catch (TransactionAbortedException e) {
+            e.printStackTrace();
+            System.exit(0);
         } catch (IndexOutOfBoundsException e) {
             System.out.println ("Invalid catalog entry : " + line);
             System.exit(0);
+        } catch (IllegalArgumentException e) {
+            // e.g. a slotted table whose file was converted to heap pages
+            System.out.println(e.getMessage());
+            System.exit(0);
         }
     }
 }
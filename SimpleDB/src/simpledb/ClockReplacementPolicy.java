@@ -0,0 +1,62 @@
+package simpledb;
+
+/**
+ * CLOCK (second chance) page replacement.
+ * <p>
+ * Every occupied frame carries a reference bit that is set whenever the
+ * frame is accessed. To find a victim the clock hand sweeps over the frames,
+ * clearing reference bits as it goes, and stops at the first occupied frame
+ * whose bit is already clear and that may be evicted. A hit costs a single
+ * array store; a miss costs amortized O(1) hand movements.
+ */
+public class ClockReplacementPolicy implements ReplacementPolicy {
+
+    private final boolean[] occupied;
+    private final boolean[] referenced;
+    private int hand = 0;
+
+    /**
+     * @param numFrames the number of frames in the buffer pool
+     */
+    public ClockReplacementPolicy(int numFrames) {
+        this.occupied = new boolean[numFrames];
+        this.referenced = new boolean[numFrames];
+    }
+
+    public void frameLoaded(int frame) {
+        occupied[frame] = true;
+        referenced[frame] = true;
+    }
+
+    public void frameAccessed(int frame) {
+        referenced[frame] = true;
+    }
+
+    public void frameReleased(int frame) {
+        occupied[frame] = false;
+        referenced[frame] = false;
+    }
+
+    public int chooseVictim(Evictable evictable) {
+        int numFrames = occupied.length;
+
+        // two full turns: the first one may only clear reference bits
+        for (int step = 0; step < 2 * numFrames; step++) {
+            int frame = hand;
+            hand = (hand + 1) % numFrames;
+
+            if (!occupied[frame])
+                continue;
+
+            if (referenced[frame]) {
+                referenced[frame] = false;
+                continue;
+            }
+
+            if (evictable.canEvict(frame))
+                return frame;
+        }
+
+        return -1;
+    }
+}
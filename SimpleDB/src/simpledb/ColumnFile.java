@@ -0,0 +1,247 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * ColumnFile is a DbFile that stores each column of a table separately,
+ * for analytic queries that read a few columns of wide tables.
+ * <p>
+ * Column i is a chain of {@link ColumnPage}s kept in its own file, the
+ * table file name followed by "." and i. Rows are appended, so row r of
+ * the table is value r % n of page r / n of every column, where n is the
+ * number of values of that column's type that fit on a page.
+ * <p>
+ * An iterator reads the fields of a row when it returns the row. One made
+ * with {@link #iterator(TransactionId, Set)} only reads the given columns
+ * and leaves the other fields of its tuples null, so a scan followed by a
+ * projection, a filter or an aggregate reads the pages of the columns it
+ * uses and no others ({@link SeqScan} passes it the fields a query uses).
+ * ColumnFiles are append-only; deleteTuple is not supported.
+ *
+ * @see ColumnPage
+ */
+public class ColumnFile implements DbFile {
+
+    private final File f;
+    private final TupleDesc td;
+    private final int[] numPages;
+    private final FileChannel[] channels;
+
+    /**
+     * Constructs a column file whose columns are stored next to f.
+     *
+     * @param f the name of the table file; the columns are stored in f.0, f.1, ...
+     */
+    public ColumnFile(File f, TupleDesc td) {
+        this.f = f;
+        this.td = td;
+        this.numPages = new int[td.numFields()];
+        this.channels = new FileChannel[td.numFields()];
+    }
+
+    /**
+     * Returns the File this ColumnFile is named after.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    /** @return the file that holds the given column */
+    public File getColumnFile(int column) {
+        return new File(f.getPath() + "." + column);
+    }
+
+    // see DbFile.java for javadocs
+    public int getId() {
+        return f.getAbsoluteFile().hashCode();
+    }
+
+    // see DbFile.java for javadocs
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * Returns the number of pages of the given column, including pages that
+     * have been added but not written yet.
+     */
+    public synchronized int numPages(int column) {
+        int pagesOnDisk = (int) (getColumnFile(column).length() / BufferPool.PAGE_SIZE);
+        return Math.max(numPages[column], pagesOnDisk);
+    }
+
+    private synchronized FileChannel channel(int column) throws IOException {
+        if (null == channels[column] || !channels[column].isOpen())
+            channels[column] = new RandomAccessFile(getColumnFile(column), "rw").getChannel();
+        return channels[column];
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId id) {
+        ColumnPageId pid = (ColumnPageId) id;
+        ByteBuffer buffer = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+        long position = (long) pid.pageno() * BufferPool.PAGE_SIZE;
+        try {
+            // bytes past the end of the file read as zero, an empty page
+            FileChannel fileChannel = channel(pid.column());
+            while (buffer.hasRemaining()) {
+                if (-1 == fileChannel.read(buffer, position + buffer.position()))
+                    break;
+            }
+            return new ColumnPage(pid, buffer.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        ColumnPageId pid = (ColumnPageId) page.getId();
+        ByteBuffer buffer = ByteBuffer.wrap(page.getPageData());
+        long position = (long) pid.pageno() * BufferPool.PAGE_SIZE;
+        FileChannel fileChannel = channel(pid.column());
+        while (buffer.hasRemaining())
+            fileChannel.write(buffer, position + buffer.position());
+    }
+
+    private ColumnPage getPage(TransactionId tid, int column, int pageNo, Permissions perm)
+        throws DbException, TransactionAbortedException {
+        ColumnPageId pid = new ColumnPageId(getId(), column, pageNo);
+        return (ColumnPage) Database.getBufferPool().getPage(tid, pid, perm);
+    }
+
+    /**
+     * @return the number of rows in the table, as seen by tid
+     */
+    public int numRows(TransactionId tid) throws DbException, TransactionAbortedException {
+        int lastPage = numPages(0) - 1;
+        if (lastPage < 0)
+            return 0;
+        int perPage = ColumnPage.valuesPerPage(td.getType(0));
+        return lastPage * perPage + getPage(tid, 0, lastPage, Permissions.READ_ONLY).getNumValues();
+    }
+
+    // see DbFile.java for javadocs
+    public synchronized ArrayList<Page> addTuple(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException {
+
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("Tuple Description misatch");
+
+        int row = numRows(tid);
+        ArrayList<Page> pagesModified = new ArrayList<Page>();
+        for (int column = 0; column < td.numFields(); column++) {
+            int perPage = ColumnPage.valuesPerPage(td.getType(column));
+            ColumnPage page = getPage(tid, column, row / perPage, Permissions.READ_WRITE);
+            if (page.getNumValues() != row % perPage)
+                throw new DbException("column " + column + " of " + f + " is out of step with column 0");
+
+            Database.getLocktable().getLock(page.getId(), t, tid);
+            try {
+                page.addValue(t.getField(column));
+                page.markDirty(true, tid);
+            } finally {
+                Database.getLocktable().releaseLock(page.getId(), t, tid);
+            }
+            numPages[column] = Math.max(numPages[column], row / perPage + 1);
+            pagesModified.add(page);
+        }
+
+        int perPage = ColumnPage.valuesPerPage(td.getType(0));
+        t.setRecordId(new RecordId(new ColumnPageId(getId(), 0, row / perPage), row));
+        return pagesModified;
+    }
+
+    // see DbFile.java for javadocs
+    public Page deleteTuple(TransactionId tid, Tuple t)
+        throws DbException, TransactionAbortedException {
+        throw new DbException("ColumnFile does not support deletes");
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new ColumnScan(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the rows of the table that only reads the
+     * given columns; the other fields of the tuples it returns are null.
+     *
+     * @param columns the columns to read, or null to read them all
+     */
+    public DbFileIterator iterator(TransactionId tid, Set<Integer> columns) {
+        return new ColumnScan(tid, columns);
+    }
+
+    /**
+     * The iterator of a ColumnFile. It keeps the page of every column that
+     * was read last, so that fields of consecutive rows do not each go to
+     * the BufferPool.
+     */
+    private class ColumnScan implements DbFileIterator {
+        private final TransactionId tid;
+        private final Set<Integer> columns;
+        private final ColumnPage[] pages = new ColumnPage[td.numFields()];
+        private int row = -1;
+        private int numRows = 0;
+
+        ColumnScan(TransactionId tid, Set<Integer> columns) {
+            this.tid = tid;
+            this.columns = columns;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            row = 0;
+            numRows = numRows(tid);
+        }
+
+        public boolean hasNext() {
+            return row >= 0 && row < numRows;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            Tuple t = new Tuple(td);
+            for (int column = 0; column < td.numFields(); column++) {
+                if (null == columns || columns.contains(column))
+                    t.setField(column, value(column, row));
+            }
+            int perPage = ColumnPage.valuesPerPage(td.getType(0));
+            t.setRecordId(new RecordId(new ColumnPageId(getId(), 0, row / perPage), row));
+            row++;
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            open();
+        }
+
+        public void close() {
+            row = -1;
+            for (int column = 0; column < pages.length; column++)
+                pages[column] = null;
+        }
+
+        /** Reads the value of the given column of the given row. */
+        private Field value(int column, int row) throws DbException, TransactionAbortedException {
+            int perPage = ColumnPage.valuesPerPage(td.getType(column));
+            int pageNo = row / perPage;
+            ColumnPage page = pages[column];
+            if (null == page || page.getId().pageno() != pageNo) {
+                page = getPage(tid, column, pageNo, Permissions.READ_ONLY);
+                pages[column] = page;
+            }
+            return page.getValue(row % perPage);
+        }
+    }
+}
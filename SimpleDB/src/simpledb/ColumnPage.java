@@ -0,0 +1,126 @@
+package simpledb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * ColumnPage stores a page of one column of a {@link ColumnFile}: the
+ * values of consecutive rows for that column, one after the other.
+ * <p>
+ * A page starts with an int holding the number of values on it, followed by
+ * the values in their fixed-width on-disk format (see {@link Type#getLen}).
+ * Values are only ever appended. An all-zero page is a valid empty page.
+ */
+public class ColumnPage implements Page {
+
+    static final int HEADER_SIZE = 4;
+
+    private final ColumnPageId pid;
+    private final Type type;
+    private final ByteBuffer data;
+    private byte[] oldData;
+    private TransactionId dirtier = null;
+
+    /**
+     * Create a ColumnPage from a set of bytes of data read from disk.
+     */
+    public ColumnPage(ColumnPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.type = Database.getCatalog().getTupleDesc(id.getTableId()).getType(id.column());
+        this.data = ByteBuffer.wrap(data.clone());
+    }
+
+    /** @return the number of values of the given type that fit on a page */
+    public static int valuesPerPage(Type type) {
+        return (BufferPool.PAGE_SIZE - HEADER_SIZE) / type.getLen();
+    }
+
+    public ColumnPageId getId() {
+        return pid;
+    }
+
+    public synchronized byte[] getPageData() {
+        return data.array().clone();
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public synchronized ColumnPage getBeforeImage() {
+        try {
+            return new ColumnPage(pid, null != oldData ? oldData : data.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    /** @return the number of values on this page */
+    public synchronized int getNumValues() {
+        return data.getInt(0);
+    }
+
+    /** @return true if no more values fit on this page */
+    public synchronized boolean isFull() {
+        return getNumValues() == valuesPerPage(type);
+    }
+
+    /**
+     * @return the i-th value on this page
+     * @throws DbException if there is no such value
+     */
+    public synchronized Field getValue(int i) throws DbException {
+        if (i < 0 || i >= getNumValues())
+            throw new DbException("no value " + i + " on " + pid);
+
+        ByteBuffer view = data.duplicate();
+        view.position(HEADER_SIZE + i * type.getLen());
+        try {
+            return type.parse(new DataInputStream(new ByteBufferInputStream(view)));
+        } catch (ParseException e) {
+            throw new DbException("could not parse value " + i + " on " + pid);
+        }
+    }
+
+    /**
+     * Appends a value to this page.
+     * @throws DbException if the page is full or the value has the wrong type
+     */
+    public synchronized void addValue(Field value) throws DbException {
+        if (isFull())
+            throw new DbException("Page Full, no room for the value");
+        if (value.getType() != type)
+            throw new DbException("Type mismatch");
+
+        if (null == oldData)
+            oldData = getPageData();
+
+        int n = getNumValues();
+        ByteBuffer view = data.duplicate();
+        view.position(HEADER_SIZE + n * type.getLen());
+        try {
+            DataOutputStream dos = new DataOutputStream(new ByteBufferOutputStream(view));
+            value.serialize(dos);
+            dos.flush();
+        } catch (IOException e) {
+            throw new DbException("could not serialize value: " + e.getMessage());
+        }
+        data.putInt(0, n + 1);
+    }
+}
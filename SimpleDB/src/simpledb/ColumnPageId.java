@@ -0,0 +1,68 @@
+package simpledb;
+
+/** Unique identifier for ColumnPage objects: a page of one column of a table. */
+public class ColumnPageId implements PageId {
+
+    private final int tableId;
+    private final int column;
+    private final int pgNo;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific column of a table.
+     *
+     * @param tableId The table that is being referenced
+     * @param column The column of that table.
+     * @param pgNo The page number in that column.
+     */
+    public ColumnPageId(int tableId, int column, int pgNo) {
+        this.tableId = tableId;
+        this.column = column;
+        this.pgNo = pgNo;
+    }
+
+    /** @return the table associated with this PageId */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the column of the table this page belongs to */
+    public int column() {
+        return column;
+    }
+
+    /**
+     * @return the page number in the column associated with this PageId
+     */
+    public int pageno() {
+        return pgNo;
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.
+     */
+    public int[] serialize() {
+        return new int[]{tableId, column, pgNo};
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + pgNo;
+        result = prime * result + column;
+        result = prime * result + tableId;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof ColumnPageId))
+            return false;
+        ColumnPageId other = (ColumnPageId) obj;
+        return pgNo == other.pgNo && column == other.column && tableId == other.tableId;
+    }
+}
@@ -0,0 +1,361 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Page storage of a compressed HeapFile: every page is deflated before it
+ * is written to the table file, and a page-offset index kept in a sidecar
+ * file (the table file name plus {@link #SUFFIX}) tells where the record of
+ * each page starts, how many bytes are reserved for it and how many it
+ * uses.
+ * <p>
+ * A page is never written over its current record. Every write stores the
+ * new record in free space -- the first free extent of the table file that
+ * is large enough, or else the end of the file -- and then updates the
+ * index entry of the page, so an interrupted write leaves the index
+ * pointing at the previous, intact record. Only then does the extent of
+ * the previous record become free for later writes. Free extents are not
+ * stored: they are the gaps between the records the index points at, and
+ * are found again when the index is loaded. The table file does not shrink
+ * (except by {@link #truncate}), but it only grows when no free extent fits.
+ * <p>
+ * A page that does not shrink when deflated is stored as is; a record of
+ * {@link BufferPool#PAGE_SIZE} bytes is a raw page. A table file that has no
+ * index (for example one written by {@link HeapFileEncoder}) is taken to be
+ * a file of raw pages, so it can be opened in compressed mode and becomes
+ * compressed as its pages are written.
+ *
+ * @see HeapFile
+ */
+class CompressedPageStore {
+
+    /** Suffix of the sidecar file that holds the page-offset index. */
+    static final String SUFFIX = ".idx";
+
+    /** Bytes per index entry: a long offset, an int capacity and an int length. */
+    static final int ENTRY_SIZE = 16;
+
+    /** Records take a multiple of this many bytes, so free extents do not get too small to use. */
+    static final int EXTENT_ALIGNMENT = 64;
+
+    private final File file;
+    private final File indexFile;
+    private long[] offsets = null;
+    private int[] capacities;
+    private int[] lengths;
+    private int numPages;
+    private long end;
+    // offset -> size of the extents no record uses, before end
+    private final TreeMap<Long, Long> free = new TreeMap<Long, Long>();
+    private FileChannel channel = null;
+    private FileChannel indexChannel = null;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final byte[] deflated = new byte[BufferPool.PAGE_SIZE];
+    private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+
+    private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    /**
+     * @param file the table file the pages are stored in
+     */
+    CompressedPageStore(File file) {
+        this.file = file;
+        this.indexFile = sidecarOf(file);
+    }
+
+    /** @return the index sidecar of the given table file */
+    static File sidecarOf(File heapFile) {
+        return new File(heapFile.getPath() + SUFFIX);
+    }
+
+    /** @return the number of pages that have been written */
+    synchronized int numPages() throws IOException {
+        load();
+        return numPages;
+    }
+
+    /**
+     * @return the number of bytes the table file takes on disk, including
+     *   free extents
+     */
+    synchronized long sizeOnDisk() throws IOException {
+        load();
+        return end;
+    }
+
+    /**
+     * Reads the specified page into the given PAGE_SIZE buffer. A page that
+     * has not been written reads as zero.
+     */
+    void readPage(int pageNo, ByteBuffer frame) throws IOException {
+        long offset;
+        int length;
+        synchronized (this) {
+            load();
+            offset = pageNo < numPages ? offsets[pageNo] : -1;
+            length = pageNo < numPages ? lengths[pageNo] : 0;
+        }
+
+        ByteBuffer page = frame.duplicate();
+        page.clear();
+        if (0 == length) {
+            while (page.hasRemaining())
+                page.put((byte) 0);
+            return;
+        }
+
+        // a raw page is read straight into the frame
+        ByteBuffer record = BufferPool.PAGE_SIZE == length ? page : ByteBuffer.allocate(length);
+        FileChannel fileChannel = channel();
+        while (record.hasRemaining()) {
+            if (-1 == fileChannel.read(record, offset + record.position()))
+                throw new IOException("page " + pageNo + " of " + file + " is truncated");
+        }
+        if (record == page)
+            return;
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(record.array(), 0, length);
+        byte[] image = page.hasArray() ? page.array() : new byte[BufferPool.PAGE_SIZE];
+        int imageOffset = page.hasArray() ? page.arrayOffset() : 0;
+        try {
+            int inflated = 0;
+            while (inflated < BufferPool.PAGE_SIZE && !inflater.finished())
+                inflated += inflater.inflate(image, imageOffset + inflated, BufferPool.PAGE_SIZE - inflated);
+            if (BufferPool.PAGE_SIZE != inflated)
+                throw new IOException("page " + pageNo + " of " + file + " is corrupt");
+        } catch (DataFormatException e) {
+            throw new IOException("page " + pageNo + " of " + file + " is corrupt: " + e.getMessage());
+        }
+        if (!page.hasArray())
+            page.put(image);
+    }
+
+    /**
+     * Compresses and writes the given page image to free space, then updates
+     * its entry in the index and frees its previous record.
+     */
+    synchronized void writePage(int pageNo, byte[] image) throws IOException {
+        load();
+        createIndex();
+
+        deflater.reset();
+        deflater.setInput(image, 0, BufferPool.PAGE_SIZE);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished() && length < deflated.length)
+            length += deflater.deflate(deflated, length, deflated.length - length);
+
+        byte[] record = deflated;
+        if (!deflater.finished() || length >= BufferPool.PAGE_SIZE) {
+            record = image;
+            length = BufferPool.PAGE_SIZE;
+        }
+
+        if (pageNo >= offsets.length)
+            grow(Math.max(2 * offsets.length, pageNo + 1));
+        int capacity = (length + EXTENT_ALIGNMENT - 1) / EXTENT_ALIGNMENT * EXTENT_ALIGNMENT;
+        long offset = allocate(capacity);
+
+        ByteBuffer buffer = ByteBuffer.wrap(record, 0, length);
+        FileChannel fileChannel = channel();
+        while (buffer.hasRemaining())
+            fileChannel.write(buffer, offset + buffer.position());
+
+        long oldOffset = pageNo < numPages ? offsets[pageNo] : 0;
+        int oldCapacity = pageNo < numPages ? capacities[pageNo] : 0;
+        // pages that were never written read as zero
+        for (int p = numPages; p < pageNo; p++)
+            persist(p, 0, 0, 0);
+        persist(pageNo, offset, capacity, length);
+        numPages = Math.max(numPages, pageNo + 1);
+        release(oldOffset, oldCapacity);
+    }
+
+    /**
+     * Takes an extent of the given size from the first free extent that is
+     * large enough, or from the end of the file.
+     *
+     * @return the offset of the extent
+     */
+    private long allocate(int size) {
+        for (Map.Entry<Long, Long> extent : free.entrySet()) {
+            if (extent.getValue() < size)
+                continue;
+            long offset = extent.getKey();
+            long remaining = extent.getValue() - size;
+            free.remove(offset);
+            if (remaining > 0)
+                free.put(offset + size, remaining);
+            return offset;
+        }
+
+        long offset = end;
+        end += size;
+        return offset;
+    }
+
+    /**
+     * Adds an extent no record uses any more to the free extents, merging
+     * it with the free extents next to it.
+     */
+    private void release(long offset, long size) {
+        if (0 == size)
+            return;
+
+        SortedMap<Long, Long> before = free.headMap(offset);
+        if (!before.isEmpty()) {
+            long previous = before.lastKey();
+            if (previous + before.get(previous) == offset) {
+                size += free.remove(previous);
+                offset = previous;
+            }
+        }
+        Long next = free.remove(offset + size);
+        if (null != next)
+            size += next;
+        free.put(offset, size);
+    }
+
+    /**
+     * Recomputes end and the free extents from the records of the pages.
+     */
+    private void findFreeExtents() {
+        TreeMap<Long, Integer> records = new TreeMap<Long, Integer>();
+        for (int p = 0; p < numPages; p++) {
+            if (capacities[p] > 0)
+                records.put(offsets[p], capacities[p]);
+        }
+
+        free.clear();
+        end = 0;
+        for (Map.Entry<Long, Integer> record : records.entrySet()) {
+            if (record.getKey() > end)
+                free.put(end, record.getKey() - end);
+            end = record.getKey() + record.getValue();
+        }
+    }
+
+    /**
+     * Drops all pages at or after pageNo, and the records at the end of the
+     * table file that only they used.
+     */
+    synchronized void truncate(int pageNo) throws IOException {
+        load();
+        if (pageNo >= numPages)
+            return;
+
+        createIndex();
+        numPages = pageNo;
+        findFreeExtents();
+        indexChannel().truncate((long) numPages * ENTRY_SIZE);
+        if (channel().size() > end)
+            channel().truncate(end);
+    }
+
+    /**
+     * Writes the entries of a table file of raw pages to a new index, before
+     * the index is first updated.
+     */
+    private void createIndex() throws IOException {
+        if (indexFile.exists())
+            return;
+        for (int p = 0; p < numPages; p++)
+            persist(p, offsets[p], capacities[p], lengths[p]);
+        indexChannel();
+    }
+
+    private void persist(int pageNo, long offset, int capacity, int length) throws IOException {
+        offsets[pageNo] = offset;
+        capacities[pageNo] = capacity;
+        lengths[pageNo] = length;
+
+        entry.clear();
+        entry.putLong(offset).putInt(capacity).putInt(length);
+        entry.flip();
+        FileChannel fileChannel = indexChannel();
+        while (entry.hasRemaining())
+            fileChannel.write(entry, (long) pageNo * ENTRY_SIZE + entry.position());
+    }
+
+    private void grow(int size) {
+        long[] grownOffsets = new long[size];
+        int[] grownCapacities = new int[size];
+        int[] grownLengths = new int[size];
+        System.arraycopy(offsets, 0, grownOffsets, 0, numPages);
+        System.arraycopy(capacities, 0, grownCapacities, 0, numPages);
+        System.arraycopy(lengths, 0, grownLengths, 0, numPages);
+        offsets = grownOffsets;
+        capacities = grownCapacities;
+        lengths = grownLengths;
+    }
+
+    /**
+     * Reads the index on first use, or describes a table file without one
+     * as raw pages.
+     */
+    private void load() throws IOException {
+        if (null != offsets)
+            return;
+
+        if (!indexFile.exists()) {
+            numPages = (int) (file.length() / BufferPool.PAGE_SIZE);
+            offsets = new long[Math.max(16, numPages)];
+            capacities = new int[offsets.length];
+            lengths = new int[offsets.length];
+            for (int p = 0; p < numPages; p++) {
+                offsets[p] = (long) p * BufferPool.PAGE_SIZE;
+                capacities[p] = lengths[p] = BufferPool.PAGE_SIZE;
+            }
+            end = (long) numPages * BufferPool.PAGE_SIZE;
+            return;
+        }
+
+        FileChannel fileChannel = indexChannel();
+        ByteBuffer index = ByteBuffer.allocate((int) fileChannel.size());
+        while (index.hasRemaining()) {
+            if (-1 == fileChannel.read(index, index.position()))
+                break;
+        }
+        index.flip();
+
+        numPages = index.remaining() / ENTRY_SIZE;
+        offsets = new long[Math.max(16, numPages)];
+        capacities = new int[offsets.length];
+        lengths = new int[offsets.length];
+        for (int p = 0; p < numPages; p++) {
+            offsets[p] = index.getLong();
+            capacities[p] = index.getInt();
+            lengths[p] = index.getInt();
+        }
+        findFreeExtents();
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (null == channel || !channel.isOpen())
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        return channel;
+    }
+
+    private FileChannel indexChannel() throws IOException {
+        if (null == indexChannel || !indexChannel.isOpen())
+            indexChannel = new RandomAccessFile(indexFile, "rw").getChannel();
+        return indexChannel;
+    }
+}
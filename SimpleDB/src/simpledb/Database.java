@@ -53,6 +53,7 @@ public class Database {
         buffer pool and return it
     */
     public static BufferPool resetBufferPool(int pages) {
+        shutdownBufferPool();
         _instance._bufferpool = new BufferPool(pages);
         Database.getLocktable().reset();
         return _instance._bufferpool;
@@ -60,9 +61,19 @@ public class Database {
 
     //reset the database, used for unit tests only.
     public static void reset() {
+    	shutdownBufferPool();
     	_instance = new Database();
     }
 
+    /** stop the background writer of the current buffer pool, if any */
+    private static void shutdownBufferPool() {
+        try {
+            _instance._bufferpool.shutdown();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
 	public static Locktable getLocktable() {
 		return _lockTable;
 	}
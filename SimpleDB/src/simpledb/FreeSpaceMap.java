@@ -0,0 +1,180 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Approximate number of free slots on each page of a HeapFile, so that
+ * inserts can go straight to a page with room instead of probing every
+ * page through the BufferPool.
+ * <p>
+ * The map keeps one byte per page: 0 if nothing is known about the page,
+ * 1 if the page is full, and otherwise the fraction of free slots scaled to
+ * 2..255. It is persisted in a sidecar file next to the table (the table
+ * file name plus {@link #SUFFIX}); the entry of a page is written there
+ * whenever the page itself is written, so the sidecar describes what is on
+ * disk. Entries are only hints: an insert still checks the page it is sent
+ * to, and corrects the entry if it was wrong.
+ *
+ * @see HeapFile#addTuple
+ */
+class FreeSpaceMap {
+
+    /** Suffix of the sidecar file that holds the map. */
+    static final String SUFFIX = ".fsm";
+
+    private static final int UNKNOWN = 0;
+    private static final int FULL = 1;
+    private static final int LEVELS = 254;
+
+    private final File heapFile;
+    private final File file;
+    private final int slotsPerPage;
+    private byte[] entries = null;
+    private FileChannel channel = null;
+
+    /**
+     * @param heapFile the table file the map describes
+     * @param slotsPerPage the number of tuple slots on a page of the table
+     */
+    FreeSpaceMap(File heapFile, int slotsPerPage) {
+        this.heapFile = heapFile;
+        this.file = sidecarOf(heapFile);
+        this.slotsPerPage = slotsPerPage;
+    }
+
+    /** @return the sidecar file of the given table file */
+    static File sidecarOf(File heapFile) {
+        return new File(heapFile.getPath() + SUFFIX);
+    }
+
+    /** @return the sidecar file this map is persisted in */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the first page at or after pageNo that may have a free slot:
+     * a page the map believes has room, or one it knows nothing about.
+     */
+    synchronized int findPage(int pageNo) throws IOException {
+        load();
+        for (int p = pageNo; p < entries.length; p++) {
+            if (FULL != (entries[p] & 0xff))
+                return p;
+        }
+        return Math.max(pageNo, entries.length);
+    }
+
+    /**
+     * @return the approximate number of free slots on the page, or -1 if
+     *   nothing is known about it
+     */
+    synchronized int freeSlots(int pageNo) throws IOException {
+        load();
+        int entry = pageNo < entries.length ? entries[pageNo] & 0xff : UNKNOWN;
+        if (UNKNOWN == entry)
+            return -1;
+        return (entry - FULL) * slotsPerPage / LEVELS;
+    }
+
+    /**
+     * Records the number of free slots on a page that is in memory.
+     */
+    synchronized void update(int pageNo, int freeSlots) throws IOException {
+        load();
+        grow(pageNo);
+        entries[pageNo] = encode(freeSlots);
+    }
+
+    /**
+     * Records the number of free slots on a page that has just been written
+     * to disk, and writes its entry to the sidecar.
+     */
+    synchronized void persist(int pageNo, int freeSlots) throws IOException {
+        update(pageNo, freeSlots);
+        ByteBuffer entry = ByteBuffer.wrap(entries, pageNo, 1);
+        channel().write(entry, pageNo);
+    }
+
+    /**
+     * Writes the entries of the first pages pages to the sidecar in one go,
+     * for a table file that has just been written in full.
+     */
+    synchronized void save(int pages) throws IOException {
+        load();
+        if (pages > 0)
+            grow(pages - 1);
+        FileChannel fileChannel = channel();
+        ByteBuffer buffer = ByteBuffer.wrap(entries, 0, pages);
+        while (buffer.hasRemaining())
+            fileChannel.write(buffer, buffer.position());
+        fileChannel.truncate(pages);
+    }
+
+    /**
+     * Forgets the entries of all pages at or after pageNo, for a table file
+     * that has been truncated to pageNo pages.
+     */
+    synchronized void truncate(int pageNo) throws IOException {
+        load();
+        for (int p = pageNo; p < entries.length; p++)
+            entries[p] = UNKNOWN;
+        if (file.exists() && channel().size() > pageNo)
+            channel().truncate(pageNo);
+    }
+
+    private void grow(int pageNo) {
+        if (pageNo < entries.length)
+            return;
+        byte[] grown = new byte[Math.max(2 * entries.length, pageNo + 1)];
+        System.arraycopy(entries, 0, grown, 0, entries.length);
+        entries = grown;
+    }
+
+    private byte encode(int freeSlots) {
+        if (freeSlots <= 0)
+            return (byte) FULL;
+        // round up, so a page with one free slot is not mistaken for full
+        int level = (freeSlots * LEVELS + slotsPerPage - 1) / slotsPerPage;
+        return (byte) (FULL + Math.min(LEVELS, level));
+    }
+
+    /**
+     * Reads the sidecar on first use. Entries for pages that are no longer
+     * in the table file are dropped, as they describe a file that has since
+     * been truncated or rewritten.
+     */
+    private void load() throws IOException {
+        if (null != entries)
+            return;
+
+        int pagesOnDisk = pagesOnDisk();
+        entries = new byte[Math.max(16, pagesOnDisk)];
+        if (!file.exists())
+            return;
+
+        FileChannel fileChannel = channel();
+        ByteBuffer buffer = ByteBuffer.wrap(entries, 0, (int) Math.min(pagesOnDisk, fileChannel.size()));
+        while (buffer.hasRemaining()) {
+            if (-1 == fileChannel.read(buffer, buffer.position()))
+                break;
+        }
+        if (fileChannel.size() > pagesOnDisk)
+            fileChannel.truncate(pagesOnDisk);
+    }
+
+    /** @return the number of whole pages in the table file */
+    int pagesOnDisk() throws IOException {
+        return (int) (heapFile.length() / BufferPool.PAGE_SIZE);
+    }
+
+    private FileChannel channel() throws IOException {
+        if (null == channel || !channel.isOpen())
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        return channel;
+    }
+}
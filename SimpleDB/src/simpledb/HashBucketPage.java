@@ -0,0 +1,195 @@
+package simpledb;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * A bucket page of a {@link HashFile}. It holds, in no particular order, the
+ * entries of the index whose keys hash to the directory slots that point to
+ * it: each entry is a serialized key followed by the RecordId (page number
+ * and slot) of a tuple of the indexed table.
+ * <p>
+ * The kind byte is followed by an int holding the number of entries, an
+ * int holding the local depth of the bucket (the number of low hash bits
+ * all its keys share) and the page number of its overflow page, or 0. A
+ * bucket only overflows when all of its keys have the same hash, so that
+ * splitting it would not make room.
+ */
+public class HashBucketPage extends HashPage {
+
+    static final int HEADER_SIZE = 13;
+
+    private final Type keyType;
+    private final int keyLen;
+    private final int entrySize;
+
+    /**
+     * Create a HashBucketPage from a set of bytes of data read from disk.
+     */
+    public HashBucketPage(HashPageId id, byte[] data) throws IOException {
+        super(id, data);
+        this.keyType = keyTypeOf(id);
+        this.keyLen = keyType.getLen();
+        this.entrySize = keyLen + 8;
+    }
+
+    /** @return the key type of the HashFile the page belongs to */
+    private static Type keyTypeOf(HashPageId id) {
+        return ((HashFile) Database.getCatalog().getDbFile(id.getTableId())).getKeyType();
+    }
+
+    /** @return the number of entries on this page */
+    public synchronized int getNumEntries() {
+        return data.getInt(1);
+    }
+
+    /** @return the number of entries that fit on a page */
+    public int getMaxEntries() {
+        return (BufferPool.PAGE_SIZE - HEADER_SIZE) / entrySize;
+    }
+
+    /** @return true if no more entries fit on this page */
+    public synchronized boolean isFull() {
+        return getNumEntries() == getMaxEntries();
+    }
+
+    /** @return the number of low hash bits the keys on this page share */
+    public synchronized int getLocalDepth() {
+        return data.getInt(5);
+    }
+
+    public synchronized void setLocalDepth(int depth) {
+        captureBeforeImage();
+        data.putInt(5, depth);
+    }
+
+    /** @return the page number of the overflow page, or 0 if there is none */
+    public synchronized int getOverflow() {
+        return data.getInt(9);
+    }
+
+    public synchronized void setOverflow(int pageNo) {
+        captureBeforeImage();
+        data.putInt(9, pageNo);
+    }
+
+    private int entryOffset(int i) {
+        return HEADER_SIZE + i * entrySize;
+    }
+
+    /** @return the key of the i-th entry */
+    public synchronized Field getKey(int i) {
+        ByteBuffer view = data.duplicate();
+        view.position(entryOffset(i));
+        try {
+            return keyType.parse(new DataInputStream(new ByteBufferInputStream(view)));
+        } catch (ParseException e) {
+            throw new IllegalStateException("could not parse key " + i + " on " + pid);
+        }
+    }
+
+    /** @return the hash of the key of the i-th entry */
+    public synchronized int getHash(int i) {
+        return HashFile.hash(data, entryOffset(i), keyLen);
+    }
+
+    /** @return the page number of the RecordId of the i-th entry */
+    public synchronized int getRecordPage(int i) {
+        return data.getInt(entryOffset(i) + keyLen);
+    }
+
+    /** @return the slot of the RecordId of the i-th entry */
+    public synchronized int getRecordSlot(int i) {
+        return data.getInt(entryOffset(i) + keyLen + 4);
+    }
+
+    /**
+     * @param key a serialized key
+     * @return true if the key of the i-th entry is the given one
+     */
+    public synchronized boolean keyEquals(int i, byte[] key) {
+        int offset = entryOffset(i);
+        for (int j = 0; j < keyLen; j++) {
+            if (data.get(offset + j) != key[j])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param key a serialized key
+     * @return the position of the entry (key, recordPage, recordSlot), or -1
+     *   if the page does not hold it
+     */
+    public synchronized int find(byte[] key, int recordPage, int recordSlot) {
+        for (int i = 0; i < getNumEntries(); i++) {
+            if (getRecordPage(i) == recordPage && getRecordSlot(i) == recordSlot && keyEquals(i, key))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the keys of all entries on this page have the given hash
+     */
+    public synchronized boolean allHash(int hash) {
+        for (int i = 0; i < getNumEntries(); i++) {
+            if (getHash(i) != hash)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds an entry to the end of this page.
+     *
+     * @param key a serialized key
+     * @throws IllegalStateException if the page is full
+     */
+    public synchronized void insertEntry(byte[] key, int recordPage, int recordSlot) {
+        int n = getNumEntries();
+        if (n == getMaxEntries())
+            throw new IllegalStateException("page " + pid.pageno() + " is full");
+        captureBeforeImage();
+        int offset = entryOffset(n);
+        ByteBuffer view = data.duplicate();
+        view.position(offset);
+        view.put(key, 0, keyLen);
+        data.putInt(offset + keyLen, recordPage);
+        data.putInt(offset + keyLen + 4, recordSlot);
+        data.putInt(1, n + 1);
+    }
+
+    /**
+     * Removes the i-th entry from this page; the last entry takes its place.
+     */
+    public synchronized void deleteEntry(int i) {
+        int n = getNumEntries();
+        captureBeforeImage();
+        byte[] bytes = data.array();
+        System.arraycopy(bytes, entryOffset(n - 1), bytes, entryOffset(i), entrySize);
+        data.putInt(1, n - 1);
+    }
+
+    /**
+     * Moves the entries whose hash has the given bit set to an empty bucket.
+     */
+    public synchronized void split(int bit, HashBucketPage to) {
+        captureBeforeImage();
+        to.captureBeforeImage();
+        byte[] bytes = data.array();
+        int n = getNumEntries();
+        int kept = 0;
+        int moved = 0;
+        for (int i = 0; i < n; i++) {
+            if (0 != (getHash(i) & (1 << bit)))
+                System.arraycopy(bytes, entryOffset(i), to.data.array(), to.entryOffset(moved++), entrySize);
+            else
+                System.arraycopy(bytes, entryOffset(i), bytes, entryOffset(kept++), entrySize);
+        }
+        data.putInt(1, kept);
+        to.data.putInt(1, moved);
+    }
+}
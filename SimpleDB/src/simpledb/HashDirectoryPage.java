@@ -0,0 +1,43 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * A directory page of a {@link HashFile}: an array of page numbers,
+ * following the kind byte and an int holding the depth of the directory.
+ * Only the first directory page of a file, page 0, uses the depth.
+ */
+public class HashDirectoryPage extends HashPage {
+
+    static final int HEADER_SIZE = 5;
+
+    /** The number of page numbers a directory page holds. */
+    public static final int ENTRIES_PER_PAGE = (BufferPool.PAGE_SIZE - HEADER_SIZE) / 4;
+
+    /**
+     * Create a HashDirectoryPage from a set of bytes of data read from disk.
+     */
+    public HashDirectoryPage(HashPageId id, byte[] data) throws IOException {
+        super(id, data);
+    }
+
+    /** @return the depth of the directory */
+    public synchronized int getDepth() {
+        return data.getInt(1);
+    }
+
+    public synchronized void setDepth(int depth) {
+        captureBeforeImage();
+        data.putInt(1, depth);
+    }
+
+    /** @return the i-th page number, 0 <= i < ENTRIES_PER_PAGE */
+    public synchronized int getEntry(int i) {
+        return data.getInt(HEADER_SIZE + i * 4);
+    }
+
+    public synchronized void setEntry(int i, int pageNo) {
+        captureBeforeImage();
+        data.putInt(HEADER_SIZE + i * 4, pageNo);
+    }
+}
@@ -0,0 +1,551 @@
+package simpledb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+/**
+ * HashFile is an extendible hashing index on one column of a HeapFile, for
+ * equality lookups. Its entries, (key, RecordId) pairs, are kept in
+ * {@link HashBucketPage}s; a directory of 2^depth slots maps the low depth
+ * bits of the hash of a key to the bucket that holds its entries. All pages
+ * are read and written through the BufferPool, so index changes commit and
+ * abort with the transaction that makes them.
+ * <p>
+ * Page 0 of the file is a {@link HashDirectoryPage} holding the depth of the
+ * directory and the page numbers of the directory pages, each of which
+ * holds {@link HashDirectoryPage#ENTRIES_PER_PAGE} slots. An empty file is
+ * an empty index: page 0 reads as a directory of depth 0 on page 1, whose
+ * only slot points to page 2, an empty bucket.
+ * <p>
+ * A full bucket is split in two on the next hash bit, and the directory
+ * doubles when the bucket already uses all of its bits. A bucket whose keys
+ * all have the same hash, or that has reached {@link #MAX_DEPTH}, gets an
+ * overflow page instead. Buckets are not merged when entries are removed.
+ * <p>
+ * The index is usually kept in the file the table file name plus
+ * {@link #SUFFIX} and the field number (see {@link #fileOf}), which is how
+ * the "hash" column annotation of {@link Catalog#loadSchema} names it.
+ *
+ * @see HashLookup
+ */
+public class HashFile implements IndexFile {
+
+    /** Suffix of the hash index files of the columns of a table file. */
+    public static final String SUFFIX = ".hash";
+
+    /**
+     * The largest directory depth, with which the page numbers of the
+     * directory pages still fit on page 0.
+     */
+    public static final int MAX_DEPTH = 19;
+
+    private final File f;
+    private final HeapFile table;
+    private final int keyField;
+    private final Type keyType;
+    private int numPages;
+    private FileChannel channel = null;
+    private final Object channelLock = new Object();
+
+    /**
+     * Constructs an index on a column of a table, stored in the given file.
+     *
+     * @param f the file the index is stored in
+     * @param table the table the index is on
+     * @param keyField the column of the table the index is on
+     */
+    public HashFile(File f, HeapFile table, int keyField) {
+        this.f = f;
+        this.table = table;
+        this.keyField = keyField;
+        this.keyType = table.getTupleDesc().getType(keyField);
+        this.numPages = 3;
+    }
+
+    /** @return the hash index file of the given column of a table file */
+    public static File fileOf(File tableFile, int field) {
+        return new File(tableFile.getPath() + SUFFIX + field);
+    }
+
+    /**
+     * Returns the File backing this HashFile on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    // see DbFile.java for javadocs
+    public int getId() {
+        return f.getAbsoluteFile().hashCode();
+    }
+
+    // see DbFile.java for javadocs
+    public TupleDesc getTupleDesc() {
+        return table.getTupleDesc();
+    }
+
+    // see IndexFile.java for javadocs
+    public int getTableId() {
+        return table.getId();
+    }
+
+    // see IndexFile.java for javadocs
+    public int getKeyField() {
+        return keyField;
+    }
+
+    /** @return the type of the keys of this index */
+    public Type getKeyType() {
+        return keyType;
+    }
+
+    /**
+     * Returns the number of pages of this file, including pages that have
+     * been added but not written yet.
+     */
+    public synchronized int numPages() {
+        return Math.max(numPages, (int) (f.length() / BufferPool.PAGE_SIZE));
+    }
+
+    private FileChannel channel() throws IOException {
+        // not the monitor of this file, see BTreeFile
+        synchronized (channelLock) {
+            if (null == channel || !channel.isOpen())
+                channel = new RandomAccessFile(f, "rw").getChannel();
+            return channel;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId id) {
+        HashPageId pid = (HashPageId) id;
+        ByteBuffer buffer = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+        long position = (long) pid.pageno() * BufferPool.PAGE_SIZE;
+        try {
+            // bytes past the end of the file read as zero, an empty bucket
+            FileChannel fileChannel = channel();
+            while (buffer.hasRemaining()) {
+                if (-1 == fileChannel.read(buffer, position + buffer.position()))
+                    break;
+            }
+            byte[] data = buffer.array();
+            if (pid.pageno() < 2 && HashPage.BUCKET == data[0]) {
+                // a new index: page 0 points to the directory on page 1,
+                // whose only slot points to the empty bucket on page 2
+                data = HashPage.createEmptyPageData(HashPage.DIRECTORY);
+                ByteBuffer.wrap(data).putInt(HashDirectoryPage.HEADER_SIZE, pid.pageno() + 1);
+            }
+            return HashPage.create(pid, data);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        writeImage(page.getId().pageno(), page.getPageData());
+    }
+
+    private void writeImage(int pageNo, byte[] image) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(image);
+        long position = (long) pageNo * BufferPool.PAGE_SIZE;
+        FileChannel fileChannel = channel();
+        while (buffer.hasRemaining())
+            fileChannel.write(buffer, position + buffer.position());
+    }
+
+    /**
+     * Adds an empty page of the given kind to the end of the file. The page
+     * is written right away, so that an aborted transaction leaves an empty
+     * page behind and not a hole.
+     *
+     * @return the page number of the new page
+     */
+    private synchronized int allocatePage(byte kind) throws IOException {
+        int pageNo = numPages();
+        writeImage(pageNo, HashPage.createEmptyPageData(kind));
+        numPages = pageNo + 1;
+        return pageNo;
+    }
+
+    private HashPage getPage(TransactionId tid, int pageNo, Permissions perm)
+        throws DbException, TransactionAbortedException {
+        HashPageId pid = new HashPageId(getId(), pageNo);
+        return (HashPage) Database.getBufferPool().getPage(tid, pid, perm);
+    }
+
+    /**
+     * Records a page that tid has modified on behalf of the tuple t, so that
+     * it is written when tid commits and reloaded when it aborts.
+     */
+    private void modified(TransactionId tid, Tuple t, HashPage page, ArrayList<Page> pagesModified) {
+        Database.getLocktable().getLock(page.getId(), t, tid);
+        try {
+            page.markDirty(true, tid);
+        } finally {
+            Database.getLocktable().releaseLock(page.getId(), t, tid);
+        }
+        if (!pagesModified.contains(page))
+            pagesModified.add(page);
+    }
+
+    /**
+     * Hashes a serialized key. The directory is indexed by the low bits of
+     * the hash, so the FNV-1a hash of the key is mixed (as by the MurmurHash3
+     * finalizer) first: on short keys, none of its bits depends on all
+     * bits of the key.
+     */
+    static int hash(ByteBuffer buffer, int offset, int length) {
+        long hash = BloomFilterMap.hash(buffer, offset, length);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    /** @return the serialized form of a key, as it is stored in buckets */
+    static byte[] serialize(Field key) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(key.getType().getLen());
+        try {
+            DataOutputStream dos = new DataOutputStream(bytes);
+            key.serialize(dos);
+            dos.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("could not serialize key: " + e.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the page number of the bucket that directory slot s points to
+     */
+    private int getSlot(TransactionId tid, HashDirectoryPage header, int s, Permissions perm)
+        throws DbException, TransactionAbortedException {
+        int pageNo = header.getEntry(s / HashDirectoryPage.ENTRIES_PER_PAGE);
+        HashDirectoryPage directory = (HashDirectoryPage) getPage(tid, pageNo, perm);
+        return directory.getEntry(s % HashDirectoryPage.ENTRIES_PER_PAGE);
+    }
+
+    private void setSlot(TransactionId tid, Tuple t, HashDirectoryPage header, int s, int bucket,
+            ArrayList<Page> pagesModified)
+        throws DbException, TransactionAbortedException {
+        int pageNo = header.getEntry(s / HashDirectoryPage.ENTRIES_PER_PAGE);
+        HashDirectoryPage directory = (HashDirectoryPage) getPage(tid, pageNo, Permissions.READ_WRITE);
+        directory.setEntry(s % HashDirectoryPage.ENTRIES_PER_PAGE, bucket);
+        modified(tid, t, directory, pagesModified);
+    }
+
+    /** @return the directory slot of a hash in a directory of the given depth */
+    private static int slotOf(int hash, int depth) {
+        return hash & ((1 << depth) - 1);
+    }
+
+    /**
+     * @return the first page of the bucket that holds the entries of keys
+     *   with the given hash
+     */
+    private HashBucketPage findBucket(TransactionId tid, int hash, Permissions perm)
+        throws DbException, TransactionAbortedException {
+        HashDirectoryPage header = (HashDirectoryPage) getPage(tid, 0, perm);
+        int slot = slotOf(hash, header.getDepth());
+        return (HashBucketPage) getPage(tid, getSlot(tid, header, slot, perm), perm);
+    }
+
+    /**
+     * Adds the entry of a tuple of the table to the index.
+     *
+     * @param t a tuple with its RecordId in the table
+     * @see DbFile#addTuple
+     */
+    public synchronized ArrayList<Page> addTuple(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (null == rid)
+            throw new DbException("tuple is not stored in the table");
+        byte[] key = serialize(t.getField(keyField));
+        int hash = hash(ByteBuffer.wrap(key), 0, key.length);
+        int recordPage = rid.getPageId().pageno();
+        int recordSlot = rid.tupleno();
+        ArrayList<Page> pagesModified = new ArrayList<Page>();
+
+        while (true) {
+            HashBucketPage bucket = findBucket(tid, hash, Permissions.READ_WRITE);
+            HashBucketPage room = null;
+            HashBucketPage last = bucket;
+            // the keys of a bucket with overflow pages all have one hash
+            boolean otherHash = false;
+            int chainHash = hash;
+            for (HashBucketPage page = bucket; null != page; ) {
+                if (-1 != page.find(key, recordPage, recordSlot))
+                    return pagesModified;
+                if (null == room && !page.isFull())
+                    room = page;
+                if (0 != bucket.getOverflow() && !page.allHash(hash)) {
+                    otherHash = true;
+                    chainHash = page.getHash(0);
+                }
+                last = page;
+                int overflow = page.getOverflow();
+                page = 0 == overflow ? null : (HashBucketPage) getPage(tid, overflow, Permissions.READ_WRITE);
+            }
+
+            int depth = bucket.getLocalDepth();
+            if (null == room && (MAX_DEPTH == depth || bucket.allHash(hash))) {
+                // splitting would leave all entries, and this one, together
+                room = (HashBucketPage) getPage(tid, allocatePage(HashPage.BUCKET), Permissions.READ_WRITE);
+                last.setOverflow(room.getId().pageno());
+                modified(tid, t, last, pagesModified);
+            }
+            if (null != room && (!otherHash || MAX_DEPTH == depth)) {
+                room.insertEntry(key, recordPage, recordSlot);
+                modified(tid, t, room, pagesModified);
+                return pagesModified;
+            }
+            split(tid, t, hash, chainHash, bucket, pagesModified);
+        }
+    }
+
+    /**
+     * Splits the bucket that holds the entries of keys with the given hash
+     * on the next hash bit, doubling the directory if the bucket already
+     * uses all of its bits. If the bucket has overflow pages, all of its
+     * keys have one hash, chainHash, and the whole bucket goes to the half
+     * of that hash.
+     */
+    private void split(TransactionId tid, Tuple t, int hash, int chainHash, HashBucketPage bucket,
+            ArrayList<Page> pagesModified)
+        throws DbException, IOException, TransactionAbortedException {
+        HashDirectoryPage header = (HashDirectoryPage) getPage(tid, 0, Permissions.READ_WRITE);
+        int depth = bucket.getLocalDepth();
+        if (header.getDepth() == depth)
+            doubleDirectory(tid, t, header, pagesModified);
+
+        HashBucketPage other = (HashBucketPage) getPage(tid, allocatePage(HashPage.BUCKET), Permissions.READ_WRITE);
+        // the half of the slots the new bucket takes over
+        int otherBit;
+        if (0 == bucket.getOverflow()) {
+            bucket.split(depth, other);
+            otherBit = 1;
+        } else {
+            otherBit = 0 == (chainHash & (1 << depth)) ? 1 : 0;
+        }
+        bucket.setLocalDepth(depth + 1);
+        other.setLocalDepth(depth + 1);
+        modified(tid, t, bucket, pagesModified);
+        modified(tid, t, other, pagesModified);
+
+        // the slots that point to the bucket are those that end in its bits
+        int globalDepth = header.getDepth();
+        int first = slotOf(hash, depth) | (otherBit << depth);
+        for (int s = first; s < 1 << globalDepth; s += 1 << (depth + 1))
+            setSlot(tid, t, header, s, other.getId().pageno(), pagesModified);
+    }
+
+    /**
+     * Doubles the directory: the new upper half of the slots points to the
+     * same buckets as the lower half.
+     */
+    private void doubleDirectory(TransactionId tid, Tuple t, HashDirectoryPage header,
+            ArrayList<Page> pagesModified)
+        throws DbException, IOException, TransactionAbortedException {
+        int depth = header.getDepth();
+        int size = 1 << depth;
+        int pagesBefore = (size + HashDirectoryPage.ENTRIES_PER_PAGE - 1) / HashDirectoryPage.ENTRIES_PER_PAGE;
+        int pagesAfter = (2 * size + HashDirectoryPage.ENTRIES_PER_PAGE - 1) / HashDirectoryPage.ENTRIES_PER_PAGE;
+        for (int i = pagesBefore; i < pagesAfter; i++)
+            header.setEntry(i, allocatePage(HashPage.DIRECTORY));
+        header.setDepth(depth + 1);
+        modified(tid, t, header, pagesModified);
+        for (int s = 0; s < size; s++)
+            setSlot(tid, t, header, size + s, getSlot(tid, header, s, Permissions.READ_WRITE), pagesModified);
+    }
+
+    /**
+     * Removes the entry of a tuple of the table from the index.
+     *
+     * @param t a tuple with its RecordId in the table
+     * @throws DbException if the index has no entry for the tuple
+     * @see DbFile#deleteTuple
+     */
+    public synchronized Page deleteTuple(TransactionId tid, Tuple t)
+        throws DbException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (null == rid)
+            throw new DbException("tuple is not stored in the table");
+        byte[] key = serialize(t.getField(keyField));
+        int recordPage = rid.getPageId().pageno();
+        int recordSlot = rid.tupleno();
+
+        HashBucketPage page = findBucket(tid, hash(ByteBuffer.wrap(key), 0, key.length), Permissions.READ_WRITE);
+        while (true) {
+            int i = page.find(key, recordPage, recordSlot);
+            if (-1 != i) {
+                page.deleteEntry(i);
+                modified(tid, t, page, new ArrayList<Page>());
+                return page;
+            }
+            if (0 == page.getOverflow())
+                throw new DbException("no entry for " + recordPage + "/" + recordSlot + " in " + f);
+            page = (HashBucketPage) getPage(tid, page.getOverflow(), Permissions.READ_WRITE);
+        }
+    }
+
+    /**
+     * Adds the entries of all tuples of the table, for an index that has
+     * just been created on a table that already holds tuples. The entries
+     * are added in transactions of their own, a few at a time, so that the
+     * pages they dirty fit in the BufferPool.
+     */
+    public void addAllTuples() throws DbException, IOException, TransactionAbortedException {
+        int batch = Math.max(1, Database.getBufferPool().getNumPages() / 8);
+        TransactionId scanTid = new TransactionId();
+        DbFileIterator it = table.iterator(scanTid);
+        it.open();
+        try {
+            while (it.hasNext()) {
+                TransactionId tid = new TransactionId();
+                for (int n = 0; n < batch && it.hasNext(); n++)
+                    addTuple(tid, it.next());
+                Database.getBufferPool().transactionComplete(tid);
+            }
+        } finally {
+            it.close();
+            Database.getBufferPool().transactionComplete(scanTid);
+        }
+    }
+
+    // see IndexFile.java for javadocs
+    public boolean supports(Predicate.Op op) {
+        return Predicate.Op.EQUALS == op;
+    }
+
+    /**
+     * Returns an iterator over all the tuples of the table, in no
+     * particular order.
+     */
+    public DbFileIterator iterator(TransactionId tid) {
+        return new HashIterator(tid, null);
+    }
+
+    // see IndexFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid, Predicate predicate) {
+        if (predicate.getField() != keyField || !supports(predicate.getOp()))
+            throw new IllegalArgumentException("cannot look up " + predicate + " in " + f);
+        return new HashIterator(tid, predicate);
+    }
+
+    /**
+     * Reads the bucket of the key of the predicate, or all buckets if there
+     * is none, and fetches the tuples its entries point to from the table.
+     * The entries of a page are read before any of their tuples is
+     * returned, so the caller may delete them as it goes.
+     */
+    private class HashIterator implements DbFileIterator {
+        private final TransactionId tid;
+        private final Predicate predicate;
+        private final byte[] key;
+        // the next page to read, or 0 if there is none
+        private int pageNo = 0;
+        private int[] recordPages = new int[0];
+        private int[] recordSlots = new int[0];
+        private int count = 0;
+        private int position = 0;
+        private Tuple next = null;
+
+        HashIterator(TransactionId tid, Predicate predicate) {
+            this.tid = tid;
+            this.predicate = predicate;
+            this.key = null == predicate ? null : serialize(predicate.getOperand());
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            next = null;
+            count = 0;
+            position = 0;
+            if (null == predicate) {
+                pageNo = 2;
+                return;
+            }
+            HashBucketPage bucket = findBucket(tid, hash(ByteBuffer.wrap(key), 0, key.length), Permissions.READ_ONLY);
+            pageNo = bucket.getId().pageno();
+        }
+
+        /** Reads the matching entries of the next page, if there is one. */
+        private boolean readPage() throws DbException, TransactionAbortedException {
+            while (0 != pageNo) {
+                HashPage page = getPage(tid, pageNo, Permissions.READ_ONLY);
+                if (null == predicate)
+                    pageNo = pageNo + 1 < numPages() ? pageNo + 1 : 0;
+                if (!page.isBucket())
+                    continue;
+                HashBucketPage bucket = (HashBucketPage) page;
+                if (null != predicate)
+                    pageNo = bucket.getOverflow();
+
+                int n = bucket.getNumEntries();
+                if (recordPages.length < n) {
+                    recordPages = new int[n];
+                    recordSlots = new int[n];
+                }
+                count = 0;
+                position = 0;
+                for (int i = 0; i < n; i++) {
+                    if (null == key || bucket.keyEquals(i, key)) {
+                        recordPages[count] = bucket.getRecordPage(i);
+                        recordSlots[count] = bucket.getRecordSlot(i);
+                        count++;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            while (null == next) {
+                if (position == count) {
+                    if (!readPage())
+                        break;
+                    continue;
+                }
+                HeapPageId pid = new HeapPageId(table.getId(), recordPages[position]);
+                HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                Tuple t = null == page ? null : page.getTuple(recordSlots[position]);
+                position++;
+                // the predicate is checked again, in case the entry is stale
+                if (null != t && (null == predicate || predicate.filter(t)))
+                    next = t;
+            }
+            return null != next;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Tuple t = next;
+            next = null;
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            open();
+        }
+
+        public void close() {
+            pageNo = 0;
+            count = 0;
+            position = 0;
+            next = null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package simpledb;
+
+/**
+ * HashLookup is an access method that reads the tuples of a table whose
+ * indexed column equals a given key through a hash index: it reads the one
+ * bucket of the key rather than walking a tree or scanning the table.
+ *
+ * @see HashFile
+ */
+public class HashLookup extends IndexScan {
+
+    private final Field key;
+
+    /**
+     * Creates a lookup of the tuples of a table with the given key, as a
+     * part of the specified transaction.
+     *
+     * @param tid The transaction this lookup is running as a part of.
+     * @param index a hash index on the column the key is looked up in
+     * @param tableAlias the alias of the table (needed by the parser)
+     * @param key the value of the indexed column of the returned tuples
+     */
+    public HashLookup(TransactionId tid, HashFile index, String tableAlias, Field key) {
+        super(tid, index, tableAlias, new Predicate(index.getKeyField(), Predicate.Op.EQUALS, key));
+        this.key = key;
+    }
+
+    /**
+     * @return the key this lookup finds the tuples of
+     */
+    public Field getKey() {
+        return key;
+    }
+}
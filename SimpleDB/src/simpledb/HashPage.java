@@ -0,0 +1,95 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A page of a {@link HashFile}: either a {@link HashBucketPage}, which
+ * holds entries of the index, or a {@link HashDirectoryPage}, which holds
+ * page numbers of buckets or of other directory pages.
+ * <p>
+ * A page starts with a byte holding its kind ({@link #BUCKET} or
+ * {@link #DIRECTORY}); the rest of the layout depends on the kind. An
+ * all-zero page is a valid empty bucket.
+ */
+public abstract class HashPage implements Page {
+
+    /** Kind of the pages that hold the entries of the index. */
+    static final byte BUCKET = 0;
+
+    /** Kind of the pages that lead to the buckets. */
+    static final byte DIRECTORY = 1;
+
+    protected final HashPageId pid;
+    protected final ByteBuffer data;
+    private byte[] oldData;
+    private TransactionId dirtier = null;
+
+    protected HashPage(HashPageId id, byte[] data) {
+        this.pid = id;
+        this.data = ByteBuffer.wrap(data.clone());
+    }
+
+    /**
+     * Creates a page of the kind the image says it is.
+     */
+    static HashPage create(HashPageId id, byte[] data) throws IOException {
+        if (DIRECTORY == data[0])
+            return new HashDirectoryPage(id, data);
+        return new HashBucketPage(id, data);
+    }
+
+    /** @return the image of an empty page of the given kind */
+    static byte[] createEmptyPageData(byte kind) {
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        data[0] = kind;
+        return data;
+    }
+
+    public HashPageId getId() {
+        return pid;
+    }
+
+    public synchronized byte[] getPageData() {
+        return data.array().clone();
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public synchronized HashPage getBeforeImage() {
+        try {
+            return create(pid, null != oldData ? oldData : data.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+
+    /**
+     * Captures the before image, if this is the first modification of the
+     * page since it was read or last committed.
+     */
+    protected void captureBeforeImage() {
+        if (null == oldData)
+            oldData = getPageData();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    /** @return true if this is a bucket page */
+    public boolean isBucket() {
+        return BUCKET == data.get(0);
+    }
+}
@@ -5,6 +5,9 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -18,18 +21,45 @@ import java.util.NoSuchElementException;
  * which is a fixed size, and the file is simply a collection of those
  * pages. HeapFile works closely with HeapPage.  The format of HeapPages
  * is described in the HeapPage constructor.
+ * <p>
+ * A HeapFile can be opened in memory-mapped mode, meant for read-mostly
+ * tables: the file is mapped read-only in segments of
+ * {@link #MAP_SEGMENT_PAGES} pages and readPage returns HeapPages that are
+ * views of the mapping rather than copies. A page copies itself to the heap
+ * the first time it is modified. Pages beyond the mapped part of a segment
+ * (because writePage has grown the file) cause that segment to be remapped.
+ * <p>
+ * A HeapFile can instead be opened in compressed mode, for tables that are
+ * scanned much more often than they are written: pages are deflated on
+ * their way to disk and inflated into their BufferPool frame when read, and
+ * a {@link CompressedPageStore} keeps the index of where each page is.
+ * <p>
+ * Inserts are directed by a {@link FreeSpaceMap} kept in a sidecar file
+ * next to the table, and scans with a predicate skip pages by the
+ * {@link ZoneMap} kept in another one, and for EQUALS predicates on columns
+ * given a Bloom filter, by the {@link BloomFilterMap} of the column.
  *
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
  */
 public class HeapFile implements DbFile {
 
+    /** Pages per memory-mapped segment (64MB). */
+    public static final int MAP_SEGMENT_PAGES = 16384;
+
     private final File f;
 	private final TupleDesc td;
 	private int numPages;
 	private Map<PageId, HeapPage> cachedPages = new HashMap<PageId, HeapPage>();
 	private byte[] buffer;
 	private List<PageId> pageIdList = new ArrayList<PageId>();
+	private FileChannel channel = null;
+	private final boolean memoryMapped;
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private final FreeSpaceMap freeSpace;
+	private final ZoneMap zoneMap;
+	private final BloomFilterMap[] bloomFilters;
+	private final CompressedPageStore compressedPages;
 
 	/**
      * Constructs a heap file backed by the specified file.
@@ -37,12 +67,105 @@ public class HeapFile implements DbFile {
      * @param f the file that stores the on-disk backing store for this heap file.
      */
     public HeapFile(File f, TupleDesc td) {
+		this(f, td, false);
+    }
+
+	/**
+     * Constructs a heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this heap file.
+     * @param memoryMapped true to read pages through a memory mapping of f
+     */
+    public HeapFile(File f, TupleDesc td, boolean memoryMapped) {
+		this(f, td, memoryMapped, false);
+    }
+
+	/**
+     * Constructs a heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this heap file.
+     * @param memoryMapped true to read pages through a memory mapping of f
+     * @param compressed true to store the pages of f compressed
+     * @throws IllegalArgumentException if both memoryMapped and compressed are set
+     */
+    public HeapFile(File f, TupleDesc td, boolean memoryMapped, boolean compressed) {
+		if(memoryMapped && compressed)
+			throw new IllegalArgumentException("a compressed HeapFile cannot be memory-mapped");
 		this.f = f;
 		this.td = td;
 		this.numPages = 1;
+		this.memoryMapped = memoryMapped;
+		this.compressedPages = compressed ? new CompressedPageStore(f) : null;
+		this.bloomFilters = new BloomFilterMap[td.numFields()];
+		int slotsPerPage = (BufferPool.PAGE_SIZE * 8) / (td.getSize() * 8 + 1);
+		if(compressed){
+			// the size of a compressed file says nothing about its page count
+			this.freeSpace = new FreeSpaceMap(f, slotsPerPage) {
+				int pagesOnDisk() throws IOException {
+					return compressedPages.numPages();
+				}
+			};
+			this.zoneMap = new ZoneMap(f, td) {
+				int pagesOnDisk() throws IOException {
+					return compressedPages.numPages();
+				}
+			};
+		}
+		else{
+			this.freeSpace = new FreeSpaceMap(f, slotsPerPage);
+			this.zoneMap = new ZoneMap(f, td);
+		}
 		//readAllPages();
     }
 
+    /**
+     * @return true if pages of this file are read through a memory mapping
+     */
+    public boolean isMemoryMapped() {
+    	return memoryMapped;
+    }
+
+    /**
+     * @return true if pages of this file are stored compressed
+     */
+    public boolean isCompressed() {
+    	return null != compressedPages;
+    }
+
+    /**
+     * Keeps a Bloom filter of the values of the given column on each page,
+     * so that scans for an EQUALS predicate on the column skip the pages
+     * that cannot hold the value.
+     *
+     * @see BloomFilterMap
+     */
+    public synchronized void addBloomFilter(int field) {
+    	if(null == bloomFilters[field])
+    		bloomFilters[field] = new BloomFilterMap(this, field);
+    }
+
+    /**
+     * @return true if a Bloom filter is kept for the given column
+     */
+    public boolean hasBloomFilter(int field) {
+    	return null != bloomFilters[field];
+    }
+
+    /**
+     * Returns the number of whole pages of this file that are on disk.
+     */
+    int pagesOnDisk() {
+    	if(null != compressedPages){
+    		try {
+    			return compressedPages.numPages();
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    			return 0;
+    		}
+    	}
+    	return (int) (f.length() / BufferPool.PAGE_SIZE);
+    }
+
 
 	/**
      * Returns the File backing this HeapFile on disk.
@@ -120,91 +243,270 @@ public class HeapFile implements DbFile {
 
 	// see DbFile.java for javadocs
     public Page readPage(PageId pid) {
-    	RandomAccessFile randomAccessFile = null;
+    	if(memoryMapped){
+    		try {
+    			ByteBuffer mapped = mappedPage(pid.pageno());
+    			if(null != mapped)
+    				return new HeapPage((HeapPageId) pid, mapped);
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    		}
+    	}
     	
-    	try {
-			randomAccessFile = new RandomAccessFile(getFile(), "r" );
-		} catch (FileNotFoundException e1) {
-			e1.printStackTrace();
-			return null;
-		}
+    	return readPage(pid, ByteBuffer.allocate(BufferPool.PAGE_SIZE));
+    }
+
+    /**
+     * Returns a read-only view of the specified page in the mapping of its
+     * segment, remapping the segment if the page lies beyond the part that
+     * is mapped.
+     *
+     * @return the page, or null if it is not on disk
+     */
+    private synchronized ByteBuffer mappedPage(int pageNo) throws IOException {
+    	int segment = pageNo / MAP_SEGMENT_PAGES;
+    	int offset = (pageNo % MAP_SEGMENT_PAGES) * BufferPool.PAGE_SIZE;
     	
-    	byte[] heapPageBuffer = new byte[BufferPool.PAGE_SIZE];
+    	MappedByteBuffer mapped = segment < segments.size() ? segments.get(segment) : null;
+    	if(null == mapped || mapped.capacity() < offset + BufferPool.PAGE_SIZE){
+    		mapped = mapSegment(segment);
+    		if(null == mapped || mapped.capacity() < offset + BufferPool.PAGE_SIZE)
+    			return null;
+    	}
     	
-    	int pageNo = pid.pageno();
+    	ByteBuffer view = mapped.duplicate();
+    	view.limit(offset + BufferPool.PAGE_SIZE);
+    	view.position(offset);
+    	return view.slice();
+    }
+
+    /**
+     * Maps all whole pages of the given segment that are currently on disk.
+     * The previous mapping of the segment, if any, is released once the
+     * pages that still use it are gone.
+     */
+    private MappedByteBuffer mapSegment(int segment) throws IOException {
+    	long start = (long) segment * MAP_SEGMENT_PAGES * BufferPool.PAGE_SIZE;
+    	long pages = (channel().size() - start) / BufferPool.PAGE_SIZE;
+    	if(pages <= 0)
+    		return null;
     	
-    	int numPagesToSkip = (pageNo - 1) < 0 ? 0 : pageNo-1;
+    	long length = Math.min(MAP_SEGMENT_PAGES, pages) * BufferPool.PAGE_SIZE;
+    	MappedByteBuffer mapped = channel().map(FileChannel.MapMode.READ_ONLY, start, length);
+    	
+    	while(segments.size() <= segment)
+    		segments.add(null);
+    	segments.set(segment, mapped);
+    	return mapped;
+    }
+
+    /**
+     * Returns the channel all reads and writes of this file go through,
+     * opening it on first use (or again, if an interrupted thread closed it).
+     */
+    private synchronized FileChannel channel() throws IOException {
+    	if(null == channel || !channel.isOpen())
+    		channel = new RandomAccessFile(getFile(), "rw").getChannel();
+    	return channel;
+    }
+
+    /**
+     * @return whether the BufferPool may read pages of this file straight
+     *   into its frames with {@link #readPage(PageId, ByteBuffer)}. Pages of
+     *   a mapped file are views of the mapping, and a subclass may override
+     *   readPage(PageId), which then has to see every read.
+     */
+    boolean readsIntoFrames() {
+    	return !memoryMapped && HeapFile.class == getClass();
+    }
+
+    /**
+     * Reads the specified page into the given PAGE_SIZE buffer and returns a
+     * HeapPage backed by it. Bytes past the end of the file read as zero.
+     * The BufferPool passes the frame the page is going to occupy, so that
+     * the image is not copied after it is read.
+     *
+     * @return the page, or null if it could not be read
+     * @see #readsIntoFrames
+     */
+    HeapPage readPage(PageId pid, ByteBuffer frame) {
+    	ByteBuffer heapPageBuffer = frame.duplicate();
+    	heapPageBuffer.clear();
+    	
+    	long position = (long) pid.pageno() * BufferPool.PAGE_SIZE;
     	
     	try {
-    		randomAccessFile.skipBytes(pageNo * BufferPool.PAGE_SIZE);
-			randomAccessFile.read(heapPageBuffer, 0,  BufferPool.PAGE_SIZE);
+    		if(null != compressedPages)
+    			compressedPages.readPage(pid.pageno(), heapPageBuffer);
+    		else
+    			readRawPage(position, heapPageBuffer);
 		} catch (IOException e1) {
 			e1.printStackTrace();
-			heapPageBuffer = null;
 			return null;
-		} catch(IndexOutOfBoundsException e){
-			e.printStackTrace();
-			heapPageBuffer = null;
 		}
     	
-		HeapPageId p = (HeapPageId) pid;
     	HeapPage result = null;
-    	
-    	if(null != heapPageBuffer){
-    		try {
-    			result = new HeapPage(p, heapPageBuffer);
-    		} catch (IOException e) {
-    			e.printStackTrace();
-    		}
-    	}
-		
     	try {
-			randomAccessFile.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+    		result = new HeapPage((HeapPageId) pid, frame);
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
 
     	return result;
     }
 
+    /**
+     * Reads the uncompressed page at the given position of the file into
+     * buffer. Bytes past the end of the file read as zero.
+     */
+    private void readRawPage(long position, ByteBuffer buffer) throws IOException {
+    	// positional reads do not move a shared file pointer, so
+    	// concurrent readers of this file do not serialize
+    	FileChannel fileChannel = channel();
+    	while(buffer.hasRemaining()){
+    		int read = fileChannel.read(buffer, position + buffer.position());
+    		if(-1 == read)
+    			break;
+    	}
+    	while(buffer.hasRemaining())
+    		buffer.put((byte) 0);
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
-    	RandomAccessFile randomAccessFile = null;
-    	
-    	try {
-			randomAccessFile = new RandomAccessFile(getFile(), "rw" );
-		} catch (FileNotFoundException e1) {
-			e1.printStackTrace();
-		}
-    	
-    	byte[] heapPageBuffer = page.getPageData();
-    	
     	int pageNo = page.getId().pageno();
+    	if(page instanceof HeapPage){
+    		// the zone map and Bloom filters on disk cover the old and the new
+    		// page while the page is being written, and the new page exactly
+    		// afterwards
+    		HeapPage heapPage = (HeapPage) page;
+    		persistSummaries(pageNo, heapPage, true);
+    		if(null != compressedPages)
+    			compressedPages.writePage(pageNo, heapPage.getPageData());
+    		else
+    			heapPage.writeImage(channel(), (long) pageNo * BufferPool.PAGE_SIZE);
+    		freeSpace.persist(pageNo, heapPage.getNumEmptySlots());
+    		persistSummaries(pageNo, heapPage, false);
+    		return;
+    	}
     	
-    	int numPagesToSkip = (pageNo - 1) < 0 ? 0 : pageNo-1;
-    	
-    	int fileLength = (int) randomAccessFile.length();
-    	int newLength = pageNo * BufferPool.PAGE_SIZE + BufferPool.PAGE_SIZE;
-    	
-    	if(fileLength < newLength)
-    		randomAccessFile.setLength(newLength);
-    	
+    	if(null != compressedPages){
+    		compressedPages.writePage(pageNo, page.getPageData());
+    		return;
+    	}
     	
-    	try {
-    		randomAccessFile.skipBytes(pageNo  * BufferPool.PAGE_SIZE);
-			randomAccessFile.write(heapPageBuffer, 0,  BufferPool.PAGE_SIZE);
-		} catch (IOException e1) {
-			e1.printStackTrace();
-		} catch(IndexOutOfBoundsException e){
-			e.printStackTrace();
-		}
+    	long position = (long) pageNo * BufferPool.PAGE_SIZE;
     	
-    	try {
-			randomAccessFile.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+    	// writing past the end grows the file, no need for setLength
+    	FileChannel fileChannel = channel();
+    	ByteBuffer heapPageBuffer = ByteBuffer.wrap(page.getPageData(), 0, BufferPool.PAGE_SIZE);
+    	while(heapPageBuffer.hasRemaining())
+    		fileChannel.write(heapPageBuffer, position + heapPageBuffer.position());
+    }
+
+    /**
+     * Computes the zone map ranges and Bloom filters of a page and writes
+     * them to their sidecars.
+     *
+     * @param widen true to only widen the current ones to cover the page
+     */
+    private void persistSummaries(int pageNo, HeapPage page, boolean widen) throws IOException {
+    	zoneMap.set(pageNo, page, widen);
+    	zoneMap.persist(pageNo);
+    	for (BloomFilterMap bloomFilter : bloomFilters) {
+    		if(null != bloomFilter){
+    			bloomFilter.set(pageNo, page, widen);
+    			bloomFilter.persist(pageNo);
+    		}
+    	}
+    }
+
+    /**
+     * Returns the approximate number of free tuple slots on the specified
+     * page according to the free space map of this file.
+     *
+     * @return the number of free slots, or -1 if the map knows nothing about the page
+     */
+    public int approximateFreeSlots(int pageNo) throws IOException {
+    	return freeSpace.freeSlots(pageNo);
+    }
+
+    /**
+     * Records the number of free slots on a page that is in memory in the
+     * free space map of this file.
+     */
+    void updateFreeSlots(int pageNo, int freeSlots) throws IOException {
+    	freeSpace.update(pageNo, freeSlots);
+    }
+
+    /**
+     * Widens the zone map ranges and Bloom filters of a page that is in
+     * memory to include a tuple that has been added to it.
+     */
+    void tupleAdded(int pageNo, Tuple t) throws IOException {
+    	zoneMap.include(pageNo, t);
+    	for (BloomFilterMap bloomFilter : bloomFilters) {
+    		if(null != bloomFilter)
+    			bloomFilter.include(pageNo, t);
+    	}
+    }
+
+    /**
+     * Drops all pages at or after pageNo from this file, provided they are
+     * empty and not modified by a running transaction. The pages are marked
+     * full in the free space map first, so inserts stay away from them.
+     * Memory-mapped files are never truncated, as pages of the mapping may
+     * still be in use.
+     *
+     * @return true if the file now ends at pageNo
+     */
+    synchronized boolean truncate(int pageNo) throws IOException {
+    	if(memoryMapped)
+    		return false;
+
+    	int lastPage = numPages();
+    	for (int p = pageNo; p < lastPage; p++)
+    		freeSpace.update(p, 0);
+
+    	BufferPool bufferPool = Database.getBufferPool();
+    	for (int p = pageNo; p < lastPage; p++) {
+    		HeapPageId pid = new HeapPageId(getId(), p);
+    		HeapPage page = null;
+    		try {
+    			page = (HeapPage) bufferPool.getPage(null, pid, Permissions.READ_ONLY);
+    		} catch (DbException e) {
+    			e.printStackTrace();
+    		} catch (TransactionAbortedException e) {
+    			e.printStackTrace();
+    		}
+    		if(null == page || bufferPool.isDirty(pid) || page.getNumEmptySlots() != page.getNumSlots()){
+    			// give the pages back to inserts; entries are only hints, an
+    			// insert that finds one of them full corrects its entry
+    			for (int q = pageNo; q < lastPage; q++)
+    				freeSpace.update(q, 1);
+    			return false;
+    		}
+    	}
+
+    	for (int p = pageNo; p < lastPage; p++)
+    		bufferPool.discardPage(new HeapPageId(getId(), p));
+    	if(null != compressedPages)
+    		compressedPages.truncate(pageNo);
+    	else if(channel().size() > (long) pageNo * BufferPool.PAGE_SIZE)
+    		channel().truncate((long) pageNo * BufferPool.PAGE_SIZE);
+    	freeSpace.truncate(pageNo);
+    	zoneMap.truncate(pageNo);
+    	for (BloomFilterMap bloomFilter : bloomFilters) {
+    		if(null != bloomFilter)
+    			bloomFilter.truncate(pageNo);
+    	}
 
+    	for (Iterator<PageId> it = pageIdList.iterator(); it.hasNext(); ) {
+    		if(it.next().pageno() >= pageNo)
+    			it.remove();
+    	}
+    	numPages = Math.min(numPages, pageNo);
+    	return true;
     }
 
     /**
@@ -214,7 +516,9 @@ public class HeapFile implements DbFile {
     	int pageCount = pageIdList.size();
     	if(0 != pageCount)
     		return pageIdList.size();
-    	return numPages;
+    	
+    	// nothing added through this HeapFile yet, go by the size on disk
+    	return Math.max(numPages, pagesOnDisk());
     }
 
     // see DbFile.java for javadocs
@@ -229,8 +533,9 @@ public class HeapFile implements DbFile {
     	boolean pageWithEmptySlotsFound = false;
     	ArrayList<Page> pagesModified = new ArrayList<Page>();
     	
-    	// if we dont know the page from where we need to insert, start from page 1
-    	int ctr = null != pageId ? pageId.pageno() : 1;
+    	// if we dont know the page from where we need to insert, start from page 1,
+    	// skipping the pages the free space map knows to be full
+    	int ctr = freeSpace.findPage(null != pageId ? pageId.pageno() : 1);
     	
     	while(!pageWithEmptySlotsFound){
     		HeapPageId heapPageId = new HeapPageId(this.getId(), ctr);
@@ -244,6 +549,8 @@ public class HeapFile implements DbFile {
     		HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, heapPageId, Permissions.READ_WRITE);
     		if(page.getNumEmptySlots() != 0){
     			Database.getBufferPool().insertTuple(tid, heapPageId.getTableId(), t);
+    			freeSpace.update(ctr, page.getNumEmptySlots());
+    			tupleAdded(ctr, t);
     			pagesModified.add(page);
     			pageWithEmptySlotsFound = true;
     			if(!pageIdList.contains(heapPageId)){
@@ -251,7 +558,13 @@ public class HeapFile implements DbFile {
     			}
     		}
     		else{
-    			ctr++;
+    			// unless a running transaction filled it, the page is full on
+    			// disk as well, and should still be skipped after a restart
+    			if(null == page.isDirty())
+    				freeSpace.persist(ctr, 0);
+    			else
+    				freeSpace.update(ctr, 0);
+    			ctr = freeSpace.findPage(ctr + 1);
     		}
     	}
     	
@@ -269,24 +582,64 @@ public class HeapFile implements DbFile {
         throws DbException, TransactionAbortedException {
     	
        	PageId pageId = t.getRecordId().getPageId();
-    	Page page = (HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_WRITE);
+    	HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_WRITE);
     	Database.getBufferPool().deleteTuple(tid, t);
     	
+    	try {
+    		freeSpace.update(pageId.pageno(), page.getNumEmptySlots());
+    	} catch (IOException e) {
+    		// only a hint, the next insert finds the room by itself
+    		e.printStackTrace();
+    	}
+    	
         return page;
     }
 
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
+    	return iterator(tid, null);
+    }
+
+    /**
+     * Returns an iterator over all the tuples of this file that reads its
+     * pages through the given buffer access strategy.
+     *
+     * @param strategy the ring to read pages into, or null to read them
+     *   through the BufferPool as usual
+     * @see BufferPool#getPage(TransactionId, PageId, Permissions, BufferAccessStrategy)
+     */
+    public DbFileIterator iterator(TransactionId tid, BufferAccessStrategy strategy) {
+    	return iterator(tid, strategy, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that reads its pages
+     * through the given buffer access strategy and does not read the pages
+     * that the zone map or a Bloom filter of this file rule out for the
+     * given predicate.
+     * The iterator still returns all tuples of the pages it does read,
+     * whether they satisfy the predicate or not.
+     *
+     * @param strategy the ring to read pages into, or null to read them
+     *   through the BufferPool as usual
+     * @param predicate the predicate the caller filters by, or null to read
+     *   every page
+     * @see #iterator(TransactionId, BufferAccessStrategy)
+     * @see ZoneMap
+     * @see BloomFilterMap
+     */
+    public DbFileIterator iterator(TransactionId tid, BufferAccessStrategy strategy, Predicate predicate) {
     	final TransactionId transactionId = tid;
     	final HeapFile heapFile = this;
+    	final BufferAccessStrategy accessStrategy = strategy;
+    	final Predicate pagePredicate = predicate;
     	
     	return new DbFileIterator() {
 			boolean isOpened = false;
-			FileInputStream inputStream = null;
 			HeapPage page = null;
 			int pageNo = 0;
 			HeapPage heapPage = null;
-			byte[] buffer = new byte[BufferPool.PAGE_SIZE];
+			PageReadAhead readAhead = null;
 			Iterator<Tuple> tupleIterator = null;
 			
 			@Override
@@ -298,12 +651,9 @@ public class HeapFile implements DbFile {
 			@Override
 			public void open() throws DbException, TransactionAbortedException {
 				isOpened = true;
-				try {
-					inputStream = new FileInputStream(heapFile.f);
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
-				}
 				pageNo = 0;
+				if(PageReadAhead.isEnabled())
+					readAhead = new PageReadAhead(heapFile, accessStrategy);
 			}
 			
 			@Override
@@ -354,21 +704,20 @@ public class HeapFile implements DbFile {
 			}
 
 			private HeapPage loadNextPage() {
-				int read = -1;
-				try {
-					read = inputStream.read(buffer);
-				} catch (IOException e) {
-					e.printStackTrace();
+				// only whole pages that are on disk are part of the scan
+				int pagesOnDisk = heapFile.pagesOnDisk();
+				while(pageNo < pagesOnDisk && !mayMatch(pageNo))
+					pageNo++;
+				if(pageNo >= pagesOnDisk)
 					return null;
-				}
 				
-				if(-1 == read || BufferPool.PAGE_SIZE != read)
-					return null;
+				if(null != readAhead)
+					readAhead.access(pageNo, pagesOnDisk - 1);
 				
 				HeapPageId heapPageId = new HeapPageId(heapFile.getId(), pageNo);
 				
 				try {
-					heapPage =  (HeapPage) Database.getBufferPool().getPage(transactionId, heapPageId, Permissions.READ_ONLY);
+					heapPage =  (HeapPage) Database.getBufferPool().getPage(transactionId, heapPageId, Permissions.READ_ONLY, accessStrategy);
 					pageNo++;
 				} catch (TransactionAbortedException e) {
 					e.printStackTrace();
@@ -393,17 +742,29 @@ public class HeapFile implements DbFile {
 				return heapPage;
 			}
 
+			private boolean mayMatch(int pageNo) {
+				if(null == pagePredicate)
+					return true;
+				try {
+					if(!zoneMap.mayMatch(pageNo, pagePredicate))
+						return false;
+					int field = pagePredicate.getField();
+					if(Predicate.Op.EQUALS != pagePredicate.getOp()
+							|| field < 0 || field >= bloomFilters.length || null == bloomFilters[field])
+						return true;
+					return bloomFilters[field].mayContain(pageNo, pagePredicate.getOperand());
+				} catch (IOException e) {
+					e.printStackTrace();
+					return true;
+				}
+			}
+
 			@Override
 			public void close() {
 				isOpened = false;
 				heapPage = null;
 				tupleIterator = null;
-				
-				try {
-						inputStream.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+				readAhead = null;
 			}
 		};
     	
@@ -0,0 +1,219 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Online compaction of a HeapFile that has become sparse through deletes.
+ * <p>
+ * The vacuum moves the tuples of the last pages of the file into free slots
+ * of the first pages, one page at a time, and then truncates the pages it
+ * has emptied off the end of the file. Every page is moved in a short
+ * transaction of its own that follows the usual locking protocol, so
+ * queries keep running while the vacuum does. A moved tuple gets a new
+ * RecordId on the page it is moved to, and its entries in the indexes of
+ * the table are updated in the same transaction. Pages with uncommitted
+ * changes of other transactions and tuples that are locked are left alone;
+ * the compaction stops at the first page it cannot empty.
+ * <p>
+ * The vacuum pauses between pages so it does not monopolize the disk; the
+ * pause defaults to {@link #DEFAULT_PAUSE_MILLIS} and can be set with the
+ * simpledb.VacuumPause system property (in milliseconds).
+ */
+public class HeapFileVacuum implements Runnable {
+
+    /** System property holding the pause between two pages, in milliseconds. */
+    public static final String PAUSE_PROPERTY = "simpledb.VacuumPause";
+
+    /** Default pause between two pages. */
+    public static final long DEFAULT_PAUSE_MILLIS = 5;
+
+    private final HeapFile file;
+    private final long pauseMillis;
+    private volatile int tuplesMoved = 0;
+    private volatile int pagesFreed = 0;
+    private volatile boolean done = false;
+
+    /**
+     * @param file the file to compact
+     */
+    public HeapFileVacuum(HeapFile file) {
+        this(file, Long.getLong(PAUSE_PROPERTY, DEFAULT_PAUSE_MILLIS));
+    }
+
+    /**
+     * @param file the file to compact
+     * @param pauseMillis the pause between two pages
+     */
+    public HeapFileVacuum(HeapFile file, long pauseMillis) {
+        this.file = file;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * Starts compacting the file on a background thread, which reports the
+     * tuples moved and the pages freed when it is done.
+     *
+     * @return the thread the vacuum runs on
+     */
+    public Thread start() {
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                HeapFileVacuum.this.run();
+                System.out.println("Vacuumed " + file.getFile().getName() + ": moved " + tuplesMoved
+                        + " tuples, freed " + pagesFreed + " pages.");
+            }
+        }, "HeapFileVacuum");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    /** @return the number of tuples moved so far */
+    public int tuplesMoved() {
+        return tuplesMoved;
+    }
+
+    /** @return the number of pages truncated off the file */
+    public int pagesFreed() {
+        return pagesFreed;
+    }
+
+    /** @return true once the vacuum has finished */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Compacts the file on the calling thread.
+     */
+    public void run() {
+        try {
+            int end = compact();
+            int pages = file.numPages();
+            if (end < pages && file.truncate(end))
+                pagesFreed = pages - end;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            done = true;
+        }
+    }
+
+    /**
+     * Moves tuples from the end of the file to the front until the two meet
+     * or a page cannot be emptied.
+     *
+     * @return the number of pages at the start of the file that hold all of
+     *   its tuples
+     */
+    private int compact() throws IOException {
+        int target = 0;
+        int source = file.numPages() - 1;
+        while (source > target) {
+            TransactionId tid = new TransactionId();
+            try {
+                HeapPage sourcePage = getPage(tid, source);
+                if (!isAvailable(sourcePage, tid))
+                    return source + 1;
+                if (sourcePage.getNumEmptySlots() == sourcePage.getNumSlots()) {
+                    source--;
+                    continue;
+                }
+
+                // find a page with room in front of the source page
+                HeapPage targetPage = null;
+                for (; target < source; target++) {
+                    if (0 == file.approximateFreeSlots(target))
+                        continue;
+                    targetPage = getPage(tid, target);
+                    if (isAvailable(targetPage, tid) && targetPage.getNumEmptySlots() > 0)
+                        break;
+                }
+                if (target == source)
+                    return source + 1;
+
+                if (!moveTuples(tid, sourcePage, targetPage)) {
+                    Database.getBufferPool().transactionComplete(tid, false);
+                    return source + 1;
+                }
+                Database.getBufferPool().transactionComplete(tid, true);
+                file.updateFreeSlots(source, sourcePage.getNumEmptySlots());
+                file.updateFreeSlots(target, targetPage.getNumEmptySlots());
+            } catch (DbException e) {
+                e.printStackTrace();
+                Database.getBufferPool().transactionComplete(tid, false);
+                return source + 1;
+            } catch (TransactionAbortedException e) {
+                Database.getBufferPool().transactionComplete(tid, false);
+                return source + 1;
+            }
+
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return source + 1;
+            }
+        }
+        return source + 1;
+    }
+
+    /**
+     * Moves as many tuples of source as fit into target.
+     *
+     * @return false if a tuple of source is locked by another transaction
+     */
+    private boolean moveTuples(TransactionId tid, HeapPage source, HeapPage target)
+        throws DbException, IOException, TransactionAbortedException {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (Iterator<Tuple> it = source.iterator(); it.hasNext(); )
+            tuples.add(it.next());
+
+        Locktable locktable = Database.getLocktable();
+        for (Tuple t : tuples) {
+            if (0 == target.getNumEmptySlots())
+                break;
+            if (locktable.isLocked(t))
+                return false;
+
+            Tuple moved = new Tuple(t.getTupleDesc());
+            for (int i = 0; i < t.getTupleDesc().numFields(); i++)
+                moved.setField(i, t.getField(i));
+
+            locktable.getLock(source.getId(), t, tid);
+            locktable.getLock(target.getId(), moved, tid);
+            try {
+                target.addTuple(moved);
+                target.markDirty(true, tid);
+                file.tupleAdded(target.getId().pageno(), moved);
+                source.deleteTuple(t);
+                source.markDirty(true, tid);
+            } finally {
+                locktable.releaseLock(target.getId(), moved, tid);
+                locktable.releaseLock(source.getId(), t, tid);
+            }
+            // the indexes of the table point to the new RecordId from now on
+            for (IndexFile index : Database.getCatalog().getIndexes(file.getId())) {
+                index.deleteTuple(tid, t);
+                index.addTuple(tid, moved);
+            }
+            tuplesMoved++;
+        }
+        return true;
+    }
+
+    private HeapPage getPage(TransactionId tid, int pageNo)
+        throws DbException, TransactionAbortedException {
+        HeapPageId pid = new HeapPageId(file.getId(), pageNo);
+        return (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+    }
+
+    /** @return true unless another transaction has modified the page */
+    private boolean isAvailable(HeapPage page, TransactionId tid) {
+        TransactionId dirtier = page.isDirty();
+        return null == dirtier || dirtier.equals(tid);
+    }
+}
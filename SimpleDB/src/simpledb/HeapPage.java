@@ -2,10 +2,33 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * HeapPage stores pages of HeapFiles and implements the Page interface that
  * is used by BufferPool.
+ * <p>
+ * The page keeps its on-disk image in a ByteBuffer. For pages cached by the
+ * BufferPool that buffer is a frame of the pool's off-heap
+ * {@link PageFrameArena}; header and tuple changes are written through to
+ * it, so the image is always current: getPageData is a plain copy, and
+ * HeapFile and LogFile write the image to disk without copying it at all.
+ * Pages of memory-mapped HeapFiles start out as read-only views of the
+ * mapping and copy their image to the heap when they are first modified.
+ * <p>
+ * Tuples are decoded from the image only when they are first asked for,
+ * and then kept, so a query that looks at a few tuples of a page does not
+ * pay for materializing all of them.
+ * <p>
+ * The before image is copy-on-write: it is only captured when the page is
+ * first modified after it was read or last committed, so pages that are
+ * only read never copy their image.
+ * <p>
+ * Slot occupancy is mirrored from the header into a bitmap of longs, one
+ * bit per slot in header order, so free slot search, occupancy counts and
+ * iteration work a word at a time.
  *
  * @see HeapFile
  * @see BufferPool
@@ -14,14 +37,19 @@ public class HeapPage implements Page {
 
     HeapPageId pid;
     TupleDesc td;
-    byte header[];
+    ByteBuffer data;
+    int headerSize;
+    // decoded tuples; null for empty slots and slots not decoded yet
     Tuple tuples[];
     int numSlots;
-    
-    List<Integer> slotsFilled = new ArrayList<Integer>();
-	List<Integer> deletedSlots = new ArrayList<Integer>();
+
+    // bit i%64 of word i/64 is set if slot i is filled, as in the header
+    long[] slotBits;
+    int numFilled;
 
 
+    // image before the first modification since the last commit; null
+    // while the page is unmodified, the current image is the before image
     byte[] oldData;
 
     /**
@@ -41,27 +69,33 @@ public class HeapPage implements Page {
      * @see BufferPool#PAGE_SIZE
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data.clone()));
+    }
+
+    /**
+     * Create a HeapPage over a PAGE_SIZE buffer holding its image, without
+     * copying it. The page owns the buffer from now on and writes every
+     * change back into it.
+     *
+     * @see #HeapPage(HeapPageId, byte[])
+     */
+    HeapPage(HeapPageId id, ByteBuffer frame) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-
-        try{
-            // allocate and read the actual records of this page
-            tuples = new Tuple[numSlots];
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
-        }
-        dis.close();
-
-        setBeforeImage();
+        this.headerSize = getHeaderSize();
+        this.data = frame;
+
+        // only the header is read here, tuples are decoded on demand
+        tuples = new Tuple[numSlots];
+        slotBits = new long[(numSlots + 63) / 64];
+        for (int i=0; i<headerSize; i++)
+            slotBits[i / 8] |= (long) (data.get(i) & 0xff) << (8 * (i % 8));
+        // ignore header bits past the last slot
+        if (numSlots % 64 != 0)
+            slotBits[slotBits.length - 1] &= (1L << numSlots) - 1;
+        for (long word : slotBits)
+            numFilled += Long.bitCount(word);
     }
 
     /** Retrieve the number of tuples on this page.
@@ -88,9 +122,12 @@ public class HeapPage implements Page {
     
     /** Return a view of this page before it was modified
         -- used by recovery */
-    public HeapPage getBeforeImage(){
+    public synchronized HeapPage getBeforeImage(){
+        // the captured image is never modified, so the before image page
+        // can share it until someone modifies that page in turn
+        byte[] image = null != oldData ? oldData : getPageData();
         try {
-            return new HeapPage(pid,oldData);
+            return new HeapPage(pid, ByteBuffer.wrap(image).asReadOnlyBuffer());
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -99,8 +136,17 @@ public class HeapPage implements Page {
         return null;
     }
     
-    public void setBeforeImage() {
-        oldData = getPageData().clone();
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+
+    /**
+     * Captures the before image, if this is the first modification of the
+     * page since it was read or last committed.
+     */
+    private void captureBeforeImage() {
+        if (null == oldData)
+            oldData = getPageData();
     }
 
     /**
@@ -111,21 +157,32 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Returns the tuple stored in the specified slot, decoding it from the
+     * page image if this is the first time it is asked for.
+     *
+     * @return the tuple, or null if the slot is empty
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!getSlot(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
+    public synchronized Tuple getTuple(int slotId) {
+        if (slotId < 0 || slotId >= numSlots)
             return null;
+
+        if (null == tuples[slotId] && isSlotFilled(slotId)) {
+            try {
+                tuples[slotId] = readTuple(slotId);
+            } catch (NoSuchElementException e) {
+                e.printStackTrace();
+            }
         }
+        return tuples[slotId];
+    }
+
+    /**
+     * Decodes the tuple in the specified (filled) slot from the page image.
+     */
+    private Tuple readTuple(int slotId) throws NoSuchElementException {
+        ByteBuffer view = data.duplicate();
+        view.position(tupleOffset(slotId));
+        DataInputStream dis = new DataInputStream(new ByteBufferInputStream(view));
 
         // read fields in the tuple
         Tuple t = new Tuple(td);
@@ -141,7 +198,6 @@ public class HeapPage implements Page {
             throw new NoSuchElementException("parsing error!");
         }
 
-        slotsFilled.add(slotId);
         return t;
     }
 
@@ -156,68 +212,68 @@ public class HeapPage implements Page {
      * @see #HeapPage
      * @return A byte array correspond to the bytes of this page.
      */
-    public byte[] getPageData() {
-        int len = BufferPool.PAGE_SIZE;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
+    public synchronized byte[] getPageData() {
+        byte[] pageData = new byte[BufferPool.PAGE_SIZE];
+        ByteBuffer view = data.duplicate();
+        view.clear();
+        view.get(pageData);
+        return pageData;
+    }
 
-            // empty slot
-            if (!getSlot(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+    /**
+     * Writes the image of this page to the given channel at position,
+     * straight from the buffer that holds it.
+     */
+    synchronized void writeImage(FileChannel channel, long position) throws IOException {
+        ByteBuffer image = data.duplicate();
+        image.clear();
+        while (image.hasRemaining())
+            channel.write(image, position + image.position());
+    }
 
-                }
-                continue;
-            }
+    /**
+     * Copies the image of this page into a BufferPool frame, which backs
+     * the page from then on.
+     */
+    synchronized void attachFrame(ByteBuffer frame) {
+        // a view of a file mapping already lives outside the heap
+        if (isMapped())
+            return;
+
+        ByteBuffer image = data.duplicate();
+        image.clear();
+        ByteBuffer view = frame.duplicate();
+        view.clear();
+        view.put(image);
+        data = frame;
+    }
 
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-            	if(null == tuples[i])
-            		System.out.println("null");
-            	
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+    /**
+     * Moves the image of this page from its BufferPool frame to the heap.
+     * Called by the BufferPool before the frame is handed to another page,
+     * so anyone still holding this page keeps seeing its own contents.
+     */
+    synchronized void detachFrame() {
+        if (data.isReadOnly())
+            return;
 
-        // padding
-        int zerolen = BufferPool.PAGE_SIZE - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        data = ByteBuffer.wrap(getPageData());
+    }
 
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /** @return true if the image is a view of a memory-mapped file */
+    private boolean isMapped() {
+        return data.isReadOnly() && data.isDirect();
+    }
 
-        return baos.toByteArray();
+    /**
+     * Captures the before image and gives a page whose image is read-only
+     * (a view of a file mapping, or a shared before image) its own copy of
+     * the image before it is modified.
+     */
+    private void ensureWritable() {
+        captureBeforeImage();
+        if (data.isReadOnly())
+            data = ByteBuffer.wrap(getPageData());
     }
 
     /**
@@ -250,17 +306,11 @@ public class HeapPage implements Page {
     	
     	if(!getSlot(tno))
     		throw new DbException("Trying to delete an empty slot");
-    	
-    	if(!slotsFilled.contains(tno))
-    		throw new DbException("Trying to delete a non existant tuple");
     		
+    	ensureWritable();
     	setSlot(tno, false);
     	tuples[tno] = null;
-    	
-    	int indexToRemove = slotsFilled.indexOf(tno);
-    	slotsFilled.set(indexToRemove, -1);
-    	deletedSlots.add(indexToRemove);
-    	//slotsFilled.remove(indexToRemove);
+    	clearTupleData(tno);
     }
 
     /**
@@ -278,6 +328,8 @@ public class HeapPage implements Page {
     		throw new DbException("Tuple Description misatch");
 
     	int index = indexOfEmptySlot();
+    	ensureWritable();
+    	writeTupleData(index, t);
     	
     	t.setRecordId(new RecordId(this.getId(), index));
 
@@ -285,38 +337,86 @@ public class HeapPage implements Page {
     	setSlot(index, true);
     }
 
+    private int tupleOffset(int slot) {
+    	return headerSize + slot * td.getSize();
+    }
+
+    /**
+     * Reads an INT_TYPE field of the tuple in the specified slot straight
+     * from the page image, without decoding the tuple.
+     */
+    synchronized int getInt(int slot, int field) {
+    	return data.getInt(fieldOffset(slot, field));
+    }
+
+    /**
+     * Hashes the serialized form of a field of the tuple in the specified
+     * slot, as {@link BloomFilterMap} does with values.
+     */
+    synchronized long hashField(int slot, int field) {
+    	return BloomFilterMap.hash(data, fieldOffset(slot, field), td.getType(field).getLen());
+    }
+
+    private int fieldOffset(int slot, int field) {
+    	int offset = tupleOffset(slot);
+    	for (int j = 0; j < field; j++)
+    		offset += td.getType(j).getLen();
+    	return offset;
+    }
+
+    private void writeTupleData(int slot, Tuple t) throws DbException {
+    	// serialize the fields straight into the slot
+    	ByteBuffer view = data.duplicate();
+    	view.position(tupleOffset(slot));
+    	view.limit(tupleOffset(slot) + td.getSize());
+    	DataOutputStream dos = new DataOutputStream(new ByteBufferOutputStream(view));
+    	try {
+    		for (int j = 0; j < td.numFields(); j++)
+    			t.getField(j).serialize(dos);
+    		dos.flush();
+    	} catch (IOException e) {
+    		throw new DbException("could not serialize tuple: " + e.getMessage());
+    	} catch (BufferOverflowException e) {
+    		throw new DbException("tuple does not fit its slot");
+    	}
+    }
+
+    private void clearTupleData(int slot) {
+    	int offset = tupleOffset(slot);
+    	for (int i = 0; i < td.getSize(); i++)
+    		data.put(offset + i, (byte) 0);
+    }
+
+    /**
+     * @return the first empty slot, or -1 if the page is full
+     */
     private int indexOfEmptySlot() {
-    	int indexToReturn = 0;
-    	
-    	for (int i = 0; i < header.length; i++, indexToReturn += 8) {
-    		byte b = header[i];
-    		byte r = ~0;
-    		if((b & r) != r){
-    			for(int bi = 0;bi < 8;bi++)
-    				if(!isSlotFilled(bi, b))
-    					return indexToReturn + bi;
+    	for (int w = 0; w < slotBits.length; w++) {
+    		long free = ~slotBits[w];
+    		if(0 != free){
+    			int slot = w * 64 + Long.numberOfTrailingZeros(free);
+    			return slot < numSlots ? slot : -1;
     		}
-		}
-    	
-		return 0;
-	}
-
-	private int freeOffset(byte b) {
-		int result = 8 + 1;
-
-		for (int i = 8; i >= 1; i--) {
-			if(!getBit(b, i)){
-				result -= i;
-				break;
-			}
-		}
-		
-		return result;
-	}
+    	}
+    	return -1;
+    }
 
-	private boolean getBit(byte b, int bitNumber) {
-		return (b & (1 << bitNumber - 1)) != 0;
-	}
+    /**
+     * @return the first filled slot at or after from, or -1 if there is none
+     */
+    synchronized int nextFilledSlot(int from) {
+    	if(from >= numSlots)
+    		return -1;
+    	
+    	int w = from / 64;
+    	long word = slotBits[w] & (~0L << (from % 64));
+    	while(0 == word){
+    		if(++w == slotBits.length)
+    			return -1;
+    		word = slotBits[w];
+    	}
+    	return w * 64 + Long.numberOfTrailingZeros(word);
+    }
 
 	private TransactionId dirtyTranscation = null;
     
@@ -338,63 +438,54 @@ public class HeapPage implements Page {
     	return dirtyTranscation;
     }
 
+    /**
+     * Returns the number of slots on this page, filled or not.
+     */
+    public int getNumSlots() {
+    	return numSlots;
+    }
+
     /**
      * Returns the number of empty slots on this page.
      */
-    public int getNumEmptySlots() {
-    	return tuples.length - slotsFilled.size() + deletedSlots.size();
+    public synchronized int getNumEmptySlots() {
+    	return numSlots - numFilled;
     }
 
     /**
      * Returns true if associated slot on this page is filled.
      */
-    public boolean getSlot(int i) {
-    	if(i > getNumTuples())
+    public synchronized boolean getSlot(int i) {
+    	if(i < 0 || i >= numSlots)
     		return false;
     	
     	return isSlotFilled(i);
     }
 
     private boolean isSlotFilled(int index) {
-    	int indexOfByteHeaderToCheck = index / 8;
-    	int offsetOfByteHeaderToCheck = index % 8;
-    	
-    	byte headerByte = header[indexOfByteHeaderToCheck];
-    	return isSlotFilled(offsetOfByteHeaderToCheck, headerByte);
-	}
-
-	private boolean isSlotFilled(int offsetOfByteHeaderToCheck, byte headerByte) {
-		if((headerByte & (1 << offsetOfByteHeaderToCheck)) > 0)
-    		return true;
-		return false;
+    	return (slotBits[index / 64] & (1L << index)) != 0;
 	}
 
 	/**
      * Abstraction to fill or clear a slot on this page.
      */
     private void setSlot(int index, boolean value) {
-    	int indexOfByteHeaderToCheck = index / 8;
-    	int offsetOfByteHeaderToCheck = index % 8;
+    	if(isSlotFilled(index) == value)
+    		return;
     	
-    	byte headerByte = header[indexOfByteHeaderToCheck];
-    	byte r = (byte) (1 << offsetOfByteHeaderToCheck);
-    	byte newByte = (byte) (headerByte | r);
+    	int indexOfByteHeaderToCheck = index / 8;
+    	byte r = (byte) (1 << (index % 8));
+    	byte headerByte = data.get(indexOfByteHeaderToCheck);
     	
-    	if(!value){
-    		byte ll = headerByte;
-    		//ystem.out.format("0x%x ", ll);
-    		byte rr = (byte) ~r;
-    		//System.out.format("0x%x ", rr);
-    		byte res =  (byte) (ll & rr);
-    		//System.out.format("0x%x ", res);
-    		newByte = (byte) res;
-    		//System.out.format("0x%x ", newByte);
+    	if(value){
+    		data.put(indexOfByteHeaderToCheck, (byte) (headerByte | r));
+    		slotBits[index / 64] |= 1L << index;
+    		numFilled++;
+    	} else {
+    		data.put(indexOfByteHeaderToCheck, (byte) (headerByte & ~r));
+    		slotBits[index / 64] &= ~(1L << index);
+    		numFilled--;
     	}
-    	
-    	header[indexOfByteHeaderToCheck] = newByte;
-    	
-    	if(value)
-    		slotsFilled.add(index);
     }
 
     /**
@@ -405,27 +496,4 @@ public class HeapPage implements Page {
     	return new HeapPageIterator(this);
     }
 
-	public synchronized Tuple readNextTuple(HeapPageIterator heapPageIterator) {
-		int indx = slotsFilled.get(heapPageIterator.ctr);
-		
-		while(indx == -1 && heapPageIterator.hasNext()){
-			heapPageIterator.ctr++;
-			indx = slotsFilled.get(heapPageIterator.ctr);
-		}
-		
-		if(-1 == indx)
-			heapPageIterator.ctr++;
-			
-		Tuple toReturn = tuples[heapPageIterator.ctr];
-		heapPageIterator.ctr++;
-		
-		if(null == toReturn){
-			if(heapPageIterator.hasNext())
-				return heapPageIterator.next();
-		}
-		
-		return toReturn;
-	}
-
 }
-
@@ -1,26 +1,31 @@
 package simpledb;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class HeapPageIterator implements Iterator<Tuple> {
 
 	private final HeapPage heapPage;
+	// the slot to look for the next filled slot from
 	public int ctr = 0;
 
 	public HeapPageIterator(HeapPage heapPage){
 		this.heapPage = heapPage;
 	}
-	
+
 	@Override
 	public synchronized boolean hasNext() {
-		int numSlots = heapPage.slotsFilled.size() - heapPage.deletedSlots.size();
-		boolean reachedEnd = numSlots > 0 && ctr < heapPage.slotsFilled.size();
-		return reachedEnd;
+		return heapPage.nextFilledSlot(ctr) >= 0;
 	}
 
 	@Override
 	public synchronized Tuple next() {
-		return heapPage.readNextTuple(this);
+		int slot = heapPage.nextFilledSlot(ctr);
+		if(slot < 0)
+			throw new NoSuchElementException();
+
+		ctr = slot + 1;
+		return heapPage.getTuple(slot);
 	}
 
 	@Override
@@ -0,0 +1,54 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * The interface for index files on disk. An index maps the values of one
+ * column of a table (the key) to the RecordIds of the tuples that hold
+ * them, so that tuples with a given key can be found without scanning the
+ * table.
+ * <p>
+ * An index is a DbFile of its own: its pages are read through the
+ * BufferPool, and it is registered in the Catalog under its own id with
+ * {@link Catalog#addIndex}. Its TupleDesc is that of the table. addTuple
+ * and deleteTuple add and remove the entry of a tuple of the table, which
+ * must have the RecordId it has in the table; operators that modify a table
+ * call them for every index of the table.
+ *
+ * @see IndexScan
+ */
+public interface IndexFile extends DbFile {
+
+    /**
+     * @return the id of the table this index is on
+     */
+    public int getTableId();
+
+    /**
+     * @return the field of the table this index is on
+     */
+    public int getKeyField();
+
+    /**
+     * @return true if {@link #iterator(TransactionId, Predicate)} can find
+     *   the tuples that satisfy predicates with the given operator on the key
+     */
+    public boolean supports(Predicate.Op op);
+
+    /**
+     * Adds the entries of all tuples of the table, for an index that has
+     * just been created on a table that already holds tuples.
+     */
+    public void addAllTuples() throws DbException, IOException, TransactionAbortedException;
+
+    /**
+     * Returns an iterator over the tuples of the table whose key satisfies
+     * the predicate. The iterator reads the pages of the table through the
+     * BufferPool, and returns the tuples with their RecordId in the table.
+     *
+     * @param predicate a predicate on {@link #getKeyField} whose operator
+     *   the index supports
+     * @throws IllegalArgumentException if the index cannot answer the predicate
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate predicate);
+}
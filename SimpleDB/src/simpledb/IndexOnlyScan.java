@@ -0,0 +1,110 @@
+package simpledb;
+import java.util.*;
+
+/**
+ * IndexOnlyScan is an access method that answers a query from the leaves of
+ * a covering {@link BTreeFile} alone: it returns the key and the included
+ * fields of the tuples whose key satisfies a predicate, without reading
+ * their pages of the table.
+ * <p>
+ * Its tuples have the {@link BTreeFile#getCoveringTupleDesc covering
+ * TupleDesc} of the index, not that of the table: the key field comes
+ * first, then the included fields.
+ *
+ * @see IndexScan
+ */
+public class IndexOnlyScan implements DbIterator {
+
+    private final TransactionId tid;
+	private final BTreeFile index;
+	private final String tableAlias;
+	private final Predicate predicate;
+	private final TupleDesc td;
+	private DbFileIterator iterator = null;
+
+	/**
+     * Creates a scan over the key and included fields of the tuples of a
+     * table that satisfy a predicate, as a part of the specified transaction.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param index a covering index on the column the predicate is on
+     * @param tableAlias the alias of the table (needed by the parser)
+     * @param predicate the predicate returned tuples satisfy, on the key
+     *         field as numbered in the table; or null to return all tuples
+     *         in key order
+     * @throws IllegalArgumentException if the index cannot answer the predicate
+     */
+    public IndexOnlyScan(TransactionId tid, BTreeFile index, String tableAlias, Predicate predicate) {
+		if (null != predicate
+				&& (predicate.getField() != index.getKeyField() || !index.supports(predicate.getOp())))
+			throw new IllegalArgumentException("index on field " + index.getKeyField() + " cannot answer " + predicate);
+		this.tid = tid;
+		this.index = index;
+		this.tableAlias = tableAlias;
+		this.predicate = predicate;
+		this.td = index.getCoveringTupleDesc();
+    }
+
+    /**
+     * @return the index this scan reads
+     */
+    public BTreeFile getIndex() {
+    	return index;
+    }
+
+    /**
+     * @return the id of the table this scan reads
+     */
+    public int getTableId() {
+    	return index.getTableId();
+    }
+
+    /**
+     * @return the alias of the table this scan reads
+     */
+    public String getAlias() {
+    	return tableAlias;
+    }
+
+    /**
+     * @return the predicate returned tuples satisfy, or null
+     */
+    public Predicate getPredicate() {
+    	return predicate;
+    }
+
+    public void open()
+        throws DbException, TransactionAbortedException {
+    	iterator = index.indexOnlyIterator(tid, predicate);
+    	iterator.open();
+    }
+
+    /**
+     * Returns the covering TupleDesc of the index.
+     */
+    public TupleDesc getTupleDesc() {
+    	return td;
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+    	return null != iterator && iterator.hasNext();
+    }
+
+    public Tuple next()
+        throws NoSuchElementException, TransactionAbortedException, DbException {
+    	if (null == iterator)
+    		throw new NoSuchElementException("iterator null");
+    	return iterator.next();
+    }
+
+    public void close() {
+    	if (null != iterator)
+    		iterator.close();
+    	iterator = null;
+    }
+
+    public void rewind()
+        throws DbException, NoSuchElementException, TransactionAbortedException {
+    	iterator.rewind();
+    }
+}
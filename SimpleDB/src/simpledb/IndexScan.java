@@ -0,0 +1,102 @@
+package simpledb;
+import java.util.*;
+
+/**
+ * IndexScan is an access method that reads the tuples of a table that
+ * satisfy a predicate on an indexed column through the index, instead of
+ * reading the whole table.
+ *
+ * @see IndexFile
+ * @see SeqScan
+ */
+public class IndexScan implements DbIterator {
+
+    private final TransactionId tid;
+	private final IndexFile index;
+	private final String tableAlias;
+	private final Predicate predicate;
+	private DbFileIterator iterator = null;
+
+	/**
+     * Creates a scan over the tuples of a table that satisfy a predicate,
+     * as a part of the specified transaction.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param index an index on the column the predicate is on
+     * @param tableAlias the alias of the table (needed by the parser)
+     * @param predicate the predicate returned tuples satisfy; its operator
+     *         must be supported by the index
+     * @throws IllegalArgumentException if the index cannot answer the predicate
+     */
+    public IndexScan(TransactionId tid, IndexFile index, String tableAlias, Predicate predicate) {
+		if (predicate.getField() != index.getKeyField() || !index.supports(predicate.getOp()))
+			throw new IllegalArgumentException("index on field " + index.getKeyField() + " cannot answer " + predicate);
+		this.tid = tid;
+		this.index = index;
+		this.tableAlias = tableAlias;
+		this.predicate = predicate;
+    }
+
+    /**
+     * @return the index this scan reads
+     */
+    public IndexFile getIndex() {
+    	return index;
+    }
+
+    /**
+     * @return the id of the table this scan reads
+     */
+    public int getTableId() {
+    	return index.getTableId();
+    }
+
+    /**
+     * @return the alias of the table this scan reads
+     */
+    public String getAlias() {
+    	return tableAlias;
+    }
+
+    /**
+     * @return the predicate returned tuples satisfy
+     */
+    public Predicate getPredicate() {
+    	return predicate;
+    }
+
+    public void open()
+        throws DbException, TransactionAbortedException {
+    	iterator = index.iterator(tid, predicate);
+    	iterator.open();
+    }
+
+    /**
+     * Returns the TupleDesc of the table.
+     */
+    public TupleDesc getTupleDesc() {
+    	return index.getTupleDesc();
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+    	return null != iterator && iterator.hasNext();
+    }
+
+    public Tuple next()
+        throws NoSuchElementException, TransactionAbortedException, DbException {
+    	if (null == iterator)
+    		throw new NoSuchElementException("iterator null");
+    	return iterator.next();
+    }
+
+    public void close() {
+    	if (null != iterator)
+    		iterator.close();
+    	iterator = null;
+    }
+
+    public void rewind()
+        throws DbException, NoSuchElementException, TransactionAbortedException {
+    	iterator.rewind();
+    }
+}
@@ -88,6 +88,11 @@ public class LogFile {
     static int LONG_SIZE = 8;
 
     long currentOffset = -1;
+    // bytes dropped from the front of the log by logTruncate, so that
+    // currentOffset + truncatedBytes never decreases
+    long truncatedBytes = 0;
+    // the log sequence number up to which the log is known to be on disk
+    volatile long forcedLsn = 0;
     int pageSize;
     int totalRecords = 0; // for PatchTest
 
@@ -191,10 +196,12 @@ public class LogFile {
         @param tid The transaction performing the write
         @param before The before image of the page
         @param after The after image of the page
+        @return the log sequence number of the end of the record; the
+        record is on disk once {@link #forcedLsn()} has reached it
 
         @see simpledb.Page#getBeforeImage
     */
-    public  synchronized void logWrite(TransactionId tid, Page before,
+    public  synchronized long logWrite(TransactionId tid, Page before,
                                        Page after)
         throws IOException  {
         Debug.log("WRITE, offset = " + raf.getFilePointer());
@@ -216,6 +223,7 @@ public class LogFile {
         currentOffset = raf.getFilePointer();
 
         Debug.log("WRITE OFFSET = " + currentOffset);
+        return truncatedBytes + currentOffset;
     }
 
     void writePageData(RandomAccessFile raf, Page p) throws IOException{
@@ -240,9 +248,18 @@ public class LogFile {
         for (int i = 0; i < pageInfo.length; i++) {
             raf.writeInt(pageInfo[i]);
         }
-        byte[] pageData = p.getPageData();
-        raf.writeInt(pageData.length);
-        raf.write(pageData);
+        if (p instanceof HeapPage) {
+            // written from the page's own buffer; the positional write
+            // does not move the file pointer of raf
+            raf.writeInt(BufferPool.PAGE_SIZE);
+            long position = raf.getFilePointer();
+            ((HeapPage) p).writeImage(raf.getChannel(), position);
+            raf.seek(position + BufferPool.PAGE_SIZE);
+        } else {
+            byte[] pageData = p.getPageData();
+            raf.writeInt(pageData.length);
+            raf.write(pageData);
+        }
         //        Debug.log ("WROTE PAGE DATA, CLASS = " + pageClassName + ", table = " +  pid.getTableId() + ", page = " + pid.pageno());
     }
 
@@ -266,6 +283,13 @@ public class LogFile {
             pid = (PageId)idConsts[0].newInstance(idArgs);
 
             Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
+            Constructor<?> pageConst = pageConsts[0];
+            // pages may have other constructors (e.g. over a BufferPool frame), pick the (id, byte[]) one
+            for (Constructor<?> c : pageConsts) {
+                Class<?>[] params = c.getParameterTypes();
+                if (params.length == 2 && params[1] == byte[].class)
+                    pageConst = c;
+            }
             int pageSize = raf.readInt();
 
             byte[] pageData = new byte[pageSize];
@@ -275,7 +299,7 @@ public class LogFile {
             pageArgs[0] = pid;
             pageArgs[1] = pageData;
 
-            newPage = (Page)pageConsts[0].newInstance(pageArgs);
+            newPage = (Page)pageConst.newInstance(pageArgs);
 
             //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
         } catch (ClassNotFoundException e){
@@ -449,7 +473,10 @@ public class LogFile {
         raf.seek(raf.length());
         newFile.delete();
 
+        truncatedBytes += minLogRecord - LONG_SIZE;
         currentOffset = raf.getFilePointer();
+        // the rewritten records are not on disk yet
+        force();
         //print();
     }
 
@@ -505,6 +532,16 @@ public class LogFile {
 
     public  synchronized void force() throws IOException {
         raf.getChannel().force(true);
+        forcedLsn = truncatedBytes + currentOffset;
+    }
+
+    /** Return the log sequence number up to which the log has been
+        forced to disk.  Log sequence numbers are byte offsets in the log
+        that do not change when the log is truncated; see
+        {@link #logWrite}.  Does not wait for a force in progress.
+    */
+    public long forcedLsn() {
+        return forcedLsn;
     }
 
 }
@@ -0,0 +1,171 @@
+package simpledb;
+
+/**
+ * LRU-K page replacement (O'Neil, O'Neil and Weikum).
+ * <p>
+ * The policy remembers the logical times of the last K references to every
+ * occupied frame and evicts the frame whose K-th most recent reference is
+ * the oldest. Frames that were referenced fewer than K times have an
+ * infinite backward K-distance and go first, least recently used first, so
+ * pages touched only once by a scan do not push out pages that are used
+ * over and over.
+ * <p>
+ * Reference histories live in one long[] and the frames are kept in an
+ * indexed binary heap ordered by backward K-distance, so hits and misses
+ * both cost O(log numFrames) and no objects are allocated.
+ */
+public class LruKReplacementPolicy implements ReplacementPolicy {
+
+    /** Default history depth; LRU-2 captures most of the benefit. */
+    public static final int DEFAULT_K = 2;
+
+    private final int k;
+    private long clock = 0;
+
+    /** history[frame * k + i] is the time of the (i+1)-th most recent reference, 0 if none. */
+    private final long[] history;
+
+    private final int[] heap;
+    private final int[] heapPos;
+    private int heapSize = 0;
+
+    /** Scratch space for frames skipped while looking for a victim. */
+    private final int[] skipped;
+
+    /**
+     * @param numFrames the number of frames in the buffer pool
+     */
+    public LruKReplacementPolicy(int numFrames) {
+        this(numFrames, DEFAULT_K);
+    }
+
+    /**
+     * @param numFrames the number of frames in the buffer pool
+     * @param k the number of references remembered for every frame
+     */
+    public LruKReplacementPolicy(int numFrames, int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1");
+        this.k = k;
+        this.history = new long[numFrames * k];
+        this.heap = new int[numFrames];
+        this.heapPos = new int[numFrames];
+        this.skipped = new int[numFrames];
+        for (int i = 0; i < numFrames; i++)
+            heapPos[i] = -1;
+    }
+
+    public void frameLoaded(int frame) {
+        int base = frame * k;
+        for (int i = 0; i < k; i++)
+            history[base + i] = 0;
+        recordReference(frame);
+
+        if (heapPos[frame] == -1) {
+            heap[heapSize] = frame;
+            heapPos[frame] = heapSize;
+            heapSize++;
+            siftUp(heapSize - 1);
+        } else {
+            siftDown(heapPos[frame]);
+        }
+    }
+
+    public void frameAccessed(int frame) {
+        recordReference(frame);
+        // a reference only makes the frame younger, so it can only sink
+        if (heapPos[frame] != -1)
+            siftDown(heapPos[frame]);
+    }
+
+    public void frameReleased(int frame) {
+        int pos = heapPos[frame];
+        if (pos == -1)
+            return;
+
+        heapSize--;
+        heapPos[frame] = -1;
+        if (pos == heapSize)
+            return;
+
+        int last = heap[heapSize];
+        heap[pos] = last;
+        heapPos[last] = pos;
+        siftDown(pos);
+        siftUp(heapPos[last]);
+    }
+
+    public int chooseVictim(Evictable evictable) {
+        int numSkipped = 0;
+        int victim = -1;
+
+        while (heapSize > 0) {
+            int candidate = heap[0];
+            if (evictable.canEvict(candidate)) {
+                victim = candidate;
+                break;
+            }
+            // set the candidate aside so the next oldest frame surfaces
+            frameReleased(candidate);
+            skipped[numSkipped++] = candidate;
+        }
+
+        for (int i = 0; i < numSkipped; i++) {
+            int frame = skipped[i];
+            heap[heapSize] = frame;
+            heapPos[frame] = heapSize;
+            heapSize++;
+            siftUp(heapSize - 1);
+        }
+
+        return victim;
+    }
+
+    private void recordReference(int frame) {
+        int base = frame * k;
+        for (int i = k - 1; i > 0; i--)
+            history[base + i] = history[base + i - 1];
+        history[base] = ++clock;
+    }
+
+    /** @return true if frame a should be evicted before frame b */
+    private boolean older(int a, int b) {
+        long kthA = history[a * k + k - 1];
+        long kthB = history[b * k + k - 1];
+        if (kthA != kthB)
+            return kthA < kthB;
+        return history[a * k] < history[b * k];
+    }
+
+    private void siftUp(int pos) {
+        int frame = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) / 2;
+            if (!older(frame, heap[parent]))
+                break;
+            heap[pos] = heap[parent];
+            heapPos[heap[pos]] = pos;
+            pos = parent;
+        }
+        heap[pos] = frame;
+        heapPos[frame] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int frame = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && older(heap[child + 1], heap[child]))
+                child++;
+            if (!older(heap[child], frame))
+                break;
+            heap[pos] = heap[child];
+            heapPos[heap[pos]] = pos;
+            pos = child;
+        }
+        heap[pos] = frame;
+        heapPos[frame] = pos;
+    }
+}
@@ -0,0 +1,55 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed set of page sized frames carved out of preallocated direct
+ * ByteBuffer slabs. The memory lives outside the Java heap, so the size of
+ * the BufferPool does not change how much the garbage collector has to scan.
+ * <p>
+ * Frame i of the arena always refers to the same PAGE_SIZE bytes; the
+ * arena does no bookkeeping of its own, the owning
+ * {@link BufferPoolPartition} decides which frames are in use.
+ */
+class PageFrameArena {
+
+	/** Frames per slab; a slab is one direct allocation of 1MB. */
+	static final int FRAMES_PER_SLAB = 256;
+
+	private final ByteBuffer[] slabs;
+	private final ByteBuffer[] frames;
+
+	/**
+	 * @param numFrames the number of PAGE_SIZE frames to allocate
+	 */
+	PageFrameArena(int numFrames) {
+		this.slabs = new ByteBuffer[(numFrames + FRAMES_PER_SLAB - 1) / FRAMES_PER_SLAB];
+		this.frames = new ByteBuffer[numFrames];
+
+		for (int i = 0; i < slabs.length; i++) {
+			int slabFrames = Math.min(FRAMES_PER_SLAB, numFrames - i * FRAMES_PER_SLAB);
+			slabs[i] = ByteBuffer.allocateDirect(slabFrames * BufferPool.PAGE_SIZE);
+		}
+
+		for (int frame = 0; frame < numFrames; frame++) {
+			ByteBuffer slab = slabs[frame / FRAMES_PER_SLAB].duplicate();
+			int offset = (frame % FRAMES_PER_SLAB) * BufferPool.PAGE_SIZE;
+			slab.limit(offset + BufferPool.PAGE_SIZE);
+			slab.position(offset);
+			frames[frame] = slab.slice();
+		}
+	}
+
+	/** @return the number of frames in this arena */
+	int numFrames() {
+		return frames.length;
+	}
+
+	/**
+	 * Returns a PAGE_SIZE buffer over the given frame, positioned at 0. Every
+	 * call returns an independent view so callers may move its position.
+	 */
+	ByteBuffer frame(int frame) {
+		return frames[frame].duplicate();
+	}
+}
@@ -0,0 +1,124 @@
+package simpledb;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Adaptive read-ahead for a sequential scan over a HeapFile.
+ * <p>
+ * The scan reports every page it is about to read. Once two consecutive
+ * pages have been requested, the following pages are read into the
+ * BufferPool (or into the scan's {@link BufferAccessStrategy} ring) on a
+ * small shared pool of I/O threads, so the scan finds them cached. The
+ * read-ahead window starts at {@link #MIN_DEPTH} pages and doubles every
+ * time the scan has consumed a full window, up to a maximum that depends on
+ * how much room the pool or the ring has. Any non-sequential request resets
+ * it.
+ * <p>
+ * Read-ahead can be switched off with -Dsimpledb.ReadAhead=false.
+ */
+class PageReadAhead {
+
+	/** System property that turns read-ahead off when set to false. */
+	static final String READ_AHEAD_PROPERTY = "simpledb.ReadAhead";
+
+	/** Pages read ahead once a scan is found to be sequential. */
+	static final int MIN_DEPTH = 4;
+
+	/** Upper bound of the read-ahead window. */
+	static final int MAX_DEPTH = 64;
+
+	/** Number of threads reading pages ahead for all scans. */
+	static final int IO_THREADS = 4;
+
+	private static ExecutorService ioThreads = null;
+
+	private final HeapFile file;
+	private final BufferPool bufferPool;
+	private final BufferAccessStrategy strategy;
+	private final int maxDepth;
+
+	private int lastPage = -2;
+	private int depth = 0;
+	private int consumed = 0;
+	private int issuedUpTo = -1;
+
+	/**
+	 * @param file the file being scanned
+	 * @param strategy the ring the scan reads through, or null
+	 */
+	PageReadAhead(HeapFile file, BufferAccessStrategy strategy) {
+		this.file = file;
+		this.bufferPool = Database.getBufferPool();
+		this.strategy = strategy;
+
+		// never read so far ahead that the pages are gone before the scan gets there
+		int room = null != strategy ? strategy.numPages() / 2 : bufferPool.getNumPages() / 4;
+		this.maxDepth = Math.min(MAX_DEPTH, room);
+	}
+
+	/** @return true unless read-ahead has been switched off */
+	static boolean isEnabled() {
+		return !"false".equalsIgnoreCase(System.getProperty(READ_AHEAD_PROPERTY));
+	}
+
+	/** @return the current size of the read-ahead window, 0 if not sequential */
+	int depth() {
+		return depth;
+	}
+
+	/**
+	 * Tells the read-ahead that the scan is about to read pageNo, and issues
+	 * reads for the pages that follow it.
+	 *
+	 * @param lastPageNo the last page of the file
+	 */
+	void access(int pageNo, int lastPageNo) {
+		if(pageNo != lastPage + 1) {
+			depth = 0;
+			consumed = 0;
+			issuedUpTo = pageNo;
+		} else if(0 == depth) {
+			depth = Math.min(MIN_DEPTH, maxDepth);
+		} else if(++consumed >= depth) {
+			depth = Math.min(2 * depth, maxDepth);
+			consumed = 0;
+		}
+		lastPage = pageNo;
+
+		int until = Math.min(pageNo + depth, lastPageNo);
+		for (int p = Math.max(issuedUpTo, pageNo) + 1; p <= until; p++)
+			prefetch(p);
+		issuedUpTo = Math.max(issuedUpTo, until);
+	}
+
+	/**
+	 * Reads the given page of the file in the background.
+	 */
+	void prefetch(int pageNo) {
+		final HeapPageId pid = new HeapPageId(file.getId(), pageNo);
+		executor().execute(new Runnable() {
+			public void run() {
+				try {
+					bufferPool.getPage(null, pid, Permissions.READ_ONLY, strategy);
+				} catch (Exception e) {
+					// only a hint; the scan reads the page itself if it has to
+				}
+			}
+		});
+	}
+
+	private static synchronized ExecutorService executor() {
+		if(null == ioThreads) {
+			ioThreads = Executors.newFixedThreadPool(IO_THREADS, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "PageReadAhead");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return ioThreads;
+	}
+}
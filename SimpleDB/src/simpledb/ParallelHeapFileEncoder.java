@@ -0,0 +1,326 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The conversion pipeline behind {@link HeapFileEncoder}: converts a comma
+ * delimited text file into HeapPages on several threads.
+ * <p>
+ * The input is cut into chunks of about {@link #CHUNK_SIZE} bytes that end
+ * on line boundaries. Worker threads map a chunk and parse its lines
+ * straight into a buffer of records in their on-page format. The calling
+ * thread takes the record buffers in input order, cuts them into pages and
+ * writes every page with one gathering write of its header, the record
+ * slices that make up its body (which may come from two chunks) and zero
+ * padding, so records are never copied into a page image. At most two
+ * chunks per worker are in flight, which bounds the memory used. The
+ * {@link ZoneMap} of the output is built from the same record slices, and
+ * its {@link FreeSpaceMap} from the number of records on every page.
+ */
+class ParallelHeapFileEncoder {
+
+    /** Approximate number of input bytes parsed by one task. */
+    static final int CHUNK_SIZE = 4 << 20;
+
+    private final Type[] types;
+    private final int npagebytes;
+    private final int nrecbytes;
+    private final int nrecords;
+    private final int nheaderbytes;
+    private final ByteBuffer zeros;
+    private final ByteBuffer fullHeader;
+
+    private FileChannel out;
+    private ZoneMap zoneMap;
+    private FreeSpaceMap freeSpace;
+    private int[] zoneOffsets;
+    private int[] mins;
+    private int[] maxs;
+    private final List<ByteBuffer> body = new ArrayList<ByteBuffer>();
+    private int recordsOnPage = 0;
+    private int npages = 0;
+
+    ParallelHeapFileEncoder(int npagebytes, Type[] types) {
+        this.types = types;
+        this.npagebytes = npagebytes;
+        int recbytes = 0;
+        for (Type type : types)
+            recbytes += type.getLen();
+        this.nrecbytes = recbytes;
+        this.nrecords = (npagebytes * 8) / (nrecbytes * 8 + 1);
+        this.nheaderbytes = (nrecords + 7) / 8;
+        this.zeros = ByteBuffer.allocate(npagebytes).asReadOnlyBuffer();
+        this.fullHeader = header(nrecords).asReadOnlyBuffer();
+    }
+
+    /**
+     * Converts inFile into outFile, parsing on the given number of threads.
+     */
+    void convert(File inFile, File outFile, int threads) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "HeapFileEncoder");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        zoneMap = new ZoneMap(outFile, new TupleDesc(types));
+        freeSpace = new FreeSpaceMap(outFile, nrecords);
+        int[] columns = zoneMap.getColumns();
+        zoneOffsets = new int[columns.length];
+        for (int k = 0; k < columns.length; k++) {
+            for (int i = 0; i < columns[k]; i++)
+                zoneOffsets[k] += types[i].getLen();
+        }
+        mins = new int[columns.length];
+        maxs = new int[columns.length];
+
+        FileInputStream is = new FileInputStream(inFile);
+        FileOutputStream os = new FileOutputStream(outFile);
+        try {
+            final FileChannel in = is.getChannel();
+            out = os.getChannel();
+            long size = in.size();
+            long position = 0;
+            LinkedList<Future<ByteBuffer>> inFlight = new LinkedList<Future<ByteBuffer>>();
+            while (position < size || !inFlight.isEmpty()) {
+                while (position < size && inFlight.size() < 2 * threads) {
+                    final long start = position;
+                    final long end = chunkEnd(in, start, size);
+                    inFlight.add(workers.submit(new Callable<ByteBuffer>() {
+                        public ByteBuffer call() throws IOException {
+                            return encode(in.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+                        }
+                    }));
+                    position = end;
+                }
+                addRecords(result(inFlight.removeFirst()));
+            }
+
+            // an empty input still makes a file of one empty page
+            if (recordsOnPage > 0 || npages == 0)
+                writePage();
+            zoneMap.save(npages);
+            freeSpace.save(npages);
+        } finally {
+            workers.shutdownNow();
+            is.close();
+            os.close();
+        }
+    }
+
+    private static ByteBuffer result(Future<ByteBuffer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while converting");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return the position just after the first newline at or after
+     *   start + CHUNK_SIZE, or size if there is none
+     */
+    private static long chunkEnd(FileChannel in, long start, long size) throws IOException {
+        long position = start + CHUNK_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < size) {
+            buffer.clear();
+            int read = in.read(buffer, position);
+            if (read <= 0)
+                break;
+            for (int i = 0; i < read; i++) {
+                if ('\n' == buffer.get(i))
+                    return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parses the lines of a chunk into records.
+     *
+     * @return the records, between position 0 and the limit
+     */
+    ByteBuffer encode(ByteBuffer chunk) throws IOException {
+        int initial = Math.max(16, Math.min(chunk.remaining(), 1 << 20) / nrecbytes) * nrecbytes;
+        ByteBuffer records = ByteBuffer.allocate(initial);
+
+        int lineStart = chunk.position();
+        int limit = chunk.limit();
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && '\n' != chunk.get(lineEnd))
+                lineEnd++;
+
+            if (!isBlank(chunk, lineStart, lineEnd)) {
+                if (records.remaining() < nrecbytes) {
+                    ByteBuffer grown = ByteBuffer.allocate(2 * records.capacity());
+                    records.flip();
+                    grown.put(records);
+                    records = grown;
+                }
+                encodeLine(chunk, lineStart, lineEnd, records);
+            }
+            lineStart = lineEnd + 1;
+        }
+        records.flip();
+        return records;
+    }
+
+    /** Lines holding nothing but carriage returns are skipped. */
+    private static boolean isBlank(ByteBuffer chunk, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if ('\r' != chunk.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    private void encodeLine(ByteBuffer chunk, int start, int end, ByteBuffer records) throws IOException {
+        int fieldStart = start;
+        for (int field = 0; field < types.length; field++) {
+            int fieldEnd = fieldStart;
+            while (fieldEnd < end && ',' != chunk.get(fieldEnd))
+                fieldEnd++;
+            boolean last = field == types.length - 1;
+            if (last != (fieldEnd == end))
+                throw new IOException("expected " + types.length + " fields: " + line(chunk, start, end));
+
+            // trim, as String.trim() would
+            int from = fieldStart;
+            int to = fieldEnd;
+            while (from < to && (chunk.get(from) & 0xff) <= ' ')
+                from++;
+            while (to > from && (chunk.get(to - 1) & 0xff) <= ' ')
+                to--;
+
+            if (types[field] == Type.INT_TYPE) {
+                records.putInt(parseInt(chunk, from, to, start, end));
+            } else {
+                int length = Math.min(to - from, Type.STRING_LEN);
+                records.putInt(length);
+                for (int i = 0; i < length; i++)
+                    records.put(chunk.get(from + i));
+                for (int i = length; i < Type.STRING_LEN; i++)
+                    records.put((byte) 0);
+            }
+            fieldStart = fieldEnd + 1;
+        }
+    }
+
+    /**
+     * Parses the decimal integer between from and to. A malformed value is
+     * reported and stored as 0.
+     */
+    private static int parseInt(ByteBuffer chunk, int from, int to, int lineStart, int lineEnd) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && ('-' == chunk.get(i) || '+' == chunk.get(i)))
+            negative = '-' == chunk.get(i++);
+
+        long value = 0;
+        boolean valid = i < to;
+        for (; i < to && valid; i++) {
+            int digit = chunk.get(i) - '0';
+            valid = digit >= 0 && digit <= 9;
+            value = 10 * value + digit;
+            valid &= value <= (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE);
+        }
+        if (!valid) {
+            System.out.println("BAD LINE : " + line(chunk, lineStart, lineEnd));
+            return 0;
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    private static String line(ByteBuffer chunk, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = chunk.get(start + i);
+        return new String(bytes).trim();
+    }
+
+    /**
+     * Adds the records of a chunk to the pages being written, writing every
+     * page that fills up.
+     */
+    private void addRecords(ByteBuffer records) throws IOException {
+        while (records.hasRemaining()) {
+            int n = Math.min(nrecords - recordsOnPage, records.remaining() / nrecbytes);
+            ByteBuffer slice = records.duplicate();
+            slice.limit(slice.position() + n * nrecbytes);
+            body.add(slice);
+            records.position(slice.limit());
+            recordsOnPage += n;
+            if (recordsOnPage == nrecords)
+                writePage();
+        }
+    }
+
+    /**
+     * Writes the page made of the records in body with one gathering write.
+     */
+    private void writePage() throws IOException {
+        // zone map ranges first, the write consumes the record slices
+        ZoneMap.empty(mins, maxs);
+        for (ByteBuffer slice : body) {
+            for (int record = slice.position(); record < slice.limit(); record += nrecbytes) {
+                for (int k = 0; k < zoneOffsets.length; k++) {
+                    int value = slice.getInt(record + zoneOffsets[k]);
+                    mins[k] = Math.min(mins[k], value);
+                    maxs[k] = Math.max(maxs[k], value);
+                }
+            }
+        }
+        zoneMap.set(npages, mins, maxs, false);
+        freeSpace.update(npages, nrecords - recordsOnPage);
+
+        ByteBuffer[] page = new ByteBuffer[body.size() + 2];
+        page[0] = recordsOnPage == nrecords ? fullHeader.duplicate() : header(recordsOnPage);
+        for (int i = 0; i < body.size(); i++)
+            page[i + 1] = body.get(i);
+        ByteBuffer padding = zeros.duplicate();
+        padding.limit(npagebytes - nheaderbytes - recordsOnPage * nrecbytes);
+        page[page.length - 1] = padding;
+
+        long remaining = npagebytes;
+        while (remaining > 0)
+            remaining -= out.write(page);
+
+        body.clear();
+        recordsOnPage = 0;
+        npages++;
+    }
+
+    /**
+     * @return a page header in which the first n slots are in use
+     */
+    private ByteBuffer header(int n) {
+        byte[] header = new byte[nheaderbytes];
+        for (int i = 0; i < n; i++)
+            header[i / 8] |= (byte) (1 << (i % 8));
+        return ByteBuffer.wrap(header);
+    }
+}
@@ -4,7 +4,11 @@ package simpledb;
  */
 public class Predicate {
 
-    /** Constants used for return codes in Field.compare */
+    private final Op op;
+	private final Field operand;
+	private final int fieldIndex;
+
+	/** Constants used for return codes in Field.compare */
     public enum Op {
         EQUALS, GREATER_THAN, LESS_THAN, LESS_THAN_OR_EQ, GREATER_THAN_OR_EQ, LIKE, NOT_EQUALS;
 
@@ -37,7 +41,30 @@ public class Predicate {
      * @param operand field value to compare passed in tuples to
      */
     public Predicate(int field, Op op, Field operand) {
-        // some code goes here
+		this.fieldIndex = field;
+		this.op = op;
+		this.operand = operand;
+    }
+
+    /**
+     * @return the field number of passed in tuples to compare against
+     */
+    public int getField() {
+    	return fieldIndex;
+    }
+
+    /**
+     * @return the operation to use for comparison
+     */
+    public Op getOp() {
+    	return op;
+    }
+
+    /**
+     * @return the field value to compare passed in tuples to
+     */
+    public Field getOperand() {
+    	return operand;
     }
 
     /**
@@ -50,8 +77,8 @@ public class Predicate {
      * @return true if the comparison is true, false otherwise.
      */
     public boolean filter(Tuple t) {
-        // some code goes here
-        return false;
+    	Field fieldToTest = t.getField(fieldIndex);
+    	return fieldToTest.compare(op, operand);
     }
 
     /**
@@ -0,0 +1,48 @@
+package simpledb;
+
+/**
+ * ReplacementPolicy decides which frame of the BufferPool gives up its page
+ * when a new page has to be brought in and the pool is full.
+ * <p>
+ * Frames are identified by their index in the BufferPool frame table
+ * (0 .. numFrames-1), so implementations keep their bookkeeping in
+ * primitive arrays sized once at construction and never touch the page
+ * objects themselves.
+ *
+ * @see BufferPool
+ */
+public interface ReplacementPolicy {
+
+    /**
+     * Tells the policy whether the page held in a frame may be thrown out
+     * right now (e.g. it is not dirty and nobody holds an exclusive lock on it).
+     */
+    public interface Evictable {
+        public boolean canEvict(int frame);
+    }
+
+    /**
+     * A page was just read into the specified (previously free) frame.
+     */
+    public void frameLoaded(int frame);
+
+    /**
+     * The page held in the specified frame was requested again.
+     */
+    public void frameAccessed(int frame);
+
+    /**
+     * The specified frame no longer holds a page and should not be
+     * considered for eviction until it is loaded again.
+     */
+    public void frameReleased(int frame);
+
+    /**
+     * Pick the frame to evict.
+     *
+     * @param evictable tells which of the occupied frames may be evicted
+     * @return the index of the frame to evict, or -1 if no occupied frame
+     *   can be evicted
+     */
+    public int chooseVictim(Evictable evictable);
+}
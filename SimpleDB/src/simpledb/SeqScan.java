@@ -6,12 +6,27 @@ import java.util.*;
  * SeqScan is an implementation of a sequential scan access method that reads
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
+ * <p>
+ * Scans over HeapFiles that are large compared to the BufferPool read
+ * through a {@link BufferAccessStrategy} ring, so that they do not push
+ * the rest of the working set out of the pool.
+ * <p>
+ * A scan can be given a predicate, in which case it only returns the
+ * tuples that satisfy it. Over a HeapFile such a scan does not read the
+ * pages that the {@link ZoneMap} of the file rules out.
+ * <p>
+ * A scan can also be told which fields its consumers read. Over a
+ * {@link ColumnFile} it then only reads those columns (and the one the
+ * predicate is on), and leaves the other fields of its tuples null.
  */
 public class SeqScan implements DbIterator {
 
     private final TransactionId tid;
 	private final int tableid;
 	private final String tableAlias;
+	private final Predicate predicate;
+	private final Set<Integer> fields;
+	private Tuple nextMatch = null;
 
 	/**
      * Creates a sequential scan over the specified table as a part of the
@@ -26,9 +41,70 @@ public class SeqScan implements DbIterator {
      *         name can be null.fieldName, tableAlias.null, or null.null).
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
+		this(tid, tableid, tableAlias, null);
+    }
+
+	/**
+     * Creates a sequential scan over the tuples of the specified table that
+     * satisfy a predicate, as a part of the specified transaction.
+     *
+     * @param predicate the predicate returned tuples satisfy, or null to
+     *         return all tuples
+     * @see #SeqScan(TransactionId, int, String)
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, Predicate predicate) {
+		this(tid, tableid, tableAlias, predicate, null);
+    }
+
+	/**
+     * Creates a sequential scan whose consumers only read some fields of
+     * the tuples it returns.
+     *
+     * @param fields the fields the consumers of the scan read, or null if
+     *         they read all of them; other fields may be null
+     * @see #SeqScan(TransactionId, int, String, Predicate)
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, Predicate predicate, Set<Integer> fields) {
 		this.tid = tid;
 		this.tableid = tableid;
 		this.tableAlias = tableAlias;
+		this.predicate = predicate;
+		this.fields = fields;
+    }
+
+    /**
+     * @return the id of the table this scan reads
+     */
+    public int getTableId() {
+    	return tableid;
+    }
+
+    /**
+     * @return the alias of the table this scan reads
+     */
+    public String getAlias() {
+    	return tableAlias;
+    }
+
+    /**
+     * @return the transaction this scan is running as a part of
+     */
+    public TransactionId getTransactionId() {
+    	return tid;
+    }
+
+    /**
+     * @return the predicate returned tuples satisfy, or null
+     */
+    public Predicate getPredicate() {
+    	return predicate;
+    }
+
+    /**
+     * @return the fields the consumers of this scan read, or null for all
+     */
+    public Set<Integer> getFields() {
+    	return fields;
     }
 
     DbFile heapFile;
@@ -40,8 +116,21 @@ public class SeqScan implements DbIterator {
     		heapFile = Database.getCatalog().getDbFile(tableid);
     	}
     	
-		iterator = heapFile.iterator(tid);
+    	if(heapFile instanceof HeapFile){
+    		HeapFile table = (HeapFile) heapFile;
+    		BufferAccessStrategy strategy = BufferAccessStrategy.forScan(table.numPages(), Database.getBufferPool().getNumPages());
+    		iterator = table.iterator(tid, strategy, predicate);
+    	}
+    	else if(heapFile instanceof ColumnFile && null != fields){
+    		Set<Integer> columns = new HashSet<Integer>(fields);
+    		if(null != predicate)
+    			columns.add(predicate.getField());
+    		iterator = ((ColumnFile) heapFile).iterator(tid, columns);
+    	}
+    	else
+    		iterator = heapFile.iterator(tid);
 		
+		nextMatch = null;
 		if(null != iterator)
 			iterator.open();
     }
@@ -64,7 +153,15 @@ public class SeqScan implements DbIterator {
     	if(null == iterator)
     		return false;
     	
-    	return iterator.hasNext();
+    	if(null == predicate)
+    		return iterator.hasNext();
+    	
+    	while(null == nextMatch && iterator.hasNext()){
+    		Tuple t = iterator.next();
+    		if(null != t && predicate.filter(t))
+    			nextMatch = t;
+    	}
+    	return null != nextMatch;
     }
 
     public Tuple next()
@@ -73,6 +170,14 @@ public class SeqScan implements DbIterator {
     		throw new NoSuchElementException("iterator null");
     	}
     	
+    	if(null != predicate){
+    		if(!hasNext())
+    			throw new NoSuchElementException();
+    		Tuple match = nextMatch;
+    		nextMatch = null;
+    		return match;
+    	}
+    	
     	Tuple n = iterator.next();
     	
     	//System.out.println(n);
@@ -87,6 +192,7 @@ public class SeqScan implements DbIterator {
 
     public void rewind()
         throws DbException, NoSuchElementException, TransactionAbortedException {
+    	nextMatch = null;
     	iterator.rewind();
     }
 }
@@ -7,30 +7,33 @@ public class SimpleDb {
             throws DbException, TransactionAbortedException, IOException {
         // convert a file
         if(args[0].equals("convert")) {
+        // a trailing "slotted" writes the pages of a slotted table instead
+        // of heap pages
+        boolean slotted = args.length > 3 && args[args.length - 1].equals("slotted");
+        int nargs = slotted ? args.length - 1 : args.length;
         try {
-        if (args.length == 3) {
+        if (nargs == 3 && !slotted) {
             HeapFileEncoder.convert(new File(args[1]),
                         new File(args[1].replaceAll(".txt", ".dat")),
                         BufferPool.PAGE_SIZE,
                         Integer.parseInt(args[2]));
         }
-        else if (args.length == 4) {
-            ArrayList<Type> ts = new ArrayList<Type>();
-            String[] typeStringAr = args[3].split(",");
-            for (String s: typeStringAr) {
-            if (s.toLowerCase().equals("int"))
-                ts.add(Type.INT_TYPE);
-            else if (s.toLowerCase().equals("string"))
-                ts.add(Type.STRING_TYPE);
-            else {
-                System.out.println("Unknown type " + s);
+        else if (nargs == 3 || nargs == 4) {
+            Type[] types = nargs == 4 ? parseTypes(args[3]) : Utility.getTypes(Integer.parseInt(args[2]));
+            if (null == types)
+                return;
+            if (slotted && types.length != Integer.parseInt(args[2])) {
+                System.out.println("Expected " + args[2] + " types, got " + types.length);
                 return;
             }
-            }
-            HeapFileEncoder.convert(new File(args[1]),
+            if (slotted)
+                SlottedFileEncoder.convert(new File(args[1]),
+                        new File(args[1].replaceAll(".txt", ".dat")), types);
+            else
+                HeapFileEncoder.convert(new File(args[1]),
                         new File(args[1].replaceAll(".txt", ".dat")),
                         BufferPool.PAGE_SIZE,
-                        Integer.parseInt(args[2]), ts.toArray(new Type[0]));
+                        Integer.parseInt(args[2]), types);
 
         } else {
             System.out.println("Unexpected number of arguments to convert ");
@@ -38,6 +41,36 @@ public class SimpleDb {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        } else if (args[0].equals("index")) {
+            // bulk load the B+Tree index of a column of a table file, with
+            // the fill factor of the simpledb.BTreeFillFactor property; a
+            // covering index also keeps the given fields in its leaves
+            if (args.length < 4 || args.length > 6) {
+                System.out.println("Usage: index file.dat numFields field [type,... [includedField,...]]");
+                return;
+            }
+            File tableFile = new File(args[1]);
+            int columns = Integer.parseInt(args[2]);
+            int field = Integer.parseInt(args[3]);
+            Type[] types = args.length >= 5 ? parseTypes(args[4]) : Utility.getTypes(columns);
+            if (null == types)
+                return;
+            if (types.length != columns) {
+                System.out.println("Expected " + columns + " types, got " + types.length);
+                return;
+            }
+            int[] included = new int[0];
+            if (6 == args.length) {
+                String[] fields = args[5].split(",");
+                included = new int[fields.length];
+                for (int i = 0; i < fields.length; i++)
+                    included[i] = Integer.parseInt(fields[i]);
+            }
+            HeapFile table = new HeapFile(tableFile, new TupleDesc(types));
+            Database.getCatalog().addTable(table, tableFile.getPath());
+            File indexFile = BTreeFile.fileOf(tableFile, field);
+            new BTreeFile(indexFile, table, field, included).addAllTuples();
+            System.out.println("Built index " + indexFile);
         } else if (args[0].equals("print")) {
             File tableFile = new File(args[1]);
             int columns = Integer.parseInt(args[2]);
@@ -81,4 +114,23 @@ public class SimpleDb {
         }
     }
 
+    /**
+     * Parses a comma separated list of types, such as "int,string".
+     * @return the types, or null if one is unknown
+     */
+    private static Type[] parseTypes(String typeString) {
+        ArrayList<Type> ts = new ArrayList<Type>();
+        for (String s: typeString.split(",")) {
+            if (s.toLowerCase().equals("int"))
+                ts.add(Type.INT_TYPE);
+            else if (s.toLowerCase().equals("string"))
+                ts.add(Type.STRING_TYPE);
+            else {
+                System.out.println("Unknown type " + s);
+                return null;
+            }
+        }
+        return ts.toArray(new Type[0]);
+    }
+
 }
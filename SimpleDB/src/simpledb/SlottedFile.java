@@ -0,0 +1,223 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * SlottedFile is a DbFile that stores its tuples as variable-length records
+ * on {@link SlottedPage}s, for tables with many short strings, which waste
+ * most of a HeapPage. Like a HeapFile it is a sequence of PAGE_SIZE pages in
+ * no particular order, and its pages are identified by HeapPageIds.
+ * <p>
+ * Inserts go to the last page of the file, and a new page is added once it
+ * is full, so bulk loads fill pages in order; space freed by deletes on
+ * earlier pages is not reused by inserts.
+ * <p>
+ * Text files are converted into SlottedFiles by {@link SlottedFileEncoder},
+ * not HeapFileEncoder. A file whose pages are not SlottedPages is rejected
+ * when it is opened, and any such page when it is read.
+ *
+ * @see SlottedPage
+ */
+public class SlottedFile implements DbFile {
+
+    private final File f;
+    private final TupleDesc td;
+    private int numPages;
+    private FileChannel channel = null;
+
+    /**
+     * Constructs a slotted file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this file.
+     * @throws IllegalArgumentException if the first page of f is not a
+     *   SlottedPage, e.g. because f was written by HeapFileEncoder
+     */
+    public SlottedFile(File f, TupleDesc td) {
+        this.f = f;
+        this.td = td;
+        this.numPages = (int) (f.length() / BufferPool.PAGE_SIZE);
+        if (numPages > 0 && !SlottedPage.isValid(readImage(0)))
+            throw new IllegalArgumentException(f + " is not a slotted file");
+    }
+
+    /**
+     * Returns the File backing this SlottedFile on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    // see DbFile.java for javadocs
+    public int getId() {
+        return f.getAbsoluteFile().hashCode();
+    }
+
+    // see DbFile.java for javadocs
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * Returns the number of pages in this SlottedFile, including pages that
+     * have been added but not written yet.
+     */
+    public synchronized int numPages() {
+        return Math.max(numPages, (int) (f.length() / BufferPool.PAGE_SIZE));
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (null == channel || !channel.isOpen())
+            channel = new RandomAccessFile(f, "rw").getChannel();
+        return channel;
+    }
+
+    /**
+     * Reads a page of this file as a SlottedPage.
+     *
+     * @throws IllegalArgumentException if the page on disk is not a SlottedPage
+     * @see DbFile#readPage
+     */
+    public Page readPage(PageId pid) {
+        byte[] image = readImage(pid.pageno());
+        if (null == image)
+            return null;
+        if (!SlottedPage.isValid(image))
+            throw new IllegalArgumentException("page " + pid.pageno() + " of " + f + " is not a slotted page");
+        try {
+            return new SlottedPage((HeapPageId) pid, image);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @return the image of the given page on disk, or null if it could
+     *   not be read
+     */
+    private byte[] readImage(int pageNo) {
+        ByteBuffer buffer = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+        long position = (long) pageNo * BufferPool.PAGE_SIZE;
+        try {
+            // bytes past the end of the file read as zero, an empty page
+            FileChannel fileChannel = channel();
+            while (buffer.hasRemaining()) {
+                if (-1 == fileChannel.read(buffer, position + buffer.position()))
+                    break;
+            }
+            return buffer.array();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(page.getPageData());
+        long position = (long) page.getId().pageno() * BufferPool.PAGE_SIZE;
+        FileChannel fileChannel = channel();
+        while (buffer.hasRemaining())
+            fileChannel.write(buffer, position + buffer.position());
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> addTuple(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException {
+
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("Tuple Description misatch");
+
+        ArrayList<Page> pagesModified = new ArrayList<Page>();
+        int pageNo = Math.max(0, numPages() - 1);
+        while (true) {
+            HeapPageId pid = new HeapPageId(getId(), pageNo);
+            SlottedPage page = (SlottedPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+            if (!page.hasRoomFor(t)) {
+                if (0 == page.getNumTuples())
+                    throw new DbException("tuple does not fit on a page");
+                pageNo++;
+                continue;
+            }
+
+            Database.getLocktable().getLock(pid, t, tid);
+            try {
+                page.addTuple(t);
+                page.markDirty(true, tid);
+            } finally {
+                Database.getLocktable().releaseLock(pid, t, tid);
+            }
+
+            synchronized (this) {
+                numPages = Math.max(numPages, pageNo + 1);
+            }
+            pagesModified.add(page);
+            return pagesModified;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public Page deleteTuple(TransactionId tid, Tuple t)
+        throws DbException, TransactionAbortedException {
+
+        PageId pid = t.getRecordId().getPageId();
+        SlottedPage page = (SlottedPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+
+        Database.getLocktable().getLock(pid, t, tid);
+        try {
+            page.deleteTuple(t);
+            page.markDirty(true, tid);
+        } finally {
+            Database.getLocktable().releaseLock(pid, t, tid);
+        }
+        return page;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(final TransactionId tid) {
+        return new DbFileIterator() {
+            private int pageNo = -1;
+            private Iterator<Tuple> tuples = null;
+
+            public void open() {
+                pageNo = 0;
+                tuples = null;
+            }
+
+            public boolean hasNext() throws DbException, TransactionAbortedException {
+                if (pageNo < 0)
+                    return false;
+                while (null == tuples || !tuples.hasNext()) {
+                    if (pageNo >= numPages())
+                        return false;
+                    HeapPageId pid = new HeapPageId(getId(), pageNo++);
+                    SlottedPage page = (SlottedPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                    tuples = page.iterator();
+                }
+                return true;
+            }
+
+            public Tuple next() throws DbException, TransactionAbortedException {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return tuples.next();
+            }
+
+            public void rewind() {
+                open();
+            }
+
+            public void close() {
+                pageNo = -1;
+                tuples = null;
+            }
+        };
+    }
+}
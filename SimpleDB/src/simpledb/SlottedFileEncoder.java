@@ -0,0 +1,88 @@
+package simpledb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * SlottedFileEncoder converts a comma delimited text file, in the format
+ * read by {@link HeapFileEncoder}, into the {@link SlottedPage}s of a
+ * {@link SlottedFile}. Records are packed onto pages in input order; a page
+ * is written once the next record does not fit on it.
+ */
+public class SlottedFileEncoder {
+
+  /** Convert the specified input text file into a slotted page file.
+   *
+   * @param inFile The input file to read data from
+   * @param outFile The output file to write data to
+   * @param types the types of the fields of each input line/output tuple
+   * @throws IOException if the input/output file can't be opened, or a
+   *   line does not have one field per type or does not fit on a page
+   */
+  public static void convert(File inFile, File outFile, Type[] types) throws IOException {
+      TupleDesc td = new TupleDesc(types);
+      BufferedReader br = new BufferedReader(new FileReader(inFile));
+      FileOutputStream os = new FileOutputStream(outFile);
+      try {
+          SlottedPage page = emptyPage(td);
+          int pages = 0;
+          String line;
+          while (null != (line = br.readLine())) {
+              if (0 == line.trim().length())
+                  continue;
+              Tuple t = parseLine(td, line);
+              if (!page.hasRoomFor(t)) {
+                  if (0 == page.getNumTuples())
+                      throw new IOException("record does not fit on a page: " + line);
+                  os.write(page.getPageData());
+                  pages++;
+                  page = emptyPage(td);
+              }
+              page.addTuple(t);
+          }
+
+          // an empty input still makes a file of one empty page
+          if (page.getNumTuples() > 0 || 0 == pages)
+              os.write(page.getPageData());
+      } catch (DbException e) {
+          throw new IOException(e.getMessage());
+      } finally {
+          br.close();
+          os.close();
+      }
+  }
+
+  private static SlottedPage emptyPage(TupleDesc td) {
+      return new SlottedPage(new HeapPageId(0, 0), td, SlottedPage.createEmptyPageData());
+  }
+
+  /**
+   * Parses a line of the input. A malformed integer is reported and
+   * stored as 0, as HeapFileEncoder does.
+   */
+  private static Tuple parseLine(TupleDesc td, String line) throws IOException {
+      String[] fields = line.split(",", -1);
+      if (fields.length != td.numFields())
+          throw new IOException("expected " + td.numFields() + " fields: " + line);
+
+      Tuple t = new Tuple(td);
+      for (int i = 0; i < fields.length; i++) {
+          String field = fields[i].trim();
+          if (td.getType(i) == Type.INT_TYPE) {
+              int value = 0;
+              try {
+                  value = Integer.parseInt(field.startsWith("+") ? field.substring(1) : field);
+              } catch (NumberFormatException e) {
+                  System.out.println("BAD LINE : " + line.trim());
+              }
+              t.setField(i, new IntField(value));
+          } else {
+              t.setField(i, new StringField(field, Type.STRING_LEN));
+          }
+      }
+      return t;
+  }
+}
@@ -0,0 +1,384 @@
+package simpledb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * SlottedPage stores pages of SlottedFiles: tuples are variable-length
+ * records, so short strings do not take the STRING_LEN bytes they take on a
+ * HeapPage.
+ * <p>
+ * A page starts with a header of two unsigned shorts, the number of slots
+ * and the offset of the start of the record area. It is followed by the
+ * slot array, one (offset, length) pair of unsigned shorts per slot, which
+ * grows towards the end of the page while records are added from the end
+ * of the page towards the front. A slot of length 0 is empty and is reused
+ * by the next insert; the space of deleted records is reclaimed by
+ * compacting the record area when an insert does not fit otherwise. An
+ * all-zero page is a valid empty page.
+ * <p>
+ * Records hold their fields one after the other: an int field takes 4
+ * bytes, a string field an unsigned short length followed by its bytes.
+ *
+ * @see SlottedFile
+ */
+public class SlottedPage implements Page {
+
+    static final int HEADER_SIZE = 4;
+    static final int SLOT_SIZE = 4;
+
+    private final HeapPageId pid;
+    private final TupleDesc td;
+    private ByteBuffer data;
+    private byte[] oldData;
+    private TransactionId dirtier = null;
+
+    /**
+     * Create a SlottedPage from a set of bytes of data read from disk.
+     */
+    public SlottedPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, Database.getCatalog().getTupleDesc(id.getTableId()), data);
+    }
+
+    /**
+     * Create a SlottedPage of tuples with the given TupleDesc, for pages of
+     * a table that is not in the catalog (yet).
+     *
+     * @see SlottedFileEncoder
+     */
+    SlottedPage(HeapPageId id, TupleDesc td, byte[] data) {
+        this.pid = id;
+        this.td = td;
+        this.data = ByteBuffer.wrap(data.clone());
+    }
+
+    /**
+     * Checks that a page image is laid out as described above: the slot
+     * array ends before the record area, and every record is within the
+     * record area. The image of a page of another file, such as a HeapPage,
+     * almost never is.
+     *
+     * @return true if data may be the image of a SlottedPage
+     */
+    static boolean isValid(byte[] data) {
+        ByteBuffer image = ByteBuffer.wrap(data);
+        int numSlots = image.getShort(0) & 0xffff;
+        int recordStart = image.getShort(2) & 0xffff;
+        // nothing was ever added to a page whose record area does not start
+        if (0 == recordStart)
+            return 0 == numSlots;
+        if (HEADER_SIZE + numSlots * SLOT_SIZE > recordStart || recordStart > BufferPool.PAGE_SIZE)
+            return false;
+        for (int slot = 0; slot < numSlots; slot++) {
+            int offset = image.getShort(HEADER_SIZE + slot * SLOT_SIZE) & 0xffff;
+            int length = image.getShort(HEADER_SIZE + slot * SLOT_SIZE + 2) & 0xffff;
+            if (0 != length && (offset < recordStart || offset + length > BufferPool.PAGE_SIZE))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * SlottedPage.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.PAGE_SIZE];
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    public synchronized byte[] getPageData() {
+        return data.array().clone();
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public synchronized SlottedPage getBeforeImage() {
+        try {
+            return new SlottedPage(pid, null != oldData ? oldData : data.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    /** @return the number of slots on this page, filled or not */
+    public synchronized int getNumSlots() {
+        return unsigned(0);
+    }
+
+    /** @return the number of tuples on this page */
+    public synchronized int getNumTuples() {
+        int tuples = 0;
+        for (int slot = 0; slot < getNumSlots(); slot++) {
+            if (0 != recordLength(slot))
+                tuples++;
+        }
+        return tuples;
+    }
+
+    /**
+     * @return the number of bytes a new record (and a new slot for it) may
+     *   take on this page, once the page is compacted
+     */
+    public synchronized int getFreeSpace() {
+        int used = HEADER_SIZE + getNumSlots() * SLOT_SIZE;
+        for (int slot = 0; slot < getNumSlots(); slot++)
+            used += recordLength(slot);
+        return BufferPool.PAGE_SIZE - used;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public synchronized boolean getSlot(int slot) {
+        return slot >= 0 && slot < getNumSlots() && 0 != recordLength(slot);
+    }
+
+    /**
+     * @return true if the specified tuple can be added to this page
+     */
+    public synchronized boolean hasRoomFor(Tuple t) throws DbException {
+        int slot = indexOfEmptySlot();
+        int needed = encode(t).length + (slot == getNumSlots() ? SLOT_SIZE : 0);
+        return needed <= getFreeSpace();
+    }
+
+    /**
+     * Adds the specified tuple to the page;  the tuple should be updated to reflect
+     *  that it is now stored on this page.
+     * @throws DbException if the page does not have room for the tuple or
+     *   the tupledesc is mismatch.
+     */
+    public synchronized void addTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("Tuple Description misatch");
+
+        byte[] record = encode(t);
+        int slot = indexOfEmptySlot();
+        int needed = record.length + (slot == getNumSlots() ? SLOT_SIZE : 0);
+        if (needed > getFreeSpace())
+            throw new DbException("Page Full, no room for the tuple");
+
+        captureBeforeImage();
+        if (needed > recordStart() - slotArrayEnd())
+            compact();
+
+        int offset = recordStart() - record.length;
+        ByteBuffer view = data.duplicate();
+        view.position(offset);
+        view.put(record);
+
+        if (slot == getNumSlots())
+            putUnsigned(0, slot + 1);
+        putUnsigned(1, offset);
+        setSlot(slot, offset, record.length);
+
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Delete the specified tuple from the page.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     */
+    public synchronized void deleteTuple(Tuple t) throws DbException {
+        if (!pid.equals(t.getRecordId().getPageId()))
+            throw new DbException("Record Id Mismatch");
+
+        int slot = t.getRecordId().tupleno();
+        if (!getSlot(slot))
+            throw new DbException("Trying to delete an empty slot");
+
+        captureBeforeImage();
+        setSlot(slot, 0, 0);
+
+        // trailing empty slots are given back to the free space
+        int numSlots = getNumSlots();
+        while (numSlots > 0 && 0 == recordLength(numSlots - 1))
+            numSlots--;
+        putUnsigned(0, numSlots);
+    }
+
+    /**
+     * Returns the tuple stored in the specified slot.
+     *
+     * @return the tuple, or null if the slot is empty
+     */
+    public synchronized Tuple getTuple(int slot) {
+        if (!getSlot(slot))
+            return null;
+
+        ByteBuffer view = data.duplicate();
+        view.position(recordOffset(slot));
+        view.limit(recordOffset(slot) + recordLength(slot));
+        DataInputStream dis = new DataInputStream(new ByteBufferInputStream(view));
+
+        Tuple t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, slot));
+        try {
+            for (int j = 0; j < td.numFields(); j++) {
+                if (td.getType(j) == Type.STRING_TYPE) {
+                    byte[] bytes = new byte[dis.readUnsignedShort()];
+                    dis.readFully(bytes);
+                    t.setField(j, new StringField(new String(bytes), Type.STRING_LEN));
+                } else {
+                    t.setField(j, td.getType(j).parse(dis));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new NoSuchElementException("parsing error!");
+        } catch (java.text.ParseException e) {
+            e.printStackTrace();
+            throw new NoSuchElementException("parsing error!");
+        }
+        return t;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            int slot = nextFilledSlot(0);
+
+            public boolean hasNext() {
+                return slot >= 0;
+            }
+
+            public Tuple next() {
+                if (slot < 0)
+                    throw new NoSuchElementException();
+                Tuple t = getTuple(slot);
+                slot = nextFilledSlot(slot + 1);
+                return t;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private synchronized int nextFilledSlot(int from) {
+        for (int slot = from; slot < getNumSlots(); slot++) {
+            if (0 != recordLength(slot))
+                return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Encodes the fields of t as a record.
+     */
+    private byte[] encode(Tuple t) throws DbException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            for (int j = 0; j < td.numFields(); j++) {
+                if (td.getType(j) == Type.STRING_TYPE) {
+                    String s = ((StringField) t.getField(j)).getValue();
+                    if (s.length() > Type.STRING_LEN)
+                        s = s.substring(0, Type.STRING_LEN);
+                    dos.writeShort(s.length());
+                    dos.writeBytes(s);
+                } else {
+                    t.getField(j).serialize(dos);
+                }
+            }
+            dos.flush();
+        } catch (IOException e) {
+            throw new DbException("could not serialize tuple: " + e.getMessage());
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Moves all records to the end of the page, so the free space between
+     * the slot array and the records is contiguous.
+     */
+    private void compact() {
+        byte[] image = data.array();
+        byte[] compacted = new byte[BufferPool.PAGE_SIZE];
+        System.arraycopy(image, 0, compacted, 0, slotArrayEnd());
+
+        data = ByteBuffer.wrap(compacted);
+        int offset = BufferPool.PAGE_SIZE;
+        for (int slot = 0; slot < getNumSlots(); slot++) {
+            int length = recordLength(slot);
+            if (0 == length)
+                continue;
+            offset -= length;
+            System.arraycopy(image, recordOffset(slot), compacted, offset, length);
+            setSlot(slot, offset, length);
+        }
+        putUnsigned(1, offset);
+    }
+
+    private void captureBeforeImage() {
+        if (null == oldData)
+            oldData = getPageData();
+    }
+
+    private int indexOfEmptySlot() {
+        for (int slot = 0; slot < getNumSlots(); slot++) {
+            if (0 == recordLength(slot))
+                return slot;
+        }
+        return getNumSlots();
+    }
+
+    private int slotArrayEnd() {
+        return HEADER_SIZE + getNumSlots() * SLOT_SIZE;
+    }
+
+    private int recordStart() {
+        int start = unsigned(1);
+        return 0 == start ? BufferPool.PAGE_SIZE : start;
+    }
+
+    private int recordOffset(int slot) {
+        return unsigned(2 + 2 * slot);
+    }
+
+    private int recordLength(int slot) {
+        return unsigned(3 + 2 * slot);
+    }
+
+    private void setSlot(int slot, int offset, int length) {
+        putUnsigned(2 + 2 * slot, offset);
+        putUnsigned(3 + 2 * slot, length);
+    }
+
+    /** @return the i-th unsigned short of the page */
+    private int unsigned(int i) {
+        return data.getShort(2 * i) & 0xffff;
+    }
+
+    private void putUnsigned(int i, int value) {
+        data.putShort(2 * i, (short) value);
+    }
+}
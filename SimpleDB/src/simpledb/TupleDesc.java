@@ -96,6 +96,8 @@ public class TupleDesc {
      * @throws NoSuchElementException if i is not a valid field reference.
      */
     public String getFieldName(int i) throws NoSuchElementException {
+    	if(null == this.fieldAr)
+    		return null;
     	return this.fieldAr[i];
     }
 
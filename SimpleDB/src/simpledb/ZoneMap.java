@@ -0,0 +1,297 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The smallest and largest value of every INT_TYPE column on each page of a
+ * HeapFile, so that a scan with a {@link Predicate} can skip the pages that
+ * cannot hold a matching tuple without reading them.
+ * <p>
+ * The map is persisted in a sidecar file next to the table (the table file
+ * name plus {@link #SUFFIX}) that holds, for every page, a (min, max) pair
+ * of ints per INT_TYPE column. A page nothing is known about has the range
+ * [Integer.MIN_VALUE, Integer.MAX_VALUE], an empty page the range
+ * [Integer.MAX_VALUE, Integer.MIN_VALUE]. Ranges only have to contain the
+ * values on a page, not be tight: inserts widen the range of their page in
+ * memory, deletes leave it alone, and the exact range of a page is
+ * recomputed whenever the page is written.
+ *
+ * @see HeapFile#iterator(TransactionId, BufferAccessStrategy, Predicate)
+ */
+class ZoneMap {
+
+    /** Suffix of the sidecar file that holds the map. */
+    static final String SUFFIX = ".zmap";
+
+    private final File heapFile;
+    private final File file;
+    // the INT_TYPE columns of the table, and for every field its position
+    // among them (or -1)
+    private final int[] columns;
+    private final int[] columnOf;
+    // page p, column k: min at 2*(p*columns.length+k), max right after it
+    private int[] ranges = null;
+    private int pagesPersisted = 0;
+    private FileChannel channel = null;
+
+    /**
+     * @param heapFile the table file the map describes
+     * @param td the schema of the table
+     */
+    ZoneMap(File heapFile, TupleDesc td) {
+        this.heapFile = heapFile;
+        this.file = sidecarOf(heapFile);
+        int n = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getType(i) == Type.INT_TYPE)
+                n++;
+        }
+        this.columns = new int[n];
+        this.columnOf = new int[td.numFields()];
+        n = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            columnOf[i] = td.getType(i) == Type.INT_TYPE ? n : -1;
+            if (td.getType(i) == Type.INT_TYPE)
+                columns[n++] = i;
+        }
+    }
+
+    /** @return the sidecar file of the given table file */
+    static File sidecarOf(File heapFile) {
+        return new File(heapFile.getPath() + SUFFIX);
+    }
+
+    /** @return the sidecar file this map is persisted in */
+    File getFile() {
+        return file;
+    }
+
+    /** @return the fields of the table the map keeps ranges for */
+    int[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns false if no tuple on the page can satisfy the predicate
+     * according to the map. Predicates on columns other than INT_TYPE
+     * columns, and pages the map knows nothing about, may always match.
+     */
+    synchronized boolean mayMatch(int pageNo, Predicate p) throws IOException {
+        int field = p.getField();
+        if (field < 0 || field >= columnOf.length || -1 == columnOf[field]
+                || !(p.getOperand() instanceof IntField))
+            return true;
+
+        load();
+        int entry = 2 * (pageNo * columns.length + columnOf[field]);
+        if (entry >= ranges.length)
+            return true;
+        int min = ranges[entry];
+        int max = ranges[entry + 1];
+        if (min > max)
+            return false;
+
+        int value = ((IntField) p.getOperand()).getValue();
+        switch (p.getOp()) {
+        case EQUALS:
+            return min <= value && value <= max;
+        case NOT_EQUALS:
+            return min != value || max != value;
+        case GREATER_THAN:
+            return max > value;
+        case GREATER_THAN_OR_EQ:
+            return max >= value;
+        case LESS_THAN:
+            return min < value;
+        case LESS_THAN_OR_EQ:
+            return min <= value;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Widens the ranges of a page that is in memory to include the values
+     * of a tuple that has been added to it.
+     */
+    synchronized void include(int pageNo, Tuple t) throws IOException {
+        if (0 == columns.length)
+            return;
+        load();
+        grow(pageNo);
+        for (int k = 0; k < columns.length; k++) {
+            int value = ((IntField) t.getField(columns[k])).getValue();
+            int entry = 2 * (pageNo * columns.length + k);
+            ranges[entry] = Math.min(ranges[entry], value);
+            ranges[entry + 1] = Math.max(ranges[entry + 1], value);
+        }
+    }
+
+    /**
+     * Sets the ranges of a page.
+     *
+     * @param mins the smallest value of every INT_TYPE column on the page
+     * @param maxs the largest value of every INT_TYPE column on the page
+     * @param widen true to only widen the current ranges to the given ones
+     */
+    synchronized void set(int pageNo, int[] mins, int[] maxs, boolean widen) throws IOException {
+        if (0 == columns.length)
+            return;
+        load();
+        grow(pageNo);
+        for (int k = 0; k < columns.length; k++) {
+            int entry = 2 * (pageNo * columns.length + k);
+            ranges[entry] = widen ? Math.min(ranges[entry], mins[k]) : mins[k];
+            ranges[entry + 1] = widen ? Math.max(ranges[entry + 1], maxs[k]) : maxs[k];
+        }
+    }
+
+    /**
+     * Sets the ranges of a page to those of the tuples on it.
+     *
+     * @param widen true to only widen the current ranges to cover them
+     */
+    void set(int pageNo, HeapPage page, boolean widen) throws IOException {
+        if (0 == columns.length)
+            return;
+        int[] mins = new int[columns.length];
+        int[] maxs = new int[columns.length];
+        empty(mins, maxs);
+        for (int slot = page.nextFilledSlot(0); -1 != slot; slot = page.nextFilledSlot(slot + 1)) {
+            for (int k = 0; k < columns.length; k++) {
+                int value = page.getInt(slot, columns[k]);
+                mins[k] = Math.min(mins[k], value);
+                maxs[k] = Math.max(maxs[k], value);
+            }
+        }
+        set(pageNo, mins, maxs, widen);
+    }
+
+    /** Sets mins and maxs to the ranges of an empty page. */
+    static void empty(int[] mins, int[] maxs) {
+        for (int k = 0; k < mins.length; k++) {
+            mins[k] = Integer.MAX_VALUE;
+            maxs[k] = Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Writes the ranges of a page to the sidecar, along with those of the
+     * pages before it that are not in the sidecar yet.
+     */
+    synchronized void persist(int pageNo) throws IOException {
+        if (0 == columns.length)
+            return;
+        load();
+        grow(pageNo);
+        int from = Math.min(pageNo, pagesPersisted);
+        write(from, pageNo + 1);
+        pagesPersisted = Math.max(pagesPersisted, pageNo + 1);
+    }
+
+    /**
+     * Writes the ranges of the first pages pages to the sidecar, replacing
+     * whatever it held.
+     */
+    synchronized void save(int pages) throws IOException {
+        if (0 == columns.length)
+            return;
+        load();
+        if (pages > 0)
+            grow(pages - 1);
+        write(0, pages);
+        channel().truncate((long) pages * entrySize());
+        pagesPersisted = pages;
+    }
+
+    /**
+     * Forgets the ranges of all pages at or after pageNo, for a table file
+     * that has been truncated to pageNo pages.
+     */
+    synchronized void truncate(int pageNo) throws IOException {
+        if (0 == columns.length)
+            return;
+        load();
+        for (int i = 2 * pageNo * columns.length; i < ranges.length; i += 2) {
+            ranges[i] = Integer.MIN_VALUE;
+            ranges[i + 1] = Integer.MAX_VALUE;
+        }
+        if (file.exists() && channel().size() > (long) pageNo * entrySize())
+            channel().truncate((long) pageNo * entrySize());
+        pagesPersisted = Math.min(pagesPersisted, pageNo);
+    }
+
+    private int entrySize() {
+        return 8 * columns.length;
+    }
+
+    private void write(int fromPage, int toPage) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((toPage - fromPage) * entrySize());
+        for (int i = 2 * fromPage * columns.length; i < 2 * toPage * columns.length; i++)
+            buffer.putInt(ranges[i]);
+        buffer.flip();
+        FileChannel fileChannel = channel();
+        long position = (long) fromPage * entrySize();
+        while (buffer.hasRemaining())
+            fileChannel.write(buffer, position + buffer.position());
+    }
+
+    /** Makes room for the ranges of pageNo; new pages are unknown. */
+    private void grow(int pageNo) {
+        int needed = 2 * (pageNo + 1) * columns.length;
+        if (needed <= ranges.length)
+            return;
+        int[] grown = new int[Math.max(2 * ranges.length, needed)];
+        System.arraycopy(ranges, 0, grown, 0, ranges.length);
+        for (int i = ranges.length; i < grown.length; i += 2) {
+            grown[i] = Integer.MIN_VALUE;
+            grown[i + 1] = Integer.MAX_VALUE;
+        }
+        ranges = grown;
+    }
+
+    /**
+     * Reads the sidecar on first use. Ranges of pages that are no longer in
+     * the table file are dropped, as they describe a file that has since
+     * been truncated or rewritten.
+     */
+    private void load() throws IOException {
+        if (null != ranges)
+            return;
+
+        ranges = new int[0];
+        int pagesOnDisk = pagesOnDisk();
+        grow(Math.max(16, pagesOnDisk) - 1);
+        if (!file.exists() || 0 == columns.length)
+            return;
+
+        FileChannel fileChannel = channel();
+        int pages = (int) Math.min(pagesOnDisk, fileChannel.size() / entrySize());
+        ByteBuffer buffer = ByteBuffer.allocate(pages * entrySize());
+        while (buffer.hasRemaining()) {
+            if (-1 == fileChannel.read(buffer, buffer.position()))
+                break;
+        }
+        buffer.flip();
+        for (int i = 0; i < 2 * pages * columns.length; i++)
+            ranges[i] = buffer.getInt();
+        if (fileChannel.size() > (long) pages * entrySize())
+            fileChannel.truncate((long) pages * entrySize());
+        pagesPersisted = pages;
+    }
+
+    /** @return the number of whole pages in the table file */
+    int pagesOnDisk() throws IOException {
+        return (int) (heapFile.length() / BufferPool.PAGE_SIZE);
+    }
+
+    private FileChannel channel() throws IOException {
+        if (null == channel || !channel.isOpen())
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        return channel;
+    }
+}
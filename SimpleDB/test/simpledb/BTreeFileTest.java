@@ -0,0 +1,408 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BTreeFileTest extends SimpleDbTestBase {
+
+    /** An unsorted, unique value for row i. */
+    private static int key(int i) {
+        return (int) ((long) i * 7919 % 1000003);
+    }
+
+    /**
+     * Writes a table of the given types whose first column is i and whose
+     * second is key(i) % mod, as an int or a string, for i in [0, rows).
+     */
+    private static File write(File out, int rows, int mod, Type[] types) throws Exception {
+        File in = File.createTempFile("btree", ".txt");
+        in.deleteOnExit();
+        BufferedWriter writer = new BufferedWriter(new FileWriter(in));
+        for (int i = 0; i < rows; i++)
+            writer.write(i + "," + (key(i) % mod) + "\n");
+        writer.close();
+        out.deleteOnExit();
+        FreeSpaceMap.sidecarOf(out).deleteOnExit();
+        ZoneMap.sidecarOf(out).deleteOnExit();
+        HeapFileEncoder.convert(in, out, BufferPool.PAGE_SIZE, 2, types);
+        return out;
+    }
+
+    private static HeapFile encode(int rows, int mod, Type[] types) throws Exception {
+        File out = write(File.createTempFile("btree", ".dat"), rows, mod, types);
+        HeapFile hf = new HeapFile(out, new TupleDesc(types));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private static BTreeFile index(HeapFile hf, int field) {
+        File f = BTreeFile.fileOf(hf.getFile(), field);
+        f.deleteOnExit();
+        BTreeFile index = new BTreeFile(f, hf, field);
+        Database.getCatalog().addIndex(index);
+        return index;
+    }
+
+    /** @return the first columns of the tuples the iterator returns */
+    private static HashSet<Integer> rows(DbIterator it) throws Exception {
+        HashSet<Integer> rows = new HashSet<Integer>();
+        it.open();
+        while (it.hasNext())
+            assertTrue(rows.add(((IntField) it.next().getField(0)).getValue()));
+        it.close();
+        return rows;
+    }
+
+    /**
+     * Checks that an IndexScan returns the same tuples as a SeqScan for
+     * every supported operator.
+     */
+    private static void checkLookups(HeapFile hf, BTreeFile index, Field value) throws Exception {
+        TransactionId tid = new TransactionId();
+        Predicate.Op[] ops = new Predicate.Op[]{Predicate.Op.EQUALS, Predicate.Op.GREATER_THAN,
+                Predicate.Op.GREATER_THAN_OR_EQ, Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ};
+        for (Predicate.Op op : ops) {
+            Predicate p = new Predicate(index.getKeyField(), op, value);
+            assertEquals(op.toString(), rows(new SeqScan(tid, hf.getId(), "", p)),
+                    rows(new IndexScan(tid, index, "", p)));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for BTreeFile.addAllTuples() and IndexScan on an int column
+     * with duplicate keys
+     */
+    @Test public void intKeys() throws Exception {
+        HeapFile hf = encode(10000, 2500, Utility.getTypes(2));
+        BTreeFile index = index(hf, 1);
+        index.addAllTuples();
+        assertTrue(index.numPages() > 20);
+
+        checkLookups(hf, index, new IntField(key(77) % 2500));
+        checkLookups(hf, index, new IntField(0));
+        checkLookups(hf, index, new IntField(-1));
+        checkLookups(hf, index, new IntField(1250));
+        checkLookups(hf, index, new IntField(2500));
+
+        // the whole index, in key order
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = index.iterator(tid);
+        it.open();
+        int count = 0;
+        int last = Integer.MIN_VALUE;
+        while (it.hasNext()) {
+            int value = ((IntField) it.next().getField(1)).getValue();
+            assertTrue(last <= value);
+            last = value;
+            count++;
+        }
+        it.close();
+        assertEquals(10000, count);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for BTreeFile.addAllTuples() with string keys, whose pages
+     * hold few entries, so that the index has two levels of internal pages
+     */
+    @Test public void stringKeys() throws Exception {
+        Type[] types = new Type[]{Type.INT_TYPE, Type.STRING_TYPE};
+        HeapFile hf = encode(3000, 1000003, types);
+        BTreeFile index = index(hf, 1);
+        index.addAllTuples();
+        // more leaves than fit under one internal page
+        assertTrue(index.numPages() > 2 + 3000 / 29);
+
+        checkLookups(hf, index, new StringField(Integer.toString(key(1234)), Type.STRING_LEN));
+        checkLookups(hf, index, new StringField("5", Type.STRING_LEN));
+        checkLookups(hf, index, new StringField("", Type.STRING_LEN));
+    }
+
+    /**
+     * Unit test for BTreeFile.addTuple() on an empty index: the tree grows
+     * from a single leaf by splitting leaves, internal pages and the root
+     */
+    @Test public void growFromEmpty() throws Exception {
+        Type[] types = new Type[]{Type.INT_TYPE, Type.STRING_TYPE};
+        HeapFile hf = encode(3000, 1000003, types);
+        BTreeFile index = index(hf, 1);
+
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext())
+            tuples.add(it.next());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        // a transaction per batch, so that the pool holds the pages it dirties
+        for (int i = 0; i < tuples.size(); i += 10) {
+            tid = new TransactionId();
+            for (Tuple t : tuples.subList(i, Math.min(tuples.size(), i + 10)))
+                index.addTuple(tid, t);
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        assertTrue(index.hasLayout());
+
+        // leaves of 29 entries and internal pages of 29 children, split
+        // half full: the root is two internal levels above the leaves
+        tid = new TransactionId();
+        BTreeInternalPage header = (BTreeInternalPage) Database.getBufferPool().getPage(tid,
+                new BTreePageId(index.getId(), 0), Permissions.READ_ONLY);
+        BTreePage root = (BTreePage) Database.getBufferPool().getPage(tid,
+                new BTreePageId(index.getId(), header.getChild(0)), Permissions.READ_ONLY);
+        assertFalse(root.isLeaf());
+        BTreePage child = (BTreePage) Database.getBufferPool().getPage(tid,
+                new BTreePageId(index.getId(), ((BTreeInternalPage) root).getChild(0)), Permissions.READ_ONLY);
+        assertFalse(child.isLeaf());
+        Database.getBufferPool().transactionComplete(tid);
+
+        checkLookups(hf, index, new StringField(Integer.toString(key(1234)), Type.STRING_LEN));
+        checkLookups(hf, index, new StringField(Integer.toString(key(0)), Type.STRING_LEN));
+        checkLookups(hf, index, new StringField("5", Type.STRING_LEN));
+        checkLookups(hf, index, new StringField("", Type.STRING_LEN));
+
+        // every entry, once
+        tid = new TransactionId();
+        it = index.iterator(tid);
+        it.open();
+        HashSet<Integer> found = new HashSet<Integer>();
+        while (it.hasNext())
+            assertTrue(found.add(((IntField) it.next().getField(0)).getValue()));
+        it.close();
+        assertEquals(3000, found.size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for BTreeFile.addTuple() and BTreeFile.deleteTuple(): index
+     * changes commit and abort with their transaction
+     */
+    @Test public void transactions() throws Exception {
+        HeapFile hf = encode(1000, 1000003, Utility.getTypes(2));
+        BTreeFile index = index(hf, 1);
+        index.addAllTuples();
+        Predicate needle = new Predicate(1, Predicate.Op.EQUALS, new IntField(-42));
+
+        TransactionId tid = new TransactionId();
+        Tuple t = Utility.getTuple(new int[]{-1, -42}, 2);
+        hf.addTuple(tid, t);
+        index.addTuple(tid, t);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(1, rows(new IndexScan(new TransactionId(), index, "", needle)).size());
+
+        tid = new TransactionId();
+        hf.deleteTuple(tid, t);
+        index.deleteTuple(tid, t);
+        assertEquals(0, rows(new IndexScan(tid, index, "", needle)).size());
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(1, rows(new IndexScan(new TransactionId(), index, "", needle)).size());
+        Database.getBufferPool().flushAllPages();
+
+        // a fresh BTreeFile finds the entry on disk
+        BTreeFile reopened = new BTreeFile(index.getFile(), hf, 1);
+        Database.getCatalog().addIndex(reopened);
+        assertEquals(1, Database.getCatalog().getIndexes(hf.getId()).size());
+        assertEquals(1, rows(new IndexScan(new TransactionId(), reopened, "", needle)).size());
+        checkLookups(hf, reopened, new IntField(key(500)));
+    }
+
+    /**
+     * Unit test for BTreeBuilder: an index built from several sorted runs
+     * at a given fill factor answers lookups, and takes new entries
+     */
+    @Test public void bulkLoad() throws Exception {
+        HeapFile hf = encode(10000, 2500, Utility.getTypes(2));
+        BTreeFile index = index(hf, 1);
+        // runs of 1000 entries
+        new BTreeBuilder(index, 0.5, 1000 * 12).build();
+        int leaves = (10000 + 169) / 170;
+        assertTrue(index.numPages() >= 1 + leaves);
+        checkLookups(hf, index, new IntField(key(77) % 2500));
+        checkLookups(hf, index, new IntField(0));
+        checkLookups(hf, index, new IntField(2499));
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 500; i++) {
+            Tuple t = Utility.getTuple(new int[]{10000 + i, 1250}, 2);
+            hf.addTuple(tid, t);
+            index.addTuple(tid, t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        checkLookups(hf, index, new IntField(1250));
+
+        // full pages, string keys
+        Type[] types = new Type[]{Type.INT_TYPE, Type.STRING_TYPE};
+        hf = encode(3000, 1000003, types);
+        index = index(hf, 1);
+        new BTreeBuilder(index, 1.0, 100 * 140).build();
+        // the header, 104 leaves of 29 entries, 4 internal pages and the root
+        assertEquals(1 + 104 + 4 + 1, index.numPages());
+        checkLookups(hf, index, new StringField(Integer.toString(key(1234)), Type.STRING_LEN));
+        checkLookups(hf, index, new StringField("5", Type.STRING_LEN));
+    }
+
+    /**
+     * Unit test for the index column annotation of Catalog.loadSchema(),
+     * which builds the index of a table that has none yet
+     */
+    @Test public void loadSchema() throws Exception {
+        File schema = File.createTempFile("schema", ".txt");
+        schema.deleteOnExit();
+        String name = schema.getAbsolutePath() + "_btree";
+        File data = write(new File(name + ".dat"), 2000, 1000003, Utility.getTypes(2));
+        BTreeFile.fileOf(data, 1).deleteOnExit();
+        FileWriter out = new FileWriter(schema);
+        out.write(name + " (a int pk, b int index)\n");
+        out.close();
+
+        Catalog catalog = Database.getCatalog();
+        catalog.loadSchema(schema.getAbsolutePath());
+        int tableid = catalog.getTableId(name);
+        assertEquals(1, catalog.getIndexes(tableid).size());
+        BTreeFile index = (BTreeFile) catalog.getIndexes(tableid).get(0);
+        assertEquals(1, index.getKeyField());
+        assertTrue(BTreeFile.fileOf(data, 1).exists());
+        checkLookups((HeapFile) catalog.getDbFile(tableid), index, new IntField(key(1999)));
+    }
+
+    /** @return the second columns of the tuples the iterator returns */
+    private static HashSet<Integer> coveredRows(DbIterator it) throws Exception {
+        HashSet<Integer> rows = new HashSet<Integer>();
+        it.open();
+        while (it.hasNext())
+            assertTrue(rows.add(((IntField) it.next().getField(1)).getValue()));
+        it.close();
+        return rows;
+    }
+
+    /**
+     * Checks that an IndexOnlyScan of a covering index on the second column,
+     * which includes the first, finds the same rows as a SeqScan.
+     */
+    private static void checkCovered(HeapFile hf, BTreeFile index, Field value) throws Exception {
+        TransactionId tid = new TransactionId();
+        Predicate.Op[] ops = new Predicate.Op[]{Predicate.Op.EQUALS, Predicate.Op.GREATER_THAN,
+                Predicate.Op.LESS_THAN_OR_EQ};
+        for (Predicate.Op op : ops) {
+            Predicate p = new Predicate(1, op, value);
+            assertEquals(op.toString(), rows(new SeqScan(tid, hf.getId(), "", p)),
+                    coveredRows(new IndexOnlyScan(tid, index, "", p)));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for covering indexes: the leaves of an index built by
+     * BTreeBuilder or by addTuple hold the included fields, which
+     * IndexOnlyScan returns with the key
+     */
+    @Test public void covering() throws Exception {
+        HeapFile hf = encode(10000, 2500, Utility.getTypes(2));
+        File f = BTreeFile.fileOf(hf.getFile(), 1);
+        f.deleteOnExit();
+        BTreeFile index = new BTreeFile(f, hf, 1, new int[]{0});
+        Database.getCatalog().addIndex(index);
+        index.addAllTuples();
+        assertEquals(0, index.coveredField(1));
+        assertEquals(1, index.coveredField(0));
+        assertEquals(2, index.getCoveringTupleDesc().numFields());
+        checkCovered(hf, index, new IntField(key(77) % 2500));
+        checkCovered(hf, index, new IntField(1250));
+        // the index still finds the tuples of the table
+        checkLookups(hf, index, new IntField(1250));
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 2000; i++) {
+            Tuple t = Utility.getTuple(new int[]{10000 + i, i % 7}, 2);
+            hf.addTuple(tid, t);
+            index.addTuple(tid, t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+        HashSet<Integer> expected = new HashSet<Integer>();
+        for (int i = 0; i < 10000; i++) {
+            if (key(i) % 2500 == 3)
+                expected.add(i);
+        }
+        for (int i = 3; i < 2000; i += 7)
+            expected.add(10000 + i);
+        assertEquals(expected, coveredRows(new IndexOnlyScan(tid, index, "",
+                new Predicate(1, Predicate.Op.EQUALS, new IntField(3)))));
+        assertEquals(12000, coveredRows(new IndexOnlyScan(tid, index, "", null)).size());
+        Database.getBufferPool().transactionComplete(tid);
+
+        // the include column annotation of Catalog.loadSchema()
+        File schema = File.createTempFile("schema", ".txt");
+        schema.deleteOnExit();
+        String name = schema.getAbsolutePath() + "_covering";
+        File data = write(new File(name + ".dat"), 2000, 1000003, Utility.getTypes(2));
+        BTreeFile.fileOf(data, 1).deleteOnExit();
+        FileWriter out = new FileWriter(schema);
+        out.write(name + " (a int pk include, b int index)\n");
+        out.close();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        int tableid = Database.getCatalog().getTableId(name);
+        BTreeFile loaded = (BTreeFile) Database.getCatalog().getIndexes(tableid).get(0);
+        assertEquals(1, loaded.getIncludedFields().length);
+        checkCovered((HeapFile) Database.getCatalog().getDbFile(tableid), loaded, new IntField(key(1999)));
+    }
+
+    /**
+     * Unit test for the layout recorded in the header of an index: reloading
+     * a schema whose include annotations changed rebuilds the index
+     */
+    @Test public void reloadChangedLayout() throws Exception {
+        File schema = File.createTempFile("schema", ".txt");
+        schema.deleteOnExit();
+        String name = schema.getAbsolutePath() + "_layout";
+        File data = write(new File(name + ".dat"), 2000, 1000003, Utility.getTypes(2));
+        File indexFile = BTreeFile.fileOf(data, 1);
+        indexFile.deleteOnExit();
+        Catalog catalog = Database.getCatalog();
+
+        String[] schemas = new String[]{"(a int pk include, b int index)", "(a int pk, b int index)",
+                "(a int pk include, b int index)"};
+        for (String columns : schemas) {
+            FileWriter out = new FileWriter(schema);
+            out.write(name + " " + columns + "\n");
+            out.close();
+            catalog.loadSchema(schema.getAbsolutePath());
+            int tableid = catalog.getTableId(name);
+            HeapFile hf = (HeapFile) catalog.getDbFile(tableid);
+            BTreeFile index = (BTreeFile) catalog.getIndexes(tableid).get(0);
+            assertTrue(index.hasLayout());
+            checkLookups(hf, index, new IntField(key(1999)));
+            if (1 == index.getIncludedFields().length)
+                checkCovered(hf, index, new IntField(key(1999)));
+
+            // the file does not match an index with other included fields
+            int[] other = 1 == index.getIncludedFields().length ? new int[0] : new int[]{0};
+            assertFalse(new BTreeFile(indexFile, hf, 1, other).hasLayout());
+            assertFalse(new BTreeFile(indexFile, hf, 0, new int[0]).hasLayout());
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
@@ -0,0 +1,154 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BloomFilterMapTest extends SimpleDbTestBase {
+    private static final int SLOTS = 504;
+    private static final int PAGES = 20;
+
+    /** An unsorted, unique value for row i. */
+    private static int key(int i) {
+        return (int) ((long) i * 7919 % 1000003);
+    }
+
+    /**
+     * Encodes a table of the given types whose first column is i and whose
+     * second is key(i), as an int or a string, for i in [0, rows).
+     */
+    private static HeapFile encode(int rows, Type[] types) throws Exception {
+        File in = File.createTempFile("bloom", ".txt");
+        in.deleteOnExit();
+        BufferedWriter writer = new BufferedWriter(new FileWriter(in));
+        for (int i = 0; i < rows; i++)
+            writer.write(i + "," + key(i) + "\n");
+        writer.close();
+        File out = File.createTempFile("bloom", ".dat");
+        out.deleteOnExit();
+        FreeSpaceMap.sidecarOf(out).deleteOnExit();
+        ZoneMap.sidecarOf(out).deleteOnExit();
+        BloomFilterMap.sidecarOf(out, 1).deleteOnExit();
+        HeapFileEncoder.convert(in, out, BufferPool.PAGE_SIZE, 2, types);
+        HeapFile hf = new HeapFile(out, new TupleDesc(types));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    /** @return the number of pages a scan for the predicate reads */
+    private static int pagesRead(HeapFile hf, Predicate p) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid, null, p);
+        it.open();
+        HashSet<PageId> pages = new HashSet<PageId>();
+        while (it.hasNext())
+            pages.add(it.next().getRecordId().getPageId());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return pages.size();
+    }
+
+    private static int count(HeapFile hf, Predicate p) throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "", p);
+        scan.open();
+        int count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+
+    /**
+     * Unit test for HeapFile.iterator(): an EQUALS scan on a column with a
+     * Bloom filter reads only the pages that may hold the value, where the
+     * zone map does not help
+     */
+    @Test public void needleScan() throws Exception {
+        HeapFile hf = encode(PAGES * SLOTS, Utility.getTypes(2));
+        Predicate needle = new Predicate(1, Predicate.Op.EQUALS, new IntField(key(1234)));
+        assertEquals(PAGES, pagesRead(hf, needle));
+
+        hf.addBloomFilter(1);
+        assertTrue(pagesRead(hf, needle) <= 3);
+        assertEquals(1, count(hf, needle));
+        assertTrue(pagesRead(hf, new Predicate(1, Predicate.Op.EQUALS, new IntField(-1))) <= 2);
+        assertEquals(PAGES, pagesRead(hf, new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(-1))));
+
+        // the filters have been built and written on first use
+        long filterBytes = (SLOTS * BloomFilterMap.BITS_PER_TUPLE + 63) / 64 * 8;
+        assertEquals(PAGES * filterBytes, BloomFilterMap.sidecarOf(hf.getFile(), 1).length());
+    }
+
+    /**
+     * Unit test for HeapFile.addTuple() and HeapFile.writePage(): inserts
+     * add their value to the filter of their page in memory, and filters
+     * are written along with the page
+     */
+    @Test public void inserts() throws Exception {
+        HeapFile hf = encode(2 * SLOTS + 10, Utility.getTypes(2));
+        hf.addBloomFilter(1);
+        Predicate needle = new Predicate(1, Predicate.Op.EQUALS, new IntField(-42));
+        assertEquals(0, count(hf, needle));
+
+        TransactionId tid = new TransactionId();
+        hf.addTuple(tid, Utility.getTuple(new int[]{-1, -42}, 2));
+        assertEquals(1, count(hf, needle));
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        HeapFile reopened = Utility.openHeapFile(2, hf.getFile());
+        reopened.addBloomFilter(1);
+        assertEquals(1, pagesRead(reopened, needle));
+        assertEquals(1, count(reopened, needle));
+    }
+
+    /**
+     * Unit test for BloomFilterMap on a string column, and the bloom
+     * column annotation of Catalog.loadSchema()
+     */
+    @Test public void stringColumn() throws Exception {
+        Type[] types = new Type[]{Type.INT_TYPE, Type.STRING_TYPE};
+        HeapFile hf = encode(PAGES * SLOTS / 2, types);
+        hf.addBloomFilter(1);
+        Predicate needle = new Predicate(1, Predicate.Op.EQUALS,
+                new StringField(Integer.toString(key(777)), Type.STRING_LEN));
+        assertTrue(pagesRead(hf, needle) <= 3);
+        assertEquals(1, count(hf, needle));
+
+        File schema = File.createTempFile("schema", ".txt");
+        schema.deleteOnExit();
+        String name = schema.getAbsolutePath() + "_bloom";
+        new File(name + ".dat").deleteOnExit();
+        FileWriter out = new FileWriter(schema);
+        out.write(name + " (a int pk, b string bloom)\n");
+        out.close();
+
+        Catalog catalog = Database.getCatalog();
+        catalog.loadSchema(schema.getAbsolutePath());
+        HeapFile loaded = (HeapFile) catalog.getDbFile(catalog.getTableId(name));
+        assertEquals(false, loaded.hasBloomFilter(0));
+        assertEquals(true, loaded.hasBloomFilter(1));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BloomFilterMapTest.class);
+    }
+}
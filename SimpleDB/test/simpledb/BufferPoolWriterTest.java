@@ -0,0 +1,135 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BufferPoolWriterTest extends TestUtil.CreateHeapFile {
+    private static final int SLOTS = 504;
+
+    private BufferPool bp;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.startBackgroundWriter();
+
+        insert(SLOTS + 100, true);
+        assertEquals(SLOTS + 100, tuplesInPool());
+    }
+
+    @After public void tearDown() throws Exception {
+        bp.shutdown();
+    }
+
+    private void insert(int count, boolean commit) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < count; ++i)
+            empty.addTuple(tid, Utility.getHeapTuple(i, 2));
+        bp.transactionComplete(tid, commit);
+    }
+
+    /** @return the number of tuples in the table file, bypassing the buffer pool */
+    private int tuplesOnDisk() {
+        int tuples = 0;
+        int pages = (int) (empty.getFile().length() / BufferPool.PAGE_SIZE);
+        for (int i = 0; i < pages; i++) {
+            HeapPage page = (HeapPage) empty.readPage(new HeapPageId(empty.getId(), i));
+            tuples += SLOTS - page.getNumEmptySlots();
+        }
+        return tuples;
+    }
+
+    /** @return the number of tuples in the table as the buffer pool sees it */
+    private int tuplesInPool() throws Exception {
+        TransactionId tid = new TransactionId();
+        int tuples = 0;
+        int pages = (int) (empty.getFile().length() / BufferPool.PAGE_SIZE);
+        for (int i = 0; i < pages; i++) {
+            HeapPageId pid = new HeapPageId(empty.getId(), i);
+            HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+            tuples += SLOTS - page.getNumEmptySlots();
+        }
+        bp.transactionComplete(tid);
+        return tuples;
+    }
+
+    /**
+     * Unit test for BufferPoolWriter: committed pages are written by the writer
+     */
+    @Test public void committedPagesReachDisk() throws Exception {
+        insert(10, true);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bp.numPendingWrites() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(BufferPoolWriter.INTERVAL_MILLIS);
+
+        assertEquals(0, bp.numPendingWrites());
+        assertEquals(SLOTS + 110, tuplesOnDisk());
+    }
+
+    /**
+     * Unit test for BufferPool.transactionComplete(): an abort must not lose
+     * committed changes that are not on disk yet
+     */
+    @Test public void abortKeepsCommittedChanges() throws Exception {
+        insert(10, true);
+        insert(10, false);
+
+        assertEquals(SLOTS + 110, tuplesInPool());
+
+        bp.shutdown();
+        assertEquals(0, bp.numPendingWrites());
+        assertEquals(SLOTS + 110, tuplesOnDisk());
+    }
+
+    /**
+     * Unit test for BufferPoolPartition: a committed page is not written,
+     * even to evict it, before the log has been forced past its UPDATE record
+     */
+    @Test public void pendingPageWaitsForLogForce() throws Exception {
+        // nothing else may force the log
+        bp.shutdown();
+
+        BufferPoolPartition partition = new BufferPoolPartition(1, BufferPool.CLOCK_POLICY);
+        HeapPageId pid = new HeapPageId(empty.getId(), 1);
+        HeapPage page = (HeapPage) partition.getPage(pid);
+        TransactionId tid = new TransactionId();
+        page.addTuple(Utility.getHeapTuple(1, 2));
+        page.markDirty(true, tid);
+
+        // what a commit does up to its log force
+        long lsn = Database.getLogFile().logWrite(tid, page.getBeforeImage(), page);
+        page.setBeforeImage();
+        partition.commitPage(pid, lsn);
+        assertEquals(1, partition.numPendingWrites());
+
+        try {
+            partition.getPage(new HeapPageId(empty.getId(), 0));
+            fail("evicted a page whose UPDATE record is not on disk");
+        } catch (DbException e) {
+            // expected
+        }
+        assertEquals(0, partition.writePendingPages(1));
+        assertEquals(SLOTS + 100, tuplesOnDisk());
+
+        Database.getLogFile().force();
+        partition.getPage(new HeapPageId(empty.getId(), 0));
+        assertEquals(0, partition.numPendingWrites());
+        assertEquals(SLOTS + 101, tuplesOnDisk());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolWriterTest.class);
+    }
+}
@@ -0,0 +1,177 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+    private static final int PAGES = 20;
+
+    private HeapFile createEmpty(File f) {
+        f.deleteOnExit();
+        CompressedPageStore.sidecarOf(f).deleteOnExit();
+        FreeSpaceMap.sidecarOf(f).deleteOnExit();
+        ZoneMap.sidecarOf(f).deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2), false, true);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private HeapPage fullPage(HeapFile hf, int pageNo) throws Exception {
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), pageNo), HeapPage.createEmptyPageData());
+        for (int i = 0; page.getNumEmptySlots() > 0; i++)
+            page.addTuple(Utility.getHeapTuple(new int[]{pageNo, i % 100}));
+        return page;
+    }
+
+    /**
+     * Unit test for HeapFile.writePage() and readPage() in compressed mode
+     */
+    @Test public void roundTrip() throws Exception {
+        File f = File.createTempFile("compressed", ".dat");
+        HeapFile hf = createEmpty(f);
+        assertTrue(hf.isCompressed());
+        for (int p = 0; p < PAGES; p++)
+            hf.writePage(fullPage(hf, p));
+
+        // pages of small integers take a fraction of their size on disk
+        assertTrue(f.length() * 3 < PAGES * BufferPool.PAGE_SIZE);
+
+        // a new HeapFile reads the page index from its sidecar
+        HeapFile reopened = new HeapFile(f, Utility.getTupleDesc(2), false, true);
+        assertEquals(PAGES, reopened.numPages());
+        for (int p = 0; p < PAGES; p++) {
+            HeapPage page = (HeapPage) reopened.readPage(new HeapPageId(hf.getId(), p));
+            assertEquals(0, page.getNumEmptySlots());
+            Tuple t = page.getTuple(42);
+            assertEquals(new IntField(p), t.getField(0));
+            assertEquals(new IntField(42), t.getField(1));
+        }
+    }
+
+    /**
+     * Unit test for HeapFile.writePage(): a page that no longer fits in its
+     * record is moved to the end of the file
+     */
+    @Test public void relocateGrownPage() throws Exception {
+        File f = File.createTempFile("compressed", ".dat");
+        HeapFile hf = createEmpty(f);
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        hf.writePage(new HeapPage(pid, HeapPage.createEmptyPageData()));
+        hf.writePage(fullPage(hf, 1));
+        long length = f.length();
+
+        // random values do not compress
+        Random random = new Random(7);
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        while (page.getNumEmptySlots() > 0)
+            page.addTuple(Utility.getHeapTuple(new int[]{random.nextInt(), random.nextInt()}));
+        hf.writePage(page);
+        assertTrue(f.length() > length + BufferPool.PAGE_SIZE / 2);
+
+        HeapPage read = (HeapPage) new HeapFile(f, Utility.getTupleDesc(2), false, true).readPage(pid);
+        assertEquals(page.getTuple(100), read.getTuple(100));
+        // the page after it is untouched
+        HeapPage next = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 1));
+        assertEquals(fullPage(hf, 1).getTuple(5), next.getTuple(5));
+    }
+
+    private static byte[] contents(File f, int length) throws Exception {
+        byte[] bytes = new byte[length];
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * Unit test for HeapFile.writePage() in compressed mode: a page is never
+     * written over its current record, and the records it replaced are
+     * reused, also after the file is reopened
+     */
+    @Test public void rewriteReusesFreeSpace() throws Exception {
+        File f = File.createTempFile("compressed", ".dat");
+        HeapFile hf = createEmpty(f);
+        for (int p = 0; p < PAGES; p++)
+            hf.writePage(fullPage(hf, p));
+        byte[] written = contents(f, (int) f.length());
+
+        // the previous records are intact after the page is written again
+        HeapPage page = fullPage(hf, 0);
+        page.deleteTuple(page.getTuple(0));
+        hf.writePage(page);
+        assertArrayEquals(written, contents(f, written.length));
+
+        // rewriting the pages over and over again does not grow the file
+        for (int round = 0; round < 5; round++) {
+            for (int p = 0; p < PAGES; p++)
+                hf.writePage(fullPage(hf, p));
+        }
+        long length = f.length();
+        assertTrue(length < written.length + written.length / 4);
+        HeapFile reopened = new HeapFile(f, Utility.getTupleDesc(2), false, true);
+        for (int round = 0; round < 5; round++) {
+            for (int p = 0; p < PAGES; p++)
+                reopened.writePage(fullPage(hf, p));
+        }
+        assertEquals(length, f.length());
+        for (int p = 0; p < PAGES; p++) {
+            HeapPage read = (HeapPage) reopened.readPage(new HeapPageId(hf.getId(), p));
+            assertEquals(0, read.getNumEmptySlots());
+            assertEquals(new IntField(p), read.getTuple(42).getField(0));
+        }
+    }
+
+    /**
+     * Unit test for a compressed HeapFile over a file of uncompressed pages,
+     * as written by HeapFileEncoder
+     */
+    @Test public void scanUncompressedFile() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 1000, 10000, null, tuples);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2), false, true);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * Unit test for Catalog.loadSchema(): the compressed table annotation
+     */
+    @Test public void loadSchemaAnnotation() throws Exception {
+        File schema = File.createTempFile("schema", ".txt");
+        schema.deleteOnExit();
+        String name = schema.getAbsolutePath() + "_compressed";
+        new File(name + ".dat").deleteOnExit();
+
+        FileWriter out = new FileWriter(schema);
+        out.write(name + " (a int, b int) compressed\n");
+        out.close();
+
+        Catalog catalog = Database.getCatalog();
+        catalog.loadSchema(schema.getAbsolutePath());
+        assertTrue(((HeapFile) catalog.getDbFile(catalog.getTableId(name))).isCompressed());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapFileTest.class);
+    }
+}
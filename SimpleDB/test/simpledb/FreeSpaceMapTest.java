@@ -0,0 +1,151 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FreeSpaceMapTest extends TestUtil.CreateHeapFile {
+    private static final int SLOTS = 504;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    /**
+     * Unit test for FreeSpaceMap.findPage()
+     */
+    @Test public void findPage() throws Exception {
+        File f = File.createTempFile("fsm", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap map = new FreeSpaceMap(f, SLOTS);
+
+        assertEquals(0, map.findPage(0));
+        map.update(0, 0);
+        map.update(1, 0);
+        map.update(2, 1);
+        assertEquals(2, map.findPage(0));
+        assertEquals(-1, map.freeSlots(3));
+        assertEquals(3, map.findPage(3));
+
+        map.update(2, 0);
+        map.update(3, 0);
+        assertEquals(4, map.findPage(0));
+        assertEquals(0, map.freeSlots(2));
+        assertEquals(-1, map.freeSlots(5));
+    }
+
+    /**
+     * Unit test for FreeSpaceMap.persist(): entries survive a reopen, but
+     * only for pages that are still in the table file
+     */
+    @Test public void persist() throws Exception {
+        File f = File.createTempFile("fsm", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap map = new FreeSpaceMap(f, SLOTS);
+        map.getFile().deleteOnExit();
+        map.persist(0, 0);
+        map.persist(1, SLOTS);
+        map.persist(2, 0);
+
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength(2 * BufferPool.PAGE_SIZE);
+        raf.close();
+
+        FreeSpaceMap reopened = new FreeSpaceMap(f, SLOTS);
+        assertEquals(0, reopened.freeSlots(0));
+        assertEquals(SLOTS, reopened.freeSlots(1));
+        assertEquals(-1, reopened.freeSlots(2));
+    }
+
+    /**
+     * Unit test for HeapFile.addTuple(): inserts skip pages the map knows
+     * to be full, and the map is written along with the pages
+     */
+    @Test public void heapFileInserts() throws Exception {
+        empty.getFile().deleteOnExit();
+        FreeSpaceMap.sidecarOf(empty.getFile()).deleteOnExit();
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < SLOTS + 10; ++i)
+            empty.addTuple(tid, Utility.getHeapTuple(i, 2));
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        int full = -1;
+        int partial = -1;
+        int pages = (int) (empty.getFile().length() / BufferPool.PAGE_SIZE);
+        for (int i = 0; i < pages; i++) {
+            HeapPage page = (HeapPage) empty.readPage(new HeapPageId(empty.getId(), i));
+            if (0 == page.getNumEmptySlots())
+                full = i;
+            else if (SLOTS != page.getNumEmptySlots())
+                partial = i;
+        }
+        assertTrue(full >= 0 && partial > full);
+
+        // a fresh HeapFile finds the map on disk
+        HeapFile reopened = Utility.openHeapFile(2, empty.getFile());
+        assertEquals(0, reopened.approximateFreeSlots(full));
+        assertTrue(reopened.approximateFreeSlots(partial) > 0);
+
+        tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(1, 2);
+        t.setRecordId(new RecordId(new HeapPageId(reopened.getId(), full), 0));
+        reopened.addTuple(tid, t);
+        assertEquals(partial, t.getRecordId().getPageId().pageno());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.convert(): a converted table has a map
+     * in which every page but the last is full, and pages an insert finds
+     * full are still skipped after a restart
+     */
+    @Test public void convertedTable() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 3 * SLOTS + 10; ++i)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        File f = File.createTempFile("fsm", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.sidecarOf(f).deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+
+        HeapFile table = Utility.openHeapFile(2, f);
+        for (int i = 0; i < 3; i++)
+            assertEquals(0, table.approximateFreeSlots(i));
+        assertEquals(SLOTS - 10, table.approximateFreeSlots(3), 1);
+
+        // without the map, an insert probes the full pages and records them
+        FreeSpaceMap.sidecarOf(f).delete();
+        table = Utility.openHeapFile(2, f);
+        TransactionId tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(1, 2);
+        t.setRecordId(null);
+        table.addTuple(tid, t);
+        assertEquals(3, t.getRecordId().getPageId().pageno());
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        FreeSpaceMap reopened = new FreeSpaceMap(f, SLOTS);
+        assertEquals(0, reopened.freeSlots(1));
+        assertEquals(0, reopened.freeSlots(2));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
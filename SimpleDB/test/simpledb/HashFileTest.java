@@ -0,0 +1,209 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HashFileTest extends SimpleDbTestBase {
+
+    /** An unsorted, unique value for row i. */
+    private static int key(int i) {
+        return (int) ((long) i * 7919 % 1000003);
+    }
+
+    /**
+     * Writes a table of the given types whose first column is i and whose
+     * second is key(i) % mod, as an int or a string, for i in [0, rows).
+     */
+    private static File write(File out, int rows, int mod, Type[] types) throws Exception {
+        File in = File.createTempFile("hash", ".txt");
+        in.deleteOnExit();
+        BufferedWriter writer = new BufferedWriter(new FileWriter(in));
+        for (int i = 0; i < rows; i++)
+            writer.write(i + "," + (key(i) % mod) + "\n");
+        writer.close();
+        out.deleteOnExit();
+        FreeSpaceMap.sidecarOf(out).deleteOnExit();
+        ZoneMap.sidecarOf(out).deleteOnExit();
+        HeapFileEncoder.convert(in, out, BufferPool.PAGE_SIZE, 2, types);
+        return out;
+    }
+
+    private static HeapFile encode(int rows, int mod, Type[] types) throws Exception {
+        File out = write(File.createTempFile("hash", ".dat"), rows, mod, types);
+        HeapFile hf = new HeapFile(out, new TupleDesc(types));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private static HashFile index(HeapFile hf, int field) {
+        File f = HashFile.fileOf(hf.getFile(), field);
+        f.deleteOnExit();
+        HashFile index = new HashFile(f, hf, field);
+        Database.getCatalog().addIndex(index);
+        return index;
+    }
+
+    /** @return the first columns of the tuples the iterator returns */
+    private static HashSet<Integer> rows(DbIterator it) throws Exception {
+        HashSet<Integer> rows = new HashSet<Integer>();
+        it.open();
+        while (it.hasNext())
+            assertTrue(rows.add(((IntField) it.next().getField(0)).getValue()));
+        it.close();
+        return rows;
+    }
+
+    /**
+     * Checks that a HashLookup returns the same tuples as a SeqScan.
+     */
+    private static void checkLookup(HeapFile hf, HashFile index, Field value) throws Exception {
+        TransactionId tid = new TransactionId();
+        Predicate p = new Predicate(index.getKeyField(), Predicate.Op.EQUALS, value);
+        assertEquals(value.toString(), rows(new SeqScan(tid, hf.getId(), "", p)),
+                rows(new HashLookup(tid, index, "", value)));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** @return the number of tuples the whole index points to */
+    private static int count(HashFile index) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = index.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+
+    /**
+     * Unit test for HashFile.addAllTuples() and HashLookup on unique int
+     * keys, which split buckets and double the directory
+     */
+    @Test public void intKeys() throws Exception {
+        HeapFile hf = encode(20000, 1000003, Utility.getTypes(2));
+        HashFile index = index(hf, 1);
+        index.addAllTuples();
+        // the buckets have been split many times
+        assertTrue(index.numPages() > 20000 / 340);
+
+        for (int i = 0; i < 20000; i += 997)
+            checkLookup(hf, index, new IntField(key(i)));
+        checkLookup(hf, index, new IntField(-1));
+        checkLookup(hf, index, new IntField(1000003));
+        assertEquals(20000, count(index));
+    }
+
+    /**
+     * Unit test for HashFile with string keys that repeat more often than
+     * a bucket holds entries, so that buckets overflow
+     */
+    @Test public void duplicateKeys() throws Exception {
+        Type[] types = new Type[]{Type.INT_TYPE, Type.STRING_TYPE};
+        HeapFile hf = encode(3000, 5, types);
+        HashFile index = index(hf, 1);
+        index.addAllTuples();
+
+        for (int i = 0; i < 5; i++)
+            checkLookup(hf, index, new StringField(Integer.toString(i), Type.STRING_LEN));
+        checkLookup(hf, index, new StringField("5", Type.STRING_LEN));
+        assertEquals(3000, count(index));
+
+        // keys of other hashes split the overflowing buckets again
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 200; i++) {
+            Tuple t = new Tuple(hf.getTupleDesc());
+            t.setField(0, new IntField(3000 + i));
+            t.setField(1, new StringField("x" + i, Type.STRING_LEN));
+            hf.addTuple(tid, t);
+            index.addTuple(tid, t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        for (int i = 0; i < 200; i += 17) {
+            HashSet<Integer> found = rows(new HashLookup(new TransactionId(), index, "",
+                    new StringField("x" + i, Type.STRING_LEN)));
+            assertEquals(1, found.size());
+            assertTrue(found.contains(3000 + i));
+        }
+        checkLookup(hf, index, new StringField("3", Type.STRING_LEN));
+        assertEquals(3200, count(index));
+    }
+
+    /**
+     * Unit test for HashFile.addTuple() and HashFile.deleteTuple(): index
+     * changes commit and abort with their transaction
+     */
+    @Test public void transactions() throws Exception {
+        HeapFile hf = encode(1000, 1000003, Utility.getTypes(2));
+        HashFile index = index(hf, 1);
+        index.addAllTuples();
+        IntField needle = new IntField(-42);
+
+        TransactionId tid = new TransactionId();
+        Tuple t = Utility.getTuple(new int[]{-1, -42}, 2);
+        hf.addTuple(tid, t);
+        index.addTuple(tid, t);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(1, rows(new HashLookup(new TransactionId(), index, "", needle)).size());
+
+        tid = new TransactionId();
+        hf.deleteTuple(tid, t);
+        index.deleteTuple(tid, t);
+        assertEquals(0, rows(new HashLookup(tid, index, "", needle)).size());
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(1, rows(new HashLookup(new TransactionId(), index, "", needle)).size());
+        Database.getBufferPool().flushAllPages();
+
+        // a fresh HashFile finds the entry on disk
+        HashFile reopened = new HashFile(index.getFile(), hf, 1);
+        Database.getCatalog().addIndex(reopened);
+        assertEquals(1, rows(new HashLookup(new TransactionId(), reopened, "", needle)).size());
+        checkLookup(hf, reopened, new IntField(key(500)));
+    }
+
+    /**
+     * Unit test for the hash column annotation of Catalog.loadSchema(),
+     * which builds the index of a primary key that has none yet
+     */
+    @Test public void loadSchema() throws Exception {
+        File schema = File.createTempFile("schema", ".txt");
+        schema.deleteOnExit();
+        String name = schema.getAbsolutePath() + "_hash";
+        File data = write(new File(name + ".dat"), 2000, 1000003, Utility.getTypes(2));
+        HashFile.fileOf(data, 0).deleteOnExit();
+        FileWriter out = new FileWriter(schema);
+        out.write(name + " (a int pk hash, b int)\n");
+        out.close();
+
+        Catalog catalog = Database.getCatalog();
+        catalog.loadSchema(schema.getAbsolutePath());
+        int tableid = catalog.getTableId(name);
+        assertEquals(1, catalog.getIndexes(tableid).size());
+        HashFile index = (HashFile) catalog.getIndexes(tableid).get(0);
+        assertEquals(0, index.getKeyField());
+        assertTrue(HashFile.fileOf(data, 0).exists());
+        checkLookup((HeapFile) catalog.getDbFile(tableid), index, new IntField(1999));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashFileTest.class);
+    }
+}
@@ -0,0 +1,131 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HeapFileEncoderTest extends SimpleDbTestBase {
+    private static final Type[] TYPES = new Type[]{Type.INT_TYPE, Type.STRING_TYPE};
+
+    private File input(String text) throws IOException {
+        File f = File.createTempFile("encoder", ".txt");
+        f.deleteOnExit();
+        FileWriter out = new FileWriter(f);
+        out.write(text);
+        out.close();
+        return f;
+    }
+
+    private File output() throws IOException {
+        File f = File.createTempFile("encoder", ".dat");
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static byte[] read(File f) throws IOException {
+        byte[] bytes = new byte[(int) f.length()];
+        FileInputStream in = new FileInputStream(f);
+        int read = 0;
+        while (read < bytes.length)
+            read += in.read(bytes, read, bytes.length - read);
+        in.close();
+        return bytes;
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.convert(): blank lines, Windows line
+     * endings, padding and a last line without a newline
+     */
+    @Test public void convertText() throws Exception {
+        File out = output();
+        HeapFileEncoder.convert(input("1, one\r\n\r\n-2,two \n\n 3 ,three"), out,
+                BufferPool.PAGE_SIZE, 2, TYPES);
+        assertEquals(BufferPool.PAGE_SIZE, out.length());
+
+        HeapFile hf = new HeapFile(out, new TupleDesc(TYPES));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        Iterator<Tuple> it = ((HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0))).iterator();
+        String[] names = new String[]{"one", "two", "three"};
+        int[] values = new int[]{1, -2, 3};
+        for (int i = 0; i < 3; i++) {
+            Tuple t = it.next();
+            assertEquals(new IntField(values[i]), t.getField(0));
+            assertEquals(new StringField(names[i], Type.STRING_LEN), t.getField(1));
+        }
+        assertEquals(false, it.hasNext());
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.convert(): an empty input makes one
+     * empty page, a line with the wrong number of fields is an error
+     */
+    @Test public void emptyAndMalformed() throws Exception {
+        File out = output();
+        HeapFileEncoder.convert(input(""), out, BufferPool.PAGE_SIZE, 2, TYPES);
+        assertArrayEquals(new byte[BufferPool.PAGE_SIZE], read(out));
+
+        try {
+            HeapFileEncoder.convert(input("1,a\n2\n"), out, BufferPool.PAGE_SIZE, 2, TYPES);
+            throw new Exception("expected IOException for a short line");
+        } catch (IOException e) {
+            // explicitly ignored
+        }
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.convert(): the output does not depend
+     * on the number of threads, also when pages span chunks
+     */
+    @Test public void parallelConvert() throws Exception {
+        File in = File.createTempFile("encoder", ".txt");
+        in.deleteOnExit();
+        BufferedWriter writer = new BufferedWriter(new FileWriter(in));
+        int rows = 0;
+        while (in.length() < 3L * ParallelHeapFileEncoder.CHUNK_SIZE / 2 || rows % 1000 != 0) {
+            writer.write(rows + ",row" + (rows * 7) + "\n");
+            if (++rows % 1000 == 0)
+                writer.flush();
+        }
+        writer.close();
+
+        File sequential = output();
+        File parallel = output();
+        HeapFileEncoder.convert(in, sequential, BufferPool.PAGE_SIZE, 2, TYPES, 1);
+        HeapFileEncoder.convert(in, parallel, BufferPool.PAGE_SIZE, 2, TYPES, 4);
+        assertArrayEquals(read(sequential), read(parallel));
+
+        HeapFile hf = new HeapFile(parallel, new TupleDesc(TYPES));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(new StringField("row" + (count * 7), Type.STRING_LEN), t.getField(1));
+            count++;
+        }
+        it.close();
+        assertEquals(rows, count);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapFileEncoderTest.class);
+    }
+}
@@ -123,6 +123,23 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.getSlot(i));
     }
 
+    /**
+     * Unit test for HeapPage.getTuple()
+     */
+    @Test public void getTuple() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+
+        Tuple tup = page.getTuple(7);
+        assertEquals(EXAMPLE_VALUES[7][0], ((IntField) tup.getField(0)).getValue());
+        assertEquals(EXAMPLE_VALUES[7][1], ((IntField) tup.getField(1)).getValue());
+        assertEquals(new RecordId(pid, 7), tup.getRecordId());
+
+        // decoded once, then cached
+        assertTrue(tup == page.getTuple(7));
+        assertEquals(null, page.getTuple(20));
+        assertEquals(null, page.getTuple(504));
+    }
+
     /**
      * JUnit suite target
      */
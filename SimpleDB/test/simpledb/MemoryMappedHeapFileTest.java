@@ -0,0 +1,106 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class MemoryMappedHeapFileTest extends SimpleDbTestBase {
+    private ArrayList<ArrayList<Integer>> tuples;
+    private HeapFile hf;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 1000, 10000, null, tuples);
+        hf = new HeapFile(f, Utility.getTupleDesc(2), true);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Unit test for HeapFile.readPage() in memory-mapped mode
+     */
+    @Test public void scan() throws Exception {
+        assertTrue(hf.isMemoryMapped());
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * Unit test for HeapPage: a mapped page is copied before it is modified
+     */
+    @Test public void modifyMappedPage() throws Exception {
+        // the last page of the file still has room
+        HeapPageId pid = new HeapPageId(hf.getId(), hf.numPages() - 1);
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        int empty = page.getNumEmptySlots();
+
+        page.addTuple(Utility.getHeapTuple(1, 2));
+        assertEquals(empty - 1, page.getNumEmptySlots());
+        assertEquals(empty, ((HeapPage) hf.readPage(pid)).getNumEmptySlots());
+
+        hf.writePage(page);
+        assertEquals(empty - 1, ((HeapPage) hf.readPage(pid)).getNumEmptySlots());
+    }
+
+    /**
+     * Unit test for HeapFile.writePage(): pages past the mapped length are
+     * readable once the file grows
+     */
+    @Test public void remapAfterGrowth() throws Exception {
+        int pages = (int) (hf.getFile().length() / BufferPool.PAGE_SIZE);
+        hf.readPage(new HeapPageId(hf.getId(), 0));
+
+        HeapPageId pid = new HeapPageId(hf.getId(), pages);
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        page.addTuple(Utility.getHeapTuple(7, 2));
+        hf.writePage(page);
+
+        HeapPage read = (HeapPage) hf.readPage(pid);
+        assertEquals(page.getNumEmptySlots(), read.getNumEmptySlots());
+        assertEquals(new IntField(7), read.iterator().next().getField(0));
+    }
+
+    /**
+     * Unit test for Catalog.loadSchema(): the mmap table annotation
+     */
+    @Test public void loadSchemaAnnotation() throws Exception {
+        File schema = File.createTempFile("schema", ".txt");
+        schema.deleteOnExit();
+        String prefix = schema.getAbsolutePath();
+        new File(prefix + "_plain.dat").deleteOnExit();
+        new File(prefix + "_mapped.dat").deleteOnExit();
+
+        FileWriter out = new FileWriter(schema);
+        out.write(prefix + "_plain (a int, b int)\n");
+        out.write(prefix + "_mapped (a int, b int) mmap\n");
+        out.close();
+
+        Catalog catalog = Database.getCatalog();
+        catalog.loadSchema(schema.getAbsolutePath());
+        HeapFile plain = (HeapFile) catalog.getDbFile(catalog.getTableId(prefix + "_plain"));
+        HeapFile mapped = (HeapFile) catalog.getDbFile(catalog.getTableId(prefix + "_mapped"));
+        assertFalse(plain.isMemoryMapped());
+        assertTrue(mapped.isMemoryMapped());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MemoryMappedHeapFileTest.class);
+    }
+}
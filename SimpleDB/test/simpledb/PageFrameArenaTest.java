@@ -0,0 +1,84 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PageFrameArenaTest extends SimpleDbTestBase {
+    private HeapPageId pid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() throws Exception {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Unit test for PageFrameArena.frame()
+     */
+    @Test public void framesDoNotOverlap() {
+        int numFrames = PageFrameArena.FRAMES_PER_SLAB + 3;
+        PageFrameArena arena = new PageFrameArena(numFrames);
+        assertEquals(numFrames, arena.numFrames());
+
+        for (int i = 0; i < numFrames; i++) {
+            ByteBuffer frame = arena.frame(i);
+            assertTrue(frame.isDirect());
+            assertEquals(BufferPool.PAGE_SIZE, frame.remaining());
+            frame.putInt(0, i);
+            frame.putInt(BufferPool.PAGE_SIZE - 4, i);
+        }
+        for (int i = 0; i < numFrames; i++) {
+            assertEquals(i, arena.frame(i).getInt(0));
+            assertEquals(i, arena.frame(i).getInt(BufferPool.PAGE_SIZE - 4));
+        }
+    }
+
+    /**
+     * Unit test for HeapPage.attachFrame() and HeapPage.detachFrame()
+     */
+    @Test public void pageWritesThroughToItsFrame() throws Exception {
+        PageFrameArena arena = new PageFrameArena(1);
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        page.attachFrame(arena.frame(0));
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getPageData());
+
+        Tuple addition = Utility.getHeapTuple(7, 2);
+        page.addTuple(addition);
+        byte[] frameData = new byte[BufferPool.PAGE_SIZE];
+        arena.frame(0).get(frameData);
+        assertArrayEquals(page.getPageData(), frameData);
+
+        // once detached, reusing the frame must not change the page
+        page.detachFrame();
+        ByteBuffer frame = arena.frame(0);
+        frame.put(new byte[BufferPool.PAGE_SIZE]);
+        assertArrayEquals(frameData, page.getPageData());
+
+        // the image parses back into the same tuples
+        HeapPage copy = new HeapPage(pid, frameData);
+        assertEquals(page.getNumEmptySlots(), copy.getNumEmptySlots());
+        assertTrue(Arrays.equals(page.getPageData(), copy.getPageData()));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageFrameArenaTest.class);
+    }
+}
@@ -0,0 +1,85 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class PageReadAheadTest extends SimpleDbTestBase {
+
+    /** Records the pages it is asked to prefetch instead of reading them. */
+    private static class RecordingReadAhead extends PageReadAhead {
+        final List<Integer> prefetched = new ArrayList<Integer>();
+
+        RecordingReadAhead(BufferAccessStrategy strategy) {
+            super(null, strategy);
+        }
+
+        void prefetch(int pageNo) {
+            prefetched.add(pageNo);
+        }
+    }
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        Database.resetBufferPool(1024);
+    }
+
+    /**
+     * Unit test for PageReadAhead.access()
+     */
+    @Test public void windowGrowsWhileSequential() {
+        RecordingReadAhead readAhead = new RecordingReadAhead(null);
+        readAhead.access(0, 999);
+        assertEquals(0, readAhead.prefetched.size());
+
+        readAhead.access(1, 999);
+        assertEquals(PageReadAhead.MIN_DEPTH, readAhead.depth());
+
+        for (int page = 2; page < 400; page++)
+            readAhead.access(page, 999);
+        assertEquals(PageReadAhead.MAX_DEPTH, readAhead.depth());
+
+        // every page after the first two is read ahead exactly once, in order
+        for (int i = 0; i < readAhead.prefetched.size(); i++)
+            assertEquals(i + 2, readAhead.prefetched.get(i).intValue());
+        assertEquals(399 + PageReadAhead.MAX_DEPTH, readAhead.prefetched.get(readAhead.prefetched.size() - 1).intValue());
+    }
+
+    @Test public void randomAccessResetsWindow() {
+        RecordingReadAhead readAhead = new RecordingReadAhead(null);
+        for (int page = 0; page < 50; page++)
+            readAhead.access(page, 999);
+        assertTrue(readAhead.depth() > PageReadAhead.MIN_DEPTH);
+
+        int issued = readAhead.prefetched.size();
+        readAhead.access(500, 999);
+        assertEquals(0, readAhead.depth());
+        assertEquals(issued, readAhead.prefetched.size());
+    }
+
+    @Test public void windowStopsAtEndOfFileAndRing() {
+        BufferAccessStrategy ring = new BufferAccessStrategy(BufferAccessStrategy.RING_PAGES);
+        RecordingReadAhead readAhead = new RecordingReadAhead(ring);
+        for (int page = 0; page < 20; page++)
+            readAhead.access(page, 19);
+
+        assertEquals(BufferAccessStrategy.RING_PAGES / 2, readAhead.depth());
+        assertEquals(19, readAhead.prefetched.get(readAhead.prefetched.size() - 1).intValue());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageReadAheadTest.class);
+    }
+}
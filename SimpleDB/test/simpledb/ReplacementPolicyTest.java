@@ -0,0 +1,103 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class ReplacementPolicyTest {
+
+    private static final ReplacementPolicy.Evictable ALL = new ReplacementPolicy.Evictable() {
+        public boolean canEvict(int frame) {
+            return true;
+        }
+    };
+
+    private static final ReplacementPolicy.Evictable NONE = new ReplacementPolicy.Evictable() {
+        public boolean canEvict(int frame) {
+            return false;
+        }
+    };
+
+    private static ReplacementPolicy.Evictable allBut(final int pinned) {
+        return new ReplacementPolicy.Evictable() {
+            public boolean canEvict(int frame) {
+                return frame != pinned;
+            }
+        };
+    }
+
+    /**
+     * Unit test for ClockReplacementPolicy.chooseVictim()
+     */
+    @Test public void clockGivesSecondChance() {
+        ClockReplacementPolicy clock = new ClockReplacementPolicy(3);
+        for (int i = 0; i < 3; i++)
+            clock.frameLoaded(i);
+
+        // every reference bit is set, so the first sweep only clears them
+        assertEquals(0, clock.chooseVictim(ALL));
+        clock.frameReleased(0);
+        clock.frameLoaded(0);
+
+        // frame 1 is referenced again and survives the next sweep
+        clock.frameAccessed(1);
+        assertEquals(2, clock.chooseVictim(ALL));
+    }
+
+    @Test public void clockSkipsFramesThatCannotBeEvicted() {
+        ClockReplacementPolicy clock = new ClockReplacementPolicy(3);
+        for (int i = 0; i < 3; i++)
+            clock.frameLoaded(i);
+
+        assertEquals(1, clock.chooseVictim(allBut(0)));
+        assertEquals(-1, clock.chooseVictim(NONE));
+
+        ClockReplacementPolicy empty = new ClockReplacementPolicy(3);
+        assertEquals(-1, empty.chooseVictim(ALL));
+    }
+
+    /**
+     * Unit test for LruKReplacementPolicy.chooseVictim()
+     */
+    @Test public void lruKPrefersPagesReferencedOnce() {
+        LruKReplacementPolicy lru = new LruKReplacementPolicy(3, 2);
+        lru.frameLoaded(0);
+        lru.frameAccessed(0);
+        lru.frameLoaded(1);
+        lru.frameAccessed(1);
+        // frame 2 is seen only once (e.g. by a scan), even though it is the newest
+        lru.frameLoaded(2);
+
+        assertEquals(2, lru.chooseVictim(ALL));
+        lru.frameReleased(2);
+
+        // both remaining frames have two references; the older history loses
+        assertEquals(0, lru.chooseVictim(ALL));
+        lru.frameAccessed(0);
+        lru.frameAccessed(0);
+        assertEquals(1, lru.chooseVictim(ALL));
+    }
+
+    @Test public void lruKSkipsFramesThatCannotBeEvicted() {
+        LruKReplacementPolicy lru = new LruKReplacementPolicy(4);
+        for (int i = 0; i < 4; i++)
+            lru.frameLoaded(i);
+
+        assertEquals(1, lru.chooseVictim(allBut(0)));
+        assertEquals(-1, lru.chooseVictim(NONE));
+        // skipped frames keep their place
+        assertEquals(0, lru.chooseVictim(ALL));
+
+        lru.frameReleased(0);
+        lru.frameReleased(1);
+        assertEquals(2, lru.chooseVictim(ALL));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
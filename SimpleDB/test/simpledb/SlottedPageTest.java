@@ -0,0 +1,140 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SlottedPageTest extends SimpleDbTestBase {
+    private HeapPageId pid;
+    private TupleDesc td;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() throws Exception {
+        this.pid = new HeapPageId(-1, -1);
+        this.td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+        Database.getCatalog().addTable(new SkeletonFile(-1, td), SystemTestUtil.getUUID());
+    }
+
+    private Tuple tuple(int i, String s) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    /**
+     * Unit test for SlottedPage.addTuple() and SlottedPage.iterator()
+     */
+    @Test public void addAndIterate() throws Exception {
+        SlottedPage page = new SlottedPage(pid, SlottedPage.createEmptyPageData());
+        assertEquals(0, page.getNumTuples());
+
+        for (int i = 0; i < 100; i++) {
+            Tuple t = tuple(i, "c" + i);
+            page.addTuple(t);
+            assertEquals(i, t.getRecordId().tupleno());
+        }
+
+        // the image round trips through the constructor
+        Iterator<Tuple> it = new SlottedPage(pid, page.getPageData()).iterator();
+        for (int i = 0; i < 100; i++) {
+            Tuple t = it.next();
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals(new StringField("c" + i, Type.STRING_LEN), t.getField(1));
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Unit test for SlottedPage.addTuple(): short records pack far more
+     * tuples on a page than a HeapPage holds
+     */
+    @Test public void fillPage() throws Exception {
+        SlottedPage page = new SlottedPage(pid, SlottedPage.createEmptyPageData());
+        int added = 0;
+        while (page.hasRoomFor(tuple(added, "abcd"))) {
+            page.addTuple(tuple(added, "abcd"));
+            added++;
+        }
+
+        // 4 + 2 + 4 bytes per record plus a 4 byte slot
+        assertEquals((BufferPool.PAGE_SIZE - SlottedPage.HEADER_SIZE) / 14, added);
+        assertTrue(added > 5 * (BufferPool.PAGE_SIZE * 8) / (td.getSize() * 8 + 1));
+        assertTrue(page.getFreeSpace() < 14);
+        try {
+            page.addTuple(tuple(0, "abcd"));
+            throw new Exception("page should be full; expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+    }
+
+    /**
+     * Unit test for SlottedPage.deleteTuple(): freed slots and space are
+     * reused, compacting the page when needed
+     */
+    @Test public void deleteAndReuse() throws Exception {
+        SlottedPage page = new SlottedPage(pid, SlottedPage.createEmptyPageData());
+        Tuple[] tuples = new Tuple[10];
+        for (int i = 0; i < tuples.length; i++) {
+            tuples[i] = tuple(i, "short");
+            page.addTuple(tuples[i]);
+        }
+        while (page.hasRoomFor(tuple(0, "short")))
+            page.addTuple(tuple(0, "short"));
+
+        page.deleteTuple(tuples[3]);
+        page.deleteTuple(tuples[4]);
+        assertFalse(page.getSlot(3));
+        try {
+            page.deleteTuple(tuples[3]);
+            throw new Exception("slot should be empty; expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+
+        // a record twice as long fits in the space of the two deleted ones
+        Tuple longer = tuple(42, "shortshortsh");
+        page.addTuple(longer);
+        assertEquals(3, longer.getRecordId().tupleno());
+
+        SlottedPage reread = new SlottedPage(pid, page.getPageData());
+        assertEquals(new StringField("shortshortsh", Type.STRING_LEN), reread.getTuple(3).getField(1));
+        assertEquals(new IntField(9), reread.getTuple(9).getField(0));
+        assertEquals(null, reread.getTuple(4));
+    }
+
+    /**
+     * Unit test for SlottedPage.getBeforeImage()
+     */
+    @Test public void beforeImage() throws Exception {
+        SlottedPage page = new SlottedPage(pid, SlottedPage.createEmptyPageData());
+        page.addTuple(tuple(1, "a"));
+        page.setBeforeImage();
+        page.addTuple(tuple(2, "b"));
+
+        assertEquals(1, page.getBeforeImage().getNumTuples());
+        assertEquals(2, page.getNumTuples());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedPageTest.class);
+    }
+}
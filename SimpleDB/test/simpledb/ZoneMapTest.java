@@ -0,0 +1,153 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZoneMapTest extends TestUtil.CreateHeapFile {
+    private static final int SLOTS = 504;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    private static int count(DbFileIterator it) throws Exception {
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        return count;
+    }
+
+    private static Predicate predicate(int field, Predicate.Op op, int value) {
+        return new Predicate(field, op, new IntField(value));
+    }
+
+    /**
+     * Unit test for ZoneMap.mayMatch(): ranges survive a reopen, but only
+     * for pages that are still in the table file
+     */
+    @Test public void persist() throws Exception {
+        File f = File.createTempFile("zmap", ".dat");
+        f.deleteOnExit();
+        ZoneMap map = new ZoneMap(f, Utility.getTupleDesc(2));
+        map.getFile().deleteOnExit();
+        int[] mins = new int[2];
+        int[] maxs = new int[2];
+        for (int p = 0; p < 3; p++) {
+            mins[0] = 10 * p;
+            maxs[0] = 10 * p + 9;
+            map.set(p, mins, maxs, false);
+        }
+        ZoneMap.empty(mins, maxs);
+        map.set(3, mins, maxs, false);
+        map.persist(3);
+
+        assertEquals(true, map.mayMatch(1, predicate(0, Predicate.Op.EQUALS, 15)));
+        assertEquals(false, map.mayMatch(1, predicate(0, Predicate.Op.EQUALS, 25)));
+        assertEquals(false, map.mayMatch(1, predicate(0, Predicate.Op.GREATER_THAN, 19)));
+        assertEquals(true, map.mayMatch(1, predicate(0, Predicate.Op.LESS_THAN_OR_EQ, 10)));
+        assertEquals(false, map.mayMatch(3, predicate(1, Predicate.Op.NOT_EQUALS, 0)));
+        assertEquals(true, map.mayMatch(7, predicate(0, Predicate.Op.EQUALS, 25)));
+
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength(2 * BufferPool.PAGE_SIZE);
+        raf.close();
+
+        ZoneMap reopened = new ZoneMap(f, Utility.getTupleDesc(2));
+        assertEquals(false, reopened.mayMatch(0, predicate(0, Predicate.Op.LESS_THAN, 0)));
+        assertEquals(false, reopened.mayMatch(1, predicate(0, Predicate.Op.EQUALS, 25)));
+        assertEquals(true, reopened.mayMatch(2, predicate(0, Predicate.Op.EQUALS, 0)));
+        assertEquals(true, reopened.mayMatch(3, predicate(0, Predicate.Op.EQUALS, 0)));
+    }
+
+    /**
+     * Encodes a table of two int columns, i and i % 7, for i in [0, rows).
+     */
+    private static HeapFile encode(int rows) throws Exception {
+        File in = File.createTempFile("zmap", ".txt");
+        in.deleteOnExit();
+        BufferedWriter writer = new BufferedWriter(new FileWriter(in));
+        for (int i = 0; i < rows; i++)
+            writer.write(i + "," + (i % 7) + "\n");
+        writer.close();
+        File out = File.createTempFile("zmap", ".dat");
+        out.deleteOnExit();
+        ZoneMap.sidecarOf(out).deleteOnExit();
+        FreeSpaceMap.sidecarOf(out).deleteOnExit();
+        HeapFileEncoder.convert(in, out, BufferPool.PAGE_SIZE, 2, Utility.getTypes(2));
+        return Utility.openHeapFile(2, out);
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.convert() and SeqScan: the encoder
+     * builds the zone map, and scans with a predicate skip the pages it
+     * rules out
+     */
+    @Test public void encodedScan() throws Exception {
+        HeapFile hf = encode(4 * SLOTS - 16);
+        assertEquals(4L * 2 * 8, ZoneMap.sidecarOf(hf.getFile()).length());
+
+        TransactionId tid = new TransactionId();
+        assertEquals(SLOTS, count(hf.iterator(tid, null, predicate(0, Predicate.Op.LESS_THAN, 100))));
+        assertEquals(SLOTS - 16, count(hf.iterator(tid, null, predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, 3 * SLOTS))));
+        assertEquals(0, count(hf.iterator(tid, null, predicate(0, Predicate.Op.GREATER_THAN, 4 * SLOTS))));
+        assertEquals(4 * SLOTS - 16, count(hf.iterator(tid, null, predicate(1, Predicate.Op.EQUALS, 3))));
+
+        SeqScan scan = new SeqScan(tid, hf.getId(), "", predicate(0, Predicate.Op.EQUALS, 1000));
+        scan.open();
+        assertTrue(scan.hasNext());
+        assertEquals(new IntField(1000), scan.next().getField(0));
+        assertEquals(false, scan.hasNext());
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for HeapFile.addTuple() and HeapFile.writePage(): inserts
+     * widen the ranges of their page in memory, and the exact ranges are
+     * written along with the page
+     */
+    @Test public void heapFileInserts() throws Exception {
+        HeapFile hf = encode(SLOTS + 10);
+        TransactionId tid = new TransactionId();
+        Predicate negative = predicate(0, Predicate.Op.LESS_THAN, 0);
+        assertEquals(0, count(hf.iterator(tid, null, negative)));
+
+        Tuple t = Utility.getTuple(new int[]{-5, -5}, 2);
+        hf.addTuple(tid, t);
+        assertEquals(1, t.getRecordId().getPageId().pageno());
+        assertEquals(11, count(hf.iterator(tid, null, negative)));
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        // a fresh HeapFile finds the ranges written with the page
+        HeapFile reopened = Utility.openHeapFile(2, hf.getFile());
+        tid = new TransactionId();
+        assertEquals(11, count(reopened.iterator(tid, null, negative)));
+        assertEquals(0, count(reopened.iterator(tid, null, predicate(0, Predicate.Op.GREATER_THAN, SLOTS + 10))));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
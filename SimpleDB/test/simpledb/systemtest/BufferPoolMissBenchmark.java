@@ -0,0 +1,70 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import simpledb.*;
+
+/**
+ * Measures the average latency of a BufferPool miss for growing pool sizes.
+ * <p>
+ * For every pool size the benchmark creates a table with twice as many pages
+ * as the pool holds and reads its pages round robin, so that every request
+ * misses and has to evict a page. With an O(1) replacement policy the miss
+ * latency should stay flat as numPages grows.
+ * <p>
+ * Run with: ant runbench -Dbench=BufferPoolMissBenchmark
+ */
+public class BufferPoolMissBenchmark {
+    private static final int[] POOL_SIZES = new int[]{256, 1024, 4096, 16384};
+    private static final String[] POLICIES = new String[]{
+        BufferPool.CLOCK_POLICY, BufferPool.LRU_K_POLICY
+    };
+    private static final int MISSES = 50000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("policy\tnumPages\tns/miss");
+        for (String policy : POLICIES) {
+            for (int numPages : POOL_SIZES) {
+                double nanos = measure(policy, numPages);
+                System.out.printf("%s\t%d\t%.0f\n", policy, numPages, nanos);
+            }
+        }
+    }
+
+    /** @return the average number of nanoseconds spent per getPage miss */
+    static double measure(String policy, int numPages)
+            throws IOException, DbException, TransactionAbortedException {
+        Database.reset();
+        System.setProperty(BufferPool.REPLACEMENT_POLICY_PROPERTY, policy);
+        BufferPool bp = Database.resetBufferPool(numPages);
+
+        int tablePages = 2 * numPages;
+        File f = File.createTempFile("bpbench", ".dat");
+        f.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength((long) tablePages * BufferPool.PAGE_SIZE);
+        raf.close();
+        HeapFile hf = Utility.openHeapFile(2, f);
+
+        TransactionId tid = new TransactionId();
+        int next = 0;
+        // fill the pool, then keep cycling through a working set twice its size
+        for (int i = 0; i < numPages; i++) {
+            bp.getPage(tid, new HeapPageId(hf.getId(), next), Permissions.READ_ONLY);
+            next = (next + 1) % tablePages;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MISSES; i++) {
+            bp.getPage(tid, new HeapPageId(hf.getId(), next), Permissions.READ_ONLY);
+            next = (next + 1) % tablePages;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        bp.transactionComplete(tid);
+        f.delete();
+        return (double) elapsed / MISSES;
+    }
+}
@@ -0,0 +1,88 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures getPage hit throughput of a BufferPool with a single partition,
+ * i.e. one latch for the whole pool, and with eight partitions, as the
+ * number of threads grows.
+ * <p>
+ * Both pools hold the whole table, so every request is a hit; with one
+ * latch per partition the throughput should keep growing with the number
+ * of threads.
+ * <p>
+ * Run with: ant runbench -Dbench=BufferPoolThroughputBenchmark
+ */
+public class BufferPoolThroughputBenchmark {
+    private static final int POOL_PAGES = 1024;
+    private static final int OPS_PER_THREAD = 200000;
+
+    public static void main(String[] args) throws Exception {
+        Database.reset();
+        int tablePages = POOL_PAGES / 2;
+        File f = File.createTempFile("bpthroughput", ".dat");
+        f.deleteOnExit();
+        HeapFile table = createEmptyTable(f, tablePages);
+        int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        BufferPool single = new BufferPool(POOL_PAGES, BufferPool.CLOCK_POLICY, 1);
+        BufferPool partitioned = new BufferPool(POOL_PAGES, BufferPool.CLOCK_POLICY, 8);
+        // warm both pools so that every request below is a hit
+        run(single, table, tablePages, 1, 20 * tablePages);
+        run(partitioned, table, tablePages, 1, 20 * tablePages);
+
+        System.out.println("threads\t1 partition (ops/s)\t" + partitioned.numPartitions() + " partitions (ops/s)");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double singleOps = run(single, table, tablePages, threads, OPS_PER_THREAD);
+            double partitionedOps = run(partitioned, table, tablePages, threads, OPS_PER_THREAD);
+            System.out.printf("%d\t%.0f\t%.0f\n", threads, singleOps, partitionedOps);
+        }
+        f.delete();
+    }
+
+    /** @return a table of numPages empty pages, stored in f */
+    static HeapFile createEmptyTable(File f, int numPages) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength((long) numPages * BufferPool.PAGE_SIZE);
+        raf.close();
+        return Utility.openHeapFile(2, f);
+    }
+
+    /**
+     * Runs numThreads threads that each request opsPerThread random pages of
+     * the table.
+     * @return the number of getPage calls per second
+     */
+    static double run(final BufferPool bp, final HeapFile table, final int tablePages,
+            int numThreads, final int opsPerThread) throws Exception {
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final long seed = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    Random r = new Random(seed);
+                    TransactionId tid = new TransactionId();
+                    try {
+                        for (int op = 0; op < opsPerThread; op++)
+                            bp.getPage(tid, new HeapPageId(table.getId(), r.nextInt(tablePages)), Permissions.READ_ONLY);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        long elapsed = System.nanoTime() - start;
+        return (double) numThreads * opsPerThread / (elapsed / 1e9);
+    }
+}
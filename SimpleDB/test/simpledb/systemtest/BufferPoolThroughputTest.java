@@ -0,0 +1,86 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Hammers a partitioned BufferPool from many threads. Checks that every
+ * thread gets back the page it asked for and that the pool never holds more
+ * pages than it has frames.
+ *
+ * @see BufferPoolThroughputBenchmark
+ */
+public class BufferPoolThroughputTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 1024;
+
+    private HeapFile createEmptyTable(int numPages) throws IOException {
+        File f = File.createTempFile("bpthroughput", ".dat");
+        f.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength((long) numPages * BufferPool.PAGE_SIZE);
+        raf.close();
+        return Utility.openHeapFile(2, f);
+    }
+
+    /**
+     * Runs numThreads threads that each request opsPerThread random pages of
+     * the table, and checks that every request returns the page asked for.
+     */
+    private void run(final BufferPool bp, final HeapFile table, final int tablePages,
+            int numThreads, final int opsPerThread) throws Exception {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final long seed = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    Random r = new Random(seed);
+                    TransactionId tid = new TransactionId();
+                    try {
+                        for (int op = 0; op < opsPerThread; op++) {
+                            HeapPageId pid = new HeapPageId(table.getId(), r.nextInt(tablePages));
+                            Page page = bp.getPage(tid, pid, Permissions.READ_ONLY);
+                            if (!pid.equals(page.getId()))
+                                throw new AssertionError("asked for " + pid.pageno() + ", got " + page.getId().pageno());
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+        }
+
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+    }
+
+    /** Many threads missing on a pool half the size of the table. */
+    @Test public void testConcurrentMisses() throws Exception {
+        HeapFile table = createEmptyTable(2 * POOL_PAGES);
+        BufferPool bp = new BufferPool(POOL_PAGES, BufferPool.CLOCK_POLICY, 8);
+        assertEquals(8, bp.numPartitions());
+
+        run(bp, table, 2 * POOL_PAGES, 8, 5000);
+        assertTrue(bp.numCachedPages() <= POOL_PAGES);
+        assertTrue(bp.numCachedPages() > POOL_PAGES / 2);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BufferPoolThroughputTest.class);
+    }
+}
@@ -0,0 +1,128 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+public class ColumnFileTest extends SimpleDbTestBase {
+    private static final int COLUMNS = 40;
+
+    private ColumnFile createTable(int columns) throws Exception {
+        File f = File.createTempFile("columns", ".dat");
+        f.deleteOnExit();
+        for (int i = 0; i < columns; i++)
+            new File(f.getPath() + "." + i).deleteOnExit();
+        ColumnFile table = new ColumnFile(f, Utility.getTupleDesc(columns));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    /** Inserts rows into a wide table and scans two of its columns. */
+    @Test public void scanProjectedColumns() throws Exception {
+        // the pool holds every page the transaction dirties
+        Database.resetBufferPool(5 * COLUMNS);
+        ColumnFile table = createTable(COLUMNS);
+        int perPage = ColumnPage.valuesPerPage(Type.INT_TYPE);
+        int rows = 3 * perPage + 17;
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < rows; i++) {
+            Tuple t = new Tuple(table.getTupleDesc());
+            for (int c = 0; c < COLUMNS; c++)
+                t.setField(c, new IntField(i * COLUMNS + c));
+            table.addTuple(tid, t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(4, table.numPages(COLUMNS - 1));
+
+        // read the table back from disk
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, table.getId(), "t", null, new HashSet<Integer>(Arrays.asList(3, 30)));
+        scan.open();
+        int count = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertEquals(count * COLUMNS + 3, ((IntField) t.getField(3)).getValue());
+            assertEquals(count * COLUMNS + 30, ((IntField) t.getField(30)).getValue());
+            assertNull(t.getField(4));
+            count++;
+        }
+        scan.close();
+        assertEquals(rows, count);
+
+        // the four pages of each of the two columns, and the last page of
+        // column 0 to count the rows
+        assertEquals(9, Database.getBufferPool().numCachedPages());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Tuples of a scan compare equal to the tuples that were inserted. */
+    @Test public void stitchTuples() throws Exception {
+        ColumnFile table = createTable(3);
+        TransactionId tid = new TransactionId();
+        Tuple inserted = new Tuple(table.getTupleDesc());
+        for (int c = 0; c < 3; c++)
+            inserted.setField(c, new IntField(c - 1));
+        table.addTuple(tid, inserted);
+
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        Tuple t = it.next();
+        assertEquals(inserted, t);
+        assertEquals(inserted.toString(), t.toString());
+        assertEquals(inserted.getRecordId(), t.getRecordId());
+        assertTrue(!it.hasNext());
+        it.close();
+
+        // a closed iterator reads nothing more
+        it.open();
+        it.close();
+        try {
+            it.next();
+            throw new Exception("expected NoSuchElementException after close");
+        } catch (NoSuchElementException e) {
+            // explicitly ignored
+        }
+
+        try {
+            table.deleteTuple(tid, t);
+            throw new Exception("ColumnFile is append-only; expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** The columnar annotation of Catalog.loadSchema(). */
+    @Test public void loadSchemaAnnotation() throws Exception {
+        File schema = File.createTempFile("schema", ".txt");
+        schema.deleteOnExit();
+        String name = schema.getAbsolutePath() + "_facts";
+
+        FileWriter out = new FileWriter(schema);
+        out.write(name + " (id int, code string) columnar\n");
+        out.close();
+
+        Catalog catalog = Database.getCatalog();
+        catalog.loadSchema(schema.getAbsolutePath());
+        assertTrue(catalog.getDbFile(catalog.getTableId(name)) instanceof ColumnFile);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnFileTest.class);
+    }
+}
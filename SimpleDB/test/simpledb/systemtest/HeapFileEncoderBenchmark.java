@@ -0,0 +1,62 @@
+package simpledb.systemtest;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures the throughput of HeapFileEncoder, the bulk loader behind
+ * SimpleDb convert, in MB of text input per second. The input is a
+ * generated file of rows with three int columns and one short string
+ * column.
+ * <p>
+ * Run with: ant runbench -Dbench=HeapFileEncoderBenchmark
+ */
+public class HeapFileEncoderBenchmark {
+    private static final int ROWS = 4000000;
+    private static final Type[] TYPES = new Type[]{
+            Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE};
+
+    public static void main(String[] args) throws Exception {
+        File in = File.createTempFile("encbench", ".txt");
+        in.deleteOnExit();
+        File out = File.createTempFile("encbench", ".dat");
+        out.deleteOnExit();
+        writeInput(in);
+        double mb = in.length() / (1024.0 * 1024.0);
+        System.out.printf("input: %.1f MB, %d rows\n", mb, ROWS);
+
+        // warm up the JIT
+        HeapFileEncoder.convert(in, out, BufferPool.PAGE_SIZE, TYPES.length, TYPES);
+
+        System.out.println("threads\tMB/s");
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            long start = System.nanoTime();
+            HeapFileEncoder.convert(in, out, BufferPool.PAGE_SIZE, TYPES.length, TYPES, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d\t%.1f\n", threads, mb / seconds);
+        }
+        in.delete();
+        out.delete();
+    }
+
+    private static void writeInput(File in) throws Exception {
+        Random random = new Random(42);
+        BufferedWriter writer = new BufferedWriter(new FileWriter(in));
+        for (int i = 0; i < ROWS; i++) {
+            writer.write(Integer.toString(i));
+            writer.write(',');
+            writer.write(Integer.toString(random.nextInt()));
+            writer.write(',');
+            writer.write(Integer.toString(random.nextInt(1000)));
+            writer.write(",code");
+            writer.write(Integer.toString(random.nextInt(100000)));
+            writer.write('\n');
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,65 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures HeapFile.readPage for random pages of a table, bypassing the
+ * BufferPool, with one thread and with several threads reading the same
+ * file at once. The table is small enough to stay in the OS page cache, so
+ * this measures the cost of the read path itself rather than the disk.
+ * <p>
+ * Run with: ant runbench -Dbench=HeapFileRandomReadBenchmark
+ */
+public class HeapFileRandomReadBenchmark {
+    private static final int TABLE_PAGES = 4096;
+    private static final int READS_PER_THREAD = 100000;
+    private static final int[] THREADS = new int[]{1, 4};
+
+    public static void main(String[] args) throws Exception {
+        Database.reset();
+        File f = File.createTempFile("randread", ".dat");
+        f.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength((long) TABLE_PAGES * BufferPool.PAGE_SIZE);
+        raf.close();
+        HeapFile hf = Utility.openHeapFile(2, f);
+
+        // warm up the JIT and the page cache
+        run(hf, 1, READS_PER_THREAD);
+
+        System.out.println("threads\tns/read\treads/s");
+        for (int threads : THREADS) {
+            double seconds = run(hf, threads, READS_PER_THREAD);
+            long reads = (long) threads * READS_PER_THREAD;
+            System.out.printf("%d\t%.0f\t%.0f\n", threads, seconds * 1e9 / READS_PER_THREAD, reads / seconds);
+        }
+        f.delete();
+    }
+
+    /** @return the wall clock time in seconds */
+    static double run(final HeapFile hf, int numThreads, final int reads) throws InterruptedException, IOException {
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final long seed = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    Random r = new Random(seed);
+                    for (int n = 0; n < reads; n++)
+                        hf.readPage(new HeapPageId(hf.getId(), r.nextInt(TABLE_PAGES)));
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        return (System.nanoTime() - start) / 1e9;
+    }
+}
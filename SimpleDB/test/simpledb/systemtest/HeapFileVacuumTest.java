@@ -0,0 +1,107 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+public class HeapFileVacuumTest extends SimpleDbTestBase {
+    private static final int ROWS = 5000;
+
+    /**
+     * Creates a table and deletes all but every fifth of its tuples.
+     *
+     * @param kept receives the tuples that are left
+     */
+    private HeapFile createSparseTable(ArrayList<ArrayList<Integer>> kept) throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> deleted = new ArrayList<Tuple>();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        for (int i = 0; it.hasNext(); i++) {
+            Tuple t = it.next();
+            if (i % 5 == 0)
+                kept.add(SystemTestUtil.tupleToList(t));
+            else
+                deleted.add(t);
+        }
+        it.close();
+        for (Tuple t : deleted)
+            table.deleteTuple(tid, t);
+        Database.getBufferPool().transactionComplete(tid);
+        return table;
+    }
+
+    /** Compacts a table and truncates the pages it frees. */
+    @Test public void compactAndTruncate() throws Exception {
+        ArrayList<ArrayList<Integer>> kept = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = createSparseTable(kept);
+        int pages = table.numPages();
+
+        HeapFileVacuum vacuum = new HeapFileVacuum(table, 0);
+        vacuum.run();
+        assertTrue(vacuum.isDone());
+
+        int slotsPerPage = (BufferPool.PAGE_SIZE * 8) / (table.getTupleDesc().getSize() * 8 + 1);
+        int densePages = (kept.size() + slotsPerPage - 1) / slotsPerPage;
+        assertEquals(densePages, table.numPages());
+        assertEquals(pages - densePages, vacuum.pagesFreed());
+        assertEquals((long) densePages * BufferPool.PAGE_SIZE, table.getFile().length());
+        assertTrue(vacuum.tuplesMoved() > 0);
+
+        // every tuple is still there, also when read back from disk
+        SystemTestUtil.matchTuples(table, kept);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(table, kept);
+
+        // the free space map points inserts at the last page
+        assertEquals(0, table.approximateFreeSlots(0));
+        assertTrue(table.approximateFreeSlots(densePages - 1) > 0);
+    }
+
+    /** Runs the vacuum on a background thread. */
+    @Test public void background() throws Exception {
+        ArrayList<ArrayList<Integer>> kept = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = createSparseTable(kept);
+
+        HeapFileVacuum vacuum = new HeapFileVacuum(table, 1);
+        vacuum.start().join();
+        assertTrue(vacuum.isDone());
+        assertTrue(vacuum.pagesFreed() > 0);
+        SystemTestUtil.matchTuples(table, kept);
+    }
+
+    /** Pages modified by a running transaction are not touched. */
+    @Test public void skipDirtyPages() throws Exception {
+        ArrayList<ArrayList<Integer>> kept = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = createSparseTable(kept);
+        int pages = table.numPages();
+
+        // a running transaction inserts into the last page
+        TransactionId writer = new TransactionId();
+        HeapPageId last = new HeapPageId(table.getId(), pages - 1);
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(writer, last, Permissions.READ_WRITE);
+        page.markDirty(true, writer);
+
+        HeapFileVacuum vacuum = new HeapFileVacuum(table, 0);
+        vacuum.run();
+        assertEquals(0, vacuum.tuplesMoved());
+        assertEquals(0, vacuum.pagesFreed());
+        assertEquals(pages, table.numPages());
+        page.markDirty(false, null);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapFileVacuumTest.class);
+    }
+}
@@ -0,0 +1,73 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import simpledb.*;
+
+/**
+ * Measures an insert-heavy workload: small transactions that each add a
+ * few tuples to a table and commit. It reports the time and the number of
+ * bytes allocated per inserted tuple, which is dominated by copies of page
+ * images (serializing pages for writePage, before-images and log records).
+ * <p>
+ * The workload runs once with pages written at commit, and once with the
+ * background writer, where commits log the before and after image of every
+ * page and the writer writes them later.
+ * <p>
+ * Run with: ant runbench -Dbench=HeapPageInsertBenchmark
+ */
+public class HeapPageInsertBenchmark {
+    private static final int TUPLES = 200000;
+    private static final int TUPLES_PER_TRANSACTION = 20;
+
+    public static void main(String[] args) throws Exception {
+        // warm up the JIT
+        run(false, TUPLES / 4);
+
+        System.out.println("commit\tns/tuple\tbytes/tuple");
+        for (boolean backgroundWriter : new boolean[]{false, true}) {
+            double[] result = run(backgroundWriter, TUPLES);
+            System.out.printf("%s\t%.0f\t%.0f\n", backgroundWriter ? "log" : "flush", result[0], result[1]);
+        }
+    }
+
+    /** @return the nanoseconds and the bytes allocated per inserted tuple */
+    static double[] run(boolean backgroundWriter, int tuples) throws Exception {
+        Database.reset();
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        if (backgroundWriter)
+            bp.startBackgroundWriter();
+
+        File f = File.createTempFile("insbench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < tuples; i += TUPLES_PER_TRANSACTION) {
+            TransactionId tid = new TransactionId();
+            for (int j = 0; j < TUPLES_PER_TRANSACTION; j++)
+                hf.addTuple(tid, Utility.getHeapTuple(i + j, 2));
+            bp.transactionComplete(tid, true);
+        }
+        while (bp.numPendingWrites() > 0)
+            Thread.sleep(1);
+        double nanos = System.nanoTime() - start;
+        allocated = allocatedBytes() - allocated;
+
+        bp.shutdown();
+        f.delete();
+        return new double[]{nanos / tuples, (double) allocated / tuples};
+    }
+
+    /** @return the bytes allocated so far by all live threads */
+    static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+            total += Math.max(0, allocated);
+        return total;
+    }
+}
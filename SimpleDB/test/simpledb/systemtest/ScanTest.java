@@ -105,6 +105,27 @@ public class ScanTest extends SimpleDbTestBase {
         assertEquals(0, table.readCount);
     }
 
+    /** A scan over a table larger than a quarter of the pool must not fill the pool. */
+    @Test public void testLargeScanUsesRing() throws IOException, DbException, TransactionAbortedException {
+        final int POOL_PAGES = BufferAccessStrategy.MIN_POOL_PAGES * 2;
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+
+        ArrayList<ArrayList<Integer>> hotTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(1, 992*10, null, hotTuples);
+        SystemTestUtil.matchTuples(hot, hotTuples);
+        assertEquals(10, bp.numCachedPages());
+
+        final int PAGES = POOL_PAGES / BufferAccessStrategy.SCAN_FRACTION + 20;
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile big = SystemTestUtil.createRandomHeapFile(1, 992*PAGES, null, tuples);
+        assertEquals(PAGES, big.numPages());
+
+        // the big table goes through the ring and leaves the pool alone
+        SystemTestUtil.matchTuples(big, tuples);
+        SystemTestUtil.matchTuples(big, tuples);
+        assertEquals(10, bp.numCachedPages());
+    }
+
     /** Make test compatible with older version of ant. */
     public static junit.framework.Test suite() {
         return new junit.framework.JUnit4TestAdapter(ScanTest.class);
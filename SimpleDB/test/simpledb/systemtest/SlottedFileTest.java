@@ -0,0 +1,151 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+public class SlottedFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 3000;
+
+    private static final TupleDesc CODES = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "code"});
+
+    private SlottedFile createTable() throws Exception {
+        File f = File.createTempFile("slotted", ".dat");
+        f.deleteOnExit();
+        SlottedFile table = new SlottedFile(f, CODES);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    /** Inserts and scans a table of short codes. */
+    @Test public void insertAndScan() throws Exception {
+        SlottedFile table = createTable();
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = new Tuple(CODES);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("C" + (i % 1000), Type.STRING_LEN));
+            table.addTuple(tid, t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        // read the table back from disk
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, table.getId(), "t");
+        scan.open();
+        Set<Integer> seen = new HashSet<Integer>();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            int id = ((IntField) t.getField(0)).getValue();
+            assertEquals("C" + (id % 1000), ((StringField) t.getField(1)).getValue());
+            seen.add(id);
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(ROWS, seen.size());
+
+        // a HeapFile needs a full STRING_LEN for every code
+        int heapTuplesPerPage = (BufferPool.PAGE_SIZE * 8) / (CODES.getSize() * 8 + 1);
+        int heapPages = (ROWS + heapTuplesPerPage - 1) / heapTuplesPerPage;
+        assertTrue(table.numPages() * 5 <= heapPages);
+        assertEquals(table.numPages(), (int) (table.getFile().length() / BufferPool.PAGE_SIZE));
+    }
+
+    /** Deletes every other tuple. */
+    @Test public void delete() throws Exception {
+        SlottedFile table = createTable();
+
+        TransactionId tid = new TransactionId();
+        Tuple[] tuples = new Tuple[100];
+        for (int i = 0; i < tuples.length; i++) {
+            tuples[i] = new Tuple(CODES);
+            tuples[i].setField(0, new IntField(i));
+            tuples[i].setField(1, new StringField("x", Type.STRING_LEN));
+            table.addTuple(tid, tuples[i]);
+        }
+        for (int i = 0; i < tuples.length; i += 2)
+            table.deleteTuple(tid, tuples[i]);
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            assertEquals(1, ((IntField) it.next().getField(0)).getValue() % 2);
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(tuples.length / 2, count);
+    }
+
+    /** The slotted annotation of Catalog.loadSchema(). */
+    @Test public void loadSchemaAnnotation() throws Exception {
+        File schema = File.createTempFile("schema", ".txt");
+        schema.deleteOnExit();
+        String name = schema.getAbsolutePath() + "_codes";
+        new File(name + ".dat").deleteOnExit();
+
+        FileWriter out = new FileWriter(schema);
+        out.write(name + " (id int, code string) slotted\n");
+        out.close();
+
+        Catalog catalog = Database.getCatalog();
+        catalog.loadSchema(schema.getAbsolutePath());
+        assertTrue(catalog.getDbFile(catalog.getTableId(name)) instanceof SlottedFile);
+    }
+
+    /** Converts a text file with SlottedFileEncoder and scans it. */
+    @Test public void convert() throws Exception {
+        File text = File.createTempFile("slotted", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++)
+            out.write(i + ", C" + (i % 1000) + "\n");
+        out.close();
+        File f = File.createTempFile("slotted", ".dat");
+        f.deleteOnExit();
+        SlottedFileEncoder.convert(text, f, new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+
+        SlottedFile table = new SlottedFile(f, CODES);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(count, ((IntField) t.getField(0)).getValue());
+            assertEquals("C" + (count % 1000), ((StringField) t.getField(1)).getValue());
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(ROWS, count);
+    }
+
+    /** A file of heap pages is not taken for a slotted file. */
+    @Test(expected = IllegalArgumentException.class) public void rejectHeapFile() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, ROWS, 1000, null, null);
+        new SlottedFile(f, CODES);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedFileTest.class);
+    }
+}
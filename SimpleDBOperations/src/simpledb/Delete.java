@@ -8,7 +8,8 @@ import java.util.Map;
 
 /**
  * The delete operator.  Delete reads tuples from its child operator and
- * removes them from the table they belong to.
+ * removes them from the table they belong to, and their entries from the
+ * indexes of the table.
  */
 public class Delete extends AbstractDbIterator {
 
@@ -91,6 +92,8 @@ public class Delete extends AbstractDbIterator {
     					dirtyPagesMap.put(page.getId(), page);
     				
     				recordsDeleted++;
+    				for (IndexFile index : Database.getCatalog().getIndexes(tableId))
+    					index.deleteTuple(tid, tuple);
     			}catch(DbException e){
     				continue;
     			}
@@ -0,0 +1,158 @@
+package simpledb;
+import java.util.*;
+
+/**
+ * The IndexNestedLoopJoin operator joins an outer relation to a table with
+ * an index on its join column. Instead of scanning the whole inner table
+ * for every outer tuple, as {@link Join} does, it looks up the inner tuples
+ * that match each outer tuple in the index.
+ * <p>
+ * The tuples it returns are the concatenation of the joining tuples, as
+ * those of Join.
+ *
+ * @see JoinOptimizer#instantiateJoin
+ */
+public class IndexNestedLoopJoin extends AbstractDbIterator {
+
+    private final JoinPredicate p;
+	private final DbIterator child1;
+	private final TransactionId tid;
+	private final IndexFile index;
+	private final Predicate innerFilter;
+	private final Predicate.Op probeOp;
+	private final TupleDesc td;
+	private Tuple t1 = null;
+	private DbFileIterator inner = null;
+
+	/**
+     * Constructor.  Accepts the outer relation and the index on the inner
+     * table to join it to.
+     *
+     * @param p The predicate to use to join the children; its second field
+     *   is the key field of the index
+     * @param child1 Iterator for the left(outer) relation to join
+     * @param tid The transaction the lookups are running as a part of
+     * @param index An index on the inner table that supports
+     *   {@link #reverse reverse}(p.getOperator())
+     * @throws IllegalArgumentException if the index cannot answer the lookups
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, DbIterator child1, TransactionId tid, IndexFile index) {
+		this(p, child1, tid, index, null);
+    }
+
+	/**
+     * Constructor for a join whose inner tuples must also satisfy a
+     * predicate, such as one that was pushed into the scan of the inner
+     * table.
+     *
+     * @param innerFilter the predicate inner tuples satisfy, or null
+     * @see #IndexNestedLoopJoin(JoinPredicate, DbIterator, TransactionId, IndexFile)
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, DbIterator child1, TransactionId tid, IndexFile index,
+    		Predicate innerFilter) {
+		this.probeOp = reverse(p.getOperator());
+		if (p.getField2() != index.getKeyField() || null == probeOp || !index.supports(probeOp))
+			throw new IllegalArgumentException("index on field " + index.getKeyField() + " cannot join on field "
+					+ p.getField2() + " with " + p.getOperator());
+		this.p = p;
+		this.child1 = child1;
+		this.tid = tid;
+		this.index = index;
+		this.innerFilter = innerFilter;
+		this.td = TupleDesc.combine(child1.getTupleDesc(), index.getTupleDesc());
+    }
+
+    /**
+     * Returns the operator that compares the second operand of a predicate
+     * to the first as the given one compares the first to the second, so
+     * that <tt>a op b</tt> holds exactly when <tt>b reverse(op) a</tt> does.
+     *
+     * @return the reversed operator, or null for operators that cannot be
+     *   reversed (LIKE)
+     */
+    public static Predicate.Op reverse(Predicate.Op op) {
+    	switch (op) {
+    	case EQUALS:
+    	case NOT_EQUALS:
+    		return op;
+    	case LESS_THAN:
+    		return Predicate.Op.GREATER_THAN;
+    	case LESS_THAN_OR_EQ:
+    		return Predicate.Op.GREATER_THAN_OR_EQ;
+    	case GREATER_THAN:
+    		return Predicate.Op.LESS_THAN;
+    	case GREATER_THAN_OR_EQ:
+    		return Predicate.Op.LESS_THAN_OR_EQ;
+    	default:
+    		return null;
+    	}
+    }
+
+    /**
+     * @return the index the join looks the inner tuples up in
+     */
+    public IndexFile getIndex() {
+    	return index;
+    }
+
+    public TupleDesc getTupleDesc() {
+    	return td;
+    }
+
+    public void open()
+        throws DbException, NoSuchElementException, TransactionAbortedException {
+    	child1.open();
+    	t1 = null;
+    }
+
+    public void close() {
+    	super.close();
+    	closeInner();
+    	child1.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+    	closeInner();
+    	child1.rewind();
+    }
+
+    private void closeInner() {
+    	if (null != inner)
+    		inner.close();
+    	inner = null;
+    	t1 = null;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples. The inner tuples that join an outer tuple are those the
+     * index returns for the predicate <tt>field2 reverse(op) t1.field1</tt>.
+     *
+     * @return The next matching tuple.
+     */
+    protected Tuple readNext() throws TransactionAbortedException, DbException {
+    	while (true) {
+    		while (null != inner && inner.hasNext()) {
+    			Tuple t2 = inner.next();
+    			if (null == innerFilter || innerFilter.filter(t2))
+    				return combine(t1, t2);
+    		}
+    		closeInner();
+    		if (!child1.hasNext())
+    			return null;
+    		t1 = child1.next();
+    		inner = index.iterator(tid, new Predicate(p.getField2(), probeOp, t1.getField(p.getField1())));
+    		inner.open();
+    	}
+    }
+
+    private Tuple combine(Tuple t1, Tuple t2) {
+    	Tuple t = new Tuple(td);
+    	int c = 0;
+    	for (int i = 0; i < t1.getTupleDesc().numFields(); i++)
+    		t.setField(c++, t1.getField(i));
+    	for (int i = 0; i < t2.getTupleDesc().numFields(); i++)
+    		t.setField(c++, t2.getField(i));
+    	return t;
+    }
+}
@@ -4,7 +4,8 @@ import java.util.*;
 
 /**
  * Inserts tuples read from the child operator into
- * the tableid specified in the constructor
+ * the tableid specified in the constructor, and adds their
+ * entries to the indexes of the table
  */
 public class Insert extends AbstractDbIterator {
 
@@ -76,6 +77,8 @@ public class Insert extends AbstractDbIterator {
     		try {
     			DbFile dbFile = Database.getCatalog().getDbFile(this.tableid);
     			dbFile.addTuple(t, tuple);
+    			for (IndexFile index : Database.getCatalog().getIndexes(this.tableid))
+    				index.addTuple(t, tuple);
     			recordsInserted++;
     		} catch (IOException e) {
     			throw new DbException(" could not insert db record");
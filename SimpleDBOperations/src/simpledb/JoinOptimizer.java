@@ -11,6 +11,18 @@ public class JoinOptimizer {
     LogicalPlan p;
     Vector<LogicalJoinNode> joins;
 
+    /**
+     * The fraction of the pairs of tuples of the two sides that a join on
+     * an inequality keeps.
+     */
+    static final double RANGE_JOIN_SELECTIVITY = 0.3;
+
+    /**
+     * The number of index pages a lookup in an index reads before it finds
+     * the first matching entry.
+     */
+    static final int INDEX_PAGES_PER_PROBE = 3;
+
     /** Constructor
         @param p the logical plan being optimized
         @param joins the list of joins being performed
@@ -54,7 +66,27 @@ public class JoinOptimizer {
         }
         
         JoinPredicate p = new JoinPredicate(t1id,lj.p,t2id);
-       
+
+        // an index on the join column of the inner table lets the join look
+        // up the inner tuples of each outer tuple, instead of scanning the
+        // inner table once per outer tuple
+        if (!(lj instanceof LogicalSubplanJoinNode) && plan2 instanceof SeqScan
+                && null != stats.get(lj.t1) && null != stats.get(lj.t2)) {
+            SeqScan ss = (SeqScan) plan2;
+            IndexFile index = LogicalPlan.indexFor(ss.getTableId(), t2id, IndexNestedLoopJoin.reverse(lj.p));
+            if (null != index) {
+                TableStats s1 = stats.get(lj.t1);
+                TableStats s2 = stats.get(lj.t2);
+                int card1 = s1.estimateTableCardinality(1.0);
+                int card2 = s2.estimateTableCardinality(1.0);
+                double cost1 = s1.estimateScanCost();
+                double cost2 = s2.estimateScanCost();
+                if (estimateIndexJoinCost(lj, s2.numPages(), card1, card2, cost1, cost2)
+                        < estimateNestedLoopJoinCost(card1, card2, cost1, cost2))
+                    return new IndexNestedLoopJoin(p, plan1, ss.getTransactionId(), index, ss.getPredicate());
+            }
+        }
+
         j = new Join(p,plan1,plan2);
         
         return j;
@@ -80,18 +112,80 @@ public class JoinOptimizer {
      * @return An estimate of the cost of this query, in terms of cost1 and cost2
      */
     public double estimateJoinCost(LogicalJoinNode j, int card1, int card2, double cost1, double cost2) {
+        return estimateJoinCost(j, null, card1, card2, cost1, cost2);
+    }
+
+    /**
+     * Estimate the cost of a join, considering an {@link IndexNestedLoopJoin}
+     * when the right-hand side is a base table with an index on the join
+     * column.
+     *
+     * @param stats2 The statistics of the table on the right-hand side, or
+     *   null when the right-hand side is not a base table
+     * @see #estimateJoinCost(LogicalJoinNode, int, int, double, double)
+     */
+    double estimateJoinCost(LogicalJoinNode j, TableStats stats2, int card1, int card2, double cost1, double cost2) {
         if (j instanceof LogicalSubplanJoinNode) {
         	// A LogicalSubplanJoinNode represents a subquery.
         	// You do not need to implement proper support for these for Lab 4.
         	return card1 + cost1 + cost2;
         } else {
-            // Insert your code here.
-            // HINT:  You may need to use the variable "j" if you implemented a join
-            //        algorithm that's more complicated than a basic nested-loops join.
-            return -1.0;
+            double cost = estimateNestedLoopJoinCost(card1, card2, cost1, cost2);
+            if (null != stats2 && null != innerIndex(j))
+                cost = Math.min(cost, estimateIndexJoinCost(j, stats2.numPages(), card1, card2, cost1, cost2));
+            return cost;
         }
     }
 
+    /**
+     * Estimate the cost of a nested-loops join, which scans the right-hand
+     * table once for every tuple of the left-hand side and applies the
+     * predicate to every pair of tuples.
+     *
+     * @see #estimateJoinCost
+     */
+    double estimateNestedLoopJoinCost(int card1, int card2, double cost1, double cost2) {
+        return cost1 + card1 * cost2 + (double) card1 * card2;
+    }
+
+    /**
+     * Estimate the cost of an {@link IndexNestedLoopJoin}, which looks up
+     * the tuples of the right-hand table that join each tuple of the
+     * left-hand side in an index. Every lookup reads about
+     * {@link #INDEX_PAGES_PER_PROBE} pages of the index, and one page of the
+     * table for every tuple it finds.
+     *
+     * @param pages2 The number of pages of the right-hand table, which
+     *   gives the cost of reading one of them from cost2
+     * @see #estimateJoinCost
+     */
+    double estimateIndexJoinCost(LogicalJoinNode j, int pages2, int card1, int card2, double cost1, double cost2) {
+        double pageCost = cost2 / Math.max(1, pages2);
+        double matches = (double) estimateJoinCardinality(j, card1, card2, false, false) / Math.max(1, card1);
+        return cost1 + card1 * ((INDEX_PAGES_PER_PROBE + matches) * pageCost + matches);
+    }
+
+    /**
+     * @return an index on the join column of the right-hand table of the
+     *   join that can look up the tuples joining a left-hand tuple, or null
+     */
+    private IndexFile innerIndex(LogicalJoinNode j) {
+        if (j instanceof LogicalSubplanJoinNode || null == j.t2)
+            return null;
+        int tableid = p.getTableId(j.t2);
+        if (!(Database.getCatalog().getDbFile(tableid) instanceof HeapFile))
+            return null;
+        int field;
+        try {
+            field = p.fieldOf(j.t2, j.f2);
+        } catch (ParsingException e) {
+            return null;
+        }
+        if (-1 == field)
+            return null;
+        return LogicalPlan.indexFor(tableid, field, IndexNestedLoopJoin.reverse(j.p));
+    }
+
     /**
      * Estimate the cardinality of a join.  The cardinality of a join
      * is the number of tuples produced by the join.
@@ -110,8 +204,21 @@ public class JoinOptimizer {
             // You do not need to implement proper support for these for Lab 4.
             return card1;
         } else {
-            // some code goes here
-            return -1;
+            switch (j.p) {
+            case EQUALS:
+                // every tuple joins at most one tuple of a primary-key table
+                if (t1pkey && t2pkey)
+                    return Math.min(card1, card2);
+                if (t2pkey)
+                    return card1;
+                if (t1pkey)
+                    return card2;
+                return Math.max(card1, card2);
+            case NOT_EQUALS:
+                return (int) Math.min(Integer.MAX_VALUE, (long) card1 * card2);
+            default:
+                return (int) Math.min(Integer.MAX_VALUE, RANGE_JOIN_SELECTIVITY * card1 * card2);
+            }
         }
     }
 
@@ -267,10 +374,19 @@ public class JoinOptimizer {
         }
                     
         //case where prevbest is left
-        double cost1 = estimateJoinCost(j,t1card,t2card, t1cost,t2cost);
+        // an index can only be used for an inner side that is a base table
+        TableStats inner1 = null;
+        TableStats inner2 = null;
+        if (news.isEmpty()) {
+            inner1 = j.t2 == null ? null : stats.get(j.t2);
+            inner2 = stats.get(j.t1);
+        } else if (doesJoin(prevBest, j.t1)) {
+            inner1 = j.t2 == null ? null : stats.get(j.t2);
+        }
+        double cost1 = estimateJoinCost(j, inner1, t1card,t2card, t1cost,t2cost);
 
         LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2,t2card,t1card, t2cost,t1cost);
+        double cost2 = estimateJoinCost(j2, inner2, t2card,t1card, t2cost,t1cost);
         if (cost2 < cost1) {
             boolean tmp;
             j = j2;
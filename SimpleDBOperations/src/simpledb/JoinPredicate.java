@@ -28,6 +28,27 @@ public class JoinPredicate {
 		this.field2Index = field2;
     }
 
+    /**
+     * @return the field index into the first tuple in the predicate
+     */
+    public int getField1() {
+    	return field1Index;
+    }
+
+    /**
+     * @return the field index into the second tuple in the predicate
+     */
+    public int getField2() {
+    	return field2Index;
+    }
+
+    /**
+     * @return the operation to apply
+     */
+    public Predicate.Op getOperator() {
+    	return op;
+    }
+
     /**
      * Apply the predicate to the two specified tuples.
      * The comparison can be made through Field's compare method.
@@ -256,6 +256,112 @@ public  class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /**
+     * @return an index of the specified table that can find the tuples
+     *   satisfying the predicate, or null if there is none; a hash index
+     *   is preferred, since it only ever answers point lookups
+     */
+    static IndexFile indexFor(int tableid, Predicate p) {
+        return indexFor(tableid, p.getField(), p.getOp());
+    }
+
+    /**
+     * @return an index of the specified table on the specified field that
+     *   supports the operator, or null if there is none
+     * @see #indexFor(int, Predicate)
+     */
+    static IndexFile indexFor(int tableid, int field, Predicate.Op op) {
+        if (null == op)
+            return null;
+        IndexFile found = null;
+        for (IndexFile index : Database.getCatalog().getIndexes(tableid)) {
+            if (index.getKeyField() == field && index.supports(op)) {
+                if (index instanceof HashFile)
+                    return index;
+                if (null == found)
+                    found = index;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return a covering B+Tree index of the specified table that can find
+     *   the tuples satisfying the predicate and holds all of the fields, or
+     *   null if there is none
+     * @see IndexOnlyScan
+     */
+    static BTreeFile coveringIndexFor(int tableid, Predicate p, Set<Integer> fields) {
+        for (IndexFile index : Database.getCatalog().getIndexes(tableid)) {
+            if (!(index instanceof BTreeFile) || index.getKeyField() != p.getField() || !index.supports(p.getOp()))
+                continue;
+            BTreeFile btree = (BTreeFile) index;
+            boolean covers = true;
+            for (int field : fields)
+                covers = covers && -1 != btree.coveredField(field);
+            if (covers)
+                return btree;
+        }
+        return null;
+    }
+
+    /**
+     * @return the field of the table a field name refers to, if it is a
+     *   field of the table with the specified alias, or -1
+     */
+    int fieldOf(String alias, String field) throws ParsingException {
+        String name = disambiguateName(field);
+        String[] parts = name.split("[.]");
+        if (2 != parts.length || !parts[0].equals(alias))
+            return -1;
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableMap.get(alias));
+        try {
+            return td.nameToId(parts[1]);
+        } catch (NoSuchElementException e) {
+            try {
+                return td.nameToId(name);
+            } catch (NoSuchElementException e2) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return the fields of the table with the specified alias that the
+     *   query uses -- in its select list, aggregate, grouping, ordering,
+     *   filters and joins -- or null if it uses all of them
+     */
+    Set<Integer> referencedFields(String alias) throws ParsingException {
+        ArrayList<String> names = new ArrayList<String>();
+        for (LogicalSelectListNode si : selectList) {
+            if (si.fname.equals("null.*") || si.fname.equals("*"))
+                return null;
+            names.add(si.fname);
+        }
+        if (hasAgg) {
+            names.add(aggField);
+            if (null != groupByField)
+                names.add(groupByField);
+        }
+        if (hasOrderBy)
+            names.add(oByField);
+        for (LogicalFilterNode lf : filters)
+            names.add(lf.f);
+        for (LogicalJoinNode lj : joins) {
+            names.add(lj.f1);
+            if (!(lj instanceof LogicalSubplanJoinNode))
+                names.add(lj.f2);
+        }
+
+        Set<Integer> fields = new HashSet<Integer>();
+        for (String name : names) {
+            int field = fieldOf(alias, name);
+            if (-1 != field)
+                fields.add(field);
+        }
+        return fields;
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link DbIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned DbIterator will run as a part of
@@ -279,7 +385,9 @@ public  class LogicalPlan {
             LogicalScanNode table = tableIt.next();
             SeqScan ss = null;
             try {
-                 ss = new SeqScan(t, Database.getCatalog().getDbFile(table.t).getId(), table.alias);
+                 // a scan of a ColumnFile only reads the columns the query uses
+                 ss = new SeqScan(t, Database.getCatalog().getDbFile(table.t).getId(), table.alias, null,
+                         referencedFields(table.alias));
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
@@ -319,7 +427,44 @@ public  class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.f);
             }
-            subplanMap.put(lf.t, new Filter(p, subplan));
+            IndexFile index = null;
+            BTreeFile covering = null;
+            if (subplan instanceof SeqScan) {
+                index = indexFor(((SeqScan) subplan).getTableId(), p);
+                Set<Integer> fields = referencedFields(lf.t);
+                if (null != fields)
+                    covering = coveringIndexFor(((SeqScan) subplan).getTableId(), p, fields);
+            }
+            if (null != covering) {
+                // the leaves of the index hold every field the query needs
+                // from the table, so its pages need not be read at all
+                SeqScan ss = (SeqScan) subplan;
+                DbIterator scan = new IndexOnlyScan(t, covering, ss.getAlias(), p);
+                Predicate pushed = ss.getPredicate();
+                if (null != pushed)
+                    scan = new Filter(new Predicate(covering.coveredField(pushed.getField()), pushed.getOp(),
+                            pushed.getOperand()), scan);
+                subplanMap.put(lf.t, scan);
+            } else if (null != index) {
+                // the index finds the matching tuples without reading the
+                // whole table; a predicate pushed into the scan before is
+                // applied to what it finds
+                SeqScan ss = (SeqScan) subplan;
+                DbIterator scan;
+                if (index instanceof HashFile)
+                    scan = new HashLookup(t, (HashFile) index, ss.getAlias(), p.getOperand());
+                else
+                    scan = new IndexScan(t, index, ss.getAlias(), p);
+                if (null != ss.getPredicate())
+                    scan = new Filter(ss.getPredicate(), scan);
+                subplanMap.put(lf.t, scan);
+            } else if (subplan instanceof SeqScan && null == ((SeqScan) subplan).getPredicate()) {
+                // the scan filters by itself and can skip pages by their zone
+                // maps and Bloom filters
+                SeqScan ss = (SeqScan) subplan;
+                subplanMap.put(lf.t, new SeqScan(t, ss.getTableId(), ss.getAlias(), p, ss.getFields()));
+            } else
+                subplanMap.put(lf.t, new Filter(p, subplan));
 
             TableStats s = statsMap.get(lf.t);
             
@@ -364,6 +364,37 @@ public class Parser {
 
     }
 
+    /**
+     * Handles VACUUM tablename, which Zql does not parse: starts compacting
+     * the table in the background and returns right away.
+     *
+     * @see HeapFileVacuum
+     */
+    public static void handleVacuumStatement(String s) throws simpledb.ParsingException {
+        String[] words = s.replace(';', ' ').trim().split("\\s+");
+        if (words.length != 2)
+            throw new simpledb.ParsingException("Expected VACUUM tablename");
+
+        String name = words[1];
+        int id;
+        try {
+            id = Database.getCatalog().getTableId(name);
+        } catch (NoSuchElementException e) {
+            throw new simpledb.ParsingException ("Unknown table : " + name);
+        }
+        DbFile file = Database.getCatalog().getDbFile(id);
+        if (!(file instanceof HeapFile))
+            throw new simpledb.ParsingException("Only heap files can be vacuumed : " + name);
+
+        new HeapFileVacuum((HeapFile) file).start();
+        System.out.println("Vacuuming " + name + " in the background.");
+    }
+
+    static boolean isVacuumStatement(String s) {
+        String[] words = s.trim().split("\\s+", 2);
+        return words[0].equalsIgnoreCase("VACUUM");
+    }
+
     public static void handleTransactStatement(ZTransactStmt s) throws TransactionAbortedException, DbException, IOException, simpledb.ParsingException, Zql.ParseException {
         if (s.getStmtType().equals("COMMIT")) {
             curtrans.transactionComplete(false);
@@ -408,6 +439,14 @@ public class Parser {
     }
 
     public static void processNextStatement(String s) {
+    	if (isVacuumStatement(s)) {
+    		try {
+    			handleVacuumStatement(s);
+    		} catch (simpledb.ParsingException e) {
+    			System.out.println("Invalid SQL expression: \n \t" + e.getMessage());
+    		}
+    		return;
+    	}
     	try {
 			processNextStatement(new ByteArrayInputStream(s.getBytes("UTF-8")));
 		} catch (UnsupportedEncodingException e) {
@@ -463,7 +502,8 @@ public class Parser {
         "insert",
         "delete",
         "values",
-        "into"
+        "into",
+        "vacuum"
     };
 
     public static void main(String argv[]) throws IOException {
@@ -534,7 +574,6 @@ public class Parser {
                 while (line.indexOf(';') >= 0) {
                     int split = line.indexOf(';');
                     buffer.append(line.substring(0, split+1));
-                    byte[] statementBytes = buffer.toString().getBytes("UTF-8");
 
                     //create a transaction for the query
                     if (curtrans == null) {
@@ -543,7 +582,7 @@ public class Parser {
                         System.out.println("Started a new transaction tid = " + curtrans.getId().getId());
                     }
                     long startTime = System.currentTimeMillis();
-                    processNextStatement(new ByteArrayInputStream(statementBytes));
+                    processNextStatement(buffer.toString());
                     long time = System.currentTimeMillis() - startTime;
                     System.out.printf("----------------\n%.2f seconds\n\n", ((double)time/1000.0));
                     // Grab the remainder of the line
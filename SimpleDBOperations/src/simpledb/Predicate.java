@@ -46,6 +46,27 @@ public class Predicate {
 		this.operand = operand;
     }
 
+    /**
+     * @return the field number of passed in tuples to compare against
+     */
+    public int getField() {
+    	return fieldIndex;
+    }
+
+    /**
+     * @return the operation to use for comparison
+     */
+    public Op getOp() {
+    	return op;
+    }
+
+    /**
+     * @return the field value to compare passed in tuples to
+     */
+    public Field getOperand() {
+    	return operand;
+    }
+
     /**
      * Compares the field number of t specified in the constructor to the
      * operand field specified in the constructor using the operator specific
@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.io.IOException;
+
 /** TableStats represents statistics (e.g., histograms) about base tables in a query */
 public class TableStats {
     
@@ -10,6 +12,10 @@ public class TableStats {
      */
     static final int NUM_HIST_BINS = 100;
 
+    private final int ioCostPerPage;
+    private int numPages = 0;
+    private int numTuples = 0;
+
     /**
      * Create a new TableStats object, that keeps track of statistics on each column of a table
      * 
@@ -18,11 +24,33 @@ public class TableStats {
      * 		                This doesn't differentiate between sequential-scan IO and disk seeks.
      */
     public TableStats (int tableid, int ioCostPerPage) {
-        // For this function, you'll have to get the DbFile for the table in question,
-    	// then scan through its tuples and calculate the values that you need.
-    	// You should try to do this reasonably efficiently, but you don't necessarily
-    	// have to (for example) do everything in a single scan of the table.
-    	// some code goes here
+    	this.ioCostPerPage = ioCostPerPage;
+    	DbFile file = Database.getCatalog().getDbFile(tableid);
+    	TransactionId tid = new TransactionId();
+    	DbFileIterator it = file.iterator(tid);
+    	try {
+    		it.open();
+    		while (it.hasNext()) {
+    			Tuple t = it.next();
+    			numTuples++;
+    			// the pages of a file are numbered from 0
+    			numPages = Math.max(numPages, t.getRecordId().getPageId().pageno() + 1);
+    		}
+    		it.close();
+    		// a scan also reads the pages that hold no tuples, so take the
+    		// page count from files that know it
+    		if (file instanceof HeapFile)
+    			numPages = ((HeapFile) file).numPages();
+    		else if (file instanceof SlottedFile)
+    			numPages = ((SlottedFile) file).numPages();
+    		Database.getBufferPool().transactionComplete(tid);
+    	} catch (DbException e) {
+    		throw new RuntimeException("could not scan table " + tableid + ": " + e.getMessage());
+    	} catch (TransactionAbortedException e) {
+    		throw new RuntimeException("could not scan table " + tableid + ": " + e.getMessage());
+    	} catch (IOException e) {
+    		throw new RuntimeException("could not scan table " + tableid + ": " + e.getMessage());
+    	}
     }
 
     /** 
@@ -39,8 +67,14 @@ public class TableStats {
      * @return The estimated cost of scanning the table.
      */ 
     public double estimateScanCost() {
-    	// some code goes here
-        return 0;
+        return (double) numPages * ioCostPerPage;
+    }
+
+    /**
+     * @return The number of pages of the table
+     */
+    public int numPages() {
+        return numPages;
     }
 
     /** 
@@ -52,8 +86,7 @@ public class TableStats {
      * @return The estimated cardinality of the scan with the specified selectivityFactor
      */
     public int estimateTableCardinality(double selectivityFactor) {
-    	// some code goes here
-        return 0;
+        return (int) Math.ceil(numTuples * selectivityFactor);
     }
 
     /** 
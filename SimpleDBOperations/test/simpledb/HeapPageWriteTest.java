@@ -126,6 +126,65 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.iterator() and HeapPage.addTuple() on a page
+     * with holes
+     */
+    @Test public void reuseEmptySlots() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        int free = page.getNumEmptySlots();
+        page.deleteTuple(page.getTuple(3));
+        page.deleteTuple(page.getTuple(10));
+        assertEquals(free + 2, page.getNumEmptySlots());
+
+        // the iterator skips the holes and keeps the slot order
+        Iterator<Tuple> it = page.iterator();
+        int previous = -1;
+        int count = 0;
+        while (it.hasNext()) {
+            int slot = it.next().getRecordId().tupleno();
+            assertTrue(slot > previous && slot != 3 && slot != 10);
+            previous = slot;
+            count++;
+        }
+        assertEquals(HeapPageReadTest.EXAMPLE_VALUES.length - 2, count);
+
+        // new tuples fill the first hole first
+        Tuple addition = Utility.getHeapTuple(7, 2);
+        page.addTuple(addition);
+        assertEquals(3, addition.getRecordId().tupleno());
+        assertEquals(free + 1, page.getNumEmptySlots());
+        assertTrue(page.getSlot(3));
+        assertEquals(free + 1, new HeapPage(pid, page.getPageData()).getNumEmptySlots());
+    }
+
+    /**
+     * Unit test for HeapPage.getBeforeImage() and HeapPage.setBeforeImage()
+     */
+    @Test public void beforeImage() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        int free = page.getNumEmptySlots();
+
+        // nothing is captured until the page is modified
+        assertEquals(null, page.oldData);
+        assertEquals(free, page.getBeforeImage().getNumEmptySlots());
+
+        page.addTuple(Utility.getHeapTuple(1, 2));
+        page.addTuple(Utility.getHeapTuple(2, 2));
+        assertEquals(free, page.getBeforeImage().getNumEmptySlots());
+
+        page.setBeforeImage();
+        assertEquals(null, page.oldData);
+        assertEquals(free - 2, page.getBeforeImage().getNumEmptySlots());
+
+        // a before image can itself be modified without touching the page
+        HeapPage before = page.getBeforeImage();
+        before.addTuple(Utility.getHeapTuple(3, 2));
+        assertEquals(free - 3, before.getNumEmptySlots());
+        assertEquals(free - 2, page.getNumEmptySlots());
+        assertEquals(free - 2, new HeapPage(pid, page.getPageData()).getNumEmptySlots());
+    }
+
     /**
      * JUnit suite target
      */
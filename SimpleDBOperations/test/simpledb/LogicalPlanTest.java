@@ -0,0 +1,70 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import junit.framework.JUnit4TestAdapter;
+
+public class LogicalPlanTest extends SimpleDbTestBase {
+
+  /**
+   * Unit test for the choice of an IndexOnlyScan: a covering index answers
+   * a filter when it holds every field the query uses
+   */
+  @Test public void coveringIndex() throws Exception {
+    // the fields are named the way the plan refers to them
+    ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+    HeapFile table = SystemTestUtil.createRandomHeapFile(3, 500, 100, null, tuples, "t.f");
+    File f = BTreeFile.fileOf(table.getFile(), 1);
+    f.deleteOnExit();
+    BTreeFile index = new BTreeFile(f, table, 1, new int[]{2});
+    Database.getCatalog().addIndex(index);
+    index.addAllTuples();
+    Predicate p = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(50));
+
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(table.getId(), "t");
+    lp.addFilter("t.f1", Predicate.Op.GREATER_THAN, "50");
+    lp.addProjectField("t.f2", null);
+    assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)), lp.referencedFields("t"));
+    assertSame(index, LogicalPlan.coveringIndexFor(table.getId(), p, lp.referencedFields("t")));
+
+    // the plan returns the selected field of the matching rows
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    stats.put(Database.getCatalog().getTableName(table.getId()), new TableStats(table.getId(), 1000));
+    TransactionId tid = new TransactionId();
+    ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+    for (ArrayList<Integer> tuple : tuples) {
+      if (tuple.get(1) > 50)
+        expected.add(new ArrayList<Integer>(Arrays.asList(tuple.get(2))));
+    }
+    SystemTestUtil.matchTuples(lp.physicalPlan(tid, stats, false), expected);
+    Database.getBufferPool().transactionComplete(tid);
+
+    // a field the index does not hold
+    lp.addProjectField("t.f0", null);
+    assertNull(LogicalPlan.coveringIndexFor(table.getId(), p, lp.referencedFields("t")));
+
+    LogicalPlan star = new LogicalPlan();
+    star.addScan(table.getId(), "t");
+    star.addProjectField("null.*", null);
+    assertNull(star.referencedFields("t"));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LogicalPlanTest.class);
+  }
+}
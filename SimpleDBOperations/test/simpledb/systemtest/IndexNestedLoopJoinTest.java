@@ -0,0 +1,137 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import simpledb.*;
+
+public class IndexNestedLoopJoinTest extends SimpleDbTestBase {
+    private static final int COLUMNS = 2;
+
+    private static IndexFile createIndex(HeapFile table, int field, boolean hash)
+            throws IOException, DbException, TransactionAbortedException {
+        IndexFile index;
+        if (hash) {
+            File f = HashFile.fileOf(table.getFile(), field);
+            f.deleteOnExit();
+            index = new HashFile(f, table, field);
+        } else {
+            File f = BTreeFile.fileOf(table.getFile(), field);
+            f.deleteOnExit();
+            index = new BTreeFile(f, table, field);
+        }
+        Database.getCatalog().addIndex(index);
+        index.addAllTuples();
+        return index;
+    }
+
+    /**
+     * Checks that an IndexNestedLoopJoin returns the pairs of tuples of the
+     * two tables that satisfy the predicate and, if given, whose inner tuple
+     * satisfies the filter.
+     */
+    private static void validateJoin(int table1Rows, int table2Rows, int maxValue, Predicate.Op op,
+            boolean hash, Predicate innerFilter)
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> t1Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(COLUMNS, table1Rows, maxValue, null, t1Tuples);
+        ArrayList<ArrayList<Integer>> t2Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(COLUMNS, table2Rows, maxValue, null, t2Tuples);
+        IndexFile index = createIndex(table2, 1, hash);
+
+        ArrayList<ArrayList<Integer>> expectedResults = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t1 : t1Tuples) {
+            for (ArrayList<Integer> t2 : t2Tuples) {
+                if (!new IntField(t1.get(0)).compare(op, new IntField(t2.get(1))))
+                    continue;
+                if (null != innerFilter && !new IntField(t2.get(innerFilter.getField())).compare(
+                        innerFilter.getOp(), innerFilter.getOperand()))
+                    continue;
+                ArrayList<Integer> out = new ArrayList<Integer>(t1);
+                out.addAll(t2);
+                expectedResults.add(out);
+            }
+        }
+
+        TransactionId tid = new TransactionId();
+        JoinPredicate p = new JoinPredicate(0, op, 1);
+        IndexNestedLoopJoin joinOp = new IndexNestedLoopJoin(p, new SeqScan(tid, table1.getId(), ""),
+                tid, index, innerFilter);
+        SystemTestUtil.matchTuples(joinOp, expectedResults);
+        joinOp.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testEquals()
+            throws IOException, DbException, TransactionAbortedException {
+        validateJoin(200, 3000, 500, Predicate.Op.EQUALS, false, null);
+    }
+
+    @Test public void testHashEquals()
+            throws IOException, DbException, TransactionAbortedException {
+        validateJoin(200, 3000, 500, Predicate.Op.EQUALS, true, null);
+    }
+
+    @Test public void testRange()
+            throws IOException, DbException, TransactionAbortedException {
+        validateJoin(20, 500, 100, Predicate.Op.LESS_THAN, false, null);
+        validateJoin(20, 500, 100, Predicate.Op.GREATER_THAN_OR_EQ, false, null);
+    }
+
+    @Test public void testInnerFilter()
+            throws IOException, DbException, TransactionAbortedException {
+        validateJoin(200, 3000, 500, Predicate.Op.EQUALS, false,
+                new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(250)));
+    }
+
+    /** An index cannot look up the tuples of an inequality join. */
+    @Test(expected = IllegalArgumentException.class) public void testUnsupported()
+            throws IOException, DbException, TransactionAbortedException {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, 10, null, null);
+        IndexFile index = createIndex(table, 1, false);
+        new IndexNestedLoopJoin(new JoinPredicate(0, Predicate.Op.NOT_EQUALS, 1),
+                new SeqScan(new TransactionId(), table.getId(), ""), new TransactionId(), index);
+    }
+
+    /**
+     * The optimizer looks the inner tuples up in an index when that is
+     * cheaper than scanning the inner table for every outer tuple.
+     */
+    @Test public void testInstantiateJoin()
+            throws IOException, DbException, TransactionAbortedException, ParsingException {
+        // the fields are named the way the plan refers to them
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(COLUMNS, 1000, 20000, null, null, "t1.f");
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(COLUMNS, 20000, 20000, null, null, "t2.f");
+        createIndex(table2, 1, false);
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table1.getId(), "t1");
+        lp.addScan(table2.getId(), "t2");
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("t1", new TableStats(table1.getId(), 1000));
+        stats.put("t2", new TableStats(table2.getId(), 1000));
+
+        TransactionId tid = new TransactionId();
+        LogicalJoinNode indexed = new LogicalJoinNode("t1", "t2", "t1.f0", "t2.f1", Predicate.Op.EQUALS);
+        JoinOptimizer jo = new JoinOptimizer(lp, new java.util.Vector<LogicalJoinNode>());
+        DbIterator j = jo.instantiateJoin(indexed, new SeqScan(tid, table1.getId(), "t1"),
+                new SeqScan(tid, table2.getId(), "t2"), stats);
+        assertTrue(j instanceof IndexNestedLoopJoin);
+
+        LogicalJoinNode unindexed = new LogicalJoinNode("t1", "t2", "t1.f0", "t2.f0", Predicate.Op.EQUALS);
+        j = jo.instantiateJoin(unindexed, new SeqScan(tid, table1.getId(), "t1"),
+                new SeqScan(tid, table2.getId(), "t2"), stats);
+        assertTrue(j instanceof Join);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+    }
+}
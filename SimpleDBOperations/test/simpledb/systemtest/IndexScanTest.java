@@ -0,0 +1,121 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class IndexScanTest extends SimpleDbTestBase {
+    private static final int COLUMNS = 2;
+
+    private static BTreeFile createIndex(HeapFile table, int field)
+            throws IOException, DbException, TransactionAbortedException {
+        File f = BTreeFile.fileOf(table.getFile(), field);
+        f.deleteOnExit();
+        BTreeFile index = new BTreeFile(f, table, field);
+        Database.getCatalog().addIndex(index);
+        index.addAllTuples();
+        return index;
+    }
+
+    /**
+     * Checks that an IndexScan returns the tuples of the table that satisfy
+     * the predicate. The expected tuples are filtered from the list of the
+     * rows of the table rather than read by a SeqScan, which only sees the
+     * pages an insert touched once a HeapFile has been added to.
+     */
+    private static void validateScan(ArrayList<ArrayList<Integer>> tuples, IndexFile index,
+            TransactionId tid, Predicate p)
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> tuple : tuples) {
+            if (new IntField(tuple.get(p.getField())).compare(p.getOp(), p.getOperand()))
+                expected.add(tuple);
+        }
+        SystemTestUtil.matchTuples(new IndexScan(tid, index, "", p), expected);
+    }
+
+    private static void validateScans(ArrayList<ArrayList<Integer>> tuples, BTreeFile index,
+            TransactionId tid, int value)
+            throws IOException, DbException, TransactionAbortedException {
+        for (Predicate.Op op : new Predicate.Op[]{Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+                Predicate.Op.GREATER_THAN_OR_EQ})
+            validateScan(tuples, index, tid, new Predicate(1, op, new IntField(value)));
+    }
+
+    /** Insert and Delete keep the indexes of their table up to date. */
+    @Test public void testInsertDelete()
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, 2000, 300, null, tuples);
+        BTreeFile index = createIndex(table, 1);
+        ArrayList<ArrayList<Integer>> sourceTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(COLUMNS, 700, 300, null, sourceTuples);
+
+        TransactionId tid = new TransactionId();
+        Insert insert = new Insert(tid, new SeqScan(tid, source.getId(), ""), table.getId());
+        insert.open();
+        assertEquals(700, ((IntField) insert.next().getField(0)).getValue());
+        insert.close();
+        tuples.addAll(sourceTuples);
+        validateScans(tuples, index, tid, sourceTuples.get(0).get(1));
+        validateScans(tuples, index, tid, 150);
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        Predicate large = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(150));
+        Delete delete = new Delete(tid, new Filter(large, new IndexScan(tid, index, "", large)));
+        delete.open();
+        assertTrue(((IntField) delete.next().getField(0)).getValue() > 0);
+        delete.close();
+        ArrayList<ArrayList<Integer>> remaining = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> tuple : tuples) {
+            if (tuple.get(1) <= 150)
+                remaining.add(tuple);
+        }
+        SystemTestUtil.matchTuples(new IndexScan(tid, index, "", large), new ArrayList<ArrayList<Integer>>());
+        validateScans(remaining, index, tid, 100);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Insert and Delete keep hash indexes up to date as well. */
+    @Test public void testHashInsertDelete()
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, 2000, 300, null, tuples);
+        File f = HashFile.fileOf(table.getFile(), 1);
+        f.deleteOnExit();
+        HashFile index = new HashFile(f, table, 1);
+        Database.getCatalog().addIndex(index);
+        index.addAllTuples();
+        ArrayList<ArrayList<Integer>> sourceTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(COLUMNS, 700, 300, null, sourceTuples);
+
+        TransactionId tid = new TransactionId();
+        Insert insert = new Insert(tid, new SeqScan(tid, source.getId(), ""), table.getId());
+        insert.open();
+        assertEquals(700, ((IntField) insert.next().getField(0)).getValue());
+        insert.close();
+        tuples.addAll(sourceTuples);
+        int key = sourceTuples.get(0).get(1);
+        validateScan(tuples, index, tid, new Predicate(1, Predicate.Op.EQUALS, new IntField(key)));
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        Delete delete = new Delete(tid, new HashLookup(tid, index, "", new IntField(key)));
+        delete.open();
+        assertTrue(((IntField) delete.next().getField(0)).getValue() > 0);
+        delete.close();
+        SystemTestUtil.matchTuples(new HashLookup(tid, index, "", new IntField(key)),
+                new ArrayList<ArrayList<Integer>>());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(IndexScanTest.class);
+    }
+}